@@ -2,7 +2,6 @@ package hcmute.edu.vn.ocrscannerproject.adapter;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,41 +9,56 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.List;
 import java.util.Locale;
 
 import hcmute.edu.vn.ocrscannerproject.R;
-import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentListItem;
+import hcmute.edu.vn.ocrscannerproject.services.ThumbnailService;
 
-public class ScannedDocumentAdapter extends RecyclerView.Adapter<ScannedDocumentAdapter.DocumentViewHolder> {
+/**
+ * Adapter for the document list. Lists are submitted with {@link #submitList}, which diffs
+ * them against the current list on a background thread so only changed rows are rebound.
+ */
+public class ScannedDocumentAdapter extends ListAdapter<DocumentListItem, ScannedDocumentAdapter.DocumentViewHolder> {
+
+    private static final DiffUtil.ItemCallback<DocumentListItem> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<DocumentListItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull DocumentListItem oldItem, @NonNull DocumentListItem newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull DocumentListItem oldItem, @NonNull DocumentListItem newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
 
     private Context context;
-    private List<ScannedDocument> documents;
     private OnDocumentClickListener listener;
+    private final ThumbnailService thumbnailService;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
     
     // Interface for click events
     public interface OnDocumentClickListener {
-        void onDocumentClick(ScannedDocument document);
-        void onDocumentLongClick(ScannedDocument document);
+        void onDocumentClick(DocumentListItem document);
+        void onDocumentLongClick(DocumentListItem document);
     }
     
-    public ScannedDocumentAdapter(Context context, List<ScannedDocument> documents) {
+    public ScannedDocumentAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.documents = documents;
+        this.thumbnailService = ThumbnailService.getInstance(context);
     }
     
     public void setOnDocumentClickListener(OnDocumentClickListener listener) {
         this.listener = listener;
     }
-    
-    public void updateDocuments(List<ScannedDocument> newDocuments) {
-        this.documents = newDocuments;
-        notifyDataSetChanged();
-    }
 
     @NonNull
     @Override
@@ -55,36 +69,30 @@ public class ScannedDocumentAdapter extends RecyclerView.Adapter<ScannedDocument
 
     @Override
     public void onBindViewHolder(@NonNull DocumentViewHolder holder, int position) {
-        ScannedDocument document = documents.get(position);
+        DocumentListItem document = getItem(position);
         
         // Set document title
         holder.tvTitle.setText(document.getFileName());
         
         // Set document date
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
-        holder.tvDate.setText(dateFormat.format(document.getTimestamp()));
+        holder.tvDate.setText(document.getTimestamp() != null ? dateFormat.format(document.getTimestamp()) : "");
         
         // Set document type
         holder.tvType.setText(document.getType());
         
-        // Load thumbnail if available
-        if (document.getLocalImagePath() != null && !document.getLocalImagePath().isEmpty()) {
-            File imageFile = new File(document.getLocalImagePath());
-            if (imageFile.exists()) {
-                Bitmap thumbnail = BitmapFactory.decodeFile(document.getLocalImagePath());
-                if (thumbnail != null) {
-                    holder.imgThumbnail.setImageBitmap(thumbnail);
-                } else {
-                    // Set default image if thumbnail couldn't be loaded
-                    holder.imgThumbnail.setImageResource(R.drawable.ic_menu_report_image);
-                }
-            } else {
-                // Set default image if file doesn't exist
-                holder.imgThumbnail.setImageResource(R.drawable.ic_menu_report_image);
-            }
+        // Thumbnails come from memory or are loaded in the background, never decoded here
+        holder.documentId = document.getId();
+        Bitmap cached = thumbnailService.getCachedThumbnail(document.getId());
+        if (cached != null) {
+            holder.imgThumbnail.setImageBitmap(cached);
         } else {
-            // Set default image if no path
             holder.imgThumbnail.setImageResource(R.drawable.ic_menu_report_image);
+            thumbnailService.loadThumbnail(document, thumbnail -> {
+                // The holder may have been bound to another document meanwhile
+                if (thumbnail != null && document.getId().equals(holder.documentId)) {
+                    holder.imgThumbnail.setImageBitmap(thumbnail);
+                }
+            });
         }
         
         // Set click listeners
@@ -104,8 +112,10 @@ public class ScannedDocumentAdapter extends RecyclerView.Adapter<ScannedDocument
     }
 
     @Override
-    public int getItemCount() {
-        return documents != null ? documents.size() : 0;
+    public void onViewRecycled(@NonNull DocumentViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.documentId = null;
+        holder.imgThumbnail.setImageDrawable(null);
     }
 
     public static class DocumentViewHolder extends RecyclerView.ViewHolder {
@@ -113,6 +123,7 @@ public class ScannedDocumentAdapter extends RecyclerView.Adapter<ScannedDocument
         TextView tvTitle;
         TextView tvDate;
         TextView tvType;
+        String documentId;
         
         public DocumentViewHolder(@NonNull View itemView) {
             super(itemView);
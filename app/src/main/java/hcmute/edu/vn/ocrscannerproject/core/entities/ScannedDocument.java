@@ -23,6 +23,7 @@ public class ScannedDocument {
     private boolean isMetadataSynced;
     private boolean isImageSynced;
     private String type; // PDF, TXT, Image, etc.
+    private String thumbnailPath;
 
     /**
      * Constructs a new ScannedDocument with the specified file name and user ID.
@@ -520,4 +521,22 @@ public class ScannedDocument {
     public void addImagePath(String imagePath) {
         addLocalImagePath(imagePath);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Gets the path of the small thumbnail shown in the document list.
+     * 
+     * @return The thumbnail path, or null if none has been created
+     */
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+    
+    /**
+     * Sets the path of the small thumbnail shown in the document list.
+     * 
+     * @param thumbnailPath The thumbnail path
+     */
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+}
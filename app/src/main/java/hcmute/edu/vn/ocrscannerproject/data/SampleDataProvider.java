@@ -48,13 +48,14 @@ public class SampleDataProvider {
     
     /**
      * Initializes the app with sample data if no documents exist yet.
+     * Must not be called on the main thread.
      * @return true if sample data was created, false if documents already existed
      */
-    public boolean initializeSampleDataIfNeeded() {
+    public boolean initializeSampleDataIfNeeded() throws Exception {
         // Check if we already have documents
-        List<ScannedDocument> existingDocuments = repository.getAllDocuments();
-        if (!existingDocuments.isEmpty()) {
-            Log.d(TAG, "Sample data not created: " + existingDocuments.size() + " documents already exist");
+        int existingDocuments = repository.getDocumentCount();
+        if (existingDocuments > 0) {
+            Log.d(TAG, "Sample data not created: " + existingDocuments + " documents already exist");
             return false;
         }
         
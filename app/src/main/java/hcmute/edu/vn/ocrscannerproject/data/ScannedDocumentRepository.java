@@ -2,40 +2,72 @@ package hcmute.edu.vn.ocrscannerproject.data;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import java.lang.reflect.Type;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.FtsSearch;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.ScannedDocumentDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentListItem;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentSearchResult;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentEntity;
+import hcmute.edu.vn.ocrscannerproject.data.sync.CloudImageCache;
+import hcmute.edu.vn.ocrscannerproject.services.BlobStore;
+import hcmute.edu.vn.ocrscannerproject.services.ThumbnailService;
 
 /**
- * Repository for managing ScannedDocument data locally using SharedPreferences.
+ * Repository for managing ScannedDocument data locally in the Room database.
+ * Each write touches only the affected row, and all database work runs on a single
+ * background thread so reads always see earlier writes. Results are delivered on the
+ * main thread.
  */
 public class ScannedDocumentRepository {
     private static final String TAG = "ScannedDocRepository";
+    // Documents used to be stored as one JSON array under this key
     private static final String PREF_NAME = "scanned_document_prefs";
     private static final String KEY_DOCUMENTS = "scanned_documents";
-    
+
+    // Documents written per transaction when migrating the preferences
+    private static final int MIGRATION_BATCH_SIZE = 50;
+
     private static ScannedDocumentRepository instance;
-    private final SharedPreferences preferences;
-    private final Gson gson;
-    private List<ScannedDocument> documents;
-    
+    private final ScannedDocumentDao scannedDocumentDao;
+    private final ThumbnailService thumbnailService;
+    private final BlobStore blobStore;
+    private final CloudImageCache cloudImageCache;
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+
     private ScannedDocumentRepository(Context context) {
-        preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
-        loadDocuments();
+        scannedDocumentDao = AppDatabase.getInstance(context).scannedDocumentDao();
+        thumbnailService = ThumbnailService.getInstance(context);
+        blobStore = BlobStore.getInstance(context);
+        cloudImageCache = CloudImageCache.getInstance(context);
+        executor = Executors.newSingleThreadExecutor();
+        mainHandler = new Handler(Looper.getMainLooper());
+
+        SharedPreferences preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        executor.execute(() -> migrateFromPreferences(preferences));
+        // Clears out files imported for documents that were never saved
+        executor.execute(blobStore::sweep);
     }
-    
+
     /**
      * Gets the singleton instance of the repository.
-     * 
+     *
      * @param context The application context
      * @return The repository instance
      */
@@ -45,64 +77,102 @@ public class ScannedDocumentRepository {
         }
         return instance;
     }
-    
+
     /**
-     * Loads documents from SharedPreferences.
+     * Moves documents from the former SharedPreferences store into the database, reading
+     * the stored JSON array one document at a time. The preference is removed once every
+     * document has been written, so this only does work on the first start after updating.
      */
-    private void loadDocuments() {
+    private void migrateFromPreferences(SharedPreferences preferences) {
         String json = preferences.getString(KEY_DOCUMENTS, null);
-        if (json != null) {
-            try {
-                Type type = new TypeToken<ArrayList<ScannedDocument>>(){}.getType();
-                documents = gson.fromJson(json, type);
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading documents: " + e.getMessage());
-                documents = new ArrayList<>();
-            }
-        } else {
-            documents = new ArrayList<>();
+        if (json == null) {
+            return;
         }
-    }
-    
-    /**
-     * Saves documents to SharedPreferences.
-     */
-    private void saveDocuments() {
-        try {
-            String json = gson.toJson(documents);
-            preferences.edit().putString(KEY_DOCUMENTS, json).apply();
+
+        Gson gson = new Gson();
+        int migrated = 0;
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                List<ScannedDocumentEntity> batch = new ArrayList<>();
+                while (reader.hasNext()) {
+                    ScannedDocument document = gson.fromJson(reader, ScannedDocument.class);
+                    if (document == null) {
+                        continue;
+                    }
+                    if (document.getId() == null || document.getId().isEmpty()) {
+                        document.setId(UUID.randomUUID().toString());
+                    }
+                    batch.add(ScannedDocumentEntity.fromDocument(document));
+                    if (batch.size() == MIGRATION_BATCH_SIZE) {
+                        scannedDocumentDao.upsertAll(batch);
+                        migrated += batch.size();
+                        batch.clear();
+                    }
+                }
+                reader.endArray();
+                if (!batch.isEmpty()) {
+                    scannedDocumentDao.upsertAll(batch);
+                    migrated += batch.size();
+                }
+            }
         } catch (Exception e) {
-            Log.e(TAG, "Error saving documents: " + e.getMessage());
+            // Keep the preference so the migration is retried on the next start
+            Log.e(TAG, "Error migrating documents: " + e.getMessage(), e);
+            return;
         }
+
+        preferences.edit().remove(KEY_DOCUMENTS).commit();
+        Log.d(TAG, "Migrated " + migrated + " documents from preferences");
     }
-    
+
     /**
-     * Gets all documents.
-     * 
-     * @return A list of all documents
+     * Gets one page of the document list, newest first.
+     *
+     * @param filter The type to filter by, or "All" for all documents
+     * @param after The last document of the previous page, or null for the first page
+     * @param pageSize The maximum number of documents to return
+     * @param callback The callback to receive the page
      */
-    public List<ScannedDocument> getAllDocuments() {
-        return new ArrayList<>(documents);
+    public void getDocumentPage(String filter, DocumentListItem after, int pageSize,
+                                DocumentCallback<List<DocumentListItem>> callback) {
+        String type = (filter == null || filter.isEmpty() || filter.equals("All")) ? null : filter;
+        query(() -> {
+            if (after == null) {
+                return scannedDocumentDao.getDocumentPage(type, pageSize);
+            }
+            return scannedDocumentDao.getDocumentPageAfter(
+                    type, after.getTimestamp(), after.getId(), pageSize);
+        }, callback);
     }
-    
+
     /**
      * Gets a document by its ID.
-     * 
+     *
      * @param id The ID of the document to get
-     * @return The document, or null if not found
+     * @param callback The callback to receive the document, or null if not found
      */
-    public ScannedDocument getDocumentById(String id) {
-        for (ScannedDocument document : documents) {
-            if (document.getId().equals(id)) {
-                return document;
-            }
-        }
-        return null;
+    public void getDocumentById(String id, DocumentCallback<ScannedDocument> callback) {
+        query(() -> {
+            ScannedDocumentEntity entity = scannedDocumentDao.getDocumentById(id);
+            return entity != null ? entity.toDocument() : null;
+        }, callback);
     }
-    
+
+    /**
+     * Counts the stored documents, waiting for earlier writes to finish.
+     * Must not be called on the main thread.
+     *
+     * @return The number of documents
+     * @throws Exception If the database cannot be read
+     */
+    public int getDocumentCount() throws Exception {
+        return executor.submit(scannedDocumentDao::getDocumentCount).get();
+    }
+
     /**
      * Adds a new document to the repository.
-     * 
+     *
      * @param document The document to add
      */
     public void addDocument(ScannedDocument document) {
@@ -110,80 +180,130 @@ public class ScannedDocumentRepository {
         if (document.getId() == null || document.getId().isEmpty()) {
             document.setId(UUID.randomUUID().toString());
         }
-        
-        documents.add(0, document); // Add to beginning of list (newest first)
-        saveDocuments();
+
+        ScannedDocumentEntity entity = ScannedDocumentEntity.fromDocument(document);
+        write(() -> {
+            scannedDocumentDao.upsert(entity);
+            blobStore.retain(entity.getId(), entity.getLocalImagePaths());
+        });
     }
-    
+
     /**
      * Updates an existing document in the repository.
-     * 
+     *
      * @param document The document to update
      */
     public void updateDocument(ScannedDocument document) {
-        for (int i = 0; i < documents.size(); i++) {
-            if (documents.get(i).getId().equals(document.getId())) {
-                documents.set(i, document);
-                saveDocuments();
-                return;
-            }
-        }
+        ScannedDocumentEntity entity = ScannedDocumentEntity.fromDocument(document);
+        write(() -> {
+            scannedDocumentDao.update(entity);
+            blobStore.retain(entity.getId(), entity.getLocalImagePaths());
+        });
     }
-    
+
     /**
      * Deletes a document from the repository.
-     * 
+     *
      * @param id The ID of the document to delete
      */
     public void deleteDocument(String id) {
-        for (int i = 0; i < documents.size(); i++) {
-            if (documents.get(i).getId().equals(id)) {
-                documents.remove(i);
-                saveDocuments();
-                return;
-            }
-        }
+        write(() -> {
+            scannedDocumentDao.deleteById(id);
+            // The images stay while other documents use the same files
+            blobStore.release(id);
+        });
+        thumbnailService.deleteThumbnail(id);
+        cloudImageCache.evict(id);
+    }
+
+    /**
+     * Gets the image of a document, downloading it from the cloud on first view if the
+     * document was synced from another device.
+     *
+     * @param document The document
+     * @param callback The callback to receive the image file on the main thread
+     */
+    public void getImage(ScannedDocument document, CloudImageCache.ImageCallback callback) {
+        cloudImageCache.getImage(document, callback);
+    }
+
+    /**
+     * Downloads the cloud images of documents likely to be opened next in the background.
+     *
+     * @param documentIds The documents, most likely first
+     */
+    public void prefetchImages(List<String> documentIds) {
+        cloudImageCache.prefetch(documentIds);
     }
-    
+
     /**
-     * Searches for documents by title or extracted text.
-     * 
+     * Searches the title, extracted text and summary of documents through the full-text
+     * index. Every word of the query is matched as a prefix, and results are ranked by
+     * relevance.
+     *
      * @param query The search query
-     * @return A list of matching documents
+     * @param callback The callback to receive the matching documents
      */
-    public List<ScannedDocument> searchDocuments(String query) {
-        List<ScannedDocument> results = new ArrayList<>();
-        String lowerQuery = query.toLowerCase();
-        
-        for (ScannedDocument document : documents) {
-            if (document.getFileName().toLowerCase().contains(lowerQuery) || 
-                    (document.getRecognizedText() != null && 
-                     document.getRecognizedText().toLowerCase().contains(lowerQuery))) {
-                results.add(document);
+    public void searchDocuments(String query, DocumentCallback<List<DocumentListItem>> callback) {
+        String matchQuery = FtsSearch.toMatchQuery(query);
+        query(() -> {
+            List<DocumentListItem> results = new ArrayList<>();
+            if (matchQuery == null) {
+                return results;
             }
-        }
-        
-        return results;
+            List<DocumentSearchResult> matches = FtsSearch.rank(
+                    scannedDocumentDao.searchAllFullText(matchQuery), 0);
+            for (DocumentSearchResult match : matches) {
+                results.add(match.getDocument());
+            }
+            return results;
+        }, callback);
     }
-    
+
+    private <T> void query(Query<T> query, DocumentCallback<T> callback) {
+        executor.execute(() -> {
+            try {
+                T result = query.run();
+                mainHandler.post(() -> callback.onSuccess(result));
+            } catch (Exception e) {
+                Log.e(TAG, "Error querying documents: " + e.getMessage(), e);
+                mainHandler.post(() -> callback.onError(e));
+            }
+        });
+    }
+
+    private void write(Runnable write) {
+        executor.execute(() -> {
+            try {
+                write.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error saving documents: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private interface Query<T> {
+        T run();
+    }
+
     /**
-     * Filters documents by type.
-     * 
-     * @param filter The type to filter by, or "All" for all documents
-     * @return A list of filtered documents
+     * Callback interface for document queries, invoked on the main thread.
+     *
+     * @param <T> The type of the result
      */
-    public List<ScannedDocument> filterDocumentsByType(String filter) {
-        if (filter == null || filter.isEmpty() || filter.equals("All")) {
-            return new ArrayList<>(documents);
-        }
-        
-        List<ScannedDocument> results = new ArrayList<>();
-        for (ScannedDocument document : documents) {
-            if (document.getType().equals(filter)) {
-                results.add(document);
-            }
-        }
-        
-        return results;
+    public interface DocumentCallback<T> {
+        /**
+         * Called when the query is successful.
+         *
+         * @param result The result of the query
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called when the query fails.
+         *
+         * @param e The exception that caused the failure
+         */
+        void onError(Exception e);
     }
-} 
\ No newline at end of file
+}
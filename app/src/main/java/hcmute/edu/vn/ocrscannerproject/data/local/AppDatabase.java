@@ -4,22 +4,174 @@ import android.content.Context;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import hcmute.edu.vn.ocrscannerproject.data.local.converter.DateConverter;
+import hcmute.edu.vn.ocrscannerproject.data.local.converter.StringListConverter;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.BlobRefDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.OutboxDao;
 import hcmute.edu.vn.ocrscannerproject.data.local.dao.ScannedDocumentDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.StorageLedgerDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.UploadProgressDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.BlobRefEntity;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.OutboxEntity;
 import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentEntity;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentFts;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.StorageLedgerEntity;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.UploadProgressEntity;
 
 /**
  * The Room database for the application.
  */
-@Database(entities = {ScannedDocumentEntity.class}, version = 1, exportSchema = false)
+@Database(entities = {ScannedDocumentEntity.class, ScannedDocumentFts.class, UploadProgressEntity.class,
+        OutboxEntity.class, StorageLedgerEntity.class, BlobRefEntity.class}, version = 11, exportSchema = false)
+@TypeConverters({DateConverter.class, StringListConverter.class})
 public abstract class AppDatabase extends RoomDatabase {
     
     private static final String DATABASE_NAME = "ocr_scanner_db";
     private static volatile AppDatabase INSTANCE;
     
+    /**
+     * Adds the full-text index over file names, recognized text and summaries. The table
+     * and triggers match what Room generates for {@link ScannedDocumentFts}, and the index
+     * is rebuilt from the existing documents.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `scanned_documents_fts` USING FTS4("
+                    + "`fileName` TEXT, `recognizedText` TEXT, `summaryText` TEXT, "
+                    + "tokenize=unicode61, content=`scanned_documents`)");
+            for (String when : new String[]{"UPDATE", "DELETE"}) {
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_scanned_documents_fts_BEFORE_"
+                        + when + " BEFORE " + when + " ON `scanned_documents` BEGIN "
+                        + "DELETE FROM `scanned_documents_fts` WHERE `docid`=OLD.`rowid`; END");
+            }
+            for (String when : new String[]{"UPDATE", "INSERT"}) {
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_scanned_documents_fts_AFTER_"
+                        + when + " AFTER " + when + " ON `scanned_documents` BEGIN "
+                        + "INSERT INTO `scanned_documents_fts`(`docid`, `fileName`, `recognizedText`, `summaryText`) "
+                        + "VALUES (NEW.`rowid`, NEW.`fileName`, NEW.`recognizedText`, NEW.`summaryText`); END");
+            }
+            db.execSQL("INSERT INTO `scanned_documents_fts`(`scanned_documents_fts`) VALUES('rebuild')");
+        }
+    };
+    
+    /**
+     * Adds the document type and the image lists, so documents from the former
+     * SharedPreferences store can be kept here without losing properties.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `scanned_documents` ADD COLUMN `type` TEXT");
+            db.execSQL("ALTER TABLE `scanned_documents` ADD COLUMN `localImagePaths` TEXT");
+            db.execSQL("ALTER TABLE `scanned_documents` ADD COLUMN `cloudImageUrls` TEXT");
+        }
+    };
+    
+    /**
+     * Adds the index the document list is paged through.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_scanned_documents_timestamp_id` "
+                    + "ON `scanned_documents` (`timestamp`, `id`)");
+        }
+    };
+    
+    /**
+     * Adds the path of the list thumbnail. Existing documents get their thumbnail when
+     * they are first shown.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `scanned_documents` ADD COLUMN `thumbnailPath` TEXT");
+        }
+    };
+    
+    /**
+     * Adds the table sync records the progress of image uploads in.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `upload_progress` ("
+                    + "`documentId` TEXT NOT NULL, `fileSize` INTEGER NOT NULL, "
+                    + "`bytesUploaded` INTEGER NOT NULL, `state` TEXT, `attempts` INTEGER NOT NULL, "
+                    + "`lastError` TEXT, `updatedAt` INTEGER, PRIMARY KEY(`documentId`))");
+        }
+    };
+    
+    /**
+     * Adds the outbox of metadata writes waiting to be sent to Firestore.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `metadata_outbox` ("
+                    + "`documentId` TEXT NOT NULL, `operation` TEXT NOT NULL, `version` INTEGER NOT NULL, "
+                    + "`enqueuedAt` INTEGER NOT NULL, `attempts` INTEGER NOT NULL, "
+                    + "`nextAttemptAt` INTEGER NOT NULL, PRIMARY KEY(`documentId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_metadata_outbox_nextAttemptAt_enqueuedAt` "
+                    + "ON `metadata_outbox` (`nextAttemptAt`, `enqueuedAt`)");
+        }
+    };
+    
+    /**
+     * Adds the resumable session of image uploads.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `upload_progress` ADD COLUMN `sessionUri` TEXT");
+            db.execSQL("ALTER TABLE `upload_progress` ADD COLUMN `sourceLastModified` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    /**
+     * Adds the ledger of the files each user has in Firebase Storage.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `storage_ledger` ("
+                    + "`objectPath` TEXT NOT NULL, `userId` TEXT NOT NULL, `sizeBytes` INTEGER NOT NULL, "
+                    + "`updatedAt` INTEGER NOT NULL, PRIMARY KEY(`objectPath`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_storage_ledger_userId` ON `storage_ledger` (`userId`)");
+        }
+    };
+    
+    /**
+     * Records the size of the local image each uploaded file was transcoded from.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `storage_ledger` ADD COLUMN `originalBytes` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    /**
+     * Adds the references of documents to the files of the blob store.
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `blob_refs` ("
+                    + "`digest` TEXT NOT NULL, `documentId` TEXT NOT NULL, PRIMARY KEY(`digest`, `documentId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_blob_refs_documentId` ON `blob_refs` (`documentId`)");
+        }
+    };
+    
     /**
      * Get the DAO for ScannedDocument entities.
      * 
@@ -27,6 +179,34 @@ public abstract class AppDatabase extends RoomDatabase {
      */
     public abstract ScannedDocumentDao scannedDocumentDao();
     
+    /**
+     * Get the DAO for the progress of image uploads.
+     * 
+     * @return The UploadProgressDao
+     */
+    public abstract UploadProgressDao uploadProgressDao();
+    
+    /**
+     * Get the DAO for the metadata outbox.
+     * 
+     * @return The OutboxDao
+     */
+    public abstract OutboxDao outboxDao();
+    
+    /**
+     * Get the DAO for the storage usage ledger.
+     * 
+     * @return The StorageLedgerDao
+     */
+    public abstract StorageLedgerDao storageLedgerDao();
+    
+    /**
+     * Get the DAO for the references to blob store files.
+     * 
+     * @return The BlobRefDao
+     */
+    public abstract BlobRefDao blobRefDao();
+    
     /**
      * Get a singleton instance of the AppDatabase.
      * 
@@ -41,6 +221,9 @@ public abstract class AppDatabase extends RoomDatabase {
                             context.getApplicationContext(),
                             AppDatabase.class,
                             DATABASE_NAME)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                                    MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10,
+                                    MIGRATION_10_11)
                             .build();
                 }
             }
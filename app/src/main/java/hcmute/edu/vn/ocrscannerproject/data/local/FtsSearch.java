@@ -0,0 +1,144 @@
+package hcmute.edu.vn.ocrscannerproject.data.local;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentSearchResult;
+
+/**
+ * Helpers for querying the scanned_documents_fts index: turning user input into an FTS
+ * MATCH expression and ranking matches with Okapi BM25 computed from SQLite's matchinfo.
+ */
+public final class FtsSearch {
+
+    // Column weights, in the column order of ScannedDocumentFts
+    private static final double[] COLUMN_WEIGHTS = {3.0, 1.0, 1.5};
+
+    // Standard BM25 tuning constants
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private FtsSearch() {
+    }
+
+    /**
+     * Builds an FTS MATCH expression from free text. Every word becomes a prefix term and
+     * all terms must match, so "inv 20" finds "Invoice 2023". Characters with a meaning in
+     * the FTS query syntax are dropped.
+     *
+     * @param input The text typed by the user
+     * @return The MATCH expression, or null if the input contains no searchable words
+     */
+    public static String toMatchQuery(String input) {
+        if (input == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        StringBuilder term = new StringBuilder();
+        int length = input.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = input.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                term.appendCodePoint(codePoint);
+            } else {
+                appendTerm(query, term);
+            }
+        }
+        appendTerm(query, term);
+
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    private static void appendTerm(StringBuilder query, StringBuilder term) {
+        if (term.length() == 0) {
+            return;
+        }
+        if (query.length() > 0) {
+            query.append(' ');
+        }
+        // Lower case keeps words like OR and NOT from being read as operators
+        query.append(term.toString().toLowerCase(Locale.ROOT)).append('*');
+        term.setLength(0);
+    }
+
+    /**
+     * Scores every result and sorts them by descending relevance, newest first on ties.
+     *
+     * @param results The results of a MATCH query
+     * @param limit The maximum number of results to keep, or 0 for all
+     * @return The ranked results
+     */
+    public static List<DocumentSearchResult> rank(List<DocumentSearchResult> results, int limit) {
+        List<DocumentSearchResult> ranked = new ArrayList<>(results);
+        for (DocumentSearchResult result : ranked) {
+            result.setScore(bm25(result.getMatchInfo()));
+        }
+
+        Collections.sort(ranked, (a, b) -> {
+            int byScore = Double.compare(b.getScore(), a.getScore());
+            if (byScore != 0) {
+                return byScore;
+            }
+            long timeA = a.getDocument().getTimestamp() != null ? a.getDocument().getTimestamp().getTime() : 0;
+            long timeB = b.getDocument().getTimestamp() != null ? b.getDocument().getTimestamp().getTime() : 0;
+            return Long.compare(timeB, timeA);
+        });
+
+        if (limit > 0 && ranked.size() > limit) {
+            return new ArrayList<>(ranked.subList(0, limit));
+        }
+        return ranked;
+    }
+
+    /**
+     * Computes the BM25 score of a row from the output of matchinfo(fts, 'pcnalx').
+     *
+     * @param matchInfo The matchinfo blob, an array of native-order unsigned 32-bit integers
+     * @return The score, higher is better
+     */
+    public static double bm25(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 12) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phraseCount = buffer.getInt(0);
+        int columnCount = buffer.getInt(4);
+        long rowCount = buffer.getInt(8) & 0xFFFFFFFFL;
+
+        // Layout: p, c, n, a[c], l[c], x[3 * p * c]
+        int averageOffset = 3;
+        int lengthOffset = averageOffset + columnCount;
+        int hitsOffset = lengthOffset + columnCount;
+        if (matchInfo.length < (hitsOffset + 3 * phraseCount * columnCount) * 4) {
+            return 0;
+        }
+
+        double score = 0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount; column++) {
+                int x = hitsOffset + 3 * (phrase * columnCount + column);
+                long hitsInRow = buffer.getInt(x * 4) & 0xFFFFFFFFL;
+                if (hitsInRow == 0) {
+                    continue;
+                }
+                long rowsWithHit = buffer.getInt((x + 2) * 4) & 0xFFFFFFFFL;
+                long averageLength = buffer.getInt((averageOffset + column) * 4) & 0xFFFFFFFFL;
+                long rowLength = buffer.getInt((lengthOffset + column) * 4) & 0xFFFFFFFFL;
+
+                // Smoothed IDF that stays positive even for terms in most rows
+                double idf = Math.log(1 + (rowCount - rowsWithHit + 0.5) / (rowsWithHit + 0.5));
+                double lengthRatio = averageLength > 0 ? (double) rowLength / averageLength : 1;
+                double tf = hitsInRow * (K1 + 1) / (hitsInRow + K1 * (1 - B + B * lengthRatio));
+                double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                score += weight * idf * tf;
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,40 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.converter;
+
+import androidx.room.TypeConverter;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Type converter for Room to store a list of strings, such as image paths, as a JSON array.
+ */
+public class StringListConverter {
+    
+    private static final Gson GSON = new Gson();
+    private static final Type LIST_TYPE = new TypeToken<List<String>>(){}.getType();
+    
+    /**
+     * Converts a list of strings to a JSON array.
+     * 
+     * @param list The list to convert
+     * @return The JSON array, or null if list is null
+     */
+    @TypeConverter
+    public static String fromList(List<String> list) {
+        return list == null ? null : GSON.toJson(list);
+    }
+    
+    /**
+     * Converts a JSON array to a list of strings.
+     * 
+     * @param json The JSON array to convert
+     * @return The list, or null if json is null
+     */
+    @TypeConverter
+    public static List<String> toList(String json) {
+        return json == null ? null : GSON.fromJson(json, LIST_TYPE);
+    }
+}
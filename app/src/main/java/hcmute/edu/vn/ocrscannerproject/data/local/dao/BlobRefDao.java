@@ -0,0 +1,90 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.BlobRefEntity;
+
+/**
+ * Data Access Object for the references of documents to blob store files.
+ */
+@Dao
+public interface BlobRefDao {
+    
+    /**
+     * Insert references, ignoring those that already exist.
+     * 
+     * @param refs The references to insert
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertAll(List<BlobRefEntity> refs);
+    
+    /**
+     * Get the digests of the blobs a document uses.
+     * 
+     * @param documentId The ID of the document
+     * @return The digests
+     */
+    @Query("SELECT digest FROM blob_refs WHERE documentId = :documentId")
+    List<String> getDigestsForDocument(String documentId);
+    
+    /**
+     * Delete a reference of a document.
+     * 
+     * @param digest The digest of the blob
+     * @param documentId The ID of the document
+     */
+    @Query("DELETE FROM blob_refs WHERE digest = :digest AND documentId = :documentId")
+    void delete(String digest, String documentId);
+    
+    /**
+     * Count the documents using a blob.
+     * 
+     * @param digest The digest of the blob
+     * @return The number of references
+     */
+    @Query("SELECT COUNT(*) FROM blob_refs WHERE digest = :digest")
+    int countRefs(String digest);
+    
+    /**
+     * Get the digests of all referenced blobs.
+     * 
+     * @return The digests, each once
+     */
+    @Query("SELECT DISTINCT digest FROM blob_refs")
+    List<String> getReferencedDigests();
+    
+    /**
+     * Make the references of a document exactly the given blobs.
+     * 
+     * @param documentId The ID of the document
+     * @param digests The digests of the blobs the document uses now
+     * @return The digests the document dropped that no document references anymore
+     */
+    @Transaction
+    default List<String> replaceRefs(String documentId, Collection<String> digests) {
+        List<BlobRefEntity> added = new ArrayList<>();
+        for (String digest : digests) {
+            added.add(new BlobRefEntity(digest, documentId));
+        }
+        insertAll(added);
+        
+        List<String> unreferenced = new ArrayList<>();
+        for (String digest : getDigestsForDocument(documentId)) {
+            if (!digests.contains(digest)) {
+                delete(digest, documentId);
+                if (countRefs(digest) == 0) {
+                    unreferenced.add(digest);
+                }
+            }
+        }
+        return unreferenced;
+    }
+}
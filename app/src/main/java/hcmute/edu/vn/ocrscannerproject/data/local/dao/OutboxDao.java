@@ -0,0 +1,107 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.OutboxEntity;
+
+/**
+ * Data Access Object for the metadata outbox.
+ */
+@Dao
+public interface OutboxDao {
+    
+    /**
+     * Insert or update an outbox entry.
+     * 
+     * @param entry The entry to save
+     */
+    @Upsert
+    void upsert(OutboxEntity entry);
+    
+    /**
+     * Get the outbox entry of a document.
+     * 
+     * @param documentId The ID of the document
+     * @return The entry, or null if nothing is pending for the document
+     */
+    @Query("SELECT * FROM metadata_outbox WHERE documentId = :documentId")
+    OutboxEntity getByDocumentId(String documentId);
+    
+    /**
+     * Get the entries that may be written now, oldest first.
+     * 
+     * @param now The current time in milliseconds
+     * @param limit The maximum number of entries to return
+     * @return The due entries
+     */
+    @Query("SELECT * FROM metadata_outbox WHERE nextAttemptAt <= :now ORDER BY enqueuedAt LIMIT :limit")
+    List<OutboxEntity> getDue(long now, int limit);
+    
+    /**
+     * Count the pending entries.
+     * 
+     * @return The number of documents waiting to be written
+     */
+    @Query("SELECT COUNT(*) FROM metadata_outbox")
+    int getPendingCount();
+    
+    /**
+     * Delete an entry if it has not been enqueued again since it was read.
+     * 
+     * @param documentId The ID of the document
+     * @param version The version of the entry that was written
+     */
+    @Query("DELETE FROM metadata_outbox WHERE documentId = :documentId AND version = :version")
+    void deleteIfVersion(String documentId, long version);
+    
+    /**
+     * Postpone entries after a failed write.
+     * 
+     * @param documentIds The IDs of the documents in the failed batch
+     * @param nextAttemptAt The earliest time to try again, in milliseconds
+     */
+    @Query("UPDATE metadata_outbox SET attempts = attempts + 1, nextAttemptAt = :nextAttemptAt "
+            + "WHERE documentId IN (:documentIds)")
+    void recordFailure(List<String> documentIds, long nextAttemptAt);
+    
+    /**
+     * Record that documents have to be written, merging with entries already pending.
+     * A pending write is replaced by a later delete and the other way round, and an entry
+     * keeps its place in the queue and its backoff.
+     * 
+     * @param documentIds The IDs of the documents
+     * @param operation {@link OutboxEntity#OPERATION_SET} or {@link OutboxEntity#OPERATION_DELETE}
+     * @param now The current time in milliseconds
+     */
+    @Transaction
+    default void enqueue(List<String> documentIds, String operation, long now) {
+        for (String documentId : documentIds) {
+            OutboxEntity entry = getByDocumentId(documentId);
+            if (entry == null) {
+                entry = new OutboxEntity();
+                entry.setDocumentId(documentId);
+                entry.setEnqueuedAt(now);
+            }
+            entry.setOperation(operation);
+            entry.setVersion(entry.getVersion() + 1);
+            upsert(entry);
+        }
+    }
+    
+    /**
+     * Remove entries that have been written, keeping any enqueued again meanwhile.
+     * 
+     * @param entries The entries that were written
+     */
+    @Transaction
+    default void deleteWritten(List<OutboxEntity> entries) {
+        for (OutboxEntity entry : entries) {
+            deleteIfVersion(entry.getDocumentId(), entry.getVersion());
+        }
+    }
+}
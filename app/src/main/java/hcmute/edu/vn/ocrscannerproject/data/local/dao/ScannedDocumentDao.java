@@ -3,13 +3,15 @@ package hcmute.edu.vn.ocrscannerproject.data.local.dao;
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Delete;
-import androidx.room.Insert;
-import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Update;
+import androidx.room.Upsert;
 
+import java.util.Date;
 import java.util.List;
 
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentListItem;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentSearchResult;
 import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentEntity;
 
 /**
@@ -19,15 +21,37 @@ import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentEntity;
 @Dao
 public interface ScannedDocumentDao {
     
+    /**
+     * Matches documents through the full-text index, selecting the columns of the result
+     * list with a highlighted snippet and the match statistics FtsSearch ranks by. The
+     * recognized text is left out, since every match is loaded before ranking.
+     */
+    String SEARCH_FULL_TEXT = "SELECT " + DocumentListItem.QUALIFIED_COLUMNS + ", "
+            + "snippet(scanned_documents_fts, '" + DocumentSearchResult.HIGHLIGHT_START + "', '"
+            + DocumentSearchResult.HIGHLIGHT_END + "', '…', -1, 12) AS snippet, "
+            + "matchinfo(scanned_documents_fts, 'pcnalx') AS matchInfo "
+            + "FROM scanned_documents_fts "
+            + "JOIN scanned_documents ON scanned_documents.rowid = scanned_documents_fts.docid "
+            + "WHERE scanned_documents_fts MATCH :matchQuery";
+    
     /**
      * Insert a new scanned document into the database.
-     * If a document with the same ID already exists, it will be replaced.
+     * If a document with the same ID already exists, it will be updated in place, which
+     * keeps its row ID stable and lets the full-text index triggers see the change.
      * 
      * @param document The document to insert
-     * @return The row ID of the inserted document
+     * @return The row ID of the inserted document, or -1 if an existing one was updated
+     */
+    @Upsert
+    long upsert(ScannedDocumentEntity document);
+    
+    /**
+     * Insert or update several scanned documents in one transaction.
+     * 
+     * @param documents The documents to insert
      */
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    long insert(ScannedDocumentEntity document);
+    @Upsert
+    void upsertAll(List<ScannedDocumentEntity> documents);
     
     /**
      * Update an existing scanned document in the database.
@@ -45,6 +69,15 @@ public interface ScannedDocumentDao {
     @Delete
     void delete(ScannedDocumentEntity document);
     
+    /**
+     * Delete a scanned document by its ID.
+     * 
+     * @param id The ID of the document to delete
+     * @return The number of deleted documents
+     */
+    @Query("DELETE FROM scanned_documents WHERE id = :id")
+    int deleteById(String id);
+    
     /**
      * Get all scanned documents for a specific user, ordered by timestamp (newest first).
      * 
@@ -54,6 +87,23 @@ public interface ScannedDocumentDao {
     @Query("SELECT * FROM scanned_documents WHERE userId = :userId ORDER BY timestamp DESC")
     LiveData<List<ScannedDocumentEntity>> getAllForUser(String userId);
     
+    /**
+     * Set the thumbnail path of a scanned document.
+     * 
+     * @param id The ID of the document
+     * @param thumbnailPath The path of the thumbnail file
+     */
+    @Query("UPDATE scanned_documents SET thumbnailPath = :thumbnailPath WHERE id = :id")
+    void updateThumbnailPath(String id, String thumbnailPath);
+
+    /**
+     * Mark the metadata of scanned documents as written to Firestore.
+     *
+     * @param ids The IDs of the documents
+     */
+    @Query("UPDATE scanned_documents SET isMetadataSynced = 1 WHERE id IN (:ids)")
+    void markMetadataSynced(List<String> ids);
+
     /**
      * Get a specific scanned document by its ID.
      * 
@@ -64,14 +114,17 @@ public interface ScannedDocumentDao {
     ScannedDocumentEntity getDocumentById(String id);
     
     /**
-     * Search for scanned documents by file name.
+     * Search the file name, recognized text and summary of scanned documents through the
+     * full-text index. Results are unordered; rank them with {@link
+     * hcmute.edu.vn.ocrscannerproject.data.local.FtsSearch#rank}.
      * 
      * @param userId The ID of the user whose documents to search
-     * @param query The search query (will be wrapped with '%' for SQL LIKE)
-     * @return A LiveData list of matching scanned documents
+     * @param matchQuery An FTS MATCH expression, see {@link
+     *                   hcmute.edu.vn.ocrscannerproject.data.local.FtsSearch#toMatchQuery}
+     * @return The matching documents with a highlighted snippet and their match statistics
      */
-    @Query("SELECT * FROM scanned_documents WHERE userId = :userId AND fileName LIKE '%' || :query || '%' ORDER BY timestamp DESC")
-    LiveData<List<ScannedDocumentEntity>> searchByFileName(String userId, String query);
+    @Query(SEARCH_FULL_TEXT + " AND scanned_documents.userId = :userId")
+    List<DocumentSearchResult> searchFullText(String userId, String matchQuery);
     
     /**
      * Get all scanned documents that have not had their metadata synced to the cloud.
@@ -98,4 +151,62 @@ public interface ScannedDocumentDao {
      */
     @Query("SELECT * FROM scanned_documents ORDER BY timestamp DESC")
     List<ScannedDocumentEntity> getAllDocuments();
-} 
\ No newline at end of file
+    
+    /**
+     * Count all scanned documents in the database.
+     * 
+     * @return The number of scanned documents
+     */
+    @Query("SELECT COUNT(*) FROM scanned_documents")
+    int getDocumentCount();
+    
+    /**
+     * Count the documents whose image is stored at a cloud URL. Documents with the same
+     * image content share one uploaded file.
+     * 
+     * @param cloudImageUrl The URL of the image in Firebase Storage
+     * @return The number of documents using the image
+     */
+    @Query("SELECT COUNT(*) FROM scanned_documents WHERE cloudImageUrl = :cloudImageUrl")
+    int countByCloudImageUrl(String cloudImageUrl);
+    
+    /**
+     * Get the first page of the document list, ordered by timestamp (newest first).
+     * Only the columns shown in the list are loaded.
+     * 
+     * @param type The document type to filter by, or null for all types
+     * @param limit The maximum number of documents to return
+     * @return The first page of documents
+     */
+    @Query("SELECT " + DocumentListItem.COLUMNS + " FROM scanned_documents "
+            + "WHERE (:type IS NULL OR type = :type) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<DocumentListItem> getDocumentPage(String type, int limit);
+    
+    /**
+     * Get the page of the document list that follows a given document. Pages are keyed on
+     * (timestamp, id) rather than an offset, so each page is read straight from the
+     * timestamp index no matter how far the list has been scrolled.
+     * 
+     * @param type The document type to filter by, or null for all types
+     * @param afterTimestamp The timestamp of the last document of the previous page
+     * @param afterId The ID of the last document of the previous page
+     * @param limit The maximum number of documents to return
+     * @return The next page of documents
+     */
+    @Query("SELECT " + DocumentListItem.COLUMNS + " FROM scanned_documents "
+            + "WHERE (:type IS NULL OR type = :type) "
+            + "AND (timestamp < :afterTimestamp OR (timestamp = :afterTimestamp AND id < :afterId)) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<DocumentListItem> getDocumentPageAfter(String type, Date afterTimestamp, String afterId, int limit);
+    
+    /**
+     * Search the documents of every user through the full-text index.
+     * 
+     * @param matchQuery An FTS MATCH expression, see {@link
+     *                   hcmute.edu.vn.ocrscannerproject.data.local.FtsSearch#toMatchQuery}
+     * @return The matching documents with a highlighted snippet and their match statistics
+     */
+    @Query(SEARCH_FULL_TEXT)
+    List<DocumentSearchResult> searchAllFullText(String matchQuery);
+}
@@ -0,0 +1,94 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.StorageLedgerEntity;
+
+/**
+ * Data Access Object for the storage usage ledger.
+ */
+@Dao
+public interface StorageLedgerDao {
+    
+    /**
+     * Insert or update a ledger row.
+     * 
+     * @param entry The row to save
+     */
+    @Upsert
+    void upsert(StorageLedgerEntity entry);
+    
+    /**
+     * Get the ledger row of a file.
+     * 
+     * @param objectPath The path of the file in Firebase Storage
+     * @return The row, or null if the file is not in the ledger
+     */
+    @Query("SELECT * FROM storage_ledger WHERE objectPath = :objectPath")
+    StorageLedgerEntity getByPath(String objectPath);
+    
+    /**
+     * Get the paths of the files of a user recorded before a given time.
+     * 
+     * @param userId The ID of the user
+     * @param before The time in milliseconds
+     * @return The paths of the rows last written before the time
+     */
+    @Query("SELECT objectPath FROM storage_ledger WHERE userId = :userId AND updatedAt < :before")
+    List<String> getPathsForUserBefore(String userId, long before);
+    
+    /**
+     * Sum the sizes of a user's files.
+     * 
+     * @param userId The ID of the user
+     * @return The storage used by the user in bytes
+     */
+    @Query("SELECT COALESCE(SUM(sizeBytes), 0) FROM storage_ledger WHERE userId = :userId")
+    long getTotalBytes(String userId);
+    
+    /**
+     * Delete the ledger row of a file.
+     * 
+     * @param objectPath The path of the file in Firebase Storage
+     */
+    @Query("DELETE FROM storage_ledger WHERE objectPath = :objectPath")
+    void deleteByPath(String objectPath);
+    
+    /**
+     * Record the size of a file, replacing any size recorded for it before.
+     * 
+     * @param userId The ID of the user who owns the file
+     * @param objectPath The path of the file in Firebase Storage
+     * @param sizeBytes The size of the file in bytes
+     * @param originalBytes The size of the local image the file was made from
+     * @param now The current time in milliseconds
+     * @return The change in the user's total usage
+     */
+    @Transaction
+    default long record(String userId, String objectPath, long sizeBytes, long originalBytes, long now) {
+        StorageLedgerEntity previous = getByPath(objectPath);
+        upsert(new StorageLedgerEntity(objectPath, userId, sizeBytes, originalBytes, now));
+        return previous != null ? sizeBytes - previous.getSizeBytes() : sizeBytes;
+    }
+    
+    /**
+     * Remove a file from the ledger.
+     * 
+     * @param objectPath The path of the file in Firebase Storage
+     * @return The size the file was recorded with, or 0 if it was not in the ledger
+     */
+    @Transaction
+    default long remove(String objectPath) {
+        StorageLedgerEntity previous = getByPath(objectPath);
+        if (previous == null) {
+            return 0;
+        }
+        deleteByPath(objectPath);
+        return previous.getSizeBytes();
+    }
+}
@@ -0,0 +1,81 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Upsert;
+
+import java.util.Date;
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.UploadProgressEntity;
+
+/**
+ * Data Access Object for the progress of image uploads.
+ */
+@Dao
+public interface UploadProgressDao {
+    
+    /**
+     * Insert or update the progress of an upload.
+     * 
+     * @param progress The progress to save
+     */
+    @Upsert
+    void upsert(UploadProgressEntity progress);
+    
+    /**
+     * Get the progress of the upload of a document.
+     * 
+     * @param documentId The ID of the document
+     * @return The progress, or null if no upload is unfinished
+     */
+    @Query("SELECT * FROM upload_progress WHERE documentId = :documentId")
+    UploadProgressEntity getByDocumentId(String documentId);
+    
+    /**
+     * Get every unfinished upload.
+     * 
+     * @return The unfinished uploads
+     */
+    @Query("SELECT * FROM upload_progress")
+    List<UploadProgressEntity> getAll();
+    
+    /**
+     * Record how many bytes of a running upload have been sent.
+     * 
+     * @param documentId The ID of the document
+     * @param bytesUploaded The number of bytes sent
+     * @param updatedAt The time of the update
+     */
+    @Query("UPDATE upload_progress SET bytesUploaded = :bytesUploaded, updatedAt = :updatedAt "
+            + "WHERE documentId = :documentId")
+    void updateBytesUploaded(String documentId, long bytesUploaded, Date updatedAt);
+    
+    /**
+     * Record the resumable session of an upload, so it can be resumed after the process
+     * has been killed.
+     * 
+     * @param documentId The ID of the document
+     * @param sessionUri The upload session URI
+     * @param sourceLastModified The modification time of the file being uploaded
+     */
+    @Query("UPDATE upload_progress SET sessionUri = :sessionUri, sourceLastModified = :sourceLastModified "
+            + "WHERE documentId = :documentId")
+    void updateSession(String documentId, String sessionUri, long sourceLastModified);
+    
+    /**
+     * Forget the session of an upload, so the next attempt starts from the beginning.
+     * 
+     * @param documentId The ID of the document
+     */
+    @Query("UPDATE upload_progress SET sessionUri = NULL, bytesUploaded = 0 WHERE documentId = :documentId")
+    void clearSession(String documentId);
+    
+    /**
+     * Delete the progress of a finished upload.
+     * 
+     * @param documentId The ID of the document
+     */
+    @Query("DELETE FROM upload_progress WHERE documentId = :documentId")
+    void deleteByDocumentId(String documentId);
+}
@@ -0,0 +1,57 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Room Entity recording that a document uses a file of the blob store. A blob is named
+ * by the digest of its content, so a file imported twice is stored once, and it may only
+ * be deleted once no document has a row for it anymore.
+ */
+@Entity(tableName = "blob_refs",
+        primaryKeys = {"digest", "documentId"},
+        indices = {@Index(value = {"documentId"})})
+public class BlobRefEntity {
+    
+    @NonNull
+    private String digest;
+    
+    @NonNull
+    private String documentId;
+    
+    /**
+     * Default constructor for Room
+     */
+    public BlobRefEntity() {
+    }
+    
+    /**
+     * Constructs a new BlobRefEntity.
+     * 
+     * @param digest The SHA-256 digest of the blob, in hex
+     * @param documentId The ID of the document using the blob
+     */
+    public BlobRefEntity(@NonNull String digest, @NonNull String documentId) {
+        this.digest = digest;
+        this.documentId = documentId;
+    }
+    
+    @NonNull
+    public String getDigest() {
+        return digest;
+    }
+    
+    public void setDigest(@NonNull String digest) {
+        this.digest = digest;
+    }
+    
+    @NonNull
+    public String getDocumentId() {
+        return documentId;
+    }
+    
+    public void setDocumentId(@NonNull String documentId) {
+        this.documentId = documentId;
+    }
+}
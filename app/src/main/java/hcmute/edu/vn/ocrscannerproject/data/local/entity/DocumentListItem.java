@@ -0,0 +1,83 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import androidx.annotation.NonNull;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * The columns of a scanned document shown in the document list. Loading only these keeps
+ * recognized text and summaries out of memory while scrolling.
+ */
+public class DocumentListItem {
+    
+    /** Columns to select for this projection. */
+    public static final String COLUMNS = "id, fileName, timestamp, type, localImagePath, thumbnailPath";
+    
+    /** {@link #COLUMNS} qualified with the table, for queries that join the full-text index. */
+    public static final String QUALIFIED_COLUMNS = "scanned_documents.id, scanned_documents.fileName, "
+            + "scanned_documents.timestamp, scanned_documents.type, scanned_documents.localImagePath, "
+            + "scanned_documents.thumbnailPath";
+    
+    @NonNull
+    private String id;
+    
+    private String fileName;
+    private Date timestamp;
+    private String type;
+    private String localImagePath;
+    private String thumbnailPath;
+    
+    public DocumentListItem(@NonNull String id, String fileName, Date timestamp, String type,
+                            String localImagePath, String thumbnailPath) {
+        this.id = id;
+        this.fileName = fileName;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.localImagePath = localImagePath;
+        this.thumbnailPath = thumbnailPath;
+    }
+    
+    @NonNull
+    public String getId() {
+        return id;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public Date getTimestamp() {
+        return timestamp;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public String getLocalImagePath() {
+        return localImagePath;
+    }
+    
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DocumentListItem that = (DocumentListItem) o;
+        return id.equals(that.id)
+                && Objects.equals(fileName, that.fileName)
+                && Objects.equals(timestamp, that.timestamp)
+                && Objects.equals(type, that.type)
+                && Objects.equals(localImagePath, that.localImagePath)
+                && Objects.equals(thumbnailPath, that.thumbnailPath);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, fileName, timestamp, type, localImagePath, thumbnailPath);
+    }
+}
@@ -0,0 +1,108 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+import androidx.room.Embedded;
+import androidx.room.Ignore;
+
+/**
+ * A document matched by a full-text search, together with a snippet of the matching
+ * text and the raw FTS match statistics used to rank it. Only the columns shown in the
+ * result list are loaded; the full document is loaded by its ID when it is opened.
+ */
+public class DocumentSearchResult {
+    
+    /** Marks the start of a matched term in {@link #getSnippet()}. */
+    public static final String HIGHLIGHT_START = "\u0002";
+    /** Marks the end of a matched term in {@link #getSnippet()}. */
+    public static final String HIGHLIGHT_END = "\u0003";
+    
+    @Embedded
+    private DocumentListItem document;
+    
+    private String snippet;
+    
+    // matchinfo(..., 'pcnalx') of the row, see FtsSearch
+    private byte[] matchInfo;
+    
+    @Ignore
+    private double score;
+    
+    public DocumentListItem getDocument() {
+        return document;
+    }
+    
+    public void setDocument(DocumentListItem document) {
+        this.document = document;
+    }
+    
+    /**
+     * Gets the fragment of the best matching column, with matched terms wrapped in
+     * {@link #HIGHLIGHT_START} and {@link #HIGHLIGHT_END}.
+     * 
+     * @return The snippet
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+    
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+    
+    public byte[] getMatchInfo() {
+        return matchInfo;
+    }
+    
+    public void setMatchInfo(byte[] matchInfo) {
+        this.matchInfo = matchInfo;
+    }
+    
+    /**
+     * Gets the relevance score, higher is better.
+     * 
+     * @return The score
+     */
+    public double getScore() {
+        return score;
+    }
+    
+    public void setScore(double score) {
+        this.score = score;
+    }
+    
+    /**
+     * Gets the snippet with matched terms in bold, ready to be shown in a TextView.
+     * 
+     * @return The highlighted snippet, or an empty string if there is no snippet
+     */
+    public CharSequence getHighlightedSnippet() {
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        if (snippet == null) {
+            return builder;
+        }
+        
+        int index = 0;
+        while (index < snippet.length()) {
+            int start = snippet.indexOf(HIGHLIGHT_START, index);
+            if (start < 0) {
+                builder.append(snippet, index, snippet.length());
+                break;
+            }
+            int end = snippet.indexOf(HIGHLIGHT_END, start + 1);
+            if (end < 0) {
+                end = snippet.length();
+            }
+            builder.append(snippet, index, start);
+            int spanStart = builder.length();
+            builder.append(snippet, start + 1, end);
+            builder.setSpan(new StyleSpan(Typeface.BOLD), spanStart, builder.length(),
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            index = end + 1;
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,89 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for a document whose metadata still has to be written to Firestore.
+ * There is at most one row per document: the row records only what to do, and the
+ * document's current data is read when the outbox is flushed, so repeated edits before
+ * a flush become a single write.
+ */
+@Entity(tableName = "metadata_outbox",
+        indices = {@Index(value = {"nextAttemptAt", "enqueuedAt"})})
+public class OutboxEntity {
+    /** Write the document's current metadata. */
+    public static final String OPERATION_SET = "set";
+    /** Delete the document from Firestore. */
+    public static final String OPERATION_DELETE = "delete";
+    
+    @PrimaryKey
+    @NonNull
+    private String documentId;
+    
+    @NonNull
+    private String operation = OPERATION_SET;
+    // Incremented on every enqueue, so a flush only removes the version it wrote
+    private long version;
+    private long enqueuedAt;
+    private int attempts;
+    private long nextAttemptAt;
+    
+    /**
+     * Default constructor for Room
+     */
+    public OutboxEntity() {
+    }
+    
+    @NonNull
+    public String getDocumentId() {
+        return documentId;
+    }
+    
+    public void setDocumentId(@NonNull String documentId) {
+        this.documentId = documentId;
+    }
+    
+    @NonNull
+    public String getOperation() {
+        return operation;
+    }
+    
+    public void setOperation(@NonNull String operation) {
+        this.operation = operation;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+    
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+    
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
@@ -2,18 +2,23 @@ package hcmute.edu.vn.ocrscannerproject.data.local.entity;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.TypeConverters;
 
 import java.util.Date;
+import java.util.List;
 
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
 import hcmute.edu.vn.ocrscannerproject.data.local.converter.DateConverter;
+import hcmute.edu.vn.ocrscannerproject.data.local.converter.StringListConverter;
 
 /**
  * Room Entity representing a ScannedDocument in the local database.
  */
-@Entity(tableName = "scanned_documents")
-@TypeConverters(DateConverter.class)
+@Entity(tableName = "scanned_documents",
+        indices = {@Index(value = {"timestamp", "id"})})
+@TypeConverters({DateConverter.class, StringListConverter.class})
 public class ScannedDocumentEntity {
     
     @PrimaryKey
@@ -30,6 +35,10 @@ public class ScannedDocumentEntity {
     private String userId;
     private boolean isMetadataSynced;
     private boolean isImageSynced;
+    private String type;
+    private List<String> localImagePaths;
+    private List<String> cloudImageUrls;
+    private String thumbnailPath;
     
     /**
      * Default constructor for Room
@@ -145,4 +154,96 @@ public class ScannedDocumentEntity {
     public void setImageSynced(boolean imageSynced) {
         isImageSynced = imageSynced;
     }
-} 
\ No newline at end of file
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public List<String> getLocalImagePaths() {
+        return localImagePaths;
+    }
+    
+    public void setLocalImagePaths(List<String> localImagePaths) {
+        this.localImagePaths = localImagePaths;
+    }
+    
+    public List<String> getCloudImageUrls() {
+        return cloudImageUrls;
+    }
+    
+    public void setCloudImageUrls(List<String> cloudImageUrls) {
+        this.cloudImageUrls = cloudImageUrls;
+    }
+    
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+    
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+    
+    /**
+     * Creates an entity holding every property of a document.
+     * 
+     * @param document The document to convert
+     * @return The entity
+     */
+    public static ScannedDocumentEntity fromDocument(ScannedDocument document) {
+        ScannedDocumentEntity entity = new ScannedDocumentEntity(
+                document.getId(),
+                document.getLocalImagePath(),
+                document.getCloudImageUrl(),
+                document.getRecognizedText(),
+                document.getSummaryText(),
+                document.getTimestamp(),
+                document.getLanguage(),
+                document.getFileName(),
+                document.getUserId(),
+                document.isMetadataSynced(),
+                document.isImageSynced());
+        entity.setType(document.getType());
+        entity.setLocalImagePaths(document.getLocalImagePaths());
+        entity.setCloudImageUrls(document.getCloudImageUrls());
+        entity.setThumbnailPath(document.getThumbnailPath());
+        return entity;
+    }
+    
+    /**
+     * Converts this entity back to a document.
+     * 
+     * @return The document
+     */
+    public ScannedDocument toDocument() {
+        ScannedDocument document = new ScannedDocument(fileName, userId);
+        document.setId(id);
+        // Set the lists first, the single path setters also add to them
+        if (localImagePaths != null) {
+            document.setLocalImagePaths(localImagePaths);
+        }
+        if (cloudImageUrls != null) {
+            document.setCloudImageUrls(cloudImageUrls);
+        }
+        if (localImagePath != null) {
+            document.setLocalImagePath(localImagePath);
+        }
+        if (cloudImageUrl != null) {
+            document.setCloudImageUrl(cloudImageUrl);
+        }
+        document.setRecognizedText(recognizedText);
+        document.setSummaryText(summaryText);
+        document.setTimestamp(timestamp);
+        document.setLanguage(language);
+        document.setMetadataSynced(isMetadataSynced);
+        document.setImageSynced(isImageSynced);
+        document.setThumbnailPath(thumbnailPath);
+        if (type != null) {
+            document.setType(type);
+        }
+        return document;
+    }
+}
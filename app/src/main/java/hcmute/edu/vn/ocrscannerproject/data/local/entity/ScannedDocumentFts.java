@@ -0,0 +1,44 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the searchable columns of {@link ScannedDocumentEntity}.
+ * The index stores no copy of the text; Room keeps it in sync with the
+ * scanned_documents table through triggers, and FTS rows share the rowid of the
+ * document they index.
+ */
+@Fts4(contentEntity = ScannedDocumentEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "scanned_documents_fts")
+public class ScannedDocumentFts {
+    
+    private String fileName;
+    private String recognizedText;
+    private String summaryText;
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+    
+    public String getRecognizedText() {
+        return recognizedText;
+    }
+    
+    public void setRecognizedText(String recognizedText) {
+        this.recognizedText = recognizedText;
+    }
+    
+    public String getSummaryText() {
+        return summaryText;
+    }
+    
+    public void setSummaryText(String summaryText) {
+        this.summaryText = summaryText;
+    }
+}
@@ -0,0 +1,96 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for one file a user has in Firebase Storage. The storage used by a user is
+ * the sum of the sizes of their rows. Keying the ledger by storage path makes recording
+ * an upload or a deletion idempotent: uploading a file again replaces its size instead of
+ * adding to the total. The size of the local image the file was transcoded from is kept
+ * alongside, so the savings of transcoding can be measured.
+ */
+@Entity(tableName = "storage_ledger",
+        indices = {@Index(value = {"userId"})})
+public class StorageLedgerEntity {
+    
+    @PrimaryKey
+    @NonNull
+    private String objectPath;
+    
+    @NonNull
+    private String userId;
+    private long sizeBytes;
+    @ColumnInfo(defaultValue = "0")
+    private long originalBytes;
+    private long updatedAt;
+    
+    /**
+     * Default constructor for Room
+     */
+    public StorageLedgerEntity() {
+    }
+    
+    /**
+     * Constructs a new StorageLedgerEntity.
+     * 
+     * @param objectPath The path of the file in Firebase Storage
+     * @param userId The ID of the user who owns the file
+     * @param sizeBytes The size of the file in bytes
+     * @param originalBytes The size of the local image the file was made from
+     * @param updatedAt The time the row was written, in milliseconds
+     */
+    public StorageLedgerEntity(@NonNull String objectPath, @NonNull String userId, long sizeBytes,
+                               long originalBytes, long updatedAt) {
+        this.objectPath = objectPath;
+        this.userId = userId;
+        this.sizeBytes = sizeBytes;
+        this.originalBytes = originalBytes;
+        this.updatedAt = updatedAt;
+    }
+    
+    @NonNull
+    public String getObjectPath() {
+        return objectPath;
+    }
+    
+    public void setObjectPath(@NonNull String objectPath) {
+        this.objectPath = objectPath;
+    }
+    
+    @NonNull
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(@NonNull String userId) {
+        this.userId = userId;
+    }
+    
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+    
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+    
+    public void setOriginalBytes(long originalBytes) {
+        this.originalBytes = originalBytes;
+    }
+    
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
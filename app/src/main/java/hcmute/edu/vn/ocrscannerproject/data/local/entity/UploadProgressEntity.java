@@ -0,0 +1,118 @@
+package hcmute.edu.vn.ocrscannerproject.data.local.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import java.util.Date;
+
+/**
+ * Room Entity recording how far the image upload of a document has got, so sync can
+ * report progress and tell which uploads failed. A row exists only while the upload is
+ * unfinished; it is deleted once the image has been uploaded. The upload session is kept
+ * with the modification time of the file it was started for, so an interrupted upload
+ * of an unchanged file resumes where it stopped.
+ */
+@Entity(tableName = "upload_progress")
+public class UploadProgressEntity {
+    /** The upload is queued. */
+    public static final String STATE_PENDING = "pending";
+    /** The upload is running. */
+    public static final String STATE_UPLOADING = "uploading";
+    /** The last attempt failed; the next sync tries again. */
+    public static final String STATE_FAILED = "failed";
+    
+    @PrimaryKey
+    @NonNull
+    private String documentId;
+    
+    private long fileSize;
+    private long bytesUploaded;
+    private String state;
+    private int attempts;
+    private String lastError;
+    private Date updatedAt;
+    private String sessionUri;
+    @ColumnInfo(defaultValue = "0")
+    private long sourceLastModified;
+    
+    /**
+     * Default constructor for Room
+     */
+    public UploadProgressEntity() {
+    }
+    
+    @NonNull
+    public String getDocumentId() {
+        return documentId;
+    }
+    
+    public void setDocumentId(@NonNull String documentId) {
+        this.documentId = documentId;
+    }
+    
+    public long getFileSize() {
+        return fileSize;
+    }
+    
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+    
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+    
+    public void setBytesUploaded(long bytesUploaded) {
+        this.bytesUploaded = bytesUploaded;
+    }
+    
+    public String getState() {
+        return state;
+    }
+    
+    public void setState(String state) {
+        this.state = state;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    public String getLastError() {
+        return lastError;
+    }
+    
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+    
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public String getSessionUri() {
+        return sessionUri;
+    }
+    
+    public void setSessionUri(String sessionUri) {
+        this.sessionUri = sessionUri;
+    }
+    
+    public long getSourceLastModified() {
+        return sourceLastModified;
+    }
+    
+    public void setSourceLastModified(long sourceLastModified) {
+        this.sourceLastModified = sourceLastModified;
+    }
+}
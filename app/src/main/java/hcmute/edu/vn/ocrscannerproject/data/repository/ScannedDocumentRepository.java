@@ -1,39 +1,47 @@
 package hcmute.edu.vn.ocrscannerproject.data.repository;
 
 import android.content.Context;
-import android.net.Uri;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
-import com.google.firebase.Timestamp;
 import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
-import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 
 import java.io.File;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.ArrayList;
+import java.util.Collections;
 
 import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
 import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.FtsSearch;
 import hcmute.edu.vn.ocrscannerproject.data.local.dao.ScannedDocumentDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.StorageLedgerDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentSearchResult;
 import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentEntity;
+import hcmute.edu.vn.ocrscannerproject.data.sync.DeltaSync;
+import hcmute.edu.vn.ocrscannerproject.data.sync.FirestoreDocumentStore;
+import hcmute.edu.vn.ocrscannerproject.data.sync.FirestoreMetadataWriter;
+import hcmute.edu.vn.ocrscannerproject.data.sync.ImageUploadStage;
+import hcmute.edu.vn.ocrscannerproject.data.sync.MetadataOutbox;
+import hcmute.edu.vn.ocrscannerproject.data.sync.ResumableUploader;
+import hcmute.edu.vn.ocrscannerproject.data.sync.SyncCursor;
+import hcmute.edu.vn.ocrscannerproject.data.sync.SyncCursorStore;
+import hcmute.edu.vn.ocrscannerproject.data.sync.UploadTranscoder;
+import hcmute.edu.vn.ocrscannerproject.services.BlobStore;
 import hcmute.edu.vn.ocrscannerproject.services.StorageQuotaManager;
 import hcmute.edu.vn.ocrscannerproject.core.entities.User;
 
@@ -42,14 +50,25 @@ import hcmute.edu.vn.ocrscannerproject.core.entities.User;
  */
 public class ScannedDocumentRepository {
     private static final String TAG = "ScannedDocRepository";
+    private static final String IMAGES_DIR = "scannedImages";
+    // Images are stored under the digest of their content, below the user's directory
+    private static final String BLOBS_DIR = "blobs";
     
     private final ScannedDocumentDao scannedDocumentDao;
+    private final StorageLedgerDao storageLedgerDao;
     private final FirebaseFirestore firestore;
     private final FirebaseStorage storage;
     private final FirebaseAuth auth;
     private final Context context;
     private final Executor executor;
     private final StorageQuotaManager quotaManager;
+    private final BlobStore blobStore;
+    private final ImageUploadStage uploadStage;
+    private final ResumableUploader resumableUploader;
+    private final UploadTranscoder uploadTranscoder;
+    private final DeltaSync deltaSync;
+    private final SyncCursorStore syncCursorStore;
+    private final MetadataOutbox metadataOutbox;
     
     /**
      * Constructor for the repository.
@@ -59,11 +78,31 @@ public class ScannedDocumentRepository {
     public ScannedDocumentRepository(Context context) {
         this.context = context.getApplicationContext();
         this.scannedDocumentDao = AppDatabase.getInstance(context).scannedDocumentDao();
+        this.storageLedgerDao = AppDatabase.getInstance(context).storageLedgerDao();
         this.firestore = FirebaseFirestore.getInstance();
         this.storage = FirebaseStorage.getInstance();
         this.auth = FirebaseAuth.getInstance();
         this.executor = Executors.newSingleThreadExecutor();
-        this.quotaManager = new StorageQuotaManager();
+        this.quotaManager = StorageQuotaManager.getInstance(context);
+        this.blobStore = BlobStore.getInstance(context);
+        this.uploadStage = new ImageUploadStage(context);
+        this.resumableUploader = new ResumableUploader(context);
+        this.uploadTranscoder = new UploadTranscoder(context);
+        this.deltaSync = new DeltaSync(new FirestoreDocumentStore(firestore), DeltaSync.DEFAULT_PAGE_SIZE);
+        this.syncCursorStore = new SyncCursorStore(context);
+        this.metadataOutbox = new MetadataOutbox(AppDatabase.getInstance(context).outboxDao(),
+                new MetadataOutbox.LocalDocuments() {
+                    @Override
+                    public ScannedDocument load(String documentId) {
+                        return getDocumentById(documentId);
+                    }
+                    
+                    @Override
+                    public void markSynced(List<String> documentIds) {
+                        scannedDocumentDao.markMetadataSynced(documentIds);
+                    }
+                },
+                new FirestoreMetadataWriter(firestore));
     }
     
     /**
@@ -84,6 +123,25 @@ public class ScannedDocumentRepository {
         return quotaManager;
     }
     
+    /**
+     * Gets the counters of the image uploads run since the repository was created.
+     * 
+     * @return The upload counters, including resumed and retried uploads
+     */
+    public ResumableUploader.Stats getUploadStats() {
+        return resumableUploader.getStats();
+    }
+    
+    /**
+     * Gets the counters of the page images transcoded for upload since the repository
+     * was created.
+     * 
+     * @return The transcoding counters, including the bytes saved
+     */
+    public UploadTranscoder.Stats getTranscodeStats() {
+        return uploadTranscoder.getStats();
+    }
+    
     /**
      * Gets all scanned documents for the current user.
      * 
@@ -98,17 +156,31 @@ public class ScannedDocumentRepository {
     }
     
     /**
-     * Searches for documents by file name.
+     * Searches the file name, recognized text and summary of the current user's documents.
+     * Every word of the query is matched as a prefix, and results are ranked by relevance.
      * 
      * @param query The search query
-     * @return A LiveData list of matching ScannedDocumentEntity objects
+     * @param limit The maximum number of results, or 0 for all
+     * @param callback The callback to be invoked with the ranked results
      */
-    public LiveData<List<ScannedDocumentEntity>> searchDocuments(String query) {
+    public void searchDocuments(String query, int limit, DocumentCallback<List<DocumentSearchResult>> callback) {
         FirebaseUser user = auth.getCurrentUser();
-        if (user != null) {
-            return scannedDocumentDao.searchByFileName(user.getUid(), query);
+        String userId = (user != null) ? user.getUid() : "anonymous";
+        String matchQuery = FtsSearch.toMatchQuery(query);
+        if (matchQuery == null) {
+            callback.onSuccess(new ArrayList<>());
+            return;
         }
-        return null;
+        
+        executor.execute(() -> {
+            try {
+                List<DocumentSearchResult> results = scannedDocumentDao.searchFullText(userId, matchQuery);
+                callback.onSuccess(FtsSearch.rank(results, limit));
+            } catch (Exception e) {
+                Log.e(TAG, "Error searching documents", e);
+                callback.onError(e);
+            }
+        });
     }
     
     /**
@@ -146,7 +218,8 @@ public class ScannedDocumentRepository {
         // Save to local database
         executor.execute(() -> {
             try {
-                scannedDocumentDao.insert(entity);
+                scannedDocumentDao.upsert(entity);
+                blobStore.retain(entity.getId(), entity.getLocalImagePaths());
                 
                 // If user is authenticated, save to Firebase
                 if (user != null) {
@@ -175,6 +248,7 @@ public class ScannedDocumentRepository {
         // Update locally
         ScannedDocumentEntity entity = convertDocumentToEntity(document);
         scannedDocumentDao.update(entity);
+        blobStore.retain(entity.getId(), entity.getLocalImagePaths());
         
         // Update in Firebase if user is signed in
         User currentUser = getAppUser();
@@ -198,9 +272,12 @@ public class ScannedDocumentRepository {
             try {
                 scannedDocumentDao.delete(entity);
                 
-                // Delete local image file if it exists
-                if (document.getLocalImagePath() != null && !document.getLocalImagePath().isEmpty()) {
-                    File localFile = new File(document.getLocalImagePath());
+                // Delete local image file if it exists; files of the blob store are only
+                // deleted once no other document uses them
+                blobStore.release(document.getId());
+                String localImagePath = document.getLocalImagePath();
+                if (localImagePath != null && !localImagePath.isEmpty() && blobStore.getDigest(localImagePath) == null) {
+                    File localFile = new File(localImagePath);
                     if (localFile.exists()) {
                         localFile.delete();
                     }
@@ -230,124 +307,199 @@ public class ScannedDocumentRepository {
      * This may take some time for large document collections.
      */
     public void syncDocuments() throws Exception {
+        syncDocuments(null);
+    }
+    
+    /**
+     * Synchronizes documents between local storage and Firebase, reporting the progress
+     * of image uploads. Images are uploaded several at a time.
+     * 
+     * @param uploadListener The listener to report upload progress to, may be null
+     */
+    public void syncDocuments(ImageUploadStage.ProgressListener uploadListener) throws Exception {
         User currentUser = getAppUser();
         if (currentUser == null) {
             throw new IllegalStateException("User is not signed in");
         }
 
-        // First, sync metadata from local to Firebase
+        // First, sync metadata from local to Firebase, in batches through the outbox
         List<ScannedDocument> localDocuments = getAllDocumentsLocal();
+        List<String> unsyncedIds = new ArrayList<>();
         for (ScannedDocument document : localDocuments) {
-            if (!document.isMetadataSynced()) {
-                saveToFirebase(document);
+            if (!document.isMetadataSynced() && currentUser.getUserId().equals(document.getUserId())) {
+                unsyncedIds.add(document.getId());
             }
         }
+        if (!unsyncedIds.isEmpty()) {
+            metadataOutbox.enqueueSet(unsyncedIds);
+        }
+        metadataOutbox.flush();
 
-        // Then, sync document images from local to Firebase if they're not yet synced
+        // Then, sync document images from local to Firebase if they're not yet synced.
+        // Images are stored under the digest of their local file, so documents with the same
+        // image share one upload and an image that is already stored is never sent again
+        String userId = currentUser.getUserId();
+        List<String> candidateIds = new ArrayList<>();
+        Map<String, File> imageFileById = new HashMap<>();
+        Map<String, String> digestById = new HashMap<>();
+        Map<String, List<String>> sharersByDigest = new HashMap<>();
+        Map<String, String> storedUrlByDigest = new HashMap<>();
+        List<String> changedIds = new ArrayList<>();
         for (ScannedDocument document : localDocuments) {
-            if (!document.isImageSynced() && document.getLocalImagePath() != null) {
-                File imageFile = new File(document.getLocalImagePath());
-                if (imageFile.exists()) {
-                    long fileSize = imageFile.length();
-                    
-                    // Check if the user has enough quota
-                    boolean hasQuota = true; // Assume true by default to avoid blocking sync
-                    try {
-                        StorageQuotaManager.StorageQuotaCallback<Boolean> callback = new StorageQuotaManager.StorageQuotaCallback<Boolean>() {
-                            @Override
-                            public void onSuccess(Boolean result) {
-                                // Do nothing here, this is just used to capture the value
-                            }
-                            
-                            @Override
-                            public void onError(Exception e) {
-                                // Do nothing here, errors will be handled by the caller
-                            }
-                        };
-                        
-                        Task<Boolean> task = Tasks.forResult(true);
-                        quotaManager.checkQuotaForUpload(currentUser.getUserId(), fileSize, callback);
-                        boolean result = Tasks.await(task);
-                        hasQuota = result;
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error checking quota", e);
+            if (document.isImageSynced() || document.getLocalImagePath() == null) {
+                continue;
+            }
+            File imageFile = new File(document.getLocalImagePath());
+            if (!imageFile.exists()) {
+                continue;
+            }
+            String digest = blobStore.digestOf(imageFile);
+            
+            // The same image was stored before, by this run or an earlier one
+            List<String> sharers = sharersByDigest.get(digest);
+            if (sharers != null) {
+                sharers.add(document.getId());
+                continue;
+            }
+            String storedUrl = storedUrlByDigest.containsKey(digest)
+                    ? storedUrlByDigest.get(digest) : findStoredImage(userId, digest, imageFile);
+            storedUrlByDigest.put(digest, storedUrl);
+            if (storedUrl != null) {
+                markImageSynced(Collections.singletonList(document.getId()), storedUrl);
+                changedIds.add(document.getId());
+                continue;
+            }
+            
+            candidateIds.add(document.getId());
+            imageFileById.put(document.getId(), imageFile);
+            digestById.put(document.getId(), digest);
+            sharers = new ArrayList<>();
+            sharers.add(document.getId());
+            sharersByDigest.put(digest, sharers);
+        }
+        Map<String, List<String>> sharersById = new HashMap<>();
+        for (List<String> sharers : sharersByDigest.values()) {
+            sharersById.put(sharers.get(0), sharers);
+        }
+        
+        // Reserve quota before transcoding, so pages the quota skips are never encoded. The
+        // local size is reserved, which the cloud copy never exceeds, and the rest is given
+        // back once the copy is made. A page whose local file does not fit is transcoded
+        // only while some quota is left, in case its copy does; the others wait for a
+        // later sync. Quota and progress then count the bytes actually sent
+        List<ImageUploadStage.UploadJob> uploadJobs = new ArrayList<>();
+        Map<String, UploadTranscoder.Result> transcodedById = new HashMap<>();
+        Map<String, String> objectPathById = new HashMap<>();
+        Map<String, StorageQuotaManager.Reservation> reservationsById = new HashMap<>();
+        int skipped = 0;
+        try {
+            for (String documentId : candidateIds) {
+                File imageFile = imageFileById.get(documentId);
+                StorageQuotaManager.Reservation reservation = quotaManager.reserve(userId, imageFile.length());
+                if (reservation == null && quotaManager.getAvailableBytes(userId) == 0) {
+                    skipped++;
+                    continue;
+                }
+                
+                UploadTranscoder.Result transcoded;
+                try {
+                    transcoded = uploadTranscoder.transcode(documentId, imageFile);
+                } catch (InterruptedException e) {
+                    if (reservation != null) {
+                        reservation.release();
                     }
-                    
-                    if (hasQuota) {
-                        // Upload the image to Firebase Storage
-                        uploadImage(document.getId(), imageFile, fileSize);
+                    throw e;
+                }
+                if (reservation != null) {
+                    reservation.shrinkTo(transcoded.getTranscodedBytes());
+                } else {
+                    reservation = quotaManager.reserve(userId, transcoded.getTranscodedBytes());
+                    if (reservation == null) {
+                        // A smaller copy stays in the cache, so a later sync does not encode it again
+                        skipped++;
+                        continue;
                     }
                 }
+                reservationsById.put(documentId, reservation);
+                transcodedById.put(documentId, transcoded);
+                uploadJobs.add(new ImageUploadStage.UploadJob(documentId, transcoded.getFile(), 0,
+                        transcoded.getContentType()));
+                objectPathById.put(documentId,
+                        imageRef(userId, digestById.get(documentId), transcoded.getExtension()).getPath());
             }
+        } catch (Exception e) {
+            for (StorageQuotaManager.Reservation reservation : reservationsById.values()) {
+                reservation.release();
+            }
+            throw e;
+        }
+        if (skipped > 0) {
+            Log.w(TAG, skipped + " images skipped, storage quota exceeded");
         }
-
-        // Finally, sync any documents from Firebase that aren't in local storage
-        // Query all documents for this user from Firestore
-        QuerySnapshot querySnapshot = Tasks.await(
-            firestore.collection("scannedDocuments")
-                .whereEqualTo("userId", currentUser.getUserId())
-                .get()
-        );
         
-        // For each document in Firestore
-        for (DocumentSnapshot docSnapshot : querySnapshot.getDocuments()) {
-            String remoteDocId = docSnapshot.getId();
-            
-            // Check if this document exists locally
-            boolean existsLocally = false;
-            for (ScannedDocument localDoc : localDocuments) {
-                if (localDoc.getId().equals(remoteDocId)) {
-                    existsLocally = true;
-                    break;
+        // Upload the images to Firebase Storage
+        if (!uploadJobs.isEmpty()) {
+            ImageUploadStage.Progress progress;
+            try {
+                progress = uploadStage.run(uploadJobs,
+                        (job, listener) -> uploadImage(job, transcodedById.get(job.getDocumentId()),
+                                objectPathById.get(job.getDocumentId()), sharersById.get(job.getDocumentId()),
+                                reservationsById.get(job.getDocumentId()), listener),
+                        uploadListener);
+            } finally {
+                // Give back the quota of failed uploads; committed reservations are unaffected
+                for (StorageQuotaManager.Reservation reservation : reservationsById.values()) {
+                    reservation.release();
                 }
             }
-            
-            // If not, download it
-            if (!existsLocally) {
-                try {
-                    Map<String, Object> data = docSnapshot.getData();
-                    if (data != null) {
-                        ScannedDocument doc = new ScannedDocument(
-                            (String) data.getOrDefault("fileName", "Unnamed Document"), 
-                            currentUser.getUserId()
-                        );
-                        
-                        doc.setId(remoteDocId);
-                        doc.setRecognizedText((String) data.getOrDefault("recognizedText", ""));
-                        doc.setSummaryText((String) data.getOrDefault("summaryText", ""));
-                        
-                        Timestamp timestamp = (Timestamp) data.get("timestamp");
-                        if (timestamp != null) {
-                            doc.setTimestamp(timestamp.toDate());
-                        }
-                        
-                        doc.setLanguage((String) data.getOrDefault("language", ""));
-                        doc.setCloudImageUrl((String) data.getOrDefault("cloudImageUrl", ""));
-                        doc.setMetadataSynced(true);
-                        
-                        // If there's a cloud image, download it
-                        if (doc.getCloudImageUrl() != null && !doc.getCloudImageUrl().isEmpty()) {
-                            File localFile = File.createTempFile("download_" + remoteDocId, ".jpg");
-                            StorageReference imageRef = storage.getReferenceFromUrl(doc.getCloudImageUrl());
-                            
-                            Tasks.await(imageRef.getFile(localFile));
-                            doc.setLocalImagePath(localFile.getAbsolutePath());
-                            doc.setImageSynced(true);
-                        }
-                        
-                        // Save the document locally
-                        saveLocally(doc);
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error downloading document: " + remoteDocId, e);
-                    // Continue with the next document
-                }
+            Log.d(TAG, "Uploaded " + progress.getCompletedCount() + " of " + progress.getTotalCount()
+                    + " images at " + Math.round(progress.getBytesPerSecond() / 1024) + " KB/s");
+            for (ImageUploadStage.UploadJob job : uploadJobs) {
+                changedIds.addAll(sharersById.get(job.getDocumentId()));
+            }
+        }
+        if (!changedIds.isEmpty()) {
+            // Write the cloud URLs of all uploaded images in as few batches as possible
+            metadataOutbox.flush();
+        }
+
+        // Finally, pull the documents that changed on the server since the last sync
+        Map<String, ScannedDocument> localIndex = new HashMap<>();
+        for (ScannedDocument document : localDocuments) {
+            localIndex.put(document.getId(), document);
+        }
+        // Uploads updated their documents in the database, so reread those
+        for (String documentId : changedIds) {
+            ScannedDocument uploaded = getDocumentById(documentId);
+            if (uploaded != null) {
+                localIndex.put(uploaded.getId(), uploaded);
             }
         }
+        int pulled = deltaSync.pull(userId, syncCursorStore.get(userId), localIndex, new DeltaSync.Target() {
+            @Override
+            public void save(ScannedDocument document, boolean isNew) {
+                if (isNew) {
+                    // Only metadata is pulled; the image is downloaded when first viewed
+                    document.setImageSynced(document.getCloudImageUrl() != null
+                            && !document.getCloudImageUrl().isEmpty());
+                }
+                saveLocally(document);
+            }
+            
+            @Override
+            public void saveCursor(SyncCursor cursor) {
+                syncCursorStore.put(userId, cursor);
+            }
+        });
+        Log.d(TAG, "Applied " + pulled + " remote changes");
+
+        // Files released since startup are kept for a grace period before they can be
+        // deleted, so clear out those and any left by interrupted imports in the background
+        executor.execute(blobStore::sweep);
     }
     
     /**
-     * Saves a document to Firebase Firestore.
+     * Saves a document to Firebase Firestore through the metadata outbox.
      * 
      * @param document The document to save
      */
@@ -357,42 +509,13 @@ public class ScannedDocumentRepository {
             throw new IllegalStateException("User not authorized to save this document");
         }
         
-        // Create a map of fields to save
-        Map<String, Object> docData = new HashMap<>();
-        docData.put("fileName", document.getFileName());
-        docData.put("recognizedText", document.getRecognizedText());
-        docData.put("summaryText", document.getSummaryText());
-        docData.put("timestamp", document.getTimestamp());
-        docData.put("language", document.getLanguage());
-        docData.put("userId", document.getUserId());
-        docData.put("cloudImageUrl", document.getCloudImageUrl());
-        
-        // Save the document to Firestore
-        DocumentReference docRef;
-        if (document.getId() != null && !document.getId().isEmpty()) {
-            // Use the existing ID
-            docRef = firestore.collection("scannedDocuments").document(document.getId());
-            Tasks.await(docRef.set(docData));
-        } else {
-            // Let Firestore generate a new ID
-            docRef = firestore.collection("scannedDocuments").document();
-            document.setId(docRef.getId());
-            docData.put("id", document.getId());
-            Tasks.await(docRef.set(docData));
-            
-            // Update the local document with the new ID
-            ScannedDocumentEntity entity = convertDocumentToEntity(document);
-            scannedDocumentDao.update(entity);
-        }
-        
-        // Mark the document's metadata as synced
+        metadataOutbox.enqueueSet(document.getId());
+        metadataOutbox.flush();
         document.setMetadataSynced(true);
-        ScannedDocumentEntity entity = convertDocumentToEntity(document);
-        scannedDocumentDao.update(entity);
     }
     
     /**
-     * Updates a document in Firebase Firestore.
+     * Updates a document in Firebase Firestore through the metadata outbox.
      * 
      * @param document The document to update
      */
@@ -402,24 +525,9 @@ public class ScannedDocumentRepository {
             throw new IllegalStateException("User not authorized to update this document");
         }
         
-        // Create a map of fields to update
-        Map<String, Object> docData = new HashMap<>();
-        docData.put("fileName", document.getFileName());
-        docData.put("recognizedText", document.getRecognizedText());
-        docData.put("summaryText", document.getSummaryText());
-        docData.put("timestamp", document.getTimestamp());
-        docData.put("language", document.getLanguage());
-        docData.put("userId", document.getUserId());
-        docData.put("cloudImageUrl", document.getCloudImageUrl());
-        
-        // Update the document in Firestore
-        DocumentReference docRef = firestore.collection("scannedDocuments").document(document.getId());
-        Tasks.await(docRef.update(docData));
-        
-        // Mark the document's metadata as synced
+        metadataOutbox.enqueueSet(document.getId());
+        metadataOutbox.flush();
         document.setMetadataSynced(true);
-        ScannedDocumentEntity entity = convertDocumentToEntity(document);
-        scannedDocumentDao.update(entity);
     }
     
     /**
@@ -433,33 +541,20 @@ public class ScannedDocumentRepository {
             throw new IllegalStateException("User not authorized to delete this document");
         }
         
-        // If there's a cloud image URL, get the file size for quota update
-        long fileSize = 0;
-        if (document.getCloudImageUrl() != null && !document.getCloudImageUrl().isEmpty()) {
-            StorageReference storageRef = storage.getReferenceFromUrl(document.getCloudImageUrl());
-            try {
-                StorageMetadata metadata = Tasks.await(storageRef.getMetadata());
-                fileSize = metadata.getSizeBytes();
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting file size", e);
-                // Continue with deletion even if we can't get the file size
-            }
-        }
-        
-        // Delete from Firestore
-        DocumentReference docRef = firestore.collection("scannedDocuments").document(document.getId());
-        Tasks.await(docRef.delete());
+        // Delete from Firestore, replacing any write still queued for the document
+        metadataOutbox.enqueueDelete(document.getId());
+        metadataOutbox.flush();
         
-        // If there's a cloud image URL, delete the image from Storage
-        if (document.getCloudImageUrl() != null && !document.getCloudImageUrl().isEmpty()) {
+        // If there's a cloud image URL, delete the image from Storage, unless other
+        // documents with the same image still use it
+        if (document.getCloudImageUrl() != null && !document.getCloudImageUrl().isEmpty()
+                && scannedDocumentDao.countByCloudImageUrl(document.getCloudImageUrl()) == 0) {
             StorageReference storageRef = storage.getReferenceFromUrl(document.getCloudImageUrl());
             try {
                 Tasks.await(storageRef.delete());
                 
-                // Update quota usage
-                if (fileSize > 0) {
-                    quotaManager.updateUsageAfterDelete(currentUser.getUserId(), fileSize);
-                }
+                // Update quota usage; the ledger knows the size of the image
+                quotaManager.updateUsageAfterDelete(currentUser.getUserId(), storageRef.getPath());
             } catch (Exception e) {
                 Log.e(TAG, "Error deleting image from Storage", e);
                 // Continue even if image deletion fails
@@ -468,50 +563,102 @@ public class ScannedDocumentRepository {
     }
     
     /**
-     * Uploads an image to Firebase Storage.
+     * Uploads an image to Firebase Storage. Called by the upload stage on a worker thread.
      * 
-     * @param documentId The ID of the document
-     * @param imageFile The file to upload
-     * @param fileSize The size of the file in bytes
+     * @param job The upload, with the document ID and image file
+     * @param transcoded The transcoded page the job uploads
+     * @param objectPath The path to store the image at, named by its digest
+     * @param documentIds The documents with this image, including the one of the job
+     * @param reservation The quota reserved for the image, committed once it is uploaded
+     * @param listener The listener to report the bytes sent to
      * @return The URL of the uploaded image
      */
-    private String uploadImage(String documentId, File imageFile, long fileSize) throws Exception {
-        User currentUser = getAppUser();
-        if (currentUser == null) {
-            throw new IllegalStateException("User not signed in");
-        }
+    private String uploadImage(ImageUploadStage.UploadJob job, UploadTranscoder.Result transcoded,
+                               String objectPath, List<String> documentIds,
+                               StorageQuotaManager.Reservation reservation,
+                               ImageUploadStage.BytesListener listener) throws Exception {
+        long fileSize = job.getSize();
+        StorageReference imageRef = storage.getReference(objectPath);
         
-        // Create storage reference
-        StorageReference imageRef = storage.getReference()
-                .child("scannedImages")
-                .child(currentUser.getUserId())
-                .child(documentId + ".jpg");
+        // Upload file, resuming an interrupted upload of it and retrying transient failures
+        resumableUploader.upload(job, imageRef, listener);
         
-        // Upload file
-        UploadTask uploadTask = imageRef.putFile(Uri.fromFile(imageFile));
-        
-        // Wait for upload to complete
-        Tasks.await(uploadTask);
+        // The file is stored now, so turn the reserved quota into recorded usage
+        reservation.commit(imageRef.getPath(), fileSize, transcoded.getOriginalBytes());
+        uploadTranscoder.discard(transcoded);
         
         // Get download URL
         String imageUrl = Tasks.await(imageRef.getDownloadUrl()).toString();
         
-        // Update document with cloud URL and sync status
-        ScannedDocument document = getDocumentById(documentId);
-        if (document != null) {
-            document.setCloudImageUrl(imageUrl);
-            document.setImageSynced(true);
+        // Update the documents with cloud URL and sync status; the outbox is flushed once
+        // all uploads have finished
+        markImageSynced(documentIds, imageUrl);
+        return imageUrl;
+    }
+    
+    /**
+     * Gets the storage reference an image is stored at.
+     * 
+     * @param userId The ID of the user who owns the image
+     * @param digest The digest of the local image file
+     * @param extension The extension of the cloud copy
+     * @return The storage reference
+     */
+    private StorageReference imageRef(String userId, String digest, String extension) {
+        return storage.getReference()
+                .child(IMAGES_DIR)
+                .child(userId)
+                .child(BLOBS_DIR)
+                .child(digest + "." + extension);
+    }
+    
+    /**
+     * Looks up an image the user has already stored, in the storage ledger.
+     * 
+     * @param userId The ID of the user
+     * @param digest The digest of the local image file
+     * @param imageFile The local image file, which may have been stored as it is
+     * @return The download URL of the stored image, or null if it has to be uploaded
+     */
+    private String findStoredImage(String userId, String digest, File imageFile) {
+        Set<String> extensions = new LinkedHashSet<>();
+        for (UploadTranscoder.Format format : UploadTranscoder.Format.values()) {
+            if (format.getExtension() != null) {
+                extensions.add(format.getExtension());
+            }
+        }
+        extensions.add(UploadTranscoder.extensionOf(imageFile));
+        for (String extension : extensions) {
+            StorageReference imageRef = imageRef(userId, digest, extension);
+            if (storageLedgerDao.getByPath(imageRef.getPath()) == null) {
+                continue;
+            }
             try {
-                updateDocument(document);
+                return Tasks.await(imageRef.getDownloadUrl()).toString();
             } catch (Exception e) {
-                Log.e(TAG, "Error updating document after upload", e);
+                // Deleted since it was recorded; upload it again
+                Log.w(TAG, "Recorded image " + imageRef.getPath() + " is not available", e);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Records the cloud URL of the image of documents and queues their metadata.
+     * 
+     * @param documentIds The IDs of the documents
+     * @param imageUrl The URL of the image in Firebase Storage
+     */
+    private void markImageSynced(List<String> documentIds, String imageUrl) {
+        for (String documentId : documentIds) {
+            ScannedDocument document = getDocumentById(documentId);
+            if (document != null) {
+                document.setCloudImageUrl(imageUrl);
+                document.setImageSynced(true);
+                scannedDocumentDao.update(convertDocumentToEntity(document));
+                metadataOutbox.enqueueSet(documentId);
             }
         }
-        
-        // Update user's storage quota
-        quotaManager.updateUsageAfterUpload(currentUser.getUserId(), fileSize);
-        
-        return imageUrl;
     }
     
     /**
@@ -521,19 +668,7 @@ public class ScannedDocumentRepository {
      * @return The converted entity
      */
     private ScannedDocumentEntity convertDocumentToEntity(ScannedDocument document) {
-        return new ScannedDocumentEntity(
-                document.getId(),
-                document.getLocalImagePath(),
-                document.getCloudImageUrl(),
-                document.getRecognizedText(),
-                document.getSummaryText(),
-                document.getTimestamp(),
-                document.getLanguage(),
-                document.getFileName(),
-                document.getUserId(),
-                document.isMetadataSynced(),
-                document.isImageSynced()
-        );
+        return ScannedDocumentEntity.fromDocument(document);
     }
     
     /**
@@ -543,17 +678,7 @@ public class ScannedDocumentRepository {
      * @return The converted document
      */
     private ScannedDocument convertEntityToDocument(ScannedDocumentEntity entity) {
-        ScannedDocument document = new ScannedDocument(entity.getFileName(), entity.getUserId());
-        document.setId(entity.getId());
-        document.setLocalImagePath(entity.getLocalImagePath());
-        document.setCloudImageUrl(entity.getCloudImageUrl());
-        document.setRecognizedText(entity.getRecognizedText());
-        document.setSummaryText(entity.getSummaryText());
-        document.setTimestamp(entity.getTimestamp());
-        document.setLanguage(entity.getLanguage());
-        document.setMetadataSynced(entity.isMetadataSynced());
-        document.setImageSynced(entity.isImageSynced());
-        return document;
+        return entity.toDocument();
     }
     
     /**
@@ -616,7 +741,7 @@ public class ScannedDocumentRepository {
      */
     private void saveLocally(ScannedDocument document) {
         ScannedDocumentEntity entity = convertDocumentToEntity(document);
-        scannedDocumentDao.insert(entity);
+        scannedDocumentDao.upsert(entity);
     }
 
     /**
@@ -0,0 +1,90 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+/**
+ * A concurrency limit that follows observed throughput. Throughput is measured over
+ * rounds of as many completions as the current limit. The limit grows by one while
+ * throughput keeps rising, shrinks by one when it falls, and halves when a transfer
+ * fails, since failures usually mean the network is overloaded.
+ */
+public class AdaptiveConcurrencyLimit {
+    // Changes in throughput smaller than this fraction count as noise
+    private static final double TOLERANCE = 0.1;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private int limit;
+
+    private long roundStartNanos;
+    private long roundBytes;
+    private int roundCompletions;
+    private double lastThroughput;
+
+    /**
+     * Creates a limit.
+     *
+     * @param initialLimit The limit to start at
+     * @param minLimit The smallest the limit may become, at least 1
+     * @param maxLimit The largest the limit may become
+     * @param nowNanos The current time from {@link System#nanoTime()}
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long nowNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.roundStartNanos = nowNanos;
+    }
+
+    /**
+     * Gets the number of transfers that may run at once.
+     *
+     * @return The current limit
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Records a finished transfer.
+     *
+     * @param bytes The number of bytes transferred
+     * @param nowNanos The current time from {@link System#nanoTime()}
+     */
+    public synchronized void onSuccess(long bytes, long nowNanos) {
+        roundBytes += bytes;
+        roundCompletions++;
+        if (roundCompletions < limit) {
+            return;
+        }
+
+        long elapsed = nowNanos - roundStartNanos;
+        if (elapsed > 0) {
+            double throughput = roundBytes * NANOS_PER_SECOND / elapsed;
+            if (lastThroughput == 0 || throughput > lastThroughput * (1 + TOLERANCE)) {
+                limit = Math.min(maxLimit, limit + 1);
+            } else if (throughput < lastThroughput * (1 - TOLERANCE)) {
+                limit = Math.max(minLimit, limit - 1);
+            }
+            lastThroughput = throughput;
+        }
+        startRound(nowNanos);
+    }
+
+    /**
+     * Records a failed transfer.
+     *
+     * @param nowNanos The current time from {@link System#nanoTime()}
+     */
+    public synchronized void onFailure(long nowNanos) {
+        limit = Math.max(minLimit, limit / 2);
+        // Throughput measured at the old limit says nothing about the new one
+        lastThroughput = 0;
+        startRound(nowNanos);
+    }
+
+    private void startRound(long nowNanos) {
+        roundStartNanos = nowNanos;
+        roundBytes = 0;
+        roundCompletions = 0;
+    }
+}
@@ -0,0 +1,316 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.ScannedDocumentDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.ScannedDocumentEntity;
+
+/**
+ * Downloads the cloud images of documents that were synced from another device, when
+ * they are first viewed rather than during sync. Downloaded pages are kept in a disk
+ * cache bounded in size, and the least recently used pages are evicted first. Documents
+ * the user is likely to open next can be prefetched at low priority, on their own thread
+ * so they never hold up an image that is being waited for.
+ */
+public class CloudImageCache {
+    private static final String TAG = "CloudImageCache";
+    private static final String CACHE_DIR_NAME = "cloud_images";
+    private static final String FILE_SUFFIX = ".img";
+    private static final String PART_SUFFIX = ".part";
+
+    /** Documents prefetched per request. */
+    public static final int PREFETCH_COUNT = 3;
+
+    private static final long MAX_CACHE_BYTES = 128L * 1024 * 1024;
+    private static final int DOWNLOAD_THREADS = 2;
+
+    private static volatile CloudImageCache instance;
+
+    private final FirebaseStorage storage;
+    private final ScannedDocumentDao scannedDocumentDao;
+    private final File cacheDir;
+    private final long maxBytes;
+    private final ExecutorService downloadExecutor;
+    private final ExecutorService prefetchExecutor;
+    private final Handler mainHandler;
+
+    // Guarded by this: cached files by document ID, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<ImageCallback>> pending = new HashMap<>();
+    private long totalBytes;
+    private boolean indexed;
+
+    /**
+     * Callback for an image that may have to be downloaded first.
+     */
+    public interface ImageCallback {
+        /**
+         * Called on the main thread once the image is on disk.
+         *
+         * @param imageFile The local image file
+         */
+        void onSuccess(File imageFile);
+
+        /**
+         * Called on the main thread when the image cannot be loaded.
+         *
+         * @param e The exception that caused the failure
+         */
+        void onError(Exception e);
+    }
+
+    private CloudImageCache(Context context) {
+        this.storage = FirebaseStorage.getInstance();
+        this.scannedDocumentDao = AppDatabase.getInstance(context).scannedDocumentDao();
+        this.cacheDir = new File(context.getCacheDir(), CACHE_DIR_NAME);
+        this.maxBytes = MAX_CACHE_BYTES;
+        this.downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
+        this.prefetchExecutor = Executors.newSingleThreadExecutor();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Gets the singleton instance of the cache.
+     *
+     * @param context The application context
+     * @return The cache instance
+     */
+    public static CloudImageCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CloudImageCache.class) {
+                if (instance == null) {
+                    instance = new CloudImageCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the image of a document: its local file if it has one, else the cached cloud
+     * image, downloading it first if needed.
+     *
+     * @param document The document
+     * @param callback The callback to receive the image file
+     */
+    public void getImage(ScannedDocument document, ImageCallback callback) {
+        String localPath = document.getLocalImagePath();
+        String documentId = document.getId();
+        String cloudImageUrl = document.getCloudImageUrl();
+        downloadExecutor.execute(() -> {
+            if (localPath != null && new File(localPath).exists()) {
+                mainHandler.post(() -> callback.onSuccess(new File(localPath)));
+                return;
+            }
+            if (cloudImageUrl == null || cloudImageUrl.isEmpty()) {
+                mainHandler.post(() -> callback.onError(new IOException("Document has no image")));
+                return;
+            }
+            try {
+                File imageFile = fetch(documentId, cloudImageUrl, callback);
+                if (imageFile != null) {
+                    mainHandler.post(() -> callback.onSuccess(imageFile));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error downloading image of " + documentId, e);
+                mainHandler.post(() -> callback.onError(e));
+            }
+        });
+    }
+
+    /**
+     * Downloads the images of documents in the background so they open at once. Only the
+     * first {@link #PREFETCH_COUNT} documents without a local or cached image are fetched.
+     *
+     * @param documentIds The documents, most likely to be opened first
+     */
+    public void prefetch(List<String> documentIds) {
+        List<String> ids = new ArrayList<>(documentIds);
+        prefetchExecutor.execute(() -> {
+            int fetched = 0;
+            for (String documentId : ids) {
+                if (fetched >= PREFETCH_COUNT) {
+                    return;
+                }
+                ScannedDocumentEntity entity = scannedDocumentDao.getDocumentById(documentId);
+                if (entity == null || entity.getCloudImageUrl() == null || entity.getCloudImageUrl().isEmpty()
+                        || (entity.getLocalImagePath() != null && new File(entity.getLocalImagePath()).exists())
+                        || isCached(documentId)) {
+                    continue;
+                }
+                fetched++;
+                try {
+                    fetch(documentId, entity.getCloudImageUrl(), null);
+                } catch (Exception e) {
+                    Log.w(TAG, "Error prefetching image of " + documentId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the cached image of a deleted document.
+     *
+     * @param documentId The ID of the document
+     */
+    public void evict(String documentId) {
+        downloadExecutor.execute(() -> {
+            synchronized (this) {
+                ensureIndexed();
+                Long size = entries.remove(documentId);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            cacheFile(documentId).delete();
+        });
+    }
+
+    /**
+     * Returns the cached image of a document, downloading it if it is not cached. If the
+     * image is already being downloaded and a callback is given, the callback is queued
+     * for that download and null is returned.
+     */
+    private File fetch(String documentId, String cloudImageUrl, ImageCallback callback) throws Exception {
+        synchronized (this) {
+            ensureIndexed();
+            if (entries.get(documentId) != null) {
+                File cached = cacheFile(documentId);
+                if (cached.exists()) {
+                    // Keeps the order of use for the index built after a restart
+                    cached.setLastModified(System.currentTimeMillis());
+                    return cached;
+                }
+                totalBytes -= entries.remove(documentId);
+            }
+            List<ImageCallback> waiting = pending.get(documentId);
+            if (waiting != null) {
+                // Already being downloaded; a prefetch has nothing left to do
+                if (callback != null) {
+                    waiting.add(callback);
+                }
+                return null;
+            }
+            pending.put(documentId, new ArrayList<>());
+        }
+
+        File imageFile;
+        try {
+            imageFile = download(documentId, cloudImageUrl);
+        } catch (Exception e) {
+            for (ImageCallback waiting : finishPending(documentId)) {
+                mainHandler.post(() -> waiting.onError(e));
+            }
+            throw e;
+        }
+        for (ImageCallback waiting : finishPending(documentId)) {
+            mainHandler.post(() -> waiting.onSuccess(imageFile));
+        }
+        return imageFile;
+    }
+
+    private File download(String documentId, String cloudImageUrl) throws Exception {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("Could not create " + cacheDir);
+        }
+        File partFile = new File(cacheDir, documentId + PART_SUFFIX);
+        File imageFile = cacheFile(documentId);
+        StorageReference imageRef = storage.getReferenceFromUrl(cloudImageUrl);
+        try {
+            Tasks.await(imageRef.getFile(partFile));
+            if (!partFile.renameTo(imageFile)) {
+                throw new IOException("Could not move " + partFile + " into the cache");
+            }
+        } finally {
+            partFile.delete();
+        }
+
+        synchronized (this) {
+            long size = imageFile.length();
+            entries.put(documentId, size);
+            totalBytes += size;
+            trimToSize(documentId);
+        }
+        return imageFile;
+    }
+
+    private synchronized boolean isCached(String documentId) {
+        ensureIndexed();
+        return entries.containsKey(documentId);
+    }
+
+    private synchronized List<ImageCallback> finishPending(String documentId) {
+        List<ImageCallback> waiting = pending.remove(documentId);
+        return waiting != null ? waiting : new ArrayList<>();
+    }
+
+    /**
+     * Evicts the least recently used images until the cache fits its size limit. The
+     * image just added is kept even if it is larger than the limit by itself.
+     */
+    private void trimToSize(String keepId) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keepId)) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            cacheFile(eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * Builds the index from the files on disk the first time it is needed, in order of
+     * their modification time. Must be called while holding the lock.
+     */
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(PART_SUFFIX)) {
+                // Left behind by a download the process did not live to finish
+                file.delete();
+            } else if (name.endsWith(FILE_SUFFIX)) {
+                String documentId = name.substring(0, name.length() - FILE_SUFFIX.length());
+                entries.put(documentId, file.length());
+                totalBytes += file.length();
+            }
+        }
+        trimToSize(null);
+    }
+
+    private File cacheFile(String documentId) {
+        return new File(cacheDir, documentId + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,146 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.List;
+import java.util.Map;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * Pulls the documents that changed on the server since the last sync and applies them
+ * locally. Each change is matched to its local document through a hash index, so a sync
+ * costs time in proportion to the number of changes rather than the library size.
+ * <p>
+ * Remote changes replace the metadata of local documents that have no unsynced edits.
+ * Local documents with unsynced edits are kept as they are, since pushing them will
+ * overwrite the server copy.
+ */
+public class DeltaSync {
+    /** Changes read per request unless another page size is configured. */
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final RemoteDocumentStore remoteStore;
+    private final int pageSize;
+
+    /**
+     * Where pulled changes are written.
+     */
+    public interface Target {
+        /**
+         * Saves a new or updated document locally.
+         *
+         * @param document The document to save
+         * @param isNew True if the document did not exist locally
+         * @throws Exception If the document cannot be saved
+         */
+        void save(ScannedDocument document, boolean isNew) throws Exception;
+
+        /**
+         * Saves the position to resume the next sync from. Called after every page, once
+         * all its changes have been saved.
+         *
+         * @param cursor The last applied change
+         */
+        void saveCursor(SyncCursor cursor);
+    }
+
+    /**
+     * Constructs a new DeltaSync.
+     *
+     * @param remoteStore The server to read changes from
+     * @param pageSize The number of changes to read per request
+     */
+    public DeltaSync(RemoteDocumentStore remoteStore, int pageSize) {
+        this.remoteStore = remoteStore;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Pulls and applies every change after a cursor. If saving a change fails, the cursor
+     * saved last points at the change before it, so the next sync starts from there.
+     *
+     * @param userId The ID of the user to sync
+     * @param cursor The cursor saved by the previous sync, or null to read everything
+     * @param localIndex The local documents of the user by ID; updated as changes are applied
+     * @param target Where to write the changes
+     * @return The number of changes applied locally
+     * @throws Exception If the server cannot be read or a change cannot be saved
+     */
+    public int pull(String userId, SyncCursor cursor, Map<String, ScannedDocument> localIndex,
+                    Target target) throws Exception {
+        if (cursor == null) {
+            return pullAll(userId, localIndex, target);
+        }
+
+        int applied = 0;
+        while (true) {
+            List<RemoteChange> page = remoteStore.fetchChangesAfter(userId, cursor, pageSize);
+            for (RemoteChange change : page) {
+                if (apply(change, localIndex, target)) {
+                    applied++;
+                }
+                cursor = new SyncCursor(change.getUpdatedAt(), change.getDocument().getId());
+            }
+            if (!page.isEmpty()) {
+                target.saveCursor(cursor);
+            }
+            if (page.size() < pageSize) {
+                return applied;
+            }
+        }
+    }
+
+    /**
+     * First sync of a user: reads every document, then places the cursor after the
+     * newest change so later syncs only read what changed.
+     */
+    private int pullAll(String userId, Map<String, ScannedDocument> localIndex, Target target) throws Exception {
+        SyncCursor cursor = SyncCursor.beginning();
+        int applied = 0;
+        for (RemoteChange change : remoteStore.fetchAll(userId)) {
+            if (apply(change, localIndex, target)) {
+                applied++;
+            }
+            UpdateTime updatedAt = change.getUpdatedAt();
+            String documentId = change.getDocument().getId();
+            if (updatedAt != null && cursor.isBefore(updatedAt, documentId)) {
+                cursor = new SyncCursor(updatedAt, documentId);
+            }
+        }
+        target.saveCursor(cursor);
+        return applied;
+    }
+
+    private boolean apply(RemoteChange change, Map<String, ScannedDocument> localIndex,
+                          Target target) throws Exception {
+        ScannedDocument remote = change.getDocument();
+        ScannedDocument local = localIndex.get(remote.getId());
+        if (local == null) {
+            remote.setMetadataSynced(true);
+            target.save(remote, true);
+            localIndex.put(remote.getId(), remote);
+            return true;
+        }
+        if (!local.isMetadataSynced()) {
+            return false;
+        }
+        mergeMetadata(local, remote);
+        target.save(local, false);
+        return true;
+    }
+
+    /**
+     * Copies the metadata stored on the server onto a local document, keeping its local
+     * image paths.
+     */
+    private static void mergeMetadata(ScannedDocument local, ScannedDocument remote) {
+        local.setFileName(remote.getFileName());
+        local.setRecognizedText(remote.getRecognizedText());
+        local.setSummaryText(remote.getSummaryText());
+        local.setTimestamp(remote.getTimestamp());
+        local.setLanguage(remote.getLanguage());
+        if (remote.getCloudImageUrl() != null && !remote.getCloudImageUrl().isEmpty()) {
+            local.setCloudImageUrl(remote.getCloudImageUrl());
+        }
+        local.setMetadataSynced(true);
+    }
+}
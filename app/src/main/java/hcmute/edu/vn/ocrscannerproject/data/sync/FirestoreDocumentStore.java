@@ -0,0 +1,88 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * Reads documents from the scannedDocuments collection in Firestore. Change queries
+ * filter on the updatedAt server timestamp that every write sets, which needs a
+ * composite index on (userId, updatedAt, __name__). Cursors keep the full precision of
+ * the timestamps, so a query resumes exactly after the last document read.
+ */
+public class FirestoreDocumentStore implements RemoteDocumentStore {
+    /** The collection documents are stored in. */
+    public static final String COLLECTION = "scannedDocuments";
+    /** The field holding the server time of a document's last change. */
+    public static final String FIELD_UPDATED_AT = "updatedAt";
+
+    private final FirebaseFirestore firestore;
+
+    /**
+     * Constructs a new FirestoreDocumentStore.
+     *
+     * @param firestore The Firestore instance
+     */
+    public FirestoreDocumentStore(FirebaseFirestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public List<RemoteChange> fetchAll(String userId) throws Exception {
+        QuerySnapshot snapshot = Tasks.await(firestore.collection(COLLECTION)
+                .whereEqualTo("userId", userId)
+                .get());
+        return toChanges(snapshot, userId);
+    }
+
+    @Override
+    public List<RemoteChange> fetchChangesAfter(String userId, SyncCursor cursor, int limit) throws Exception {
+        QuerySnapshot snapshot = Tasks.await(firestore.collection(COLLECTION)
+                .whereEqualTo("userId", userId)
+                .orderBy(FIELD_UPDATED_AT)
+                .orderBy(FieldPath.documentId())
+                .startAfter(new Timestamp(cursor.getUpdatedAt().getSeconds(), cursor.getUpdatedAt().getNanos()),
+                        cursor.getDocumentId())
+                .limit(limit)
+                .get());
+        return toChanges(snapshot, userId);
+    }
+
+    private static List<RemoteChange> toChanges(QuerySnapshot snapshot, String userId) {
+        List<RemoteChange> changes = new ArrayList<>();
+        for (DocumentSnapshot docSnapshot : snapshot.getDocuments()) {
+            Map<String, Object> data = docSnapshot.getData();
+            if (data == null) {
+                continue;
+            }
+            ScannedDocument document = new ScannedDocument(
+                    (String) data.getOrDefault("fileName", "Unnamed Document"), userId);
+            document.setId(docSnapshot.getId());
+            document.setRecognizedText((String) data.getOrDefault("recognizedText", ""));
+            document.setSummaryText((String) data.getOrDefault("summaryText", ""));
+
+            Timestamp timestamp = (Timestamp) data.get("timestamp");
+            if (timestamp != null) {
+                document.setTimestamp(timestamp.toDate());
+            }
+
+            document.setLanguage((String) data.getOrDefault("language", ""));
+            document.setCloudImageUrl((String) data.getOrDefault("cloudImageUrl", ""));
+
+            Timestamp updatedAt = (Timestamp) data.get(FIELD_UPDATED_AT);
+            UpdateTime updateTime = updatedAt != null
+                    ? new UpdateTime(updatedAt.getSeconds(), updatedAt.getNanoseconds()) : null;
+            changes.add(new RemoteChange(document, updateTime));
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,63 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * Writes document metadata to the scannedDocuments collection with one WriteBatch per
+ * call.
+ */
+public class FirestoreMetadataWriter implements MetadataWriter {
+    private final FirebaseFirestore firestore;
+
+    /**
+     * Constructs a new FirestoreMetadataWriter.
+     *
+     * @param firestore The Firestore instance
+     */
+    public FirestoreMetadataWriter(FirebaseFirestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public void commit(List<Write> writes) throws Exception {
+        WriteBatch batch = firestore.batch();
+        for (Write write : writes) {
+            if (write.isDelete()) {
+                batch.delete(firestore.collection(FirestoreDocumentStore.COLLECTION).document(write.getDocumentId()));
+            } else {
+                batch.set(firestore.collection(FirestoreDocumentStore.COLLECTION).document(write.getDocumentId()),
+                        toFirestoreData(write.getDocument()), SetOptions.merge());
+            }
+        }
+        Tasks.await(batch.commit());
+    }
+
+    /**
+     * Builds the fields stored for a document in Firestore.
+     *
+     * @param document The document
+     * @return The fields, with the update time set by the server
+     */
+    public static Map<String, Object> toFirestoreData(ScannedDocument document) {
+        Map<String, Object> docData = new HashMap<>();
+        docData.put("fileName", document.getFileName());
+        docData.put("recognizedText", document.getRecognizedText());
+        docData.put("summaryText", document.getSummaryText());
+        docData.put("timestamp", document.getTimestamp());
+        docData.put("language", document.getLanguage());
+        docData.put("userId", document.getUserId());
+        docData.put("cloudImageUrl", document.getCloudImageUrl());
+        docData.put(FirestoreDocumentStore.FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+        return docData;
+    }
+}
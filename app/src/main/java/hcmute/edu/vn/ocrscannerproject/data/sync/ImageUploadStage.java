@@ -0,0 +1,402 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.UploadProgressDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.UploadProgressEntity;
+
+/**
+ * Uploads the images of a sync run several at a time. Uploads start in order of
+ * priority, smallest first, so many documents finish early. The number running at once
+ * adapts to the observed throughput between one and a configured maximum. The progress
+ * of each upload is saved to the upload_progress table, and aggregate progress and
+ * throughput are reported to a listener.
+ */
+public class ImageUploadStage {
+    private static final String TAG = "ImageUploadStage";
+
+    /** Uploads started at once before any throughput has been observed. */
+    public static final int DEFAULT_INITIAL_CONCURRENCY = 3;
+    /** Most uploads run at once unless another maximum is configured. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    // Bytes sent between saves of a running upload's progress
+    private static final long PROGRESS_SAVE_INTERVAL_BYTES = 256 * 1024;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final UploadProgressDao uploadProgressDao;
+    private final int initialConcurrency;
+    private final int maxConcurrency;
+
+    /**
+     * Uploads the image of one document. Called on a worker thread, and may block until
+     * the upload has finished.
+     */
+    public interface Uploader {
+        /**
+         * Uploads an image.
+         *
+         * @param job The upload to run
+         * @param listener The listener to report the bytes sent so far to
+         * @throws Exception If the upload fails
+         */
+        void upload(UploadJob job, BytesListener listener) throws Exception;
+    }
+
+    /**
+     * Receives the progress of a single upload.
+     */
+    public interface BytesListener {
+        /**
+         * Called as bytes are sent, from any thread.
+         *
+         * @param bytesTransferred The total number of bytes sent so far
+         */
+        void onBytesTransferred(long bytesTransferred);
+    }
+
+    /**
+     * Callback for aggregate progress, invoked on a worker thread after each upload ends.
+     */
+    public interface ProgressListener {
+        /**
+         * Called when an upload has finished or failed.
+         *
+         * @param progress The progress of the whole run
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * Creates a stage with the default concurrency.
+     *
+     * @param context The application context
+     */
+    public ImageUploadStage(Context context) {
+        this(context, DEFAULT_INITIAL_CONCURRENCY, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Creates a stage.
+     *
+     * @param context The application context
+     * @param initialConcurrency The number of uploads to start with
+     * @param maxConcurrency The most uploads to run at once
+     */
+    public ImageUploadStage(Context context, int initialConcurrency, int maxConcurrency) {
+        this.uploadProgressDao = AppDatabase.getInstance(context).uploadProgressDao();
+        this.initialConcurrency = initialConcurrency;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Runs the uploads and waits for all of them to end. Failed uploads are recorded and
+     * left for the next run. Must not be called on the main thread.
+     *
+     * @param jobs The uploads to run
+     * @param uploader The uploader that transfers each image
+     * @param listener The listener to report progress to, may be null
+     * @return The progress at the end of the run
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public Progress run(List<UploadJob> jobs, Uploader uploader, ProgressListener listener)
+            throws InterruptedException {
+        List<UploadJob> queue = new ArrayList<>(jobs);
+        Collections.sort(queue, (a, b) -> {
+            int byPriority = Integer.compare(b.getPriority(), a.getPriority());
+            return byPriority != 0 ? byPriority : Long.compare(a.getSize(), b.getSize());
+        });
+
+        long totalBytes = 0;
+        for (UploadJob job : queue) {
+            totalBytes += job.getSize();
+            markPending(job);
+        }
+
+        Run run = new Run(queue.size(), totalBytes, uploader, listener);
+        ExecutorService workers = Executors.newFixedThreadPool(maxConcurrency);
+        try {
+            for (UploadJob job : queue) {
+                run.awaitSlot();
+                workers.execute(() -> run.upload(job));
+            }
+            run.awaitAll();
+        } finally {
+            workers.shutdownNow();
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        return run.snapshot();
+    }
+
+    private void markPending(UploadJob job) {
+        UploadProgressEntity progress = uploadProgressDao.getByDocumentId(job.getDocumentId());
+        if (progress == null) {
+            progress = new UploadProgressEntity();
+            progress.setDocumentId(job.getDocumentId());
+        } else if (progress.getFileSize() != job.getSize()) {
+            // The image changed, so an interrupted upload of it cannot be resumed
+            progress.setSessionUri(null);
+            progress.setBytesUploaded(0);
+        }
+        progress.setFileSize(job.getSize());
+        progress.setState(UploadProgressEntity.STATE_PENDING);
+        progress.setUpdatedAt(new Date());
+        uploadProgressDao.upsert(progress);
+    }
+
+    /**
+     * The state of one call to {@link #run}.
+     */
+    private class Run {
+        private final Object lock = new Object();
+        private final int jobCount;
+        private final long totalBytes;
+        private final Uploader uploader;
+        private final ProgressListener listener;
+        private final long startNanos = System.nanoTime();
+        private final AdaptiveConcurrencyLimit limit;
+
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong finishedBytes = new AtomicLong();
+        // Bytes sent so far by each running upload
+        private final Map<String, Long> runningBytes = new ConcurrentHashMap<>();
+
+        // Guarded by lock
+        private int running;
+
+        Run(int jobCount, long totalBytes, Uploader uploader, ProgressListener listener) {
+            this.jobCount = jobCount;
+            this.totalBytes = totalBytes;
+            this.uploader = uploader;
+            this.listener = listener;
+            this.limit = new AdaptiveConcurrencyLimit(initialConcurrency, 1, maxConcurrency, startNanos);
+        }
+
+        void awaitSlot() throws InterruptedException {
+            synchronized (lock) {
+                while (running >= limit.getLimit()) {
+                    lock.wait();
+                }
+                running++;
+            }
+        }
+
+        void awaitAll() throws InterruptedException {
+            synchronized (lock) {
+                while (running > 0) {
+                    lock.wait();
+                }
+            }
+        }
+
+        void upload(UploadJob job) {
+            String documentId = job.getDocumentId();
+            UploadProgressEntity progress = uploadProgressDao.getByDocumentId(documentId);
+            try {
+                if (progress != null) {
+                    progress.setState(UploadProgressEntity.STATE_UPLOADING);
+                    progress.setAttempts(progress.getAttempts() + 1);
+                    progress.setUpdatedAt(new Date());
+                    uploadProgressDao.upsert(progress);
+                }
+
+                long[] lastSaved = {0};
+                runningBytes.put(documentId, 0L);
+                uploader.upload(job, bytesTransferred -> {
+                    runningBytes.put(documentId, bytesTransferred);
+                    synchronized (lastSaved) {
+                        if (bytesTransferred - lastSaved[0] >= PROGRESS_SAVE_INTERVAL_BYTES) {
+                            lastSaved[0] = bytesTransferred;
+                            uploadProgressDao.updateBytesUploaded(documentId, bytesTransferred, new Date());
+                        }
+                    }
+                });
+
+                uploadProgressDao.deleteByDocumentId(documentId);
+                finishedBytes.addAndGet(job.getSize());
+                completed.incrementAndGet();
+                limit.onSuccess(job.getSize(), System.nanoTime());
+            } catch (Exception e) {
+                Log.e(TAG, "Error uploading image of " + documentId, e);
+                if (progress != null) {
+                    progress.setState(UploadProgressEntity.STATE_FAILED);
+                    progress.setLastError(e.getMessage());
+                    progress.setUpdatedAt(new Date());
+                    uploadProgressDao.upsert(progress);
+                }
+                failed.incrementAndGet();
+                limit.onFailure(System.nanoTime());
+            } finally {
+                runningBytes.remove(documentId);
+                synchronized (lock) {
+                    running--;
+                    lock.notifyAll();
+                }
+            }
+
+            if (listener != null) {
+                listener.onProgress(snapshot());
+            }
+        }
+
+        Progress snapshot() {
+            long bytesUploaded = finishedBytes.get();
+            for (long bytes : runningBytes.values()) {
+                bytesUploaded += bytes;
+            }
+            double elapsedSeconds = (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+            double bytesPerSecond = elapsedSeconds > 0 ? bytesUploaded / elapsedSeconds : 0;
+            return new Progress(completed.get(), failed.get(), jobCount, bytesUploaded, totalBytes,
+                    bytesPerSecond, limit.getLimit());
+        }
+    }
+
+    /**
+     * The image upload of one document.
+     */
+    public static class UploadJob {
+        private static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+
+        private final String documentId;
+        private final File file;
+        private final long size;
+        private final int priority;
+        private final String contentType;
+
+        /**
+         * Constructs a new UploadJob for a JPEG image.
+         *
+         * @param documentId The ID of the document the image belongs to
+         * @param file The image file
+         * @param priority Higher priorities start first; equal ones start smallest first
+         */
+        public UploadJob(String documentId, File file, int priority) {
+            this(documentId, file, priority, DEFAULT_CONTENT_TYPE);
+        }
+
+        /**
+         * Constructs a new UploadJob.
+         *
+         * @param documentId The ID of the document the image belongs to
+         * @param file The image file
+         * @param priority Higher priorities start first; equal ones start smallest first
+         * @param contentType The MIME type of the file
+         */
+        public UploadJob(String documentId, File file, int priority, String contentType) {
+            this.documentId = documentId;
+            this.file = file;
+            this.size = file.length();
+            this.priority = priority;
+            this.contentType = contentType;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Aggregate progress of a run.
+     */
+    public static class Progress {
+        private final int completedCount;
+        private final int failedCount;
+        private final int totalCount;
+        private final long bytesUploaded;
+        private final long totalBytes;
+        private final double bytesPerSecond;
+        private final int concurrency;
+
+        Progress(int completedCount, int failedCount, int totalCount, long bytesUploaded,
+                 long totalBytes, double bytesPerSecond, int concurrency) {
+            this.completedCount = completedCount;
+            this.failedCount = failedCount;
+            this.totalCount = totalCount;
+            this.bytesUploaded = bytesUploaded;
+            this.totalBytes = totalBytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * @return The number of uploads that have finished
+         */
+        public int getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * @return The number of uploads that have failed
+         */
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return The number of uploads in the run
+         */
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * @return The bytes sent so far, including those of running uploads
+         */
+        public long getBytesUploaded() {
+            return bytesUploaded;
+        }
+
+        /**
+         * @return The size of all images in the run
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return The average throughput since the run started, in bytes per second
+         */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return The number of uploads currently allowed to run at once
+         */
+        public int getConcurrency() {
+            return concurrency;
+        }
+    }
+}
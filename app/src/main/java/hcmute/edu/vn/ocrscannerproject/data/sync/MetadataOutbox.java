@@ -0,0 +1,177 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.OutboxDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.OutboxEntity;
+
+/**
+ * Queues document metadata writes in the metadata_outbox table and sends them to the
+ * server in batches. Edits to a document that is already queued are merged into one
+ * write of its latest data, so a sync of many documents costs one round-trip per
+ * {@link #MAX_BATCH_SIZE} documents. A failed batch stays queued and is retried with
+ * exponential backoff. None of the methods may be called on the main thread.
+ */
+public class MetadataOutbox {
+    /** The most writes Firestore accepts in one batch. */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 60_000;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
+    private final OutboxDao outboxDao;
+    private final LocalDocuments localDocuments;
+    private final MetadataWriter writer;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxRetries;
+
+    /**
+     * Access to the local copies of queued documents.
+     */
+    public interface LocalDocuments {
+        /**
+         * Loads the current data of a document.
+         *
+         * @param documentId The ID of the document
+         * @return The document, or null if it no longer exists locally
+         */
+        ScannedDocument load(String documentId);
+
+        /**
+         * Records that the metadata of documents has been written to the server.
+         *
+         * @param documentIds The IDs of the written documents
+         */
+        void markSynced(List<String> documentIds);
+    }
+
+    /**
+     * Creates an outbox with the default backoff.
+     *
+     * @param outboxDao The outbox table
+     * @param localDocuments The local documents
+     * @param writer The server to write to
+     */
+    public MetadataOutbox(OutboxDao outboxDao, LocalDocuments localDocuments, MetadataWriter writer) {
+        this(outboxDao, localDocuments, writer, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS,
+                DEFAULT_MAX_RETRIES);
+    }
+
+    MetadataOutbox(OutboxDao outboxDao, LocalDocuments localDocuments, MetadataWriter writer,
+                   long initialBackoffMillis, long maxBackoffMillis, int maxRetries) {
+        this.outboxDao = outboxDao;
+        this.localDocuments = localDocuments;
+        this.writer = writer;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Queues writes of the current metadata of documents.
+     *
+     * @param documentIds The IDs of the documents
+     */
+    public void enqueueSet(List<String> documentIds) {
+        outboxDao.enqueue(documentIds, OutboxEntity.OPERATION_SET, System.currentTimeMillis());
+    }
+
+    /**
+     * Queues the write of the current metadata of a document.
+     *
+     * @param documentId The ID of the document
+     */
+    public void enqueueSet(String documentId) {
+        enqueueSet(Collections.singletonList(documentId));
+    }
+
+    /**
+     * Queues the deletion of a document, replacing any write still queued for it.
+     *
+     * @param documentId The ID of the document
+     */
+    public void enqueueDelete(String documentId) {
+        outboxDao.enqueue(Collections.singletonList(documentId), OutboxEntity.OPERATION_DELETE,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Sends every due write in batches. A failed batch is retried after a growing delay;
+     * after the configured number of consecutive failures the rest is left queued for the
+     * next flush and the last error is thrown. Flushes from several threads run one after
+     * another, so no batch is sent twice.
+     *
+     * @return The number of outbox entries written
+     * @throws Exception The error of the last failed batch, if the flush gave up
+     */
+    public synchronized int flush() throws Exception {
+        int written = 0;
+        int failures = 0;
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<OutboxEntity> due = outboxDao.getDue(now, MAX_BATCH_SIZE);
+            if (due.isEmpty()) {
+                return written;
+            }
+
+            List<MetadataWriter.Write> writes = new ArrayList<>(due.size());
+            List<String> setIds = new ArrayList<>();
+            for (OutboxEntity entry : due) {
+                if (OutboxEntity.OPERATION_DELETE.equals(entry.getOperation())) {
+                    writes.add(MetadataWriter.Write.delete(entry.getDocumentId()));
+                    continue;
+                }
+                // Documents deleted locally since they were queued are dropped with the batch
+                ScannedDocument document = localDocuments.load(entry.getDocumentId());
+                if (document != null) {
+                    writes.add(MetadataWriter.Write.set(document));
+                    setIds.add(entry.getDocumentId());
+                }
+            }
+
+            try {
+                if (!writes.isEmpty()) {
+                    writer.commit(writes);
+                }
+            } catch (Exception e) {
+                failures++;
+                long delay = backoffMillis(due);
+                List<String> ids = new ArrayList<>(due.size());
+                for (OutboxEntity entry : due) {
+                    ids.add(entry.getDocumentId());
+                }
+                outboxDao.recordFailure(ids, now + delay);
+                if (failures > maxRetries) {
+                    throw e;
+                }
+                Thread.sleep(delay);
+                continue;
+            }
+
+            failures = 0;
+            outboxDao.deleteWritten(due);
+            if (!setIds.isEmpty()) {
+                localDocuments.markSynced(setIds);
+            }
+            written += due.size();
+        }
+    }
+
+    /**
+     * Gets the delay before retrying a batch: doubled for every earlier failure of its
+     * most failed entry, up to the maximum.
+     */
+    private long backoffMillis(List<OutboxEntity> batch) {
+        int attempts = 0;
+        for (OutboxEntity entry : batch) {
+            attempts = Math.max(attempts, entry.getAttempts());
+        }
+        long delay = initialBackoffMillis << Math.min(attempts, 16);
+        return Math.min(delay, maxBackoffMillis);
+    }
+}
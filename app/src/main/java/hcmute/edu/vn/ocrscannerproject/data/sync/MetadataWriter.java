@@ -0,0 +1,68 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * Writes document metadata to the server in atomic batches. Implementations block until
+ * the server answers, so they must not be called on the main thread.
+ */
+public interface MetadataWriter {
+
+    /**
+     * Commits a batch of writes. Either all of them are applied or none are.
+     *
+     * @param writes The writes, at most {@link MetadataOutbox#MAX_BATCH_SIZE}
+     * @throws Exception If the batch could not be committed
+     */
+    void commit(List<Write> writes) throws Exception;
+
+    /**
+     * One write in a batch: the current metadata of a document, or its deletion.
+     */
+    final class Write {
+        private final String documentId;
+        private final ScannedDocument document;
+
+        private Write(String documentId, ScannedDocument document) {
+            this.documentId = documentId;
+            this.document = document;
+        }
+
+        /**
+         * Creates a write of a document's metadata.
+         *
+         * @param document The document to write
+         * @return The write
+         */
+        public static Write set(ScannedDocument document) {
+            return new Write(document.getId(), document);
+        }
+
+        /**
+         * Creates a deletion.
+         *
+         * @param documentId The ID of the document to delete
+         * @return The write
+         */
+        public static Write delete(String documentId) {
+            return new Write(documentId, null);
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        /**
+         * @return The document to write, or null if this is a deletion
+         */
+        public ScannedDocument getDocument() {
+            return document;
+        }
+
+        public boolean isDelete() {
+            return document == null;
+        }
+    }
+}
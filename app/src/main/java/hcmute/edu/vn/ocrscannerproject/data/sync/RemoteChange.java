@@ -0,0 +1,31 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * A document read from the server together with the time the server last changed it.
+ */
+public final class RemoteChange {
+    private final ScannedDocument document;
+    private final UpdateTime updatedAt;
+
+    /**
+     * Constructs a new RemoteChange.
+     *
+     * @param document The document as stored on the server
+     * @param updatedAt The server time of its last change, or null for documents written
+     *                  before change times were recorded
+     */
+    public RemoteChange(ScannedDocument document, UpdateTime updatedAt) {
+        this.document = document;
+        this.updatedAt = updatedAt;
+    }
+
+    public ScannedDocument getDocument() {
+        return document;
+    }
+
+    public UpdateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
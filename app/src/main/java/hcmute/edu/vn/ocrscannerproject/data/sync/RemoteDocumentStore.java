@@ -0,0 +1,32 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.List;
+
+/**
+ * The server side of document sync. Implementations block until the server answers, so
+ * they must not be called on the main thread.
+ */
+public interface RemoteDocumentStore {
+
+    /**
+     * Reads every document of a user, including ones written before change times were
+     * recorded. Used only for the first sync of a user.
+     *
+     * @param userId The ID of the user
+     * @return The documents
+     * @throws Exception If the server cannot be read
+     */
+    List<RemoteChange> fetchAll(String userId) throws Exception;
+
+    /**
+     * Reads the documents of a user that changed after a cursor, ordered by update time
+     * and then by ID.
+     *
+     * @param userId The ID of the user
+     * @param cursor The last change already applied
+     * @param limit The maximum number of documents to return
+     * @return The changed documents, fewer than the limit when there are no more
+     * @throws Exception If the server cannot be read
+     */
+    List<RemoteChange> fetchChangesAfter(String userId, SyncCursor cursor, int limit) throws Exception;
+}
@@ -0,0 +1,307 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.UploadProgressDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.UploadProgressEntity;
+
+/**
+ * Uploads images to Firebase Storage through resumable sessions. The session URI of each
+ * upload is saved to the upload_progress table as soon as the server hands it out, so an
+ * upload interrupted by a lost connection or by the process being killed continues from
+ * the last byte the server confirmed instead of starting over. Transient failures are
+ * retried with exponential backoff. Counters of the uploads, resumes, retries and bytes
+ * sent are kept for the life of the uploader.
+ */
+public class ResumableUploader {
+    private static final String TAG = "ResumableUploader";
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 30_000;
+
+    private final UploadProgressDao uploadProgressDao;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private final AtomicInteger resumeCount = new AtomicInteger();
+    private final AtomicInteger restartCount = new AtomicInteger();
+    private final AtomicInteger retryCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesSkipped = new AtomicLong();
+    private final AtomicLong uploadNanos = new AtomicLong();
+
+    /**
+     * Creates an uploader with the default retry policy.
+     *
+     * @param context The application context
+     */
+    public ResumableUploader(Context context) {
+        this(AppDatabase.getInstance(context).uploadProgressDao(), DEFAULT_MAX_ATTEMPTS,
+                DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    ResumableUploader(UploadProgressDao uploadProgressDao, int maxAttempts, long initialBackoffMillis,
+                      long maxBackoffMillis) {
+        this.uploadProgressDao = uploadProgressDao;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Uploads the image of a job, resuming its saved session if the file has not changed
+     * since the session was started. Blocks until the upload has finished, so it must not
+     * be called on the main thread.
+     *
+     * @param job The upload to run
+     * @param ref The storage location to upload to
+     * @param listener The listener to report the bytes sent so far to, may be null
+     * @throws Exception The error of the last attempt, if the upload failed
+     */
+    public void upload(ImageUploadStage.UploadJob job, StorageReference ref,
+                       ImageUploadStage.BytesListener listener) throws Exception {
+        String documentId = job.getDocumentId();
+        File file = job.getFile();
+        long lastModified = file.lastModified();
+        Uri source = Uri.fromFile(file);
+        StorageMetadata metadata = new StorageMetadata.Builder().setContentType(job.getContentType()).build();
+
+        long startNanos = System.nanoTime();
+        int attempt = 0;
+        try {
+            while (true) {
+                attempt++;
+                UploadProgressEntity progress = uploadProgressDao.getByDocumentId(documentId);
+                Uri session = resumableSession(progress, job, lastModified);
+                long confirmedBytes = session != null ? progress.getBytesUploaded() : 0;
+                if (session != null) {
+                    resumeCount.incrementAndGet();
+                    bytesSkipped.addAndGet(confirmedBytes);
+                    Log.d(TAG, "Resuming upload of " + documentId + " at " + confirmedBytes + " bytes");
+                } else if (progress != null && progress.getSessionUri() != null) {
+                    uploadProgressDao.clearSession(documentId);
+                }
+
+                long[] lastBytes = {confirmedBytes};
+                boolean[] sessionSaved = {session != null};
+                UploadTask task = session != null
+                        ? ref.putFile(source, metadata, session)
+                        : ref.putFile(source, metadata);
+                // Runs on Firebase's callback thread, never the main thread
+                task.addOnProgressListener(Runnable::run, snapshot -> {
+                    Uri sessionUri = snapshot.getUploadSessionUri();
+                    if (!sessionSaved[0] && sessionUri != null) {
+                        sessionSaved[0] = true;
+                        uploadProgressDao.updateSession(documentId, sessionUri.toString(), lastModified);
+                    }
+                    lastBytes[0] = snapshot.getBytesTransferred();
+                    if (listener != null) {
+                        listener.onBytesTransferred(lastBytes[0]);
+                    }
+                });
+
+                try {
+                    Tasks.await(task);
+                    bytesSent.addAndGet(Math.max(0, job.getSize() - confirmedBytes));
+                    uploadCount.incrementAndGet();
+                    return;
+                } catch (Exception e) {
+                    Exception cause = unwrap(e);
+                    bytesSent.addAndGet(Math.max(0, lastBytes[0] - confirmedBytes));
+
+                    if (session != null && isSessionExpired(cause)) {
+                        // The server no longer knows the session, so start the file over
+                        Log.w(TAG, "Upload session of " + documentId + " expired, restarting");
+                        uploadProgressDao.clearSession(documentId);
+                        restartCount.incrementAndGet();
+                        if (attempt < maxAttempts) {
+                            continue;
+                        }
+                    }
+                    if (!isTransient(cause) || attempt >= maxAttempts) {
+                        failureCount.incrementAndGet();
+                        throw cause;
+                    }
+
+                    long delay = backoffMillis(attempt);
+                    Log.w(TAG, "Upload of " + documentId + " failed, retrying in " + delay + " ms", cause);
+                    retryCount.incrementAndGet();
+                    Thread.sleep(delay);
+                }
+            }
+        } finally {
+            uploadNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Gets the counters of every upload run by this uploader.
+     *
+     * @return A snapshot of the counters
+     */
+    public Stats getStats() {
+        return new Stats(uploadCount.get(), resumeCount.get(), restartCount.get(), retryCount.get(),
+                failureCount.get(), bytesSent.get(), bytesSkipped.get(), uploadNanos.get());
+    }
+
+    /**
+     * Gets the saved session of an upload if it can be resumed: the server has confirmed
+     * some bytes and the file is the one the session was started for.
+     */
+    private static Uri resumableSession(UploadProgressEntity progress, ImageUploadStage.UploadJob job,
+                                        long lastModified) {
+        if (progress == null || progress.getSessionUri() == null || progress.getBytesUploaded() <= 0) {
+            return null;
+        }
+        if (progress.getFileSize() != job.getSize() || progress.getSourceLastModified() != lastModified) {
+            return null;
+        }
+        return Uri.parse(progress.getSessionUri());
+    }
+
+    private long backoffMillis(int attempt) {
+        long delay = initialBackoffMillis << Math.min(attempt - 1, 16);
+        return Math.min(delay, maxBackoffMillis);
+    }
+
+    private static Exception unwrap(Exception e) {
+        if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+            return (Exception) e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Checks whether a failure is worth retrying: a dropped connection, a server error or
+     * throttling, as opposed to a refused or cancelled upload.
+     */
+    private static boolean isTransient(Exception e) {
+        if (e instanceof IOException) {
+            return true;
+        }
+        if (!(e instanceof StorageException)) {
+            return false;
+        }
+        StorageException storageException = (StorageException) e;
+        if (storageException.getIsRecoverableException()
+                || storageException.getErrorCode() == StorageException.ERROR_RETRY_LIMIT_EXCEEDED) {
+            return true;
+        }
+        int httpCode = storageException.getHttpResultCode();
+        return storageException.getErrorCode() == StorageException.ERROR_UNKNOWN
+                && (httpCode == 0 || httpCode == 408 || httpCode == 429 || httpCode >= 500);
+    }
+
+    /**
+     * Checks whether a resumed upload failed because its session is gone. Sessions expire
+     * on the server about a week after they were started.
+     */
+    private static boolean isSessionExpired(Exception e) {
+        if (!(e instanceof StorageException)) {
+            return false;
+        }
+        int httpCode = ((StorageException) e).getHttpResultCode();
+        return httpCode == 400 || httpCode == 404 || httpCode == 410;
+    }
+
+    /**
+     * The counters of an uploader.
+     */
+    public static class Stats {
+        private final int uploadCount;
+        private final int resumeCount;
+        private final int restartCount;
+        private final int retryCount;
+        private final int failureCount;
+        private final long bytesSent;
+        private final long bytesSkipped;
+        private final long uploadNanos;
+
+        Stats(int uploadCount, int resumeCount, int restartCount, int retryCount, int failureCount,
+              long bytesSent, long bytesSkipped, long uploadNanos) {
+            this.uploadCount = uploadCount;
+            this.resumeCount = resumeCount;
+            this.restartCount = restartCount;
+            this.retryCount = retryCount;
+            this.failureCount = failureCount;
+            this.bytesSent = bytesSent;
+            this.bytesSkipped = bytesSkipped;
+            this.uploadNanos = uploadNanos;
+        }
+
+        /**
+         * @return The number of uploads that finished
+         */
+        public int getUploadCount() {
+            return uploadCount;
+        }
+
+        /**
+         * @return The number of attempts that resumed a saved session
+         */
+        public int getResumeCount() {
+            return resumeCount;
+        }
+
+        /**
+         * @return The number of uploads started over because their session had expired
+         */
+        public int getRestartCount() {
+            return restartCount;
+        }
+
+        /**
+         * @return The number of attempts retried after a transient failure
+         */
+        public int getRetryCount() {
+            return retryCount;
+        }
+
+        /**
+         * @return The number of uploads that gave up
+         */
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        /**
+         * @return The bytes sent over the network, including those of failed attempts
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * @return The bytes not sent again because an upload was resumed
+         */
+        public long getBytesSkipped() {
+            return bytesSkipped;
+        }
+
+        /**
+         * @return The average throughput of one upload while it ran, in bytes per second
+         */
+        public double getBytesPerSecond() {
+            return uploadNanos > 0 ? bytesSent * 1_000_000_000.0 / uploadNanos : 0;
+        }
+    }
+}
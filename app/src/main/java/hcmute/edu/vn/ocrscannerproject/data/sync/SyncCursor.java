@@ -0,0 +1,51 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+/**
+ * Position in the server's change feed: the update time and ID of the last remote
+ * document that has been applied locally. Documents are ordered by update time and then
+ * by ID, so documents updated at the same instant are neither skipped nor repeated.
+ */
+public final class SyncCursor {
+    private final UpdateTime updatedAt;
+    private final String documentId;
+
+    /**
+     * Constructs a new SyncCursor.
+     *
+     * @param updatedAt The update time of the last applied document
+     * @param documentId The ID of the last applied document
+     */
+    public SyncCursor(UpdateTime updatedAt, String documentId) {
+        this.updatedAt = updatedAt;
+        this.documentId = documentId;
+    }
+
+    /**
+     * Gets the cursor placed before every document that has an update time.
+     *
+     * @return The cursor at the beginning of the change feed
+     */
+    public static SyncCursor beginning() {
+        return new SyncCursor(new UpdateTime(0, 0), "");
+    }
+
+    public UpdateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * Checks whether a document comes after this cursor in the change feed.
+     *
+     * @param otherUpdatedAt The update time of the document
+     * @param otherDocumentId The ID of the document
+     * @return True if the document is after the cursor
+     */
+    public boolean isBefore(UpdateTime otherUpdatedAt, String otherDocumentId) {
+        int byTime = otherUpdatedAt.compareTo(updatedAt);
+        return byTime > 0 || (byTime == 0 && otherDocumentId.compareTo(documentId) > 0);
+    }
+}
@@ -0,0 +1,62 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps the sync cursor of each user in SharedPreferences.
+ */
+public class SyncCursorStore {
+    private static final String PREF_NAME = "sync_cursor_prefs";
+    // Cursors saved before nanoseconds were kept, in milliseconds
+    private static final String KEY_UPDATED_AT_MILLIS = "updated_at_";
+    private static final String KEY_UPDATED_AT_SECONDS = "updated_at_seconds_";
+    private static final String KEY_UPDATED_AT_NANOS = "updated_at_nanos_";
+    private static final String KEY_DOCUMENT_ID = "document_id_";
+
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructs a new SyncCursorStore.
+     *
+     * @param context The application context
+     */
+    public SyncCursorStore(Context context) {
+        this.preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Gets the cursor a user's last sync ended at.
+     *
+     * @param userId The ID of the user
+     * @return The cursor, or null if the user has never synced on this device
+     */
+    public SyncCursor get(String userId) {
+        UpdateTime updatedAt;
+        if (preferences.contains(KEY_UPDATED_AT_SECONDS + userId)) {
+            updatedAt = new UpdateTime(preferences.getLong(KEY_UPDATED_AT_SECONDS + userId, 0),
+                    preferences.getInt(KEY_UPDATED_AT_NANOS + userId, 0));
+        } else if (preferences.contains(KEY_UPDATED_AT_MILLIS + userId)) {
+            // Sorts before documents in the same millisecond, which are read once more
+            updatedAt = UpdateTime.ofMillis(preferences.getLong(KEY_UPDATED_AT_MILLIS + userId, 0));
+        } else {
+            return null;
+        }
+        return new SyncCursor(updatedAt, preferences.getString(KEY_DOCUMENT_ID + userId, ""));
+    }
+
+    /**
+     * Saves the cursor of a user.
+     *
+     * @param userId The ID of the user
+     * @param cursor The cursor to save
+     */
+    public void put(String userId, SyncCursor cursor) {
+        preferences.edit()
+                .putLong(KEY_UPDATED_AT_SECONDS + userId, cursor.getUpdatedAt().getSeconds())
+                .putInt(KEY_UPDATED_AT_NANOS + userId, cursor.getUpdatedAt().getNanos())
+                .remove(KEY_UPDATED_AT_MILLIS + userId)
+                .putString(KEY_DOCUMENT_ID + userId, cursor.getDocumentId())
+                .apply();
+    }
+}
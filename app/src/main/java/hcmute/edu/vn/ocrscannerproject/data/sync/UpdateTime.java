@@ -0,0 +1,70 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.Locale;
+
+/**
+ * A server time as seconds and nanoseconds since the epoch, the precision of Firestore
+ * timestamps. A Date keeps only milliseconds, so a cursor built from one would sort before
+ * the document it was read from and that document would be read again.
+ */
+public final class UpdateTime implements Comparable<UpdateTime> {
+    private static final int NANOS_PER_MILLI = 1_000_000;
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    private final long seconds;
+    private final int nanos;
+
+    /**
+     * Constructs a new UpdateTime.
+     *
+     * @param seconds The seconds since the epoch
+     * @param nanos The nanoseconds within the second, from 0 to 999,999,999
+     */
+    public UpdateTime(long seconds, int nanos) {
+        this.seconds = seconds;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Gets the time of a number of milliseconds since the epoch.
+     *
+     * @param millis The milliseconds since the epoch
+     * @return The time
+     */
+    public static UpdateTime ofMillis(long millis) {
+        return new UpdateTime(Math.floorDiv(millis, MILLIS_PER_SECOND),
+                (int) Math.floorMod(millis, MILLIS_PER_SECOND) * NANOS_PER_MILLI);
+    }
+
+    public long getSeconds() {
+        return seconds;
+    }
+
+    public int getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public int compareTo(UpdateTime other) {
+        int bySeconds = Long.compare(seconds, other.seconds);
+        return bySeconds != 0 ? bySeconds : Integer.compare(nanos, other.nanos);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UpdateTime)) return false;
+        UpdateTime other = (UpdateTime) o;
+        return seconds == other.seconds && nanos == other.nanos;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(seconds) + nanos;
+    }
+
+    @Override
+    public String toString() {
+        return seconds + "." + String.format(Locale.ROOT, "%09d", nanos);
+    }
+}
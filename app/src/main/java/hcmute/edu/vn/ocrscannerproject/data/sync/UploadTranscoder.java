@@ -0,0 +1,601 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
+import hcmute.edu.vn.ocrscannerproject.utils.ImageHeaderParser;
+
+/**
+ * Re-encodes page images for their cloud copy before they are uploaded. Each page is
+ * decoded no larger than a configured resolution and sampled to decide how to store it:
+ * <ul>
+ *     <li>black text on a plain background is thresholded to two colours and stored as
+ *     lossless WebP, which packs it to one bit per pixel;</li>
+ *     <li>other colourless pages are stored as grayscale JPEG;</li>
+ *     <li>pages with colour, such as photos, are stored as lossy WebP.</li>
+ * </ul>
+ * Pages whose EXIF data records a rotation are turned upright before they are encoded,
+ * since the cloud copy has no EXIF data. The original file is uploaded when it cannot be
+ * decoded or the result is not smaller, with the type read from its header and the
+ * extension of its name.
+ * Results are kept in the cache until the upload has finished, so a sync that is run
+ * again reuses them and an interrupted upload of the same bytes can be resumed. Only a
+ * bounded number of pages are decoded at once, so concurrent uploads do not multiply the
+ * memory used. None of the methods may be called on the main thread.
+ */
+public class UploadTranscoder {
+    private static final String TAG = "UploadTranscoder";
+
+    /** Resolution the cloud copy is capped at unless another one is configured. */
+    public static final int DEFAULT_MAX_DPI = 200;
+
+    private static final String OUTPUT_DIR_NAME = "upload_transcoded";
+    // The long edge of an A4 page, which the DPI cap is converted with
+    private static final float PAGE_LONG_EDGE_INCHES = 11.69f;
+    // Pages decoded at once; each holds up to four bytes per pixel of the capped size
+    private static final int MAX_CONCURRENT_TRANSCODES = 1;
+
+    private static final int PHOTO_WEBP_QUALITY = 75;
+    private static final int GRAYSCALE_JPEG_QUALITY = 70;
+
+    // Rows sampled when classifying a page
+    private static final int SAMPLE_ROWS = 128;
+    // Channel spread above which a pixel counts as coloured
+    private static final int COLOR_CHROMA_THRESHOLD = 40;
+    // Share of coloured pixels above which a page is kept in colour
+    private static final double MAX_COLOR_FRACTION = 0.02;
+    // Share of mid-gray pixels below which a colourless page is treated as bilevel
+    private static final double MAX_MIDTONE_FRACTION = 0.08;
+    private static final int MIDTONE_LOW = 64;
+    private static final int MIDTONE_HIGH = 192;
+
+    // Bytes read from the start of a file to tell its type and orientation; enough for
+    // the largest EXIF segment
+    private static final int HEADER_PROBE_BYTES = 128 * 1024;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String DEFAULT_EXTENSION = "bin";
+
+    private final BitmapDecoder bitmapDecoder;
+    private final File outputDir;
+    private final int maxLongEdge;
+    private final Semaphore decodePermits = new Semaphore(MAX_CONCURRENT_TRANSCODES);
+
+    private final AtomicInteger pageCount = new AtomicInteger();
+    private final AtomicInteger bilevelCount = new AtomicInteger();
+    private final AtomicInteger grayscaleCount = new AtomicInteger();
+    private final AtomicInteger photoCount = new AtomicInteger();
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong transcodedBytes = new AtomicLong();
+
+    /**
+     * The ways a page can be stored in the cloud.
+     */
+    public enum Format {
+        /** The local file, uploaded as it is, with its own type and extension. */
+        ORIGINAL(null, null),
+        /** Two colours, lossless WebP. */
+        BILEVEL("image/webp", "webp"),
+        /** Grayscale JPEG. */
+        GRAYSCALE("image/jpeg", "jpg"),
+        /** Full colour, lossy WebP. */
+        PHOTO("image/webp", "webp");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        /**
+         * @return The MIME type of the format, or null for {@link #ORIGINAL}
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return The file extension of the format, or null for {@link #ORIGINAL}
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Creates a transcoder with the default resolution cap.
+     *
+     * @param context The application context
+     */
+    public UploadTranscoder(Context context) {
+        this(context, DEFAULT_MAX_DPI);
+    }
+
+    /**
+     * Creates a transcoder.
+     *
+     * @param context The application context
+     * @param maxDpi The resolution the cloud copy is capped at, as if the page were A4
+     */
+    public UploadTranscoder(Context context, int maxDpi) {
+        this.bitmapDecoder = BitmapDecoder.getInstance(context);
+        this.outputDir = new File(context.getCacheDir(), OUTPUT_DIR_NAME);
+        this.maxLongEdge = Math.round(PAGE_LONG_EDGE_INCHES * maxDpi);
+    }
+
+    /**
+     * Gets the file to upload for a page, transcoding it unless a result for the current
+     * version of the page is already in the cache.
+     *
+     * @param documentId The ID of the document the page belongs to
+     * @param source The local image file
+     * @return The file to upload and how it is encoded
+     * @throws InterruptedException If interrupted while waiting for another page to finish
+     */
+    public Result transcode(String documentId, File source) throws InterruptedException {
+        Result cached = findCached(documentId, source);
+        if (cached != null) {
+            return cached;
+        }
+
+        decodePermits.acquire();
+        try {
+            Result result = encode(documentId, source);
+            pageCount.incrementAndGet();
+            originalBytes.addAndGet(result.getOriginalBytes());
+            transcodedBytes.addAndGet(result.getTranscodedBytes());
+            switch (result.getFormat()) {
+                case BILEVEL:
+                    bilevelCount.incrementAndGet();
+                    break;
+                case GRAYSCALE:
+                    grayscaleCount.incrementAndGet();
+                    break;
+                case PHOTO:
+                    photoCount.incrementAndGet();
+                    break;
+                default:
+                    break;
+            }
+            Log.d(TAG, "Transcoded " + documentId + " as " + result.getFormat() + ": "
+                    + result.getOriginalBytes() / 1024 + " KB -> " + result.getTranscodedBytes() / 1024 + " KB");
+            return result;
+        } finally {
+            decodePermits.release();
+        }
+    }
+
+    /**
+     * Deletes the transcoded file of a page once it has been uploaded.
+     *
+     * @param result The result of {@link #transcode}
+     */
+    public void discard(Result result) {
+        if (result.getFormat() != Format.ORIGINAL && result.getFile().exists() && !result.getFile().delete()) {
+            Log.w(TAG, "Could not delete " + result.getFile());
+        }
+    }
+
+    /**
+     * Gets the counters of every page transcoded by this transcoder.
+     *
+     * @return A snapshot of the counters
+     */
+    public Stats getStats() {
+        return new Stats(pageCount.get(), bilevelCount.get(), grayscaleCount.get(), photoCount.get(),
+                originalBytes.get(), transcodedBytes.get());
+    }
+
+    private Result findCached(String documentId, File source) {
+        for (Format format : Format.values()) {
+            if (format == Format.ORIGINAL) {
+                continue;
+            }
+            File output = outputFile(documentId, format);
+            // Written after the source, so it is of the current version of the page
+            if (output.exists() && output.lastModified() >= source.lastModified()) {
+                return new Result(output, format, format.getContentType(), format.getExtension(),
+                        source.length(), output.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the extension a local file is uploaded with when it is sent as it is.
+     *
+     * @param source The local file
+     * @return The lower-case extension of its name, or a generic one if it has none
+     */
+    public static String extensionOf(File source) {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && dot < name.length() - 1
+                ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : DEFAULT_EXTENSION;
+    }
+
+    /**
+     * Reads the header of a local image.
+     *
+     * @return The header, or null if the file cannot be read or is not a known image type
+     */
+    private static ImageHeaderParser.Header readHeader(File source) {
+        byte[] bytes = new byte[(int) Math.min(HEADER_PROBE_BYTES, Math.max(0, source.length()))];
+        try (InputStream in = new FileInputStream(source)) {
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+            return ImageHeaderParser.parse(bytes, length);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the header of " + source, e);
+            return null;
+        }
+    }
+
+    /**
+     * Describes a local file to be uploaded as it is. The type comes from the header of an
+     * image, or else from the extension of the file.
+     */
+    private static Result original(File source, ImageHeaderParser.Header header) {
+        String contentType = header != null ? header.getMimeType() : null;
+        String extension = extensionOf(source);
+        if (contentType == null) {
+            contentType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        }
+        return new Result(source, Format.ORIGINAL, contentType != null ? contentType : DEFAULT_CONTENT_TYPE,
+                extension, source.length(), source.length());
+    }
+
+    private File outputFile(String documentId, Format format) {
+        return new File(outputDir, documentId + "." + format.name().toLowerCase() + "." + format.getExtension());
+    }
+
+    private Result encode(String documentId, File source) {
+        ImageHeaderParser.Header header = readHeader(source);
+        BitmapDecoder.SampledBitmap sampled = bitmapDecoder.decodeWithin(source.getAbsolutePath(), maxLongEdge);
+        if (sampled == null) {
+            return original(source, header);
+        }
+
+        Bitmap bitmap = sampled.getBitmap();
+        File output = null;
+        try {
+            int orientation = header != null ? header.getOrientation() : ImageHeaderParser.ORIENTATION_NORMAL;
+            if (orientation != ImageHeaderParser.ORIENTATION_NORMAL) {
+                // Captures record their rotation only in EXIF data, which is not re-encoded
+                Bitmap upright = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
+                        orientationMatrix(orientation), true);
+                if (upright != bitmap) {
+                    bitmapDecoder.release(bitmap);
+                    bitmap = upright;
+                }
+            }
+
+            if (!bitmap.isMutable()) {
+                Bitmap copy = bitmap.copy(Bitmap.Config.ARGB_8888, true);
+                bitmapDecoder.release(bitmap);
+                bitmap = copy;
+            }
+
+            Format format = classify(bitmap);
+            if (format != Format.PHOTO) {
+                toGray(bitmap, format == Format.BILEVEL ? otsuThreshold(bitmap) : -1);
+            }
+
+            if (!outputDir.exists() && !outputDir.mkdirs()) {
+                throw new IOException("Could not create " + outputDir);
+            }
+            output = outputFile(documentId, format);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+                if (!compress(bitmap, format, out)) {
+                    throw new IOException("Could not encode " + format);
+                }
+            }
+
+            if (output.length() >= source.length()) {
+                output.delete();
+                return original(source, header);
+            }
+            return new Result(output, format, format.getContentType(), format.getExtension(),
+                    source.length(), output.length());
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error transcoding " + source + ", uploading it as it is", e);
+            if (output != null) {
+                output.delete();
+            }
+            return original(source, header);
+        } finally {
+            bitmapDecoder.release(bitmap);
+        }
+    }
+
+    /**
+     * Gets the transform that turns an image stored with an EXIF orientation upright.
+     */
+    private static Matrix orientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case 2:
+                matrix.setScale(-1, 1);
+                break;
+            case 3:
+                matrix.setRotate(180);
+                break;
+            case 4:
+                matrix.setScale(1, -1);
+                break;
+            case 5:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case 6:
+                matrix.setRotate(90);
+                break;
+            case 7:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case 8:
+                matrix.setRotate(-90);
+                break;
+            default:
+                break;
+        }
+        return matrix;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean compress(Bitmap bitmap, Format format, OutputStream out) {
+        switch (format) {
+            case BILEVEL:
+                // Before Android 11, WEBP at quality 100 is the lossless encoder
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                        ? bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 100, out)
+                        : bitmap.compress(Bitmap.CompressFormat.WEBP, 100, out);
+            case PHOTO:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                        ? bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, PHOTO_WEBP_QUALITY, out)
+                        : bitmap.compress(Bitmap.CompressFormat.WEBP, PHOTO_WEBP_QUALITY, out);
+            default:
+                return bitmap.compress(Bitmap.CompressFormat.JPEG, GRAYSCALE_JPEG_QUALITY, out);
+        }
+    }
+
+    /**
+     * Decides how to store a page from a sample of its rows.
+     */
+    private static Format classify(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int rowStep = Math.max(1, height / SAMPLE_ROWS);
+        int[] row = new int[width];
+        long samples = 0;
+        long colored = 0;
+        long midtones = 0;
+        for (int y = rowStep / 2; y < height; y += rowStep) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int pixel : row) {
+                int r = Color.red(pixel);
+                int g = Color.green(pixel);
+                int b = Color.blue(pixel);
+                int chroma = Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b));
+                if (chroma > COLOR_CHROMA_THRESHOLD) {
+                    colored++;
+                }
+                int luma = luma(pixel);
+                if (luma > MIDTONE_LOW && luma < MIDTONE_HIGH) {
+                    midtones++;
+                }
+                samples++;
+            }
+        }
+        if (samples == 0 || colored > samples * MAX_COLOR_FRACTION) {
+            return Format.PHOTO;
+        }
+        return midtones < samples * MAX_MIDTONE_FRACTION ? Format.BILEVEL : Format.GRAYSCALE;
+    }
+
+    /**
+     * Finds the luminance threshold that best separates a page into ink and paper.
+     */
+    private static int otsuThreshold(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int rowStep = Math.max(1, height / SAMPLE_ROWS);
+        int[] row = new int[width];
+        long[] histogram = new long[256];
+        long total = 0;
+        for (int y = rowStep / 2; y < height; y += rowStep) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int pixel : row) {
+                histogram[luma(pixel)]++;
+                total++;
+            }
+        }
+
+        double sum = 0;
+        for (int i = 0; i < 256; i++) {
+            sum += i * (double) histogram[i];
+        }
+        double backgroundSum = 0;
+        long backgroundCount = 0;
+        double bestVariance = -1;
+        int threshold = 128;
+        for (int t = 0; t < 256; t++) {
+            backgroundCount += histogram[t];
+            if (backgroundCount == 0) {
+                continue;
+            }
+            long foregroundCount = total - backgroundCount;
+            if (foregroundCount == 0) {
+                break;
+            }
+            backgroundSum += t * (double) histogram[t];
+            double backgroundMean = backgroundSum / backgroundCount;
+            double foregroundMean = (sum - backgroundSum) / foregroundCount;
+            double variance = (double) backgroundCount * foregroundCount
+                    * (backgroundMean - foregroundMean) * (backgroundMean - foregroundMean);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * Converts a bitmap to gray in place, one row at a time, and to black and white if a
+     * threshold is given.
+     */
+    private static void toGray(Bitmap bitmap, int threshold) {
+        int width = bitmap.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int luma = luma(row[x]);
+                if (threshold >= 0) {
+                    luma = luma > threshold ? 255 : 0;
+                }
+                row[x] = Color.rgb(luma, luma, luma);
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+    }
+
+    private static int luma(int pixel) {
+        return (Color.red(pixel) * 299 + Color.green(pixel) * 587 + Color.blue(pixel) * 114) / 1000;
+    }
+
+    /**
+     * The file to upload for a page.
+     */
+    public static class Result {
+        private final File file;
+        private final Format format;
+        private final String contentType;
+        private final String extension;
+        private final long originalBytes;
+        private final long transcodedBytes;
+
+        Result(File file, Format format, String contentType, String extension, long originalBytes,
+               long transcodedBytes) {
+            this.file = file;
+            this.format = format;
+            this.contentType = contentType;
+            this.extension = extension;
+            this.originalBytes = originalBytes;
+            this.transcodedBytes = transcodedBytes;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        /**
+         * @return The MIME type to upload the file with
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return The extension to name the uploaded file with
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return The size of the local image
+         */
+        public long getOriginalBytes() {
+            return originalBytes;
+        }
+
+        /**
+         * @return The size of the file to upload
+         */
+        public long getTranscodedBytes() {
+            return transcodedBytes;
+        }
+    }
+
+    /**
+     * The counters of a transcoder.
+     */
+    public static class Stats {
+        private final int pageCount;
+        private final int bilevelCount;
+        private final int grayscaleCount;
+        private final int photoCount;
+        private final long originalBytes;
+        private final long transcodedBytes;
+
+        Stats(int pageCount, int bilevelCount, int grayscaleCount, int photoCount, long originalBytes,
+              long transcodedBytes) {
+            this.pageCount = pageCount;
+            this.bilevelCount = bilevelCount;
+            this.grayscaleCount = grayscaleCount;
+            this.photoCount = photoCount;
+            this.originalBytes = originalBytes;
+            this.transcodedBytes = transcodedBytes;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        public int getBilevelCount() {
+            return bilevelCount;
+        }
+
+        public int getGrayscaleCount() {
+            return grayscaleCount;
+        }
+
+        public int getPhotoCount() {
+            return photoCount;
+        }
+
+        public long getOriginalBytes() {
+            return originalBytes;
+        }
+
+        public long getTranscodedBytes() {
+            return transcodedBytes;
+        }
+
+        /**
+         * @return How many times smaller the uploaded files are than the local ones
+         */
+        public double getCompressionRatio() {
+            return transcodedBytes > 0 ? originalBytes / (double) transcodedBytes : 1;
+        }
+    }
+}
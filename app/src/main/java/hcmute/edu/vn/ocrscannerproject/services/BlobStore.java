@@ -0,0 +1,282 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.BlobRefDao;
+
+/**
+ * Stores imported files by the SHA-256 digest of their content, so importing the same
+ * file twice keeps one copy. The digest is computed by the {@link ImportEngine} while the
+ * file is copied, and the file is placed at
+ * blobs/&lt;first two hex digits&gt;/&lt;digest&gt;.&lt;extension&gt;.
+ * Documents record the blobs they use in Room, and a blob is deleted once no document
+ * references it. Files imported in the last few minutes are kept even when unreferenced,
+ * since the document about to use them may not be saved yet; a sweep removes them later.
+ * All methods block and must be called off the main thread.
+ */
+public class BlobStore {
+    private static final String TAG = "BlobStore";
+    private static final String BLOB_DIR_NAME = "blobs";
+    private static final String TEMP_PREFIX = "import_";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ALGORITHM = "SHA-256";
+    private static final int DIGEST_LENGTH = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // How long a file nothing references yet is kept for the document that imported it
+    private static final long UNREFERENCED_GRACE_MS = 10L * 60 * 1000;
+
+    private static volatile BlobStore instance;
+
+    private final File blobDir;
+    private final BlobRefDao blobRefDao;
+    private final ImportEngine importEngine;
+
+    private BlobStore(Context context) {
+        this.importEngine = ImportEngine.getInstance(context);
+        this.blobDir = new File(context.getFilesDir(), BLOB_DIR_NAME);
+        this.blobRefDao = AppDatabase.getInstance(context).blobRefDao();
+    }
+
+    /**
+     * Gets the singleton instance of the store.
+     *
+     * @param context The application context
+     * @return The store instance
+     */
+    public static BlobStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (BlobStore.class) {
+                if (instance == null) {
+                    instance = new BlobStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Copies the content behind a Uri into the store. Images are stored with the extension
+     * of their actual type.
+     *
+     * @param uri The Uri to read
+     * @param extension The extension of the stored file if it is not a JPEG, PNG or WebP
+     *                  image, without the dot, or empty
+     * @return The stored file
+     * @throws IOException If the Uri cannot be read or the file cannot be written
+     */
+    public File importUri(Uri uri, String extension) throws IOException {
+        return importUri(uri, extension, null, null).getFile();
+    }
+
+    /**
+     * Copies the content behind a Uri into the store, hashing it on the way. Images are
+     * stored with the extension of their actual type, read from their header.
+     *
+     * @param uri The Uri to read
+     * @param extension The extension of the stored file if it is not a JPEG, PNG or WebP
+     *                  image, without the dot, or empty
+     * @param listener The listener to report the progress of the copy to, may be null
+     * @param signal The signal to cancel the copy with, may be null
+     * @return The stored file, which may have been stored before, with its digest and
+     *         image type
+     * @throws IOException If the Uri cannot be read or the file cannot be written
+     * @throws android.os.OperationCanceledException If the copy was cancelled
+     */
+    public ImportEngine.Result importUri(Uri uri, String extension, ImportEngine.ProgressListener listener,
+                                         CancellationSignal signal) throws IOException {
+        if (!blobDir.exists() && !blobDir.mkdirs()) {
+            throw new IOException("Could not create " + blobDir);
+        }
+        File temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, blobDir);
+        try {
+            ImportEngine.Result copied = importEngine.copy(uri, temp, listener, signal);
+            String imageExtension = copied.getImageExtension();
+            File blob = blobFile(copied.getDigest(), imageExtension != null ? imageExtension : extension);
+            synchronized (this) {
+                if (blob.exists()) {
+                    // Already stored; refresh it so a pending deletion keeps it
+                    blob.setLastModified(System.currentTimeMillis());
+                    return copied.withFile(blob);
+                }
+                File parent = blob.getParentFile();
+                if (!parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Could not create " + parent);
+                }
+                if (!temp.renameTo(blob)) {
+                    throw new IOException("Could not move " + temp + " to " + blob);
+                }
+            }
+            return copied.withFile(blob);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Gets the digest of a stored file from its path.
+     *
+     * @param path The path of a file
+     * @return The digest, or null if the file is not in the store
+     */
+    public String getDigest(String path) {
+        if (path == null) {
+            return null;
+        }
+        File file = new File(path);
+        File parent = file.getParentFile();
+        if (parent == null || !blobDir.equals(parent.getParentFile())) {
+            return null;
+        }
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        String digest = dot >= 0 ? name.substring(0, dot) : name;
+        return digest.length() == DIGEST_LENGTH ? digest : null;
+    }
+
+    /**
+     * Gets the digest of a file, from its name if it is in the store, else by hashing it.
+     *
+     * @param file The file
+     * @return The digest of its content
+     * @throws IOException If the file cannot be read
+     */
+    public String digestOf(File file) throws IOException {
+        String digest = getDigest(file.getAbsolutePath());
+        if (digest != null) {
+            return digest;
+        }
+        MessageDigest messageDigest = newDigest();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Records the stored files a document uses, replacing what it used before. Files the
+     * document no longer uses are deleted if no other document uses them.
+     *
+     * @param documentId The ID of the document
+     * @param paths The paths of the files of the document; files not in the store are ignored
+     */
+    public void retain(String documentId, List<String> paths) {
+        Set<String> digests = new HashSet<>();
+        if (paths != null) {
+            for (String path : paths) {
+                String digest = getDigest(path);
+                if (digest != null) {
+                    digests.add(digest);
+                }
+            }
+        }
+        deleteUnreferenced(blobRefDao.replaceRefs(documentId, digests));
+    }
+
+    /**
+     * Drops the references of a deleted document, deleting the files no document uses.
+     *
+     * @param documentId The ID of the document
+     */
+    public void release(String documentId) {
+        retain(documentId, null);
+    }
+
+    /**
+     * Deletes the files nothing references that were not imported in the last few minutes,
+     * such as those imported for documents that were never saved.
+     */
+    public void sweep() {
+        File[] shards = blobDir.listFiles();
+        if (shards == null) {
+            return;
+        }
+        Set<String> referenced = new HashSet<>(blobRefDao.getReferencedDigests());
+        long cutoff = System.currentTimeMillis() - UNREFERENCED_GRACE_MS;
+        int deleted = 0;
+        for (File shard : shards) {
+            File[] files = shard.listFiles();
+            if (files == null) {
+                // Temporary files sit in the top directory
+                if (shard.getName().endsWith(TEMP_SUFFIX) && shard.lastModified() < cutoff && shard.delete()) {
+                    deleted++;
+                }
+                continue;
+            }
+            for (File file : files) {
+                String digest = getDigest(file.getAbsolutePath());
+                if (digest != null && !referenced.contains(digest) && file.lastModified() < cutoff) {
+                    synchronized (this) {
+                        if (blobRefDao.countRefs(digest) == 0 && file.delete()) {
+                            deleted++;
+                        }
+                    }
+                }
+            }
+        }
+        if (deleted > 0) {
+            Log.d(TAG, "Swept " + deleted + " unreferenced files");
+        }
+    }
+
+    private void deleteUnreferenced(List<String> digests) {
+        long cutoff = System.currentTimeMillis() - UNREFERENCED_GRACE_MS;
+        for (String digest : digests) {
+            File[] files = new File(blobDir, digest.substring(0, 2)).listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!digest.equals(getDigest(file.getAbsolutePath()))) {
+                    continue;
+                }
+                synchronized (this) {
+                    // A file imported again just now is left for the sweep
+                    if (file.lastModified() < cutoff && blobRefDao.countRefs(digest) == 0 && !file.delete()) {
+                        Log.w(TAG, "Could not delete " + file);
+                    }
+                }
+            }
+        }
+    }
+
+    private File blobFile(String digest, String extension) {
+        String name = extension == null || extension.isEmpty() ? digest : digest + "." + extension;
+        return new File(new File(blobDir, digest.substring(0, 2)), name);
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
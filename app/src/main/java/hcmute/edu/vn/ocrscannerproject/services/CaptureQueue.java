@@ -0,0 +1,202 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import hcmute.edu.vn.ocrscannerproject.utils.JpegOrientationWriter;
+import hcmute.edu.vn.ocrscannerproject.utils.PerspectiveCorrector;
+
+/**
+ * Turns in-memory camera captures into page files on a background thread, so the shutter
+ * is free again as soon as the camera has delivered the JPEG. The bytes are copied out of
+ * the ImageProxy and it is closed straight away; a single worker then either flattens the
+ * page to its outline and encodes it upright, or writes the camera's JPEG once with its
+ * rotation recorded in the EXIF data. At most a fixed number of captures may be in flight:
+ * a slot is reserved before the picture is taken and freed when its file is written, so
+ * when the worker falls behind the caller is told to hold off instead of queuing without
+ * limit. Pages are written and reported in the order they were captured.
+ */
+public class CaptureQueue {
+    private static final String TAG = "CaptureQueue";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Captures that may be waiting or being written at once by default. */
+    public static final int DEFAULT_CAPACITY = 3;
+
+    private final ThreadPoolExecutor executor;
+    private final int capacity;
+    private final Semaphore slots;
+    private final Handler mainHandler;
+    private final int jpegQuality;
+
+    /**
+     * Callback for a queued capture, invoked on the main thread.
+     */
+    public interface CaptureCallback {
+        /**
+         * Called when the page file has been written.
+         *
+         * @param file The page file
+         */
+        void onPageSaved(File file);
+
+        /**
+         * Called when the page could not be written.
+         *
+         * @param e The exception that caused the failure
+         */
+        void onPageFailed(Exception e);
+    }
+
+    /**
+     * Creates a queue.
+     *
+     * @param capacity The number of captures that may be in flight at once
+     * @param jpegQuality The JPEG quality flattened pages are encoded at
+     */
+    public CaptureQueue(int capacity, int jpegQuality) {
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+        // Reservations keep the queue from filling; one worker keeps pages in order
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity));
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Reserves a slot for a capture about to be taken. Call on the thread that starts
+     * captures, and pair it with {@link #submit} or {@link #cancelReservation}.
+     *
+     * @return True if a slot was free; false if the pages before it are still being written
+     */
+    public boolean tryReserve() {
+        return !executor.isShutdown() && slots.tryAcquire();
+    }
+
+    /**
+     * Frees a reserved slot whose capture failed.
+     */
+    public void cancelReservation() {
+        slots.release();
+    }
+
+    /**
+     * @return True if captures are being taken, waiting or being written
+     */
+    public boolean hasPending() {
+        return slots.availablePermits() < capacity;
+    }
+
+    /**
+     * Takes a captured JPEG into a reserved slot and queues it to be written. Closes the
+     * image before returning, so the camera can reuse its buffer.
+     *
+     * @param image The captured image, in JPEG format
+     * @param outline The corners of the page normalized to the upright image, or null to
+     *                keep the whole frame
+     * @param output The file to write the page to
+     * @param callback The callback to report the result to
+     */
+    public void submit(ImageProxy image, float[] outline, File output, CaptureCallback callback) {
+        byte[] jpeg;
+        int rotation;
+        try {
+            rotation = image.getImageInfo().getRotationDegrees();
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            buffer.rewind();
+            jpeg = new byte[buffer.remaining()];
+            buffer.get(jpeg);
+        } finally {
+            image.close();
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    writePage(jpeg, rotation, outline, output);
+                    mainHandler.post(() -> callback.onPageSaved(output));
+                } catch (IOException | OutOfMemoryError e) {
+                    Log.e(TAG, "Error writing capture to " + output, e);
+                    Exception error = e instanceof IOException ? (IOException) e : new IOException(e);
+                    mainHandler.post(() -> callback.onPageFailed(error));
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            Log.w(TAG, "Queue closed, capture dropped");
+        }
+    }
+
+    /**
+     * Stops accepting captures. Pages already queued are still written.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void writePage(byte[] jpeg, int rotation, float[] outline, File output) throws IOException {
+        File temp = new File(output.getPath() + TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                if (outline == null || !writeFlattened(jpeg, rotation, outline, out)) {
+                    JpegOrientationWriter.write(jpeg, jpeg.length,
+                            JpegOrientationWriter.orientationForRotation(rotation), out);
+                }
+            }
+            if (!temp.renameTo(output)) {
+                throw new IOException("Could not move " + temp + " to " + output);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Encodes the page inside the outline, upright.
+     *
+     * @return False if the outline could not be applied and nothing was written
+     */
+    private boolean writeFlattened(byte[] jpeg, int rotation, float[] outline, OutputStream out)
+            throws IOException {
+        Bitmap source = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        if (source == null) {
+            throw new IOException("Could not decode capture");
+        }
+        Bitmap flattened;
+        try {
+            flattened = PerspectiveCorrector.warp(source, rotation, outline);
+        } finally {
+            source.recycle();
+        }
+        if (flattened == null) {
+            return false;
+        }
+        try {
+            if (!flattened.compress(Bitmap.CompressFormat.JPEG, jpegQuality, out)) {
+                throw new IOException("Could not encode page");
+            }
+            return true;
+        } finally {
+            flattened.recycle();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import hcmute.edu.vn.ocrscannerproject.utils.ImageHeaderParser;
+
+/**
+ * Copies imported files into app storage through NIO channels. Sources backed by a regular
+ * file, whether a file:// Uri or a content:// Uri the provider opens as a file descriptor,
+ * are memory-mapped in large chunks; each chunk is hashed and written to the destination
+ * from the same mapped pages, so the file is read once and never copied through a Java
+ * array. Other sources, such as pipes and streams, are read into a large direct buffer.
+ * The digest of the content and the type of images are computed in the same pass. Copies report progress and can be cancelled between chunks.
+ */
+public class ImportEngine {
+    private static final String TAG = "ImportEngine";
+    private static final String ALGORITHM = "SHA-256";
+
+    // Bytes of a regular file mapped and written at a time
+    private static final long MAP_CHUNK_SIZE = 8L * 1024 * 1024;
+    // Size of the direct buffer sources that cannot be mapped are read through
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+    // Bytes kept from the start of the file to read the image header from
+    private static final int HEADER_SIZE = 128 * 1024;
+
+    private static volatile ImportEngine instance;
+
+    private final ContentResolver contentResolver;
+
+    /**
+     * Listener for the progress of a copy, called on the copying thread after each chunk.
+     */
+    public interface ProgressListener {
+        /**
+         * Called when another chunk has been written.
+         *
+         * @param bytesCopied The bytes written so far
+         * @param totalBytes The size of the source, or -1 if it is not known
+         */
+        void onProgress(long bytesCopied, long totalBytes);
+    }
+
+    /**
+     * The outcome of a copy.
+     */
+    public static class Result {
+        private final File file;
+        private final String digest;
+        private final long size;
+        private final ImageHeaderParser.Header header;
+
+        Result(File file, String digest, long size, ImageHeaderParser.Header header) {
+            this.file = file;
+            this.digest = digest;
+            this.size = size;
+            this.header = header;
+        }
+
+        /**
+         * @return A copy of this result for the file the copy was moved to
+         */
+        public Result withFile(File file) {
+            return new Result(file, digest, size, header);
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return The SHA-256 digest of the content, in hex
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return The usual extension of the image type, or null if the content is not a
+         *         JPEG, PNG or WebP image
+         */
+        public String getImageExtension() {
+            return header != null ? header.getExtension() : null;
+        }
+    }
+
+    private ImportEngine(Context context) {
+        this.contentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Gets the singleton instance of the engine.
+     *
+     * @param context The application context
+     * @return The engine instance
+     */
+    public static ImportEngine getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImportEngine.class) {
+                if (instance == null) {
+                    instance = new ImportEngine(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Copies the content behind a Uri to a file. Blocks, so it must be called off the main
+     * thread. The destination is deleted if the copy fails or is cancelled.
+     *
+     * @param source The file:// or content:// Uri to read
+     * @param destination The file to write, replaced if it exists
+     * @param listener The listener to report progress to, may be null
+     * @param signal The signal to cancel the copy with, may be null
+     * @return The digest and image type of the copied content
+     * @throws IOException If the source cannot be read or the destination cannot be written
+     * @throws android.os.OperationCanceledException If the copy was cancelled
+     */
+    public Result copy(Uri source, File destination, ProgressListener listener,
+                       CancellationSignal signal) throws IOException {
+        boolean copied = false;
+        try {
+            Result result;
+            if (ContentResolver.SCHEME_FILE.equals(source.getScheme())) {
+                try (FileInputStream in = new FileInputStream(source.getPath())) {
+                    result = copyFile(in.getChannel(), destination, listener, signal);
+                }
+            } else {
+                result = copyContent(source, destination, listener, signal);
+            }
+            copied = true;
+            return result;
+        } finally {
+            if (!copied) {
+                destination.delete();
+            }
+        }
+    }
+
+    private Result copyContent(Uri source, File destination, ProgressListener listener,
+                               CancellationSignal signal) throws IOException {
+        ParcelFileDescriptor descriptor;
+        try {
+            descriptor = contentResolver.openFileDescriptor(source, "r", signal);
+        } catch (FileNotFoundException | SecurityException e) {
+            // Some providers only serve streams
+            Log.d(TAG, "No file descriptor for " + source + ", reading it as a stream");
+            descriptor = null;
+        }
+        if (descriptor == null) {
+            try (InputStream in = contentResolver.openInputStream(source)) {
+                if (in == null) {
+                    throw new IOException("Cannot open " + source);
+                }
+                return copyStream(Channels.newChannel(in), -1, destination, listener, signal);
+            }
+        }
+        try (ParcelFileDescriptor pfd = descriptor;
+             FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            long size = pfd.getStatSize();
+            // A negative size means a pipe or socket, which cannot be mapped
+            return size >= 0
+                    ? copyFile(in.getChannel(), destination, listener, signal)
+                    : copyStream(in.getChannel(), -1, destination, listener, signal);
+        }
+    }
+
+    /**
+     * Copies a regular file by mapping it chunk by chunk.
+     */
+    private Result copyFile(FileChannel in, File destination, ProgressListener listener,
+                            CancellationSignal signal) throws IOException {
+        MessageDigest digest = newDigest();
+        HeaderCapture header = new HeaderCapture();
+        long size = in.size();
+        long position = 0;
+        try (FileOutputStream outStream = new FileOutputStream(destination);
+             FileChannel out = outStream.getChannel()) {
+            while (position < size) {
+                throwIfCanceled(signal);
+                long length = Math.min(MAP_CHUNK_SIZE, size - position);
+                MappedByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                header.capture(chunk);
+                digest.update(chunk.duplicate());
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                position += length;
+                if (listener != null) {
+                    listener.onProgress(position, size);
+                }
+            }
+        }
+        return new Result(destination, toHex(digest.digest()), size, header.parse());
+    }
+
+    /**
+     * Copies a source that cannot be mapped through a direct buffer.
+     */
+    private Result copyStream(ReadableByteChannel in, long totalBytes, File destination,
+                              ProgressListener listener, CancellationSignal signal) throws IOException {
+        MessageDigest digest = newDigest();
+        HeaderCapture header = new HeaderCapture();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        long copied = 0;
+        try (FileOutputStream outStream = new FileOutputStream(destination);
+             FileChannel out = outStream.getChannel()) {
+            while (true) {
+                throwIfCanceled(signal);
+                // Fill the buffer before writing, so small reads do not turn into small writes
+                int read;
+                do {
+                    read = in.read(buffer);
+                } while (read != -1 && buffer.hasRemaining());
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    header.capture(buffer);
+                    digest.update(buffer.duplicate());
+                    copied += buffer.remaining();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    if (listener != null) {
+                        listener.onProgress(copied, totalBytes);
+                    }
+                }
+                buffer.clear();
+                if (read == -1) {
+                    break;
+                }
+            }
+        }
+        return new Result(destination, toHex(digest.digest()), copied, header.parse());
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Keeps the first bytes that pass through a copy, to read the image header from.
+     */
+    private static class HeaderCapture {
+        private final byte[] bytes = new byte[HEADER_SIZE];
+        private int length;
+
+        void capture(ByteBuffer chunk) {
+            int count = Math.min(bytes.length - length, chunk.remaining());
+            if (count > 0) {
+                chunk.duplicate().get(bytes, length, count);
+                length += count;
+            }
+        }
+
+        ImageHeaderParser.Header parse() {
+            return ImageHeaderParser.parse(bytes, length);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk-backed cache of OCR results, keyed by a SHA-256 hash of the image file content.
+ * Results are stored in a compact binary form so that re-opening a document can restore
+ * the text overlay without running text recognition again.
+ */
+public class OCRResultCache {
+    private static final String TAG = "OCRResultCache";
+    private static final String CACHE_DIR_NAME = "ocr_results";
+    private static final String FILE_SUFFIX = ".ocr";
+
+    // "OCRC" followed by the record format version
+    private static final int MAGIC = 0x4F435243;
+    private static final int FORMAT_VERSION = 2;
+
+    // Total size of cached records before the least recently used ones are evicted
+    private static final long MAX_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_MEMOIZED_KEYS = 256;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile OCRResultCache instance;
+
+    private final File cacheDir;
+    private final Map<String, String> keyMemo;
+
+    private OCRResultCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+        this.keyMemo = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_MEMOIZED_KEYS;
+            }
+        });
+    }
+
+    /**
+     * Gets the singleton instance of the cache.
+     *
+     * @param context The application context
+     * @return The cache instance
+     */
+    public static OCRResultCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (OCRResultCache.class) {
+                if (instance == null) {
+                    File dir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME);
+                    instance = new OCRResultCache(dir);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Looks up the cached OCR result for an image. Must not be called on the main thread,
+     * since it may hash the image file.
+     *
+     * @param imagePath The path of the image file
+     * @return The cached result, or null if there is none
+     */
+    public OCRService.OCRResult get(String imagePath) {
+        File entry = entryFor(imagePath);
+        if (entry == null || !entry.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(entry)))) {
+            OCRService.OCRResult result = readResult(in, entry.length());
+            // Touch the entry so eviction keeps recently used results
+            entry.setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable cache entry " + entry.getName() + ": " + e.getMessage());
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the OCR result for an image. Must not be called on the main thread.
+     *
+     * @param imagePath The path of the image file the result was computed from
+     * @param result The OCR result
+     */
+    public void put(String imagePath, OCRService.OCRResult result) {
+        if (result == null) {
+            return;
+        }
+        File entry = entryFor(imagePath);
+        if (entry == null) {
+            return;
+        }
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Could not create cache directory " + cacheDir);
+            return;
+        }
+
+        // Write to a temporary file first so readers never see a partial record
+        File temp = new File(cacheDir, entry.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            writeResult(out, result);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing cache entry for " + imagePath, e);
+            temp.delete();
+            return;
+        }
+
+        if (!temp.renameTo(entry)) {
+            temp.delete();
+            return;
+        }
+        trimToSize();
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear() {
+        keyMemo.clear();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Computes the cache key for an image, which is the SHA-256 hash of its content.
+     * Hashes are memoized per path, size and modification time so that an unchanged file
+     * is only read once per process.
+     *
+     * @param imagePath The path of the image file
+     * @return The hex encoded hash, or null if the file cannot be read
+     */
+    public String computeKey(String imagePath) {
+        if (imagePath == null || imagePath.startsWith("content://")) {
+            return null;
+        }
+        File file = new File(imagePath);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        String memoKey = imagePath + '|' + file.length() + '|' + file.lastModified();
+        String cached = keyMemo.get(memoKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            String key = toHex(digest.digest());
+            keyMemo.put(memoKey, key);
+            return key;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.e(TAG, "Error hashing " + imagePath, e);
+            return null;
+        }
+    }
+
+    private File entryFor(String imagePath) {
+        String key = computeKey(imagePath);
+        return key != null ? new File(cacheDir, key + FILE_SUFFIX) : null;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits in MAX_CACHE_BYTES.
+     */
+    private void trimToSize() {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * Serializes an OCR result. Coordinates are written as variable-length integers,
+     * with corner points stored relative to the top-left of their bounding box.
+     */
+    static void writeResult(DataOutputStream out, OCRService.OCRResult result) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, result.getText());
+
+        List<OCRService.TextBlock> blocks = result.getBlocks();
+        writeVarInt(out, blocks.size());
+        for (OCRService.TextBlock block : blocks) {
+            writeString(out, block.getText());
+            Rect box = writeRect(out, block.getBoundingBox());
+            writePoints(out, block.getCornerPoints(), box);
+
+            List<OCRService.TextLine> lines = block.getLines();
+            writeVarInt(out, lines.size());
+            for (OCRService.TextLine line : lines) {
+                writeString(out, line.getText());
+                Rect lineBox = writeRect(out, line.getBoundingBox());
+                writePoints(out, line.getCornerPoints(), lineBox);
+
+                List<OCRService.TextElement> elements = line.getElements();
+                writeVarInt(out, elements.size());
+                for (OCRService.TextElement element : elements) {
+                    writeString(out, element.getText());
+                    Rect elementBox = writeRect(out, element.getBoundingBox());
+                    writePoints(out, element.getCornerPoints(), elementBox);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deserializes an OCR result written by {@link #writeResult}. Every count and length
+     * is checked against the size of the entry before anything is allocated for it, so a
+     * truncated or corrupt entry fails with an IOException.
+     *
+     * @param in The stream to read from
+     * @param limit The size of the entry in bytes
+     */
+    static OCRService.OCRResult readResult(DataInputStream in, long limit) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Bad magic");
+        }
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + version);
+        }
+        String text = readString(in, limit);
+
+        int blockCount = readCount(in, limit);
+        List<OCRService.TextBlock> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            String blockText = readString(in, limit);
+            Rect box = readRect(in);
+            Point[] corners = readPoints(in, box, limit);
+
+            int lineCount = readCount(in, limit);
+            List<OCRService.TextLine> lines = new ArrayList<>(lineCount);
+            for (int j = 0; j < lineCount; j++) {
+                String lineText = readString(in, limit);
+                Rect lineBox = readRect(in);
+                Point[] lineCorners = readPoints(in, lineBox, limit);
+
+                int elementCount = readCount(in, limit);
+                List<OCRService.TextElement> elements = new ArrayList<>(elementCount);
+                for (int k = 0; k < elementCount; k++) {
+                    String elementText = readString(in, limit);
+                    Rect elementBox = readRect(in);
+                    Point[] elementCorners = readPoints(in, elementBox, limit);
+                    elements.add(new OCRService.TextElement(elementText, elementBox, elementCorners));
+                }
+                lines.add(new OCRService.TextLine(lineText, lineBox, lineCorners, elements));
+            }
+            blocks.add(new OCRService.TextBlock(blockText, box, corners, lines));
+        }
+        return new OCRService.OCRResult(text, blocks);
+    }
+
+    private static Rect writeRect(DataOutputStream out, Rect rect) throws IOException {
+        if (rect == null) {
+            out.writeBoolean(false);
+            return null;
+        }
+        out.writeBoolean(true);
+        writeVarInt(out, zigZag(rect.left));
+        writeVarInt(out, zigZag(rect.top));
+        writeVarInt(out, zigZag(rect.width()));
+        writeVarInt(out, zigZag(rect.height()));
+        return rect;
+    }
+
+    private static Rect readRect(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int left = unZigZag(readVarInt(in));
+        int top = unZigZag(readVarInt(in));
+        int width = unZigZag(readVarInt(in));
+        int height = unZigZag(readVarInt(in));
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    private static void writePoints(DataOutputStream out, Point[] points, Rect origin) throws IOException {
+        int count = points != null ? points.length : 0;
+        writeVarInt(out, count);
+        int originX = origin != null ? origin.left : 0;
+        int originY = origin != null ? origin.top : 0;
+        for (int i = 0; i < count; i++) {
+            writeVarInt(out, zigZag(points[i].x - originX));
+            writeVarInt(out, zigZag(points[i].y - originY));
+        }
+    }
+
+    private static Point[] readPoints(DataInputStream in, Rect origin, long limit) throws IOException {
+        // Each point takes at least two bytes
+        int count = readCount(in, limit / 2);
+        int originX = origin != null ? origin.left : 0;
+        int originY = origin != null ? origin.top : 0;
+        Point[] points = new Point[count];
+        for (int i = 0; i < count; i++) {
+            int x = unZigZag(readVarInt(in)) + originX;
+            int y = unZigZag(readVarInt(in)) + originY;
+            points[i] = new Point(x, y);
+        }
+        return points;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long limit) throws IOException {
+        int length = readCount(in, limit);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a count or length, which cannot be more than the bytes the entry holds.
+     */
+    private static int readCount(DataInputStream in, long limit) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0 || count > limit) {
+            throw new IOException("Count " + (count & 0xFFFFFFFFL) + " out of range");
+        }
+        return count;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
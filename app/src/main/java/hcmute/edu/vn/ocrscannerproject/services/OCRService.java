@@ -1,15 +1,16 @@
 package hcmute.edu.vn.ocrscannerproject.services;
 
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.text.Text;
@@ -19,7 +20,19 @@ import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
+import hcmute.edu.vn.ocrscannerproject.utils.DocumentPreprocessor;
+import hcmute.edu.vn.ocrscannerproject.utils.OCRResolutionPlanner;
 
 /**
  * Service for performing OCR (Optical Character Recognition) on images.
@@ -27,18 +40,54 @@ import java.util.List;
 public class OCRService {
     private static final String TAG = "OCRService";
     
+    // Longest edge a page is downscaled to before batch recognition
+    public static final int MAX_RECOGNITION_DIMENSION = 2048;
+    // Decoded pages allowed to be held in memory at once during batch recognition
+    private static final int MAX_IN_FLIGHT_BITMAPS = 2;
+    private static final int BATCH_WORKER_COUNT =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Probe or planned pass, a pass at the scale it called for, and one at full size
+    private static final int MAX_RECOGNITION_PASSES = 3;
+    // Rows of pixels copied between a bitmap and the preprocessor at a time
+    private static final int PREPROCESS_BAND_ROWS = 64;
+    
     private final TextRecognizer textRecognizer;
+    private final OCRResultCache resultCache;
+    private final BitmapDecoder bitmapDecoder;
+    private final ExecutorService batchExecutor;
+    private final Semaphore bitmapPermits;
+    private final Handler mainHandler;
+    private final OCRResolutionPlanner resolutionPlanner;
     
     /**
      * Initializes the OCR service.
      */
     public OCRService() {
+        this(null, null);
+    }
+    
+    /**
+     * Initializes the OCR service with a persistent result cache.
+     * 
+     * @param resultCache The cache used by {@link #recognizeBatch}, or null to always run
+     *                    recognition
+     * @param bitmapDecoder The decoder used to load pages for {@link #recognizeBatch}
+     */
+    public OCRService(OCRResultCache resultCache, BitmapDecoder bitmapDecoder) {
         // Create an instance of the TextRecognizer with Latin script
         textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        this.resultCache = resultCache;
+        this.bitmapDecoder = bitmapDecoder;
+        this.batchExecutor = Executors.newFixedThreadPool(BATCH_WORKER_COUNT);
+        this.bitmapPermits = new Semaphore(MAX_IN_FLIGHT_BITMAPS);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.resolutionPlanner = new OCRResolutionPlanner();
     }
     
     /**
-     * Recognizes text in an image.
+     * Recognizes text in an image at the smallest resolution that keeps its text readable.
+     * Bounding boxes are reported in the coordinate space of the bitmap, and the callback
+     * is invoked on the main thread.
      * 
      * @param bitmap The bitmap image to process
      * @param callback The callback to receive the result
@@ -49,51 +98,378 @@ public class OCRService {
             return;
         }
         
-        // Create an InputImage from the bitmap
-        InputImage image = InputImage.fromBitmap(bitmap, 0);
+        try {
+            // Planning may take more than one recognition pass, so it blocks on a worker
+            batchExecutor.execute(() -> {
+                try {
+                    OCRResult result = recognizePlanned(bitmap);
+                    mainHandler.post(() -> callback.onSuccess(result));
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    Log.e(TAG, "Error processing image with OCR", cause);
+                    mainHandler.post(() -> callback.onError(cause));
+                } catch (InterruptedException e) {
+                    // Interrupted by close(); the caller still gets an answer
+                    Thread.currentThread().interrupt();
+                    mainHandler.post(() -> callback.onError(new IllegalStateException("OCR service is closed", e)));
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "Error processing image with OCR", e);
+                    Exception error = e instanceof RuntimeException ? (RuntimeException) e : new IOException(e);
+                    mainHandler.post(() -> callback.onError(error));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            callback.onError(new IllegalStateException("OCR service is closed", e));
+        }
+    }
+    
+    /**
+     * Recognizes text in a list of image files as a pipeline: pages are decoded, downscaled,
+     * straightened, binarized and recognized on a bounded worker pool, so decoding of one page
+     * overlaps recognition of another. The files themselves are not changed. At most
+     * {@value #MAX_IN_FLIGHT_BITMAPS} decoded pages are held in memory at once. Results are
+     * reported on the main thread in page order, in the coordinate space of the original
+     * image files.
+     * 
+     * @param imagePaths The paths of the image files, in page order
+     * @param callback The callback to receive per-page results
+     * @return A handle that can be used to cancel the remaining pages
+     */
+    public BatchHandle recognizeBatch(List<String> imagePaths, BatchCallback callback) {
+        if (bitmapDecoder == null) {
+            throw new IllegalStateException("Batch recognition requires a BitmapDecoder");
+        }
+        List<String> paths = new ArrayList<>(imagePaths);
+        BatchHandle handle = new BatchHandle(paths.size(), callback);
+        if (paths.isEmpty()) {
+            mainHandler.post(handle::finish);
+            return handle;
+        }
         
-        // Process the image
-        textRecognizer.process(image)
-                .addOnSuccessListener(new OnSuccessListener<Text>() {
-                    @Override
-                    public void onSuccess(Text text) {
-                        // Extract the recognized text
-                        String recognizedText = text.getText();
-                        List<TextBlock> textBlocks = new ArrayList<>();
-                        
-                        // Process the blocks of text
-                        for (Text.TextBlock block : text.getTextBlocks()) {
-                            Rect boundingBox = block.getBoundingBox();
-                            Point[] cornerPoints = convertToPointArray(block.getCornerPoints());
-                            String blockText = block.getText();
-                            List<TextLine> textLines = new ArrayList<>();
-                            
-                            // Process the lines in each block
-                            for (Text.Line line : block.getLines()) {
-                                Rect lineBoundingBox = line.getBoundingBox();
-                                Point[] lineCornerPoints = convertToPointArray(line.getCornerPoints());
-                                String lineText = line.getText();
-                                
-                                textLines.add(new TextLine(lineText, lineBoundingBox, lineCornerPoints));
-                            }
-                            
-                            textBlocks.add(new TextBlock(blockText, boundingBox, cornerPoints, textLines));
-                        }
-                        
-                        // Create the result
-                        OCRResult result = new OCRResult(recognizedText, textBlocks);
-                        
-                        // Invoke the callback
-                        callback.onSuccess(result);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        Log.e(TAG, "Error processing image with OCR", e);
-                        callback.onError(e);
-                    }
-                });
+        try {
+            synchronized (handle.futures) {
+                for (int i = 0; i < paths.size(); i++) {
+                    final int pageIndex = i;
+                    final String imagePath = paths.get(i);
+                    handle.futures.add(batchExecutor.submit(() -> recognizePage(handle, pageIndex, imagePath)));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Service closed, batch not started");
+            handle.cancel();
+        }
+        return handle;
+    }
+    
+    /**
+     * Runs one page of a batch on a worker thread.
+     */
+    private void recognizePage(BatchHandle handle, int pageIndex, String imagePath) {
+        if (handle.isCancelled()) {
+            return;
+        }
+        
+        // A cached result needs no bitmap, so check before taking a permit
+        if (resultCache != null) {
+            OCRResult cached = null;
+            try {
+                cached = resultCache.get(imagePath);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Error reading cached result for " + imagePath, e);
+            }
+            if (cached != null) {
+                handle.post(pageIndex, cached, null);
+                return;
+            }
+        }
+        
+        try {
+            bitmapPermits.acquire();
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for memory to free up
+            return;
+        }
+        
+        Bitmap bitmap = null;
+        try {
+            if (handle.isCancelled()) {
+                return;
+            }
+            
+            BitmapDecoder.SampledBitmap sampled =
+                    bitmapDecoder.decodeWithin(imagePath, MAX_RECOGNITION_DIMENSION);
+            if (sampled == null) {
+                handle.post(pageIndex, null, new IOException("Failed to decode " + imagePath));
+                return;
+            }
+            bitmap = sampled.getBitmap();
+            
+            // Recognize a straightened black-and-white copy, leaving the page file untouched
+            double[] skew = new double[1];
+            Bitmap cleaned = cleanForRecognition(bitmap, skew);
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            bitmapDecoder.release(bitmap);
+            bitmap = null;
+            OCRResult result;
+            try {
+                result = recognizePlanned(cleaned);
+            } finally {
+                cleaned.recycle();
+            }
+            
+            // Turn the positions back by the skew and scale them up to the page file
+            Matrix toPage = new Matrix();
+            toPage.setRotate((float) skew[0], (width - 1) / 2f, (height - 1) / 2f);
+            toPage.postScale(sampled.getSampleSize(), sampled.getSampleSize());
+            result = mapResult(result, toPage);
+            if (resultCache != null) {
+                try {
+                    resultCache.put(imagePath, result);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Error caching result for " + imagePath, e);
+                }
+            }
+            handle.post(pageIndex, result, null);
+        } catch (ExecutionException e) {
+            Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            Log.e(TAG, "Error processing page " + pageIndex + " with OCR", cause);
+            handle.post(pageIndex, null, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            // Every page must be posted, or the pages after it are held back for good
+            Log.e(TAG, "Error processing page " + pageIndex + " with OCR", e);
+            Exception error = e instanceof RuntimeException ? (RuntimeException) e : new IOException(e);
+            handle.post(pageIndex, null, error);
+        } finally {
+            // Recognition is done with the pixels, let the next decode reuse them
+            bitmapDecoder.release(bitmap);
+            bitmapPermits.release();
+        }
+    }
+    
+    /**
+     * Converts a page to gray, then straightens and binarizes it for recognition. Pixels
+     * are copied a band of rows at a time, so only one band of ARGB pixels is held besides
+     * the bitmaps.
+     * 
+     * @param bitmap The page; not changed
+     * @param appliedSkew Receives in its first element the angle the page was straightened by
+     * @return The cleaned page, the size of the bitmap, which the caller must recycle
+     */
+    private static Bitmap cleanForRecognition(Bitmap bitmap, double[] appliedSkew) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        byte[] gray = new byte[width * height];
+        int[] band = new int[width * PREPROCESS_BAND_ROWS];
+        for (int y = 0; y < height; y += PREPROCESS_BAND_ROWS) {
+            int rows = Math.min(PREPROCESS_BAND_ROWS, height - y);
+            bitmap.getPixels(band, 0, width, 0, y, width, rows);
+            DocumentPreprocessor.toGray(band, gray, y * width, width * rows);
+        }
+        
+        DocumentPreprocessor.GrayImage page = new DocumentPreprocessor()
+                .process(new DocumentPreprocessor.GrayImage(gray, width, height), appliedSkew);
+        
+        // Black and white fits in RGB_565 exactly, at half the memory of ARGB_8888
+        Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        byte[] pixels = page.getPixels();
+        for (int y = 0; y < height; y += PREPROCESS_BAND_ROWS) {
+            int rows = Math.min(PREPROCESS_BAND_ROWS, height - y);
+            for (int i = 0; i < width * rows; i++) {
+                int value = pixels[y * width + i] & 0xFF;
+                band[i] = 0xFF000000 | (value << 16) | (value << 8) | value;
+            }
+            output.setPixels(band, 0, width, 0, y, width, rows);
+        }
+        return output;
+    }
+    
+    /**
+     * Recognizes a bitmap at the smallest resolution that keeps its text readable, blocking
+     * until done. The first pass runs at the scale planned from the pages before it, or at
+     * a low probe resolution; if the lines it finds are too small to trust, the bitmap is
+     * recognized again at the scale they call for, and at full size as a last resort.
+     * Must be called off the main thread.
+     * 
+     * @param bitmap The bitmap to recognize
+     * @return The result, in the coordinate space of the bitmap
+     * @throws ExecutionException If recognition fails
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    private OCRResult recognizePlanned(Bitmap bitmap) throws ExecutionException, InterruptedException {
+        int longEdge = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        float scale = resolutionPlanner.planFromPrior(longEdge);
+        if (scale == OCRResolutionPlanner.UNPLANNED) {
+            scale = OCRResolutionPlanner.probeScale(longEdge);
+        }
+        
+        for (int pass = 1; ; pass++) {
+            OCRResult result = recognizeAt(bitmap, scale);
+            float[] heights = lineHeights(result);
+            float needed = resolutionPlanner.plan(heights, heights.length, scale, longEdge);
+            if (OCRResolutionPlanner.isSufficient(scale, needed)) {
+                return scaleResult(result, 1f / scale);
+            }
+            Log.d(TAG, "Text too small at scale " + scale + ", recognizing again at " + needed);
+            // A page that still asks for more after a planned pass is read at full size
+            scale = pass < MAX_RECOGNITION_PASSES - 1 ? needed : 1f;
+        }
+    }
+    
+    /**
+     * Runs one recognition pass over a scaled copy of a bitmap.
+     * 
+     * @param bitmap The bitmap to recognize
+     * @param scale The scale to recognize it at, 1 for the bitmap itself
+     * @return The result, in the coordinate space of the scaled copy
+     */
+    private OCRResult recognizeAt(Bitmap bitmap, float scale) throws ExecutionException, InterruptedException {
+        Bitmap scaled = bitmap;
+        if (scale < 1f) {
+            scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        }
+        try {
+            return fromText(Tasks.await(textRecognizer.process(InputImage.fromBitmap(scaled, 0))));
+        } finally {
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+        }
+    }
+    
+    /**
+     * Gets the height of every line in a result, measured across the line so that a
+     * slanted line is not taken for a tall one.
+     * 
+     * @param result The result
+     * @return The line heights in pixels
+     */
+    private static float[] lineHeights(OCRResult result) {
+        int count = 0;
+        for (TextBlock block : result.getBlocks()) {
+            count += block.getLines().size();
+        }
+        float[] heights = new float[count];
+        int i = 0;
+        for (TextBlock block : result.getBlocks()) {
+            for (TextLine line : block.getLines()) {
+                Point[] corners = line.getCornerPoints();
+                if (corners.length == 4) {
+                    // Corners run clockwise from the top left
+                    heights[i++] = (float) Math.hypot(corners[3].x - corners[0].x, corners[3].y - corners[0].y);
+                } else if (line.getBoundingBox() != null) {
+                    heights[i++] = line.getBoundingBox().height();
+                }
+            }
+        }
+        return i == count ? heights : Arrays.copyOf(heights, i);
+    }
+    
+    /**
+     * Scales the coordinates of a result recognized on a resized image back to the
+     * coordinate space of the original image.
+     * 
+     * @param result The result to scale
+     * @param factor The factor the image was downscaled by
+     * @return The scaled result
+     */
+    private static OCRResult scaleResult(OCRResult result, float factor) {
+        if (factor == 1f) {
+            return result;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale(factor, factor);
+        return mapResult(result, matrix);
+    }
+    
+    /**
+     * Maps the coordinates of a result into another coordinate space. Bounding boxes become
+     * the bounds of the mapped boxes.
+     * 
+     * @param result The result to map
+     * @param matrix The transform from the result's coordinate space to the new one
+     * @return The mapped result
+     */
+    private static OCRResult mapResult(OCRResult result, Matrix matrix) {
+        if (matrix.isIdentity()) {
+            return result;
+        }
+        
+        List<TextBlock> blocks = new ArrayList<>(result.getBlocks().size());
+        for (TextBlock block : result.getBlocks()) {
+            List<TextLine> lines = new ArrayList<>(block.getLines().size());
+            for (TextLine line : block.getLines()) {
+                List<TextElement> elements = new ArrayList<>(line.getElements().size());
+                for (TextElement element : line.getElements()) {
+                    elements.add(new TextElement(element.getText(), mapRect(element.getBoundingBox(), matrix),
+                            mapPoints(element.getCornerPoints(), matrix)));
+                }
+                lines.add(new TextLine(line.getText(), mapRect(line.getBoundingBox(), matrix),
+                        mapPoints(line.getCornerPoints(), matrix), elements));
+            }
+            blocks.add(new TextBlock(block.getText(), mapRect(block.getBoundingBox(), matrix),
+                    mapPoints(block.getCornerPoints(), matrix), lines));
+        }
+        return new OCRResult(result.getText(), blocks);
+    }
+    
+    private static Rect mapRect(Rect rect, Matrix matrix) {
+        if (rect == null) {
+            return null;
+        }
+        RectF mapped = new RectF(rect);
+        matrix.mapRect(mapped);
+        return new Rect(Math.round(mapped.left), Math.round(mapped.top),
+                Math.round(mapped.right), Math.round(mapped.bottom));
+    }
+    
+    private static Point[] mapPoints(Point[] points, Matrix matrix) {
+        float[] coordinates = new float[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            coordinates[2 * i] = points[i].x;
+            coordinates[2 * i + 1] = points[i].y;
+        }
+        matrix.mapPoints(coordinates);
+        Point[] mapped = new Point[points.length];
+        for (int i = 0; i < points.length; i++) {
+            mapped[i] = new Point(Math.round(coordinates[2 * i]), Math.round(coordinates[2 * i + 1]));
+        }
+        return mapped;
+    }
+    
+    /**
+     * Converts an ML Kit recognition result into an OCRResult.
+     * 
+     * @param text The ML Kit result
+     * @return The converted result
+     */
+    public static OCRResult fromText(Text text) {
+        List<TextBlock> textBlocks = new ArrayList<>();
+        
+        // Process the blocks of text
+        for (Text.TextBlock block : text.getTextBlocks()) {
+            List<TextLine> textLines = new ArrayList<>();
+            
+            // Process the lines in each block
+            for (Text.Line line : block.getLines()) {
+                List<TextElement> textElements = new ArrayList<>();
+                for (Text.Element element : line.getElements()) {
+                    textElements.add(new TextElement(element.getText(), element.getBoundingBox(),
+                            convertToPointArray(element.getCornerPoints())));
+                }
+                textLines.add(new TextLine(line.getText(), line.getBoundingBox(),
+                        convertToPointArray(line.getCornerPoints()), textElements));
+            }
+            
+            textBlocks.add(new TextBlock(block.getText(), block.getBoundingBox(),
+                    convertToPointArray(block.getCornerPoints()), textLines));
+        }
+        
+        return new OCRResult(text.getText(), textBlocks);
     }
     
     /**
@@ -120,6 +496,8 @@ public class OCRService {
      */
     public void close() {
         textRecognizer.close();
+        // Batch pages still running would only fail against the closed recognizer
+        batchExecutor.shutdownNow();
     }
     
     /**
@@ -128,7 +506,7 @@ public class OCRService {
      * @param cornerPoints The array of corner points
      * @return An array of Point objects
      */
-    private Point[] convertToPointArray(android.graphics.Point[] cornerPoints) {
+    private static Point[] convertToPointArray(android.graphics.Point[] cornerPoints) {
         if (cornerPoints == null) {
             return new Point[0];
         }
@@ -160,6 +538,112 @@ public class OCRService {
         void onError(Exception e);
     }
     
+    /**
+     * Callback interface for batch OCR results. All methods are called on the main thread,
+     * in page order, and are not called after the batch is cancelled.
+     */
+    public interface BatchCallback {
+        /**
+         * Called when a page has been recognized.
+         * 
+         * @param pageIndex The index of the page in the batch
+         * @param result The OCR result
+         */
+        void onPageRecognized(int pageIndex, OCRResult result);
+        
+        /**
+         * Called when a page could not be recognized.
+         * 
+         * @param pageIndex The index of the page in the batch
+         * @param e The exception that caused the failure
+         */
+        void onPageFailed(int pageIndex, Exception e);
+        
+        /**
+         * Called after the last page has been reported.
+         */
+        void onBatchComplete();
+    }
+    
+    /**
+     * Handle to a running batch. Reorders page results so they are delivered in page order
+     * and allows the remaining pages to be cancelled.
+     */
+    public class BatchHandle {
+        private final BatchCallback callback;
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final List<Future<?>> futures = new ArrayList<>();
+        // Accessed on the main thread only
+        private final OCRResult[] results;
+        private final Exception[] errors;
+        private final boolean[] done;
+        private int nextToDeliver = 0;
+        
+        private BatchHandle(int pageCount, BatchCallback callback) {
+            this.callback = callback;
+            this.results = new OCRResult[pageCount];
+            this.errors = new Exception[pageCount];
+            this.done = new boolean[pageCount];
+        }
+        
+        /**
+         * Cancels the pages that have not been reported yet. Pages being recognized are
+         * interrupted where possible and their results are dropped.
+         */
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                synchronized (futures) {
+                    for (Future<?> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Checks whether the batch has been cancelled.
+         * 
+         * @return True if the batch has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+        
+        private void post(int pageIndex, OCRResult result, Exception error) {
+            mainHandler.post(() -> deliver(pageIndex, result, error));
+        }
+        
+        private void deliver(int pageIndex, OCRResult result, Exception error) {
+            if (isCancelled()) {
+                return;
+            }
+            results[pageIndex] = result;
+            errors[pageIndex] = error;
+            done[pageIndex] = true;
+            
+            // Flush every page that is now contiguous with the ones already delivered
+            while (nextToDeliver < done.length && done[nextToDeliver]) {
+                int index = nextToDeliver++;
+                if (results[index] != null) {
+                    callback.onPageRecognized(index, results[index]);
+                } else {
+                    callback.onPageFailed(index, errors[index]);
+                }
+                results[index] = null;
+                errors[index] = null;
+            }
+            if (nextToDeliver == done.length) {
+                finish();
+            }
+        }
+        
+        private void finish() {
+            if (!isCancelled()) {
+                callback.onBatchComplete();
+            }
+        }
+    }
+    
     /**
      * Represents the result of an OCR operation.
      */
@@ -265,18 +749,32 @@ public class OCRService {
         private final String text;
         private final Rect boundingBox;
         private final Point[] cornerPoints;
+        private final List<TextElement> elements;
         
         /**
-         * Constructs a new TextLine.
+         * Constructs a new TextLine without word information.
          * 
          * @param text The text in the line
          * @param boundingBox The bounding box of the line
          * @param cornerPoints The corner points of the line
          */
         public TextLine(String text, Rect boundingBox, Point[] cornerPoints) {
+            this(text, boundingBox, cornerPoints, new ArrayList<>());
+        }
+        
+        /**
+         * Constructs a new TextLine.
+         * 
+         * @param text The text in the line
+         * @param boundingBox The bounding box of the line
+         * @param cornerPoints The corner points of the line
+         * @param elements The words in the line
+         */
+        public TextLine(String text, Rect boundingBox, Point[] cornerPoints, List<TextElement> elements) {
             this.text = text;
             this.boundingBox = boundingBox;
             this.cornerPoints = cornerPoints;
+            this.elements = elements;
         }
         
         /**
@@ -305,5 +803,63 @@ public class OCRService {
         public Point[] getCornerPoints() {
             return cornerPoints;
         }
+        
+        /**
+         * Gets the words in the line.
+         * 
+         * @return The words, empty if the line was recognized without word information
+         */
+        public List<TextElement> getElements() {
+            return elements;
+        }
+    }
+    
+    /**
+     * Represents a word of text in the image.
+     */
+    public static class TextElement {
+        private final String text;
+        private final Rect boundingBox;
+        private final Point[] cornerPoints;
+        
+        /**
+         * Constructs a new TextElement.
+         * 
+         * @param text The text of the word
+         * @param boundingBox The bounding box of the word
+         * @param cornerPoints The corner points of the word
+         */
+        public TextElement(String text, Rect boundingBox, Point[] cornerPoints) {
+            this.text = text;
+            this.boundingBox = boundingBox;
+            this.cornerPoints = cornerPoints;
+        }
+        
+        /**
+         * Gets the text of the word.
+         * 
+         * @return The text
+         */
+        public String getText() {
+            return text;
+        }
+        
+        /**
+         * Gets the bounding box of the word.
+         * 
+         * @return The bounding box
+         */
+        public Rect getBoundingBox() {
+            return boundingBox;
+        }
+        
+        /**
+         * Gets the corner points of the word.
+         * 
+         * @return The corner points
+         */
+        public Point[] getCornerPoints() {
+            return cornerPoints;
+        }
     }
-} 
\ No newline at end of file
+}
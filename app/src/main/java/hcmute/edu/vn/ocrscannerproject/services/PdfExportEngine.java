@@ -0,0 +1,227 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
+
+/**
+ * Writes page images and their recognized text to a PDF one page at a time.
+ * JPEG pages that already fit the target resolution are embedded as they are, without
+ * decoding them. Other pages are decoded at the size they are printed at and re-encoded
+ * as JPEG. Only the page being written is held in memory, however many pages there are.
+ */
+public class PdfExportEngine {
+    private static final String CONTENT_SCHEME = "content://";
+    private static final String JPEG_MIME_TYPE = "image/jpeg";
+    private static final float POINTS_PER_INCH = 72f;
+
+    /** Resolution pages are printed at unless another is configured. */
+    public static final int DEFAULT_DPI = 200;
+    /** Quality of re-encoded pages unless another is configured. */
+    public static final int DEFAULT_JPEG_QUALITY = 85;
+
+    // JPEG pages up to this much larger than needed are embedded without re-encoding,
+    // since re-encoding costs more time and quality than the few extra bytes save
+    private static final float PASSTHROUGH_TOLERANCE = 1.25f;
+
+    private final BitmapDecoder bitmapDecoder;
+    private final int targetDpi;
+    private final int jpegQuality;
+
+    /**
+     * Callback for export progress, invoked on the exporting thread.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each page has been written.
+         *
+         * @param pageIndex The index of the page that was written
+         * @param pageCount The total number of pages
+         */
+        void onPageExported(int pageIndex, int pageCount);
+    }
+
+    /**
+     * Creates an engine that prints pages at {@link #DEFAULT_DPI}.
+     *
+     * @param context The application context
+     */
+    public PdfExportEngine(Context context) {
+        this(context, DEFAULT_DPI, DEFAULT_JPEG_QUALITY);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param context The application context
+     * @param targetDpi The resolution pages are printed at; larger images are downsampled
+     * @param jpegQuality The quality of pages that have to be re-encoded, from 0 to 100
+     */
+    public PdfExportEngine(Context context, int targetDpi, int jpegQuality) {
+        this.bitmapDecoder = BitmapDecoder.getInstance(context);
+        this.targetDpi = targetDpi;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Exports pages to an A4 PDF. This does file and image work, so it must not be called
+     * on the main thread.
+     *
+     * @param imagePaths The page images, as file paths or content URI strings
+     * @param texts The recognized text of each page; the list or its entries may be null
+     * @param outputFile The PDF file to write
+     * @param listener The listener to report progress to, may be null
+     * @throws IOException If an image cannot be read or the file cannot be written
+     * @throws DocumentException If iText cannot build the document
+     */
+    public void export(List<String> imagePaths, List<OCRService.OCRResult> texts, File outputFile,
+                       ProgressListener listener) throws IOException, DocumentException {
+        PdfTextLayerWriter textLayerWriter = new PdfTextLayerWriter();
+        writeDocument(outputFile, imagePaths.size(), (document, writer, pageIndex) -> {
+            OCRService.OCRResult text = (texts != null && pageIndex < texts.size()) ? texts.get(pageIndex) : null;
+            writePage(document, writer, textLayerWriter, imagePaths.get(pageIndex), text);
+        }, listener);
+    }
+
+    /**
+     * Writes one page of a document.
+     */
+    interface PageWriter {
+        /**
+         * @param document The open document, positioned on a new page
+         * @param writer The writer of the document
+         * @param pageIndex The index of the page to write
+         */
+        void writePage(Document document, PdfWriter writer, int pageIndex) throws IOException, DocumentException;
+    }
+
+    /**
+     * Writes an A4 PDF a page at a time, flushing each page to the file once it is done.
+     *
+     * @param outputFile The PDF file to write
+     * @param pageCount The number of pages
+     * @param pageWriter Writes the content of each page
+     * @param listener The listener to report progress to, may be null
+     */
+    static void writeDocument(File outputFile, int pageCount, PageWriter pageWriter, ProgressListener listener)
+            throws IOException, DocumentException {
+        Document document = new Document(PageSize.A4, 0, 0, 0, 0);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            PdfWriter writer = PdfWriter.getInstance(document, output);
+            writer.setFullCompression();
+            document.open();
+
+            for (int i = 0; i < pageCount; i++) {
+                if (i > 0) {
+                    document.newPage();
+                }
+                pageWriter.writePage(document, writer, i);
+
+                // Pages are written out as they are finished rather than at close
+                writer.flush();
+                if (listener != null) {
+                    listener.onPageExported(i, pageCount);
+                }
+            }
+
+            // Closing writes the cross-reference table and trailer, so it must happen
+            // while the stream is still open
+            document.close();
+        } finally {
+            if (document.isOpen()) {
+                // Writing failed and the stream is closed by now. The file is unusable
+                // anyway, so an error here must not hide the one that caused the failure
+                try {
+                    document.close();
+                } catch (RuntimeException ignored) {
+                }
+            }
+        }
+    }
+
+    private void writePage(Document document, PdfWriter writer, PdfTextLayerWriter textLayerWriter,
+                           String imagePath, OCRService.OCRResult text) throws IOException, DocumentException {
+        BitmapFactory.Options bounds = bitmapDecoder.decodeBounds(imagePath);
+        if (bounds == null) {
+            throw new IOException("Could not read image " + imagePath);
+        }
+        int sourceWidth = bounds.outWidth;
+        int sourceHeight = bounds.outHeight;
+
+        // Fit the page, keeping the aspect ratio, and center it
+        Rectangle pageSize = document.getPageSize();
+        float pointsPerPixel = Math.min(pageSize.getWidth() / sourceWidth, pageSize.getHeight() / sourceHeight);
+        float printedWidth = sourceWidth * pointsPerPixel;
+        float printedHeight = sourceHeight * pointsPerPixel;
+        float left = (pageSize.getWidth() - printedWidth) / 2;
+        float bottom = (pageSize.getHeight() - printedHeight) / 2;
+
+        int targetWidth = Math.max(1, Math.round(printedWidth / POINTS_PER_INCH * targetDpi));
+        int targetHeight = Math.max(1, Math.round(printedHeight / POINTS_PER_INCH * targetDpi));
+
+        Image image;
+        if (canPassThrough(imagePath, bounds, targetWidth)) {
+            // DCT passthrough: the JPEG stream goes into the PDF as it is
+            image = Image.getInstance(imagePath);
+        } else {
+            image = Image.getInstance(encodeJpeg(imagePath, targetWidth, targetHeight));
+        }
+        image.scaleAbsolute(printedWidth, printedHeight);
+        image.setAbsolutePosition(left, bottom);
+        document.add(image);
+
+        if (text != null) {
+            textLayerWriter.writePage(writer.getDirectContent(), text, left, bottom + printedHeight, pointsPerPixel);
+        }
+    }
+
+    private boolean canPassThrough(String imagePath, BitmapFactory.Options bounds, int targetWidth) {
+        return !imagePath.startsWith(CONTENT_SCHEME)
+                && JPEG_MIME_TYPE.equals(bounds.outMimeType)
+                && bounds.outWidth <= targetWidth * PASSTHROUGH_TOLERANCE;
+    }
+
+    /**
+     * Decodes a page at close to its printed size and encodes it as JPEG.
+     */
+    private byte[] encodeJpeg(String imagePath, int targetWidth, int targetHeight) throws IOException {
+        BitmapDecoder.SampledBitmap sampled = bitmapDecoder.decodeSampled(imagePath, targetWidth, targetHeight);
+        if (sampled == null) {
+            throw new IOException("Could not decode image " + imagePath);
+        }
+        Bitmap bitmap = sampled.getBitmap();
+        Bitmap scaled = bitmap;
+        try {
+            // The sampled image is at least the target size, scale the rest of the way
+            if (bitmap.getWidth() > targetWidth || bitmap.getHeight() > targetHeight) {
+                scaled = Bitmap.createScaledBitmap(bitmap, Math.min(targetWidth, bitmap.getWidth()),
+                        Math.min(targetHeight, bitmap.getHeight()), true);
+            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            scaled.compress(Bitmap.CompressFormat.JPEG, jpegQuality, stream);
+            return stream.toByteArray();
+        } finally {
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+            bitmapDecoder.release(bitmap);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes recognized text as an invisible layer over a page image, so the PDF can be
+ * searched and copied from. Each word is placed on its own box, scaled horizontally to
+ * the box width and rotated with it, so selections in a viewer line up with the image.
+ * Lines without word information are placed the same way as a whole.
+ * <p>
+ * One writer is used per document, so the fonts are created once and a fallback font
+ * for text outside CP1252 is embedded as a single subset shared by every page.
+ */
+public class PdfTextLayerWriter {
+    private static final String TAG = "PdfTextLayerWriter";
+
+    // System fonts tried in order for text Helvetica cannot encode, such as Vietnamese
+    private static final String[] FALLBACK_FONT_PATHS = {
+            "/system/fonts/NotoSans-Regular.ttf",
+            "/system/fonts/Roboto-Regular.ttf",
+            "/system/fonts/DroidSans.ttf"
+    };
+
+    private final BaseFont latinFont;
+    private BaseFont fallbackFont;
+    private boolean fallbackFontLoaded;
+
+    // Font state of the current text object, so it is only set when it changes
+    private BaseFont currentFont;
+    private float currentSize;
+
+    /**
+     * Creates a writer for one document.
+     *
+     * @throws IOException If the standard font cannot be created
+     * @throws DocumentException If iText rejects the standard font
+     */
+    public PdfTextLayerWriter() throws IOException, DocumentException {
+        this.latinFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.CP1252, BaseFont.NOT_EMBEDDED);
+    }
+
+    /**
+     * Writes the text of one page in a single text object.
+     *
+     * @param canvas The content of the page
+     * @param text The recognized text of the page
+     * @param left The x coordinate of the image's left edge, in points
+     * @param top The y coordinate of the image's top edge, in points
+     * @param pointsPerPixel The size of one image pixel on the page, in points
+     */
+    public void writePage(PdfContentByte canvas, OCRService.OCRResult text,
+                          float left, float top, float pointsPerPixel) {
+        canvas.saveState();
+        canvas.beginText();
+        canvas.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_INVISIBLE);
+        currentFont = null;
+        for (OCRService.TextBlock block : text.getBlocks()) {
+            for (OCRService.TextLine line : block.getLines()) {
+                List<OCRService.TextElement> elements = line.getElements();
+                if (elements.isEmpty()) {
+                    writeBox(canvas, line.getText(), line.getBoundingBox(), line.getCornerPoints(),
+                            left, top, pointsPerPixel);
+                    continue;
+                }
+                for (OCRService.TextElement element : elements) {
+                    writeBox(canvas, element.getText(), element.getBoundingBox(), element.getCornerPoints(),
+                            left, top, pointsPerPixel);
+                }
+            }
+        }
+        canvas.endText();
+        canvas.restoreState();
+    }
+
+    /**
+     * Places one run of text so that it fills its box: the font size comes from the box
+     * height and the horizontal scale from the box width.
+     */
+    private void writeBox(PdfContentByte canvas, String text, Rect box, Point[] corners,
+                          float left, float top, float pointsPerPixel) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        // Bottom-left corner, baseline direction and size of the box in page space.
+        // Page y grows upwards while image y grows downwards.
+        float originX;
+        float originY;
+        float directionX;
+        float directionY;
+        float width;
+        float height;
+        if (corners != null && corners.length == 4) {
+            // Corners run clockwise from the top-left of the text, so rotated text works
+            Point topLeft = corners[0];
+            Point topRight = corners[1];
+            Point bottomLeft = corners[3];
+            directionX = (topRight.x - topLeft.x) * pointsPerPixel;
+            directionY = -(topRight.y - topLeft.y) * pointsPerPixel;
+            width = (float) Math.hypot(directionX, directionY);
+            height = (float) Math.hypot(bottomLeft.x - topLeft.x, bottomLeft.y - topLeft.y) * pointsPerPixel;
+            originX = left + bottomLeft.x * pointsPerPixel;
+            originY = top - bottomLeft.y * pointsPerPixel;
+        } else if (box != null) {
+            width = box.width() * pointsPerPixel;
+            height = box.height() * pointsPerPixel;
+            directionX = width;
+            directionY = 0;
+            originX = left + box.left * pointsPerPixel;
+            originY = top - box.bottom * pointsPerPixel;
+        } else {
+            return;
+        }
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        float cos = directionX / width;
+        float sin = directionY / width;
+
+        BaseFont font = fontFor(text);
+        float ascent = font.getFontDescriptor(BaseFont.ASCENT, 1000);
+        float descent = font.getFontDescriptor(BaseFont.DESCENT, 1000);
+        float fontSize = height * 1000 / (ascent - descent);
+        float textWidth = font.getWidthPoint(text, fontSize);
+        if (textWidth <= 0) {
+            return;
+        }
+        float horizontalScale = width / textWidth;
+
+        // Raise the baseline above the box bottom by the descent, along the box's up direction
+        float baselineOffset = -descent * fontSize / 1000;
+        float x = originX - sin * baselineOffset;
+        float y = originY + cos * baselineOffset;
+
+        if (font != currentFont || fontSize != currentSize) {
+            canvas.setFontAndSize(font, fontSize);
+            currentFont = font;
+            currentSize = fontSize;
+        }
+        canvas.setTextMatrix(horizontalScale * cos, horizontalScale * sin, -sin, cos, x, y);
+        canvas.showText(text);
+    }
+
+    /**
+     * Gets the font to write a run of text with: Helvetica when it can encode every
+     * character, otherwise the embedded fallback font if the device has one.
+     */
+    private BaseFont fontFor(String text) {
+        if (canEncode(latinFont, text)) {
+            return latinFont;
+        }
+        BaseFont fallback = getFallbackFont();
+        return fallback != null ? fallback : latinFont;
+    }
+
+    private static boolean canEncode(BaseFont font, String text) {
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (!Character.isWhitespace(codePoint) && !font.charExists(codePoint)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BaseFont getFallbackFont() {
+        if (fallbackFontLoaded) {
+            return fallbackFont;
+        }
+        fallbackFontLoaded = true;
+        for (String path : FALLBACK_FONT_PATHS) {
+            if (!new File(path).exists()) {
+                continue;
+            }
+            try {
+                // Identity-H fonts are embedded as a subset of the glyphs actually used
+                fallbackFont = BaseFont.createFont(path, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+                return fallbackFont;
+            } catch (DocumentException | IOException e) {
+                Log.w(TAG, "Could not load fallback font " + path + ": " + e.getMessage());
+            }
+        }
+        Log.w(TAG, "No fallback font found, characters outside CP1252 are dropped from the text layer");
+        return null;
+    }
+}
@@ -1,34 +1,45 @@
 package hcmute.edu.vn.ocrscannerproject.services;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FileDownloadTask;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.ListResult;
 import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
 import com.google.android.gms.tasks.Tasks;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.StorageLedgerDao;
+import hcmute.edu.vn.ocrscannerproject.utils.StorageTreeWalker;
+
 /**
- * Manages storage quotas for users.
+ * Manages storage quotas for users. The storage used by each user is kept in a local
+ * ledger with one row per uploaded file, updated in the same transaction as every upload
+ * and deletion, and the total of each user is held in memory, so quota checks need no
+ * network or disk access. A background reconciliation walks the user's folder in
+ * Firebase Storage a page at a time, at most once a day, to pick up files uploaded or
+ * deleted from other devices. Uploads reserve their bytes before they start, so
+ * uploads running at once cannot together go over the quota.
  */
 public class StorageQuotaManager {
     private static final String TAG = "StorageQuotaManager";
@@ -36,126 +47,196 @@ public class StorageQuotaManager {
     // 1GB in bytes
     public static final long MAX_USER_QUOTA_BYTES = 1024 * 1024 * 1024;
     
+    private static final String PREF_NAME = "storage_quota_prefs";
+    private static final String KEY_NEXT_RECONCILE_PREFIX = "next_reconcile_";
+    private static final String STORAGE_FOLDER = "scannedImages";
+    
+    // Files listed per page, and the pause between pages, during reconciliation
+    private static final int RECONCILE_PAGE_SIZE = 100;
+    private static final long RECONCILE_PAGE_INTERVAL_MILLIS = 500;
+    // Files unknown to the ledger whose size is fetched per reconciliation
+    private static final int MAX_METADATA_REQUESTS = 50;
+    private static final long RECONCILE_INTERVAL_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long RECONCILE_RETRY_MILLIS = 15 * 60 * 1000L;
+    
+    private static volatile StorageQuotaManager instance;
+    
     private final FirebaseFirestore firestore;
     private final FirebaseStorage storage;
     private final FirebaseAuth auth;
+    private final StorageLedgerDao ledgerDao;
+    private final SharedPreferences preferences;
     private final Map<String, Long> cachedUsage;
+    // Bytes reserved by uploads still running, guarded by ledgerLock
+    private final Map<String, Long> reservedBytes;
+    private final Set<String> reconciling;
+    private final Object ledgerLock = new Object();
     private final Executor executor;
+    // Reconciliation lists the whole Storage folder, so it runs apart from quota checks
+    private final Executor reconcileExecutor;
     private final Handler mainHandler;
     
     /**
      * Initializes the StorageQuotaManager.
+     * 
+     * @param context The application context
      */
-    public StorageQuotaManager() {
+    private StorageQuotaManager(Context context) {
         this.firestore = FirebaseFirestore.getInstance();
         this.storage = FirebaseStorage.getInstance();
         this.auth = FirebaseAuth.getInstance();
-        this.cachedUsage = new HashMap<>();
+        this.ledgerDao = AppDatabase.getInstance(context).storageLedgerDao();
+        this.preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.cachedUsage = new ConcurrentHashMap<>();
+        this.reservedBytes = new HashMap<>();
+        this.reconciling = ConcurrentHashMap.newKeySet();
         this.executor = Executors.newSingleThreadExecutor();
+        this.reconcileExecutor = Executors.newSingleThreadExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
+        
+        // Load the signed-in user's total so the first quota check finds it in memory
+        FirebaseUser user = auth.getCurrentUser();
+        if (user != null) {
+            String uid = user.getUid();
+            executor.execute(() -> getUsedBytes(uid));
+        }
+    }
+    
+    /**
+     * Gets the singleton instance of the StorageQuotaManager.
+     * 
+     * @param context The application context
+     * @return The StorageQuotaManager instance
+     */
+    public static StorageQuotaManager getInstance(Context context) {
+        if (instance == null) {
+            synchronized (StorageQuotaManager.class) {
+                if (instance == null) {
+                    instance = new StorageQuotaManager(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
     }
     
     /**
      * Gets the current storage usage for a user.
      * 
      * @param userId The ID of the user
-     * @param callback The callback to be invoked with the result
+     * @param callback The callback to be invoked on the main thread with the result
      */
     public void getUserStorageUsage(String userId, final StorageQuotaCallback<Long> callback) {
-        // First check if we have the usage cached in Firestore
-        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(userId);
-        
-        userQuotaDoc.get().addOnCompleteListener(new OnCompleteListener<DocumentSnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<DocumentSnapshot> task) {
-                if (task.isSuccessful() && task.getResult() != null && task.getResult().exists()) {
-                    // We have a cached usage
-                    Long usedBytes = task.getResult().getLong("usedBytes");
-                    Long lastUpdated = task.getResult().getLong("lastUpdated");
-                    
-                    if (usedBytes != null && lastUpdated != null) {
-                        // If the cached usage is recent (less than an hour old), use it
-                        long currentTime = System.currentTimeMillis();
-                        if (currentTime - lastUpdated < 3600000) { // 1 hour in milliseconds
-                            callback.onSuccess(usedBytes);
-                            return;
-                        }
-                    }
-                }
-                
-                // If we don't have a recent cached usage, calculate it
-                calculateUserStorageUsage(userId, callback);
+        executor.execute(() -> {
+            try {
+                long usedBytes = getUsedBytes(userId);
+                mainHandler.post(() -> callback.onSuccess(usedBytes));
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading storage usage", e);
+                mainHandler.post(() -> callback.onError(e));
             }
         });
+        reconcileIfDue(userId);
     }
     
     /**
-     * Calculates the current storage usage for a user by listing all their files in Firebase Storage.
+     * Gets the storage used by a user according to the ledger. Answered from memory
+     * after the first call for the user, which sums the ledger and so must not be made
+     * on the main thread.
      * 
      * @param userId The ID of the user
-     * @param callback The callback to be invoked with the result
+     * @return The used bytes
      */
-    private void calculateUserStorageUsage(String userId, final StorageQuotaCallback<Long> callback) {
-        StorageReference userStorageRef = storage.getReference().child("scannedImages").child(userId);
-        
-        userStorageRef.listAll().addOnCompleteListener(new OnCompleteListener<ListResult>() {
-            @Override
-            public void onComplete(@NonNull Task<ListResult> task) {
-                if (task.isSuccessful()) {
-                    ListResult result = task.getResult();
-                    if (result.getItems().isEmpty()) {
-                        // No files, so usage is 0
-                        updateCachedUsage(userId, 0);
-                        callback.onSuccess(0L);
-                        return;
-                    }
-                    
-                    // Get the size of each file
-                    final long[] totalSize = {0};
-                    final int[] completedCount = {0};
-                    
-                    for (StorageReference fileRef : result.getItems()) {
-                        fileRef.getMetadata().addOnCompleteListener(new OnCompleteListener<StorageMetadata>() {
-                            @Override
-                            public void onComplete(@NonNull Task<StorageMetadata> metadataTask) {
-                                completedCount[0]++;
-                                
-                                if (metadataTask.isSuccessful()) {
-                                    StorageMetadata metadata = metadataTask.getResult();
-                                    totalSize[0] += metadata.getSizeBytes();
-                                }
-                                
-                                // If all files have been processed, return the total
-                                if (completedCount[0] == result.getItems().size()) {
-                                    updateCachedUsage(userId, totalSize[0]);
-                                    callback.onSuccess(totalSize[0]);
-                                }
-                            }
-                        });
-                    }
-                } else {
-                    Log.e(TAG, "Error calculating storage usage", task.getException());
-                    callback.onError(task.getException());
-                }
+    public long getUsedBytes(String userId) {
+        Long usedBytes = cachedUsage.get(userId);
+        if (usedBytes != null) {
+            return usedBytes;
+        }
+        synchronized (ledgerLock) {
+            usedBytes = cachedUsage.get(userId);
+            if (usedBytes == null) {
+                usedBytes = ledgerDao.getTotalBytes(userId);
+                cachedUsage.put(userId, usedBytes);
             }
-        });
+            return usedBytes;
+        }
     }
     
     /**
-     * Updates the cached storage usage for a user in Firestore.
+     * Checks if a user has enough quota to upload a file of the specified size.
      * 
      * @param userId The ID of the user
-     * @param usedBytes The used bytes
+     * @param fileSizeBytes The size of the file in bytes
+     * @return True if the file fits in the user's remaining quota
      */
-    private void updateCachedUsage(String userId, long usedBytes) {
-        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(userId);
-        
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("usedBytes", usedBytes);
-        updates.put("lastUpdated", System.currentTimeMillis());
-        
-        userQuotaDoc.set(updates)
-                .addOnFailureListener(e -> Log.e(TAG, "Error updating cached usage", e));
+    public boolean hasQuotaForUpload(String userId, long fileSizeBytes) {
+        return getAvailableBytes(userId) >= fileSizeBytes;
+    }
+    
+    /**
+     * Gets the quota a user has left, not counting bytes reserved by running uploads.
+     * 
+     * @param userId The ID of the user
+     * @return The bytes that can still be reserved
+     */
+    public long getAvailableBytes(String userId) {
+        synchronized (ledgerLock) {
+            return Math.max(0, MAX_USER_QUOTA_BYTES - getUsedBytes(userId) - getReservedBytes(userId));
+        }
+    }
+    
+    /**
+     * Reserves quota for an upload. The reservation must be committed once the file has
+     * been uploaded, or released if the upload fails.
+     * 
+     * @param userId The ID of the user
+     * @param sizeBytes The size of the file to upload
+     * @return The reservation, or null if the file does not fit in the remaining quota
+     */
+    public Reservation reserve(String userId, long sizeBytes) {
+        return reserveAll(userId, Collections.singletonList(sizeBytes)).get(0);
+    }
+    
+    /**
+     * Reserves quota for the uploads of a sync run in one step. Files are admitted in
+     * order while they fit; a file that does not fit is skipped and later, smaller ones
+     * may still be admitted.
+     * 
+     * @param userId The ID of the user
+     * @param sizes The sizes of the files to upload
+     * @return One entry per size: its reservation, or null if the file does not fit
+     */
+    public List<Reservation> reserveAll(String userId, List<Long> sizes) {
+        List<Reservation> reservations = new ArrayList<>(sizes.size());
+        synchronized (ledgerLock) {
+            long available = getAvailableBytes(userId);
+            long reserved = 0;
+            for (long size : sizes) {
+                if (size <= available - reserved) {
+                    reserved += size;
+                    reservations.add(new Reservation(userId, size));
+                } else {
+                    reservations.add(null);
+                }
+            }
+            if (reserved > 0) {
+                reservedBytes.put(userId, getReservedBytes(userId) + reserved);
+            }
+        }
+        return reservations;
+    }
+    
+    private long getReservedBytes(String userId) {
+        Long reserved = reservedBytes.get(userId);
+        return reserved != null ? reserved : 0;
+    }
+    
+    private void unreserve(String userId, long sizeBytes) {
+        long remaining = getReservedBytes(userId) - sizeBytes;
+        if (remaining > 0) {
+            reservedBytes.put(userId, remaining);
+        } else {
+            reservedBytes.remove(userId);
+        }
     }
     
     /**
@@ -163,56 +244,170 @@ public class StorageQuotaManager {
      * 
      * @param userId The ID of the user
      * @param fileSizeBytes The size of the file in bytes
-     * @param callback The callback to be invoked with the result
+     * @param callback The callback to be invoked on the main thread with the result
      */
-    public void checkQuotaForUpload(String userId, long fileSizeBytes, 
+    public void checkQuotaForUpload(String userId, long fileSizeBytes,
                                    final StorageQuotaCallback<Boolean> callback) {
-        getUserStorageUsage(userId, new StorageQuotaCallback<Long>() {
-            @Override
-            public void onSuccess(Long usedBytes) {
-                boolean hasQuota = usedBytes + fileSizeBytes <= MAX_USER_QUOTA_BYTES;
-                callback.onSuccess(hasQuota);
-            }
-            
-            @Override
-            public void onError(Exception e) {
-                callback.onError(e);
+        executor.execute(() -> {
+            try {
+                boolean hasQuota = hasQuotaForUpload(userId, fileSizeBytes);
+                mainHandler.post(() -> callback.onSuccess(hasQuota));
+            } catch (Exception e) {
+                Log.e(TAG, "Error checking quota", e);
+                mainHandler.post(() -> callback.onError(e));
             }
         });
     }
     
     /**
-     * Updates the cached storage usage after a successful upload.
+     * Records a file after a successful upload. Uploading the same path again replaces
+     * its recorded size.
      * 
      * @param userId The ID of the user
-     * @param additionalBytes The additional bytes used
+     * @param objectPath The path of the uploaded file in Firebase Storage
+     * @param sizeBytes The size of the uploaded file
      */
-    public void updateUsageAfterUpload(String userId, long additionalBytes) {
-        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(userId);
-        
-        userQuotaDoc.update("usedBytes", FieldValue.increment(additionalBytes))
-                .addOnFailureListener(e -> Log.e(TAG, "Error updating usage after upload", e));
+    public void updateUsageAfterUpload(String userId, String objectPath, long sizeBytes) {
+        long usedBytes;
+        synchronized (ledgerLock) {
+            usedBytes = recordUpload(userId, objectPath, sizeBytes, sizeBytes);
+        }
+        publishUsage(userId, usedBytes);
     }
     
     /**
-     * Updates the cached storage usage after a successful deletion.
+     * Writes an uploaded file to the ledger. Must be called while holding ledgerLock.
+     * 
+     * @return The user's usage after the upload
+     */
+    private long recordUpload(String userId, String objectPath, long sizeBytes, long originalBytes) {
+        long before = getUsedBytes(userId);
+        long delta = ledgerDao.record(userId, objectPath, sizeBytes, originalBytes, System.currentTimeMillis());
+        long usedBytes = Math.max(0, before + delta);
+        cachedUsage.put(userId, usedBytes);
+        return usedBytes;
+    }
+    
+    /**
+     * Removes a file from the ledger after a successful deletion.
      * 
      * @param userId The ID of the user
-     * @param deletedBytes The bytes that were deleted
+     * @param objectPath The path of the deleted file in Firebase Storage
      */
-    public void updateUsageAfterDelete(String userId, long deletedBytes) {
-        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(userId);
+    public void updateUsageAfterDelete(String userId, String objectPath) {
+        long usedBytes;
+        synchronized (ledgerLock) {
+            long before = getUsedBytes(userId);
+            long deletedBytes = ledgerDao.remove(objectPath);
+            if (deletedBytes == 0) {
+                return;
+            }
+            usedBytes = Math.max(0, before - deletedBytes);
+            cachedUsage.put(userId, usedBytes);
+        }
+        publishUsage(userId, usedBytes);
+    }
+    
+    /**
+     * Starts a reconciliation of the ledger with Firebase Storage in the background,
+     * unless one has run recently or is already running for the user.
+     * 
+     * @param userId The ID of the user
+     */
+    public void reconcileIfDue(String userId) {
+        long nextReconcileAt = preferences.getLong(KEY_NEXT_RECONCILE_PREFIX + userId, 0);
+        if (System.currentTimeMillis() < nextReconcileAt || !reconciling.add(userId)) {
+            return;
+        }
         
-        userQuotaDoc.get().addOnCompleteListener(task -> {
-            if (task.isSuccessful() && task.getResult() != null && task.getResult().exists()) {
-                Long currentUsage = task.getResult().getLong("usedBytes");
-                if (currentUsage != null) {
-                    long newUsage = Math.max(0, currentUsage - deletedBytes);
-                    userQuotaDoc.update("usedBytes", newUsage)
-                            .addOnFailureListener(e -> Log.e(TAG, "Error updating usage after delete", e));
+        reconcileExecutor.execute(() -> {
+            long delay = RECONCILE_RETRY_MILLIS;
+            try {
+                if (reconcile(userId)) {
+                    delay = RECONCILE_INTERVAL_MILLIS;
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error reconciling storage usage", e);
+            } finally {
+                preferences.edit()
+                        .putLong(KEY_NEXT_RECONCILE_PREFIX + userId, System.currentTimeMillis() + delay)
+                        .apply();
+                reconciling.remove(userId);
+            }
+        });
+    }
+    
+    /**
+     * Brings the ledger in line with the files in the user's Storage folder. The folder
+     * and its subfolders, such as the one holding image blobs, are listed a page at a time
+     * with a pause between pages. Only files missing from the ledger have their size
+     * fetched, and at most {@link #MAX_METADATA_REQUESTS} per run; rows of files that are
+     * gone are removed once the whole folder has been listed.
+     * 
+     * @param userId The ID of the user
+     * @return True if every file was accounted for, false if some sizes are still unknown
+     * @throws Exception If listing the folder fails
+     */
+    private boolean reconcile(String userId) throws Exception {
+        long startedAt = System.currentTimeMillis();
+        StorageReference folder = storage.getReference().child(STORAGE_FOLDER).child(userId);
+        Set<String> remotePaths = new HashSet<>();
+        int[] metadataRequests = {0};
+        boolean[] complete = {true};
+        
+        StorageTreeWalker<StorageReference> walker = new StorageTreeWalker<>((listed, pageToken) -> {
+            ListResult page = Tasks.await(pageToken == null
+                    ? listed.list(RECONCILE_PAGE_SIZE)
+                    : listed.list(RECONCILE_PAGE_SIZE, pageToken));
+            return new StorageTreeWalker.Page<>(page.getItems(), page.getPrefixes(), page.getPageToken());
+        }, RECONCILE_PAGE_INTERVAL_MILLIS);
+        walker.walk(folder, item -> {
+            String path = item.getPath();
+            remotePaths.add(path);
+            if (ledgerDao.getByPath(path) != null) {
+                return;
+            }
+            if (metadataRequests[0] >= MAX_METADATA_REQUESTS) {
+                complete[0] = false;
+                return;
+            }
+            metadataRequests[0]++;
+            try {
+                StorageMetadata metadata = Tasks.await(item.getMetadata());
+                updateUsageAfterUpload(userId, path, metadata.getSizeBytes());
+            } catch (Exception e) {
+                Log.w(TAG, "Error getting size of " + path, e);
+                complete[0] = false;
             }
         });
+        
+        // Rows written during the listing may be for files it did not see yet
+        for (String path : ledgerDao.getPathsForUserBefore(userId, startedAt)) {
+            if (!remotePaths.contains(path)) {
+                updateUsageAfterDelete(userId, path);
+            }
+        }
+        
+        Log.d(TAG, "Reconciled " + remotePaths.size() + " files with " + metadataRequests[0]
+                + " metadata requests");
+        return complete[0];
+    }
+    
+    /**
+     * Mirrors the storage usage of a user to Firestore.
+     * 
+     * @param userId The ID of the user
+     * @param usedBytes The used bytes
+     */
+    private void publishUsage(String userId, long usedBytes) {
+        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(userId);
+        
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("usedBytes", usedBytes);
+        updates.put("lastUpdated", System.currentTimeMillis());
+        
+        userQuotaDoc.set(updates)
+                .addOnFailureListener(e -> Log.e(TAG, "Error updating cached usage", e));
     }
     
     /**
@@ -228,19 +423,9 @@ public class StorageQuotaManager {
         }
         
         String uid = user.getUid();
-        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(uid);
-        
         try {
-            // Get the document synchronously using Tasks API
-            Task<DocumentSnapshot> task = userQuotaDoc.get();
-            DocumentSnapshot document = Tasks.await(task);
-            
-            long usedBytes = 0;
-            if (document.exists() && document.getLong("usedBytes") != null) {
-                usedBytes = document.getLong("usedBytes");
-                // Update the cache
-                cachedUsage.put(uid, usedBytes);
-            }
+            long usedBytes = getUsedBytes(uid);
+            reconcileIfDue(uid);
             
             double usedMB = usedBytes / (1024 * 1024.0);
             return String.format(Locale.US, "%.2f MB / 1.00 GB", usedMB);
@@ -261,21 +446,8 @@ public class StorageQuotaManager {
             return 0;
         }
         
-        String uid = user.getUid();
-        DocumentReference userQuotaDoc = firestore.collection("userQuotas").document(uid);
-        
         try {
-            // Get the document synchronously using Tasks API
-            Task<DocumentSnapshot> task = userQuotaDoc.get();
-            DocumentSnapshot document = Tasks.await(task);
-            
-            long usedBytes = 0;
-            if (document.exists() && document.getLong("usedBytes") != null) {
-                usedBytes = document.getLong("usedBytes");
-                // Update the cache
-                cachedUsage.put(uid, usedBytes);
-            }
-            
+            long usedBytes = getUsedBytes(user.getUid());
             return (int) ((usedBytes / (double) MAX_USER_QUOTA_BYTES) * 100);
         } catch (Exception e) {
             Log.e(TAG, "Error getting quota usage percentage", e);
@@ -283,6 +455,76 @@ public class StorageQuotaManager {
         }
     }
     
+    /**
+     * Quota held for one upload until it is committed or released. Both may be called
+     * from any thread, and only the first of them has an effect.
+     */
+    public class Reservation {
+        private final String userId;
+        private long sizeBytes;
+        private boolean settled;
+        
+        private Reservation(String userId, long sizeBytes) {
+            this.userId = userId;
+            this.sizeBytes = sizeBytes;
+        }
+        
+        public long getSizeBytes() {
+            synchronized (ledgerLock) {
+                return sizeBytes;
+            }
+        }
+        
+        /**
+         * Gives back the part of the reservation above a smaller size, once the file to
+         * upload turns out smaller than the size reserved for it.
+         * 
+         * @param newSizeBytes The size to keep reserved
+         */
+        public void shrinkTo(long newSizeBytes) {
+            synchronized (ledgerLock) {
+                if (settled || newSizeBytes >= sizeBytes) {
+                    return;
+                }
+                unreserve(userId, sizeBytes - newSizeBytes);
+                sizeBytes = newSizeBytes;
+            }
+        }
+        
+        /**
+         * Turns the reservation into usage once the file has been uploaded. The ledger
+         * records the actual size, which may differ from the reserved one.
+         * 
+         * @param objectPath The path of the uploaded file in Firebase Storage
+         * @param uploadedBytes The size of the uploaded file
+         * @param originalBytes The size of the local image the file was made from
+         */
+        public void commit(String objectPath, long uploadedBytes, long originalBytes) {
+            long usedBytes;
+            synchronized (ledgerLock) {
+                if (settled) {
+                    return;
+                }
+                settled = true;
+                unreserve(userId, sizeBytes);
+                usedBytes = recordUpload(userId, objectPath, uploadedBytes, originalBytes);
+            }
+            publishUsage(userId, usedBytes);
+        }
+        
+        /**
+         * Gives the reserved quota back after a failed or skipped upload.
+         */
+        public void release() {
+            synchronized (ledgerLock) {
+                if (!settled) {
+                    settled = true;
+                    unreserve(userId, sizeBytes);
+                }
+            }
+        }
+    }
+    
     /**
      * Callback interface for storage quota operations.
      * 
@@ -303,4 +545,4 @@ public class StorageQuotaManager {
          */
         void onError(Exception e);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,286 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import hcmute.edu.vn.ocrscannerproject.R;
+import hcmute.edu.vn.ocrscannerproject.data.local.AppDatabase;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.ScannedDocumentDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentListItem;
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
+
+/**
+ * Creates and serves the small square thumbnails shown in the document list.
+ * Thumbnails are written as WebP files when a document is saved, regenerated in the
+ * background for documents that have none, and kept in a memory LRU cache, so the list
+ * never decodes a camera-resolution image while scrolling.
+ */
+public class ThumbnailService {
+    private static final String TAG = "ThumbnailService";
+    private static final String THUMBNAIL_DIR_NAME = "thumbnails";
+    private static final String FILE_SUFFIX = ".webp";
+    private static final int WEBP_QUALITY = 80;
+
+    // Fraction of the per-app heap the memory cache may hold
+    private static final int CACHE_HEAP_DIVISOR = 16;
+
+    private static volatile ThumbnailService instance;
+
+    private final File thumbnailDir;
+    private final int thumbnailSize;
+    private final BitmapDecoder bitmapDecoder;
+    private final ScannedDocumentDao scannedDocumentDao;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+
+    // Accessed on the main thread only
+    private final Map<String, List<ThumbnailCallback>> pendingLoads = new HashMap<>();
+    // Documents whose source image could not be decoded, so they are not retried on every bind
+    private final Set<String> failedDocuments = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Callback for thumbnail loads, invoked on the main thread.
+     */
+    public interface ThumbnailCallback {
+        /**
+         * Called when a thumbnail load completes.
+         *
+         * @param thumbnail The thumbnail, or null if the document has no decodable image
+         */
+        void onThumbnailLoaded(Bitmap thumbnail);
+    }
+
+    private ThumbnailService(Context context) {
+        this.thumbnailDir = new File(context.getFilesDir(), THUMBNAIL_DIR_NAME);
+        this.thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.document_thumbnail_size);
+        this.bitmapDecoder = BitmapDecoder.getInstance(context);
+        this.scannedDocumentDao = AppDatabase.getInstance(context).scannedDocumentDao();
+        this.executor = Executors.newSingleThreadExecutor();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int cacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / CACHE_HEAP_DIVISOR;
+        this.memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Gets the singleton instance of the service.
+     *
+     * @param context The application context
+     * @return The service instance
+     */
+    public static ThumbnailService getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ThumbnailService.class) {
+                if (instance == null) {
+                    instance = new ThumbnailService(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the path the thumbnail of a document is stored at. The file may not exist yet.
+     *
+     * @param documentId The ID of the document
+     * @return The thumbnail path
+     */
+    public String getThumbnailPath(String documentId) {
+        return new File(thumbnailDir, documentId + FILE_SUFFIX).getAbsolutePath();
+    }
+
+    /**
+     * Creates the thumbnail of a document from one of its images. This decodes the image,
+     * so it must not be called on the main thread.
+     *
+     * @param documentId The ID of the document
+     * @param sourcePath The image to create the thumbnail from
+     * @return The thumbnail path, or null if the image could not be decoded
+     */
+    public String createThumbnail(String documentId, String sourcePath) {
+        File thumbnailFile = new File(getThumbnailPath(documentId));
+        Bitmap thumbnail = renderThumbnail(sourcePath);
+        if (thumbnail == null) {
+            failedDocuments.add(documentId);
+            return null;
+        }
+        memoryCache.put(documentId, thumbnail);
+
+        if (!thumbnailDir.exists() && !thumbnailDir.mkdirs()) {
+            Log.e(TAG, "Could not create " + thumbnailDir);
+            return null;
+        }
+        // Write to a temporary file first so a partly written thumbnail is never read
+        File tempFile = new File(thumbnailDir, documentId + FILE_SUFFIX + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            thumbnail.compress(webpFormat(), WEBP_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing thumbnail of " + documentId, e);
+            tempFile.delete();
+            return null;
+        }
+        if (!tempFile.renameTo(thumbnailFile)) {
+            tempFile.delete();
+            return null;
+        }
+        return thumbnailFile.getAbsolutePath();
+    }
+
+    /**
+     * Creates the thumbnail of a newly saved document in the background.
+     *
+     * @param documentId The ID of the document
+     * @param sourcePath The image to create the thumbnail from
+     */
+    public void createThumbnailAsync(String documentId, String sourcePath) {
+        executor.execute(() -> createThumbnail(documentId, sourcePath));
+    }
+
+    /**
+     * Gets a thumbnail from the memory cache without touching the disk.
+     *
+     * @param documentId The ID of the document
+     * @return The thumbnail, or null if it is not in memory
+     */
+    public Bitmap getCachedThumbnail(String documentId) {
+        return memoryCache.get(documentId);
+    }
+
+    /**
+     * Loads the thumbnail of a list item in the background, reading it from disk or,
+     * if it is missing, creating it from the document's image. Must be called on the
+     * main thread.
+     *
+     * @param item The document to load the thumbnail of
+     * @param callback The callback to receive the thumbnail
+     */
+    public void loadThumbnail(DocumentListItem item, ThumbnailCallback callback) {
+        String documentId = item.getId();
+        Bitmap cached = memoryCache.get(documentId);
+        if (cached != null || failedDocuments.contains(documentId)) {
+            callback.onThumbnailLoaded(cached);
+            return;
+        }
+
+        // Rows bound again while a load is running share its result
+        List<ThumbnailCallback> callbacks = pendingLoads.get(documentId);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pendingLoads.put(documentId, callbacks);
+
+        executor.execute(() -> {
+            Bitmap thumbnail = readOrCreateThumbnail(item);
+            mainHandler.post(() -> {
+                List<ThumbnailCallback> waiting = pendingLoads.remove(documentId);
+                if (waiting != null) {
+                    for (ThumbnailCallback waitingCallback : waiting) {
+                        waitingCallback.onThumbnailLoaded(thumbnail);
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Deletes the thumbnail of a document that has been deleted.
+     *
+     * @param documentId The ID of the document
+     */
+    public void deleteThumbnail(String documentId) {
+        memoryCache.remove(documentId);
+        failedDocuments.remove(documentId);
+        executor.execute(() -> new File(getThumbnailPath(documentId)).delete());
+    }
+
+    private Bitmap readOrCreateThumbnail(DocumentListItem item) {
+        String documentId = item.getId();
+        Bitmap cached = memoryCache.get(documentId);
+        if (cached != null) {
+            return cached;
+        }
+
+        String thumbnailPath = getThumbnailPath(documentId);
+        if (new File(thumbnailPath).exists()) {
+            Bitmap thumbnail = BitmapFactory.decodeFile(thumbnailPath);
+            if (thumbnail != null) {
+                memoryCache.put(documentId, thumbnail);
+                return thumbnail;
+            }
+        }
+
+        // Documents saved before thumbnails existed, or whose thumbnail was deleted
+        if (item.getLocalImagePath() == null || item.getLocalImagePath().isEmpty()) {
+            failedDocuments.add(documentId);
+            return null;
+        }
+        String createdPath = createThumbnail(documentId, item.getLocalImagePath());
+        if (createdPath != null && !createdPath.equals(item.getThumbnailPath())) {
+            scannedDocumentDao.updateThumbnailPath(documentId, createdPath);
+        }
+        return memoryCache.get(documentId);
+    }
+
+    /**
+     * Decodes an image near thumbnail size and center crops it to a square.
+     */
+    private Bitmap renderThumbnail(String sourcePath) {
+        BitmapDecoder.SampledBitmap sampled = bitmapDecoder.decodeSampled(sourcePath, thumbnailSize, thumbnailSize);
+        if (sampled == null) {
+            return null;
+        }
+        Bitmap source = sampled.getBitmap();
+        int side = Math.min(source.getWidth(), source.getHeight());
+        float scale = Math.min(1f, (float) thumbnailSize / side);
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+
+        Bitmap thumbnail = Bitmap.createBitmap(source,
+                (source.getWidth() - side) / 2, (source.getHeight() - side) / 2,
+                side, side, matrix, true);
+        if (thumbnail != source) {
+            bitmapDecoder.release(source);
+        }
+        return thumbnail;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -27,8 +27,6 @@ import androidx.annotation.NonNull;
 import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.mlkit.vision.text.Text;
-
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -39,22 +37,33 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import hcmute.edu.vn.ocrscannerproject.R;
+import hcmute.edu.vn.ocrscannerproject.services.OCRService;
 import hcmute.edu.vn.ocrscannerproject.ui.extract.TextSelectionImageView;
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
 
 public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.ImageViewHolder> {
     private static final String TAG = "ImagePagerAdapter";
+    // Payload used to refresh the text overlay without decoding the page again
+    private static final Object PAYLOAD_RECOGNIZED_TEXT = new Object();
     private final Context context;
     private final List<String> imagePaths;
-    private final Map<Integer, Text> recognizedTexts;
+    private final Map<Integer, OCRService.OCRResult> recognizedTexts;
     private final Map<Integer, Bitmap> overlayBitmaps;
     private final Map<Integer, Integer> imageRotations;
-    private final Map<Integer, Bitmap> rotatedBitmaps; // Store rotated bitmaps
     private OnImageLoadedListener onImageLoadedListener;
     private final ExecutorService executor;
     private final Handler mainHandler;
+    private final BitmapDecoder bitmapDecoder;
 
     public interface OnImageLoadedListener {
-        void onImageLoaded(int position, Bitmap bitmap);
+        /**
+         * Called when a page has been decoded and shown.
+         *
+         * @param position The page position
+         * @param bitmap The decoded page
+         * @param sampleSize The factor the page was downscaled by when decoding
+         */
+        void onImageLoaded(int position, Bitmap bitmap, int sampleSize);
     }
 
     public void setOnImageLoadedListener(OnImageLoadedListener listener) {
@@ -67,9 +76,9 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
         this.recognizedTexts = new HashMap<>();
         this.overlayBitmaps = new HashMap<>();
         this.imageRotations = new HashMap<>();
-        this.rotatedBitmaps = new HashMap<>();
         this.executor = Executors.newSingleThreadExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.bitmapDecoder = BitmapDecoder.getInstance(context);
     }
 
     @NonNull
@@ -79,36 +88,56 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
         return new ImageViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ImageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_RECOGNIZED_TEXT) && holder.bitmap != null) {
+            // The page is already shown, only the text overlay changed
+            holder.imageView.setRecognizedText(recognizedTexts.get(position));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull ImageViewHolder holder, int position) {
         String imagePath = imagePaths.get(position);
         
         // Set a loading placeholder
+        releaseBitmap(holder);
         holder.imageView.setImageResource(R.drawable.ic_image_loading);
         
+        // Decode at screen size rather than full camera resolution
+        int reqWidth = context.getResources().getDisplayMetrics().widthPixels;
+        int reqHeight = context.getResources().getDisplayMetrics().heightPixels;
+        
         // Load and process image in background
         executor.execute(() -> {
             try {
                 // Load bitmap
-                Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-                if (bitmap != null) {
-                    // Store original bitmap
-                    rotatedBitmaps.put(position, bitmap);
+                BitmapDecoder.SampledBitmap sampled = bitmapDecoder.decodeSampled(imagePath, reqWidth, reqHeight);
+                if (sampled != null) {
+                    Bitmap bitmap = sampled.getBitmap();
                     
                     // Update UI on main thread
                     mainHandler.post(() -> {
                         if (holder.getAdapterPosition() == position) {
+                            releaseBitmap(holder);
+                            holder.bitmap = bitmap;
+                            holder.imageView.setSourceSampleSize(sampled.getSampleSize());
                             holder.imageView.setImageBitmap(bitmap);
                             
                             // Set recognized text if available
-                            Text recognizedText = recognizedTexts.get(position);
+                            OCRService.OCRResult recognizedText = recognizedTexts.get(position);
                             if (recognizedText != null) {
                                 holder.imageView.setRecognizedText(recognizedText);
                             }
                             
                             if (onImageLoadedListener != null) {
-                                onImageLoadedListener.onImageLoaded(position, bitmap);
+                                onImageLoadedListener.onImageLoaded(position, bitmap, sampled.getSampleSize());
                             }
+                        } else {
+                            // The holder was rebound while decoding
+                            bitmapDecoder.release(bitmap);
                         }
                     });
                 } else {
@@ -133,24 +162,35 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
     @Override
     public void onViewRecycled(@NonNull ImageViewHolder holder) {
         super.onViewRecycled(holder);
-        holder.imageView.setImageBitmap(null);
+        releaseBitmap(holder);
         holder.imageView.clearSelection();
     }
 
+    /**
+     * Detaches the page bitmap from the holder and returns it to the decoder's pool.
+     */
+    private void releaseBitmap(ImageViewHolder holder) {
+        if (holder.bitmap != null) {
+            holder.imageView.setImageBitmap(null);
+            bitmapDecoder.release(holder.bitmap);
+            holder.bitmap = null;
+        }
+    }
+
     @Override
     public int getItemCount() {
         return imagePaths.size();
     }
 
-    public void setRecognizedText(int position, Text text) {
+    public void setRecognizedText(int position, OCRService.OCRResult text) {
         Log.d(TAG, "Setting recognized text for position " + position + " with " + 
-              (text != null ? text.getTextBlocks().size() : 0) + " blocks");
+              (text != null ? text.getBlocks().size() : 0) + " blocks");
         recognizedTexts.put(position, text);
-        notifyItemChanged(position);
+        notifyItemChanged(position, PAYLOAD_RECOGNIZED_TEXT);
     }
 
     private Bitmap createOverlayBitmap(Bitmap original, int position) {
-        Text recognizedText = recognizedTexts.get(position);
+        OCRService.OCRResult recognizedText = recognizedTexts.get(position);
         if (recognizedText == null) return null;
 
         Bitmap overlay = original.copy(original.getConfig(), true);
@@ -166,7 +206,7 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
         textBackgroundPaint.setStyle(Paint.Style.FILL);
         textBackgroundPaint.setAlpha(128);
 
-        for (Text.TextBlock block : recognizedText.getTextBlocks()) {
+        for (OCRService.TextBlock block : recognizedText.getBlocks()) {
             if (block.getBoundingBox() != null) {
                 Rect blockRect = block.getBoundingBox();
                 RectF drawRect = new RectF(blockRect);
@@ -183,12 +223,12 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
     }
 
     private void handleTextSelection(int position, float x, float y) {
-        Text recognizedText = recognizedTexts.get(position);
+        OCRService.OCRResult recognizedText = recognizedTexts.get(position);
         if (recognizedText == null) return;
         
         // No need to transform coordinates since the image and text blocks are already correctly oriented
         // Find the text block that was tapped
-        for (Text.TextBlock block : recognizedText.getTextBlocks()) {
+        for (OCRService.TextBlock block : recognizedText.getBlocks()) {
             if (block.getBoundingBox() != null && 
                 block.getBoundingBox().contains((int)x, (int)y)) {
                 // Copy text to clipboard
@@ -200,10 +240,10 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
     }
 
     public void copyAllText(int position) {
-        Text recognizedText = recognizedTexts.get(position);
+        OCRService.OCRResult recognizedText = recognizedTexts.get(position);
         if (recognizedText != null) {
             StringBuilder allText = new StringBuilder();
-            for (Text.TextBlock block : recognizedText.getTextBlocks()) {
+            for (OCRService.TextBlock block : recognizedText.getBlocks()) {
                 allText.append(block.getText()).append("\n");
             }
             copyToClipboard(allText.toString());
@@ -218,12 +258,13 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
         clipboard.setPrimaryClip(clip);
     }
 
-    public Text getRecognizedText(int position) {
+    public OCRService.OCRResult getRecognizedText(int position) {
         return recognizedTexts.get(position);
     }
 
     static class ImageViewHolder extends RecyclerView.ViewHolder {
         TextSelectionImageView imageView;
+        Bitmap bitmap;
 
         ImageViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -107,11 +107,22 @@ public class DocumentDetailsFragment extends Fragment {
     
     private void loadDocument() {
         if (documentId != null) {
-            currentDocument = documentRepository.getDocumentById(documentId);
-            if (currentDocument != null) {
-                setupDocumentDetails();
-                setupContentPager();
-            }
+            documentRepository.getDocumentById(documentId,
+                    new ScannedDocumentRepository.DocumentCallback<ScannedDocument>() {
+                @Override
+                public void onSuccess(ScannedDocument result) {
+                    if (result != null && isAdded()) {
+                        currentDocument = result;
+                        setupDocumentDetails();
+                        setupContentPager();
+                    }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.e(TAG, "Error loading document " + documentId, e);
+                }
+            });
         }
     }
     
@@ -2,11 +2,8 @@ package hcmute.edu.vn.ocrscannerproject.ui.details;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
-import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -21,12 +18,15 @@ import androidx.fragment.app.Fragment;
 import androidx.viewpager2.widget.ViewPager2;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.IOException;
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
 
 import hcmute.edu.vn.ocrscannerproject.R;
 import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
 import hcmute.edu.vn.ocrscannerproject.data.ScannedDocumentRepository;
+import hcmute.edu.vn.ocrscannerproject.data.sync.CloudImageCache;
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
 
 public class ImageContentFragment extends Fragment {
     private static final String ARG_DOCUMENT_ID = "documentId";
@@ -102,21 +102,52 @@ public class ImageContentFragment extends Fragment {
     
     private void loadDocument() {
         if (documentId != null) {
-            document = repository.getDocumentById(documentId);
-            if (document != null) {
-                setupImagePager();
-            }
+            repository.getDocumentById(documentId,
+                    new ScannedDocumentRepository.DocumentCallback<ScannedDocument>() {
+                @Override
+                public void onSuccess(ScannedDocument result) {
+                    if (result != null && isAdded()) {
+                        document = result;
+                        setupImagePager();
+                    }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.e(TAG, "Error loading document " + documentId, e);
+                }
+            });
         }
     }
     
     private void setupImagePager() {
         List<String> imagePaths = document.getLocalImagePaths();
         if (imagePaths != null && !imagePaths.isEmpty()) {
-            DocumentImageAdapter adapter = new DocumentImageAdapter(requireContext(), imagePaths);
-            viewPagerImages.setAdapter(adapter);
-            updatePageIndicator();
-            updateNavigationButtons();
+            showImages(imagePaths);
+            return;
         }
+        
+        // Synced from another device: the image is downloaded on first view
+        repository.getImage(document, new CloudImageCache.ImageCallback() {
+            @Override
+            public void onSuccess(File imageFile) {
+                if (isAdded()) {
+                    showImages(Collections.singletonList(imageFile.getAbsolutePath()));
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error loading image of " + documentId, e);
+            }
+        });
+    }
+    
+    private void showImages(List<String> imagePaths) {
+        DocumentImageAdapter adapter = new DocumentImageAdapter(requireContext(), imagePaths);
+        viewPagerImages.setAdapter(adapter);
+        updatePageIndicator();
+        updateNavigationButtons();
     }
     
     private void updatePageIndicator() {
@@ -139,10 +170,12 @@ public class ImageContentFragment extends Fragment {
     private static class DocumentImageAdapter extends RecyclerView.Adapter<DocumentImageAdapter.ImageViewHolder> {
         private final Context context;
         private final List<String> imagePaths;
+        private final BitmapDecoder bitmapDecoder;
 
         public DocumentImageAdapter(Context context, List<String> imagePaths) {
             this.context = context;
             this.imagePaths = imagePaths;
+            this.bitmapDecoder = BitmapDecoder.getInstance(context);
         }
 
         @NonNull
@@ -159,25 +192,33 @@ public class ImageContentFragment extends Fragment {
         @Override
         public void onBindViewHolder(@NonNull ImageViewHolder holder, int position) {
             String imagePath = imagePaths.get(position);
+            releaseBitmap(holder);
             
-            try {
-                Bitmap bitmap;
-                if (imagePath.startsWith("content://")) {
-                    bitmap = MediaStore.Images.Media.getBitmap(
-                            context.getContentResolver(), Uri.parse(imagePath));
-                } else {
-                    bitmap = BitmapFactory.decodeFile(imagePath);
-                }
-                
-                if (bitmap != null) {
-                    holder.imageView.setImageBitmap(bitmap);
-                } else {
-                    holder.imageView.setImageResource(R.drawable.ic_menu_report_image);
-                    Log.e(TAG, "Could not decode bitmap from: " + imagePath);
-                }
-            } catch (IOException | IllegalArgumentException e) {
-                Log.e(TAG, "Error loading image: " + e.getMessage(), e);
+            // Decode at screen size rather than full camera resolution
+            int reqWidth = context.getResources().getDisplayMetrics().widthPixels;
+            int reqHeight = context.getResources().getDisplayMetrics().heightPixels;
+            BitmapDecoder.SampledBitmap sampled = bitmapDecoder.decodeSampled(imagePath, reqWidth, reqHeight);
+            
+            if (sampled != null) {
+                holder.bitmap = sampled.getBitmap();
+                holder.imageView.setImageBitmap(holder.bitmap);
+            } else {
                 holder.imageView.setImageResource(R.drawable.ic_menu_report_image);
+                Log.e(TAG, "Could not decode bitmap from: " + imagePath);
+            }
+        }
+        
+        @Override
+        public void onViewRecycled(@NonNull ImageViewHolder holder) {
+            super.onViewRecycled(holder);
+            releaseBitmap(holder);
+        }
+        
+        private void releaseBitmap(ImageViewHolder holder) {
+            if (holder.bitmap != null) {
+                holder.imageView.setImageDrawable(null);
+                bitmapDecoder.release(holder.bitmap);
+                holder.bitmap = null;
             }
         }
 
@@ -188,6 +229,7 @@ public class ImageContentFragment extends Fragment {
         
         static class ImageViewHolder extends RecyclerView.ViewHolder {
             final ImageView imageView;
+            Bitmap bitmap;
             
             public ImageViewHolder(@NonNull View itemView) {
                 super(itemView);
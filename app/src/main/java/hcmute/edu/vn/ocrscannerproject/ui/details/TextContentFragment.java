@@ -66,12 +66,28 @@ public class TextContentFragment extends Fragment {
     
     private void loadDocument() {
         if (documentId != null) {
-            document = repository.getDocumentById(documentId);
-            if (document != null && document.getExtractedText() != null) {
-                tvContent.setText(document.getExtractedText());
-            } else {
-                tvContent.setText(R.string.no_text_content);
-            }
+            repository.getDocumentById(documentId,
+                    new ScannedDocumentRepository.DocumentCallback<ScannedDocument>() {
+                @Override
+                public void onSuccess(ScannedDocument result) {
+                    if (!isAdded()) {
+                        return;
+                    }
+                    document = result;
+                    if (document != null && document.getExtractedText() != null) {
+                        tvContent.setText(document.getExtractedText());
+                    } else {
+                        tvContent.setText(R.string.no_text_content);
+                    }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    if (isAdded()) {
+                        tvContent.setText(R.string.no_text_content);
+                    }
+                }
+            });
         }
     }
     
@@ -4,8 +4,6 @@ import android.app.Dialog;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.net.Uri;
 import android.os.Bundle;
@@ -29,37 +27,22 @@ import androidx.fragment.app.Fragment;
 import androidx.navigation.Navigation;
 import androidx.viewpager2.widget.ViewPager2;
 
-import com.google.android.gms.tasks.Task;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.text.Text;
-import com.google.mlkit.vision.text.TextRecognition;
-import com.google.mlkit.vision.text.TextRecognizer;
-import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import com.itextpdf.text.Document;
-import com.itextpdf.text.DocumentException;
-import com.itextpdf.text.Image;
-import com.itextpdf.text.PageSize;
-import com.itextpdf.text.pdf.BaseFont;
-import com.itextpdf.text.pdf.PdfContentByte;
-import com.itextpdf.text.pdf.PdfWriter;
-
 import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -72,7 +55,12 @@ import okhttp3.Response;
 import hcmute.edu.vn.ocrscannerproject.R;
 import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
 import hcmute.edu.vn.ocrscannerproject.data.ScannedDocumentRepository;
+import hcmute.edu.vn.ocrscannerproject.services.OCRResultCache;
+import hcmute.edu.vn.ocrscannerproject.services.OCRService;
+import hcmute.edu.vn.ocrscannerproject.services.PdfExportEngine;
+import hcmute.edu.vn.ocrscannerproject.services.ThumbnailService;
 import hcmute.edu.vn.ocrscannerproject.ui.adapter.ImagePagerAdapter;
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
 import hcmute.edu.vn.ocrscannerproject.MainActivity;
 
 public class ExtractTextFragment extends Fragment {
@@ -86,7 +74,8 @@ public class ExtractTextFragment extends Fragment {
     
     private ArrayList<String> processedImages = new ArrayList<>();
     private String fileName;
-    private TextRecognizer textRecognizer;
+    private OCRService ocrService;
+    private OCRService.BatchHandle batchHandle;
     
     private ViewPager2 viewPagerImages;
     private TextView tvPageIndicator;
@@ -106,6 +95,7 @@ public class ExtractTextFragment extends Fragment {
     private float imageScaleY = 1.0f;
     private float imageTranslateX = 0f;
     private float imageTranslateY = 0f;
+    private boolean imageGeometryReady = false;
 
     public static ExtractTextFragment newInstance(String[] imagePaths, String fileName) {
         ExtractTextFragment fragment = new ExtractTextFragment();
@@ -129,8 +119,9 @@ public class ExtractTextFragment extends Fragment {
             fileName = getArguments().getString("fileName", "");
         }
         
-        // Initialize ML Kit text recognizer
-        textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        // Initialize OCR service backed by the persistent result cache
+        ocrService = new OCRService(OCRResultCache.getInstance(requireContext()),
+                BitmapDecoder.getInstance(requireContext()));
     }
 
     @Nullable
@@ -241,69 +232,73 @@ public class ExtractTextFragment extends Fragment {
             decorView.setSystemUiVisibility(flags);
         }
         
-        // Close text recognizer
-        textRecognizer.close();
+        // Stop recognizing pages that are no longer needed, then close OCR service
+        if (batchHandle != null) {
+            batchHandle.cancel();
+        }
+        ocrService.close();
     }
     
     private void setupViewPager() {
         adapter = new ImagePagerAdapter(requireContext(), processedImages);
         viewPagerImages.setAdapter(adapter);
         
-        // Set up image loaded listener for OCR
-        adapter.setOnImageLoadedListener((position, bitmap) -> {
-            // Only perform OCR if we haven't already processed this position
-            if (adapter.getRecognizedText(position) == null) {
-                // Calculate image scale and translation
-                float viewWidth = viewPagerImages.getWidth();
-                float viewHeight = viewPagerImages.getHeight();
-                float imageWidth = bitmap.getWidth();
-                float imageHeight = bitmap.getHeight();
-
-                // Calculate scaling to fit the image in the view while maintaining aspect ratio
-                imageScaleX = viewWidth / imageWidth;
-                imageScaleY = viewHeight / imageHeight;
-                float scale = Math.min(imageScaleX, imageScaleY);
-                imageScaleX = scale;
-                imageScaleY = scale;
-
-                // Calculate translation to center the image
-                imageTranslateX = (viewWidth - imageWidth * scale) / 2;
-                imageTranslateY = (viewHeight - imageHeight * scale) / 2;
-
-                // Perform OCR on the bitmap
-                InputImage image = InputImage.fromBitmap(bitmap, 0);
+        // Set up image loaded listener to track where the page is drawn
+        adapter.setOnImageLoadedListener((position, bitmap, sampleSize) -> {
+            // Calculate image scale and translation in full resolution coordinates,
+            // which is what the recognized text uses
+            float viewWidth = viewPagerImages.getWidth();
+            float viewHeight = viewPagerImages.getHeight();
+            float imageWidth = bitmap.getWidth() * sampleSize;
+            float imageHeight = bitmap.getHeight() * sampleSize;
+
+            // Calculate scaling to fit the image in the view while maintaining aspect ratio
+            imageScaleX = viewWidth / imageWidth;
+            imageScaleY = viewHeight / imageHeight;
+            float scale = Math.min(imageScaleX, imageScaleY);
+            imageScaleX = scale;
+            imageScaleY = scale;
+
+            // Calculate translation to center the image
+            imageTranslateX = (viewWidth - imageWidth * scale) / 2;
+            imageTranslateY = (viewHeight - imageHeight * scale) / 2;
+            imageGeometryReady = true;
+
+            OCRService.OCRResult result = adapter.getRecognizedText(position);
+            if (result != null) {
+                initTextSelection(result);
+            }
+        });
+        
+        // Recognize all pages up front instead of one swipe at a time
+        batchHandle = ocrService.recognizeBatch(processedImages, new OCRService.BatchCallback() {
+            @Override
+            public void onPageRecognized(int pageIndex, OCRService.OCRResult result) {
+                if (!isAdded()) {  // Check if fragment is still attached
+                    return;
+                }
+                // Update the adapter with recognized text blocks
+                adapter.setRecognizedText(pageIndex, result);
+                if (pageIndex == currentPage) {
+                    // Store the extracted text
+                    extractedText = result.getText();
+                }
+                if (imageGeometryReady) {
+                    initTextSelection(result);
+                }
+            }
             
-            textRecognizer.process(image)
-                .addOnSuccessListener(text -> {
-                    if (isAdded()) {  // Check if fragment is still attached
-                        // Update the adapter with recognized text blocks
-                        adapter.setRecognizedText(position, text);
-                            // Store the extracted text
-                            extractedText = text.getText();
-                            
-                            // Initialize TextSelectionManager after text recognition
-                            if (textSelectionManager == null) {
-                                textSelectionManager = new TextSelectionManager(
-                                    requireContext(),
-                                    text.getTextBlocks(),
-                                    imageScaleX,
-                                    imageScaleY,
-                                    imageTranslateX,
-                                    imageTranslateY
-                                );
-                                
-                                // Add translate button to view
-                                ViewGroup parent = (ViewGroup) requireView();
-                                parent.addView(textSelectionManager.getTranslateButton());
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    if (isAdded()) {  // Check if fragment is still attached
-                        Toast.makeText(requireContext(), "Error processing image: " + e.getMessage(), 
-                                Toast.LENGTH_SHORT).show();
-                    }
-                });
+            @Override
+            public void onPageFailed(int pageIndex, Exception e) {
+                if (isAdded()) {  // Check if fragment is still attached
+                    Toast.makeText(requireContext(), "Error processing image: " + e.getMessage(), 
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
+            
+            @Override
+            public void onBatchComplete() {
+                Log.d(TAG, "Recognized " + processedImages.size() + " pages");
             }
         });
         
@@ -311,6 +306,10 @@ public class ExtractTextFragment extends Fragment {
             @Override
             public void onPageSelected(int position) {
                 currentPage = position;
+                OCRService.OCRResult result = adapter.getRecognizedText(position);
+                if (result != null) {
+                    extractedText = result.getText();
+                }
                 updatePageIndicator();
             }
         });
@@ -318,6 +317,28 @@ public class ExtractTextFragment extends Fragment {
         updatePageIndicator();
     }
     
+    /**
+     * Initializes the TextSelectionManager once both a recognition result and the
+     * image geometry are available.
+     */
+    private void initTextSelection(OCRService.OCRResult result) {
+        if (textSelectionManager != null || !isAdded()) {
+            return;
+        }
+        textSelectionManager = new TextSelectionManager(
+            requireContext(),
+            result.getBlocks(),
+            imageScaleX,
+            imageScaleY,
+            imageTranslateX,
+            imageTranslateY
+        );
+        
+        // Add translate button to view
+        ViewGroup parent = (ViewGroup) requireView();
+        parent.addView(textSelectionManager.getTranslateButton());
+    }
+    
     private void setupListeners() {
         // Back button
         btnBack.setOnClickListener(v -> {
@@ -367,6 +388,18 @@ public class ExtractTextFragment extends Fragment {
             return;
         }
 
+        // Show loading dialog
+        Dialog loadingDialog = new Dialog(requireContext());
+        loadingDialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+        loadingDialog.setContentView(R.layout.dialog_loading);
+        loadingDialog.setCancelable(false);
+        if (loadingDialog.getWindow() != null) {
+            loadingDialog.getWindow().setBackgroundDrawableResource(android.R.color.transparent);
+        }
+        final TextView loadingText = loadingDialog.findViewById(R.id.loading_text);
+        loadingText.setText("Exporting PDF...");
+        loadingDialog.show();
+
         executor.execute(() -> {
             try {
                 // Create directory if it doesn't exist
@@ -378,61 +411,16 @@ public class ExtractTextFragment extends Fragment {
                 // Create PDF file with full path
                 String pdfFileName = fileName + ".pdf";
                 File pdfFile = new File(directory, pdfFileName);
-                OutputStream output = new FileOutputStream(pdfFile);
                 
-                // Create PDF document with A4 size
-                Document document = new Document(PageSize.A4);
-                PdfWriter writer = PdfWriter.getInstance(document, output);
-                document.open();
-
+                List<OCRService.OCRResult> pageTexts = new ArrayList<>();
                 for (int i = 0; i < processedImages.size(); i++) {
-                    if (i > 0) document.newPage();
-                    
-                    // Add image with high quality
-                    Bitmap bitmap = BitmapFactory.decodeFile(processedImages.get(i));
-                    ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-                    Image image = Image.getInstance(stream.toByteArray());
-                    
-                    // Scale image to fit page while maintaining aspect ratio
-                    float ratio = Math.min(
-                        document.getPageSize().getWidth() / image.getWidth(),
-                        document.getPageSize().getHeight() / image.getHeight()
-                    );
-                    image.scaleAbsolute(image.getWidth() * ratio, image.getHeight() * ratio);
-                    
-                    // Center image on page
-                    image.setAbsolutePosition(
-                        (document.getPageSize().getWidth() - image.getScaledWidth()) / 2,
-                        (document.getPageSize().getHeight() - image.getScaledHeight()) / 2
-                    );
-                    document.add(image);
-                    
-                    // Add searchable text layer
-                    Text recognizedText = adapter.getRecognizedText(i);
-        if (recognizedText != null) {
-                        PdfContentByte canvas = writer.getDirectContent();
-                        BaseFont bf = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.CP1252, BaseFont.NOT_EMBEDDED);
-                        canvas.setFontAndSize(bf, 1);
-                        canvas.setRGBColorFill(0, 0, 0);
-                        canvas.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_INVISIBLE);
-                        
-                        for (Text.TextBlock block : recognizedText.getTextBlocks()) {
-                            canvas.beginText();
-                            float x = block.getBoundingBox().left * ratio + 
-                                (document.getPageSize().getWidth() - image.getScaledWidth()) / 2;
-                            float y = document.getPageSize().getHeight() - 
-                                (block.getBoundingBox().top * ratio + 
-                                (document.getPageSize().getHeight() - image.getScaledHeight()) / 2);
-                            canvas.setTextMatrix(x, y);
-                            canvas.showText(block.getText());
-                            canvas.endText();
-                        }
-                    }
+                    pageTexts.add(adapter.getRecognizedText(i));
                 }
-
-                document.close();
-                output.close();
+                
+                // Pages are written one at a time, JPEG pages without re-encoding them
+                new PdfExportEngine(requireContext()).export(processedImages, pageTexts, pdfFile,
+                        (pageIndex, pageCount) -> getActivity().runOnUiThread(() ->
+                                loadingText.setText("Exporting page " + (pageIndex + 1) + "/" + pageCount + "...")));
 
                 // Create a new ScannedDocument for the PDF
                 List<String> imagePaths = new ArrayList<>(processedImages);
@@ -443,19 +431,24 @@ public class ExtractTextFragment extends Fragment {
                 );
                 pdfDocument.setType("PDF");     // Set document type to PDF
                 pdfDocument.setLocalImagePaths(imagePaths);  // Set original image paths
+                pdfDocument.setId(UUID.randomUUID().toString());
+                pdfDocument.setThumbnailPath(ThumbnailService.getInstance(requireContext())
+                        .createThumbnail(pdfDocument.getId(), processedImages.get(0)));
 
                 // Save to repository
                 ScannedDocumentRepository repository = ScannedDocumentRepository.getInstance(requireContext());
                 repository.addDocument(pdfDocument);
 
-                getActivity().runOnUiThread(() -> 
-                    Toast.makeText(getContext(), "PDF saved and added to documents", Toast.LENGTH_SHORT).show()
-                );
+                getActivity().runOnUiThread(() -> {
+                    loadingDialog.dismiss();
+                    Toast.makeText(getContext(), "PDF saved and added to documents", Toast.LENGTH_SHORT).show();
+                });
             } catch (Exception e) {
                 e.printStackTrace();
-                getActivity().runOnUiThread(() -> 
-                    Toast.makeText(getContext(), "Failed to save PDF: " + e.getMessage(), Toast.LENGTH_SHORT).show()
-                );
+                getActivity().runOnUiThread(() -> {
+                    loadingDialog.dismiss();
+                    Toast.makeText(getContext(), "Failed to save PDF: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                });
             }
         });
     }
@@ -490,7 +483,7 @@ public class ExtractTextFragment extends Fragment {
         // Get all extracted text from all pages
         StringBuilder allText = new StringBuilder();
         for (int i = 0; i < processedImages.size(); i++) {
-            Text recognizedText = adapter.getRecognizedText(i);
+            OCRService.OCRResult recognizedText = adapter.getRecognizedText(i);
             if (recognizedText != null) {
                 if (i > 0) allText.append("\n\n");
                 allText.append(recognizedText.getText());
@@ -724,7 +717,7 @@ public class ExtractTextFragment extends Fragment {
         // Get all extracted text from all pages
         StringBuilder allText = new StringBuilder();
         for (int i = 0; i < processedImages.size(); i++) {
-            Text recognizedText = adapter.getRecognizedText(i);
+            OCRService.OCRResult recognizedText = adapter.getRecognizedText(i);
             if (recognizedText != null) {
                 if (i > 0) allText.append("\n\n");
                 allText.append(recognizedText.getText());
@@ -836,7 +829,7 @@ public class ExtractTextFragment extends Fragment {
         // Get all extracted text from all pages
         StringBuilder allText = new StringBuilder();
         for (int i = 0; i < processedImages.size(); i++) {
-            Text recognizedText = adapter.getRecognizedText(i);
+            OCRService.OCRResult recognizedText = adapter.getRecognizedText(i);
             if (recognizedText != null) {
                 if (i > 0) allText.append("\n\n");
                 allText.append(recognizedText.getText());
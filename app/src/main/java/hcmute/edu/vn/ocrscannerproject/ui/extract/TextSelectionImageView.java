@@ -10,15 +10,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
-import com.google.mlkit.vision.text.Text;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import hcmute.edu.vn.ocrscannerproject.services.OCRService;
+
 public class TextSelectionImageView extends AppCompatImageView {
     private TextSelectionManager selectionManager;
-    private List<Text.TextBlock> textBlocks = new ArrayList<>();
+    private List<OCRService.TextBlock> textBlocks = new ArrayList<>();
     private float[] matrixValues = new float[9];
+    // Text coordinates are in full resolution, the drawable may be downsampled
+    private int sourceSampleSize = 1;
 
     public TextSelectionImageView(@NonNull Context context) {
         super(context);
@@ -40,9 +43,19 @@ public class TextSelectionImageView extends AppCompatImageView {
         setDrawingCacheEnabled(true);
     }
 
-    public void setRecognizedText(Text recognizedText) {
+    /**
+     * Sets the factor the displayed bitmap was downsampled by relative to the image the
+     * text was recognized on.
+     *
+     * @param sampleSize The sample size used when decoding the bitmap
+     */
+    public void setSourceSampleSize(int sampleSize) {
+        this.sourceSampleSize = Math.max(1, sampleSize);
+    }
+
+    public void setRecognizedText(OCRService.OCRResult recognizedText) {
         if (recognizedText != null) {
-            this.textBlocks = recognizedText.getTextBlocks();
+            this.textBlocks = recognizedText.getBlocks();
             updateSelectionManager();
         }
     }
@@ -55,8 +68,8 @@ public class TextSelectionImageView extends AppCompatImageView {
         matrix.getValues(matrixValues);
 
         // Calculate scale factors
-        float scaleX = matrixValues[Matrix.MSCALE_X];
-        float scaleY = matrixValues[Matrix.MSCALE_Y];
+        float scaleX = matrixValues[Matrix.MSCALE_X] / sourceSampleSize;
+        float scaleY = matrixValues[Matrix.MSCALE_Y] / sourceSampleSize;
         
         // Get translation values
         float translateX = matrixValues[Matrix.MTRANS_X];
@@ -27,7 +27,6 @@ import android.widget.PopupWindow;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.mlkit.vision.text.Text;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import org.json.JSONArray;
@@ -48,13 +47,14 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 
 import hcmute.edu.vn.ocrscannerproject.R;
+import hcmute.edu.vn.ocrscannerproject.services.OCRService;
 
 public class TextSelectionManager {
     private final Context context;
     private final Paint textPaint = new Paint();
     private final Paint textBackgroundPaint = new Paint();
     private final Paint selectionPaint = new Paint();
-    private final List<Text.TextBlock> textBlocks;
+    private final List<OCRService.TextBlock> textBlocks;
     private PointF selectionStart;
     private PointF selectionEnd;
     private boolean isSelecting;
@@ -137,7 +137,7 @@ public class TextSelectionManager {
 
     private List<DrawnWord> drawnWords = new ArrayList<>();
 
-    public TextSelectionManager(Context context, List<Text.TextBlock> textBlocks, 
+    public TextSelectionManager(Context context, List<OCRService.TextBlock> textBlocks, 
                               float imageScaleX, float imageScaleY,
                               float imageTranslateX, float imageTranslateY) {
         this.context = context;
@@ -449,10 +449,10 @@ public class TextSelectionManager {
         float defaultLineHeight = MAX_TEXT_SIZE + PADDING_VERTICAL * 2;
         float lastLineTop = 0;
 
-        for (Text.TextBlock block : textBlocks) {
+        for (OCRService.TextBlock block : textBlocks) {
             if (block.getBoundingBox() == null) continue;
 
-            for (Text.Line line : block.getLines()) {
+            for (OCRService.TextLine line : block.getLines()) {
                 if (line.getBoundingBox() == null) continue;
 
                 RectF lineRect = new RectF(line.getBoundingBox());
@@ -2,10 +2,14 @@ package hcmute.edu.vn.ocrscannerproject.ui.home;
 
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
+import android.content.ClipData;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.provider.MediaStore;
 import android.provider.OpenableColumns;
 import android.util.Log;
@@ -31,25 +35,30 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import hcmute.edu.vn.ocrscannerproject.R;
 import hcmute.edu.vn.ocrscannerproject.adapter.ScannedDocumentAdapter;
 import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
 import hcmute.edu.vn.ocrscannerproject.data.ScannedDocumentRepository;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.DocumentListItem;
+import hcmute.edu.vn.ocrscannerproject.services.BlobStore;
+import hcmute.edu.vn.ocrscannerproject.services.ImportEngine;
 
 public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnDocumentClickListener {
 
     private static final String TAG = "HomeFragment";
     private static final String ANONYMOUS_USER = "anonymous";
+    // Documents loaded per page, and how close to the end of the list the next page is loaded
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_DISTANCE = 20;
+    // Documents after the top of the list or an opened one whose cloud images are prefetched
+    private static final int IMAGE_PREFETCH_WINDOW = 10;
 
     private SearchView searchView;
     private Button btnImportFile, btnImportImage;
@@ -62,10 +71,20 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
     
     private ScannedDocumentRepository documentRepository;
     private ScannedDocumentAdapter documentAdapter;
-    private List<ScannedDocument> documents = new ArrayList<>();
+    private List<DocumentListItem> documents = new ArrayList<>();
+    private String currentFilter = "All";
+    private boolean isSearching = false;
+    private boolean isLoadingPage = false;
+    private boolean hasMorePages = true;
+    // Incremented whenever the list is reloaded, so results for an older list are dropped
+    private int listGeneration = 0;
 
     private ActivityResultLauncher<Intent> imagePickerLauncher;
     private ActivityResultLauncher<Intent> filePickerLauncher;
+    
+    // Imports run one at a time off the main thread, and are cancelled with the view
+    private ExecutorService importExecutor;
+    private CancellationSignal importSignal;
 
     @Nullable
     @Override
@@ -86,6 +105,7 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
         setupListeners();
         setupFilterSpinner();
         setupRecyclerView();
+        setupPaging();
         loadDocuments();
     }
     
@@ -96,19 +116,42 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
         loadDocuments();
     }
     
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (importSignal != null) {
+            importSignal.cancel();
+        }
+    }
+    
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        importExecutor.shutdownNow();
+    }
+    
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        importExecutor = Executors.newSingleThreadExecutor();
         
         // Đăng ký launcher để chọn ảnh từ thư viện
         imagePickerLauncher = registerForActivityResult(
                 new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null) {
-                        Uri selectedImageUri = result.getData().getData();
-                        if (selectedImageUri != null) {
+                        List<Uri> selectedImageUris = new ArrayList<>();
+                        ClipData clipData = result.getData().getClipData();
+                        if (clipData != null) {
+                            for (int i = 0; i < clipData.getItemCount(); i++) {
+                                selectedImageUris.add(clipData.getItemAt(i).getUri());
+                            }
+                        } else if (result.getData().getData() != null) {
+                            selectedImageUris.add(result.getData().getData());
+                        }
+                        if (!selectedImageUris.isEmpty()) {
                             // Chuyển ảnh đã chọn sang ReviewFragment
-                            sendImageToReview(selectedImageUri);
+                            sendImagesToReview(selectedImageUris);
                         } else {
                             Toast.makeText(requireContext(), "Không thể lấy ảnh đã chọn", Toast.LENGTH_SHORT).show();
                         }
@@ -177,7 +220,6 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
         btnViewMode.setOnClickListener(v -> {
             isGridView = !isGridView;
             setupRecyclerView();
-            loadDocuments();
             
             // Update icon
             btnViewMode.setImageResource(isGridView ? 
@@ -225,33 +267,124 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
             recyclerDocuments.setLayoutManager(new LinearLayoutManager(requireContext()));
         }
         
-        documentAdapter = new ScannedDocumentAdapter(requireContext(), documents);
+        documentAdapter = new ScannedDocumentAdapter(requireContext());
         documentAdapter.setOnDocumentClickListener(this);
+        documentAdapter.submitList(documents);
         recyclerDocuments.setAdapter(documentAdapter);
     }
     
+    /**
+     * Loads the next page of documents as the list is scrolled towards its end.
+     */
+    private void setupPaging() {
+        recyclerDocuments.setHasFixedSize(true);
+        recyclerDocuments.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) {
+                    return;
+                }
+                // GridLayoutManager is a LinearLayoutManager as well
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager != null
+                        && layoutManager.findLastVisibleItemPosition() >= documents.size() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Reloads the document list from the start. As many documents as are currently shown
+     * are loaded, so returning to this screen keeps the scroll position.
+     */
     private void loadDocuments() {
-        documents = documentRepository.getAllDocuments();
-        updateUI();
+        isSearching = false;
+        loadPage(null, Math.max(PAGE_SIZE, documents.size()));
+    }
+    
+    private void loadNextPage() {
+        if (isSearching || isLoadingPage || !hasMorePages || documents.isEmpty()) {
+            return;
+        }
+        loadPage(documents.get(documents.size() - 1), PAGE_SIZE);
+    }
+    
+    private void loadPage(DocumentListItem after, int pageSize) {
+        if (after == null) {
+            listGeneration++;
+        }
+        int generation = listGeneration;
+        isLoadingPage = true;
+        documentRepository.getDocumentPage(currentFilter, after, pageSize,
+                new ScannedDocumentRepository.DocumentCallback<List<DocumentListItem>>() {
+            @Override
+            public void onSuccess(List<DocumentListItem> page) {
+                if (!isAdded() || generation != listGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                hasMorePages = page.size() == pageSize;
+                
+                List<DocumentListItem> updated = (after == null) ? new ArrayList<>() : new ArrayList<>(documents);
+                updated.addAll(page);
+                documents = updated;
+                updateUI();
+                if (after == null) {
+                    prefetchImagesFrom(0);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (!isAdded() || generation != listGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                Toast.makeText(requireContext(), "Error loading documents", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
     
     private void searchDocuments(String query) {
-        if (query != null && !query.isEmpty()) {
-            documents = documentRepository.searchDocuments(query);
-        } else {
-            documents = documentRepository.getAllDocuments();
+        if (query == null || query.isEmpty()) {
+            loadDocuments();
+            return;
         }
-        updateUI();
+        
+        // Search results are ranked rather than paged by date, so they arrive as one list
+        isSearching = true;
+        int generation = ++listGeneration;
+        documentRepository.searchDocuments(query,
+                new ScannedDocumentRepository.DocumentCallback<List<DocumentListItem>>() {
+            @Override
+            public void onSuccess(List<DocumentListItem> result) {
+                if (!isAdded() || generation != listGeneration) {
+                    return;
+                }
+                documents = result;
+                updateUI();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (isAdded() && generation == listGeneration) {
+                    Toast.makeText(requireContext(), "Error searching documents", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
     
     private void filterDocuments(String filter) {
-        documents = documentRepository.filterDocumentsByType(filter);
-        updateUI();
+        currentFilter = filter;
+        documents = new ArrayList<>();
+        loadDocuments();
     }
     
     private void updateUI() {
         if (documentAdapter != null) {
-            documentAdapter.updateDocuments(documents);
+            // Diffed against the shown list off the main thread, only changed rows are rebound
+            documentAdapter.submitList(documents);
         }
         
         // Show empty state if needed
@@ -260,8 +393,33 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
         }
     }
     
+    /**
+     * Prefetches the cloud images of the documents from a position on, which are the ones
+     * most likely to be opened next. Documents with a local image are skipped.
+     */
+    private void prefetchImagesFrom(int position) {
+        List<String> documentIds = new ArrayList<>();
+        int end = Math.min(documents.size(), position + IMAGE_PREFETCH_WINDOW);
+        for (int i = position; i < end; i++) {
+            if (documents.get(i).getLocalImagePath() == null) {
+                documentIds.add(documents.get(i).getId());
+            }
+        }
+        if (!documentIds.isEmpty()) {
+            documentRepository.prefetchImages(documentIds);
+        }
+    }
+    
     @Override
-    public void onDocumentClick(ScannedDocument document) {
+    public void onDocumentClick(DocumentListItem document) {
+        // The documents below the opened one are likely to be opened after it
+        for (int i = 0; i < documents.size(); i++) {
+            if (documents.get(i).getId().equals(document.getId())) {
+                prefetchImagesFrom(i + 1);
+                break;
+            }
+        }
+        
         // Navigate to document details
         Bundle args = new Bundle();
         args.putString("documentId", document.getId());
@@ -270,7 +428,7 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
     }
     
     @Override
-    public void onDocumentLongClick(ScannedDocument document) {
+    public void onDocumentLongClick(DocumentListItem document) {
         // Show options menu (delete, share, etc.)
         Toast.makeText(requireContext(), "Long click: " + document.getFileName(), Toast.LENGTH_SHORT).show();
     }
@@ -285,6 +443,7 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
         
         // Thêm các provider khác như Google Drive, Photos, v.v. (nếu có)
         intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"image/jpeg", "image/png"});
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         
         try {
             imagePickerLauncher.launch(intent);
@@ -294,37 +453,84 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
     }
 
     /**
-     * Chuyển ảnh đã chọn sang ReviewFragment
+     * Sao chép các ảnh đã chọn trong nền rồi chuyển sang ReviewFragment
      */
-    private void sendImageToReview(Uri imageUri) {
-        try {
-            // Chuyển URI thành đường dẫn file
-            String imagePath = getImagePathFromUri(imageUri);
-            
-            if (imagePath != null) {
-                // Tạo mảng String[] chứa đường dẫn ảnh
-                String[] imagePathsArray = new String[]{imagePath};
-                
-                // Tạo bundle và chuyển sang ReviewFragment
-                Bundle args = new Bundle();
-                args.putStringArray("capturedImages", imagePathsArray);
-                
-                // Chuyển hướng đến ReviewFragment
-                Navigation.findNavController(requireView())
-                        .navigate(R.id.action_homeFragment_to_reviewFragment, args);
-            } else {
-                Toast.makeText(requireContext(), "Không thể xử lý ảnh đã chọn", Toast.LENGTH_SHORT).show();
+    private void sendImagesToReview(List<Uri> imageUris) {
+        Context context = requireContext().getApplicationContext();
+        CancellationSignal signal = startImport();
+        if (imageUris.size() > 1) {
+            Toast.makeText(context, "Đang nhập " + imageUris.size() + " ảnh...", Toast.LENGTH_SHORT).show();
+        }
+        
+        importExecutor.execute(() -> {
+            List<String> imagePaths = new ArrayList<>();
+            try {
+                for (Uri imageUri : imageUris) {
+                    // Chuyển URI thành đường dẫn file
+                    String imagePath = getImagePathFromUri(context, imageUri, signal);
+                    if (imagePath != null) {
+                        imagePaths.add(imagePath);
+                    }
+                }
+            } catch (OperationCanceledException e) {
+                Log.d(TAG, "Image import cancelled");
+                return;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending image to review: " + e.getMessage(), e);
-            Toast.makeText(requireContext(), "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            
+            runIfAttached(() -> {
+                if (imagePaths.isEmpty()) {
+                    Toast.makeText(requireContext(), "Không thể xử lý ảnh đã chọn", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                if (imagePaths.size() < imageUris.size()) {
+                    Toast.makeText(requireContext(), "Không thể xử lý " + (imageUris.size() - imagePaths.size())
+                            + " ảnh", Toast.LENGTH_SHORT).show();
+                }
+                try {
+                    // Tạo bundle và chuyển sang ReviewFragment
+                    Bundle args = new Bundle();
+                    args.putStringArray("capturedImages", imagePaths.toArray(new String[0]));
+                    
+                    // Chuyển hướng đến ReviewFragment
+                    Navigation.findNavController(requireView())
+                            .navigate(R.id.action_homeFragment_to_reviewFragment, args);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error sending image to review: " + e.getMessage(), e);
+                    Toast.makeText(requireContext(), "Lỗi: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+    
+    /**
+     * Hủy lần nhập trước nếu còn đang chạy và bắt đầu một lần nhập mới
+     */
+    private CancellationSignal startImport() {
+        if (importSignal != null) {
+            importSignal.cancel();
         }
+        importSignal = new CancellationSignal();
+        return importSignal;
+    }
+    
+    /**
+     * Chạy trên luồng chính nếu fragment vẫn còn gắn với activity
+     */
+    private void runIfAttached(Runnable action) {
+        if (getActivity() == null) {
+            return;
+        }
+        getActivity().runOnUiThread(() -> {
+            if (isAdded() && getView() != null) {
+                action.run();
+            }
+        });
     }
 
     /**
      * Chuyển đổi Uri thành đường dẫn file
      */
-    private String getImagePathFromUri(Uri uri) {
+    private String getImagePathFromUri(Context context, Uri uri, CancellationSignal signal) {
         try {
             // Kiểm tra xem URI có phải là file trực tiếp không
             if ("file".equals(uri.getScheme())) {
@@ -338,7 +544,7 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
                 Cursor cursor = null;
                 
                 try {
-                    cursor = requireContext().getContentResolver().query(uri, projection, null, null, null);
+                    cursor = context.getContentResolver().query(uri, projection, null, null, null);
                     if (cursor != null && cursor.moveToFirst()) {
                         int columnIndex = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
                         String path = cursor.getString(columnIndex);
@@ -355,38 +561,14 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
                 }
                 
                 // Nếu không lấy được đường dẫn trực tiếp, tạo một bản sao của ảnh
-                String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-                String fileName = "IMG_" + timeStamp + ".jpg";
-                
-                File outputDir = new File(requireContext().getFilesDir(), "imported_images");
-                if (!outputDir.exists()) {
-                    outputDir.mkdirs();
-                }
-                
-                File outputFile = new File(outputDir, fileName);
-                
-                // Sao chép ảnh từ URI vào file
-                try (InputStream inputStream = requireContext().getContentResolver().openInputStream(uri);
-                     FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-                    
-                    if (inputStream == null) {
-                        return null;
-                    }
-                    
-                    byte[] buffer = new byte[4 * 1024]; // 4kb buffer
-                    int read;
-                    
-                    while ((read = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, read);
-                    }
-                    
-                    outputStream.flush();
-                    return outputFile.getAbsolutePath();
-                }
+                return BlobStore.getInstance(context).importUri(uri, "jpg", null, signal)
+                        .getFile().getAbsolutePath();
             }
             
             // Nếu không phải URI file hoặc content, trả về null
             return null;
+        } catch (OperationCanceledException e) {
+            throw e;
         } catch (Exception e) {
             Log.e(TAG, "Error processing image URI: " + e.getMessage(), e);
             return null;
@@ -419,68 +601,54 @@ public class HomeFragment extends Fragment implements ScannedDocumentAdapter.OnD
      * Xử lý file được chọn từ giao diện hệ thống
      */
     private void processSelectedFile(Uri fileUri, String fileName) {
-        try {
-            // Tạo bản sao của file trong bộ nhớ ứng dụng
-            String localFilePath = copyFileToAppStorage(fileUri, fileName);
+        Context context = requireContext().getApplicationContext();
+        CancellationSignal signal = startImport();
+        importExecutor.execute(() -> {
+            String localFilePath;
+            try {
+                // Tạo bản sao của file trong bộ nhớ ứng dụng
+                localFilePath = copyFileToAppStorage(context, fileUri, fileName, signal);
+            } catch (OperationCanceledException e) {
+                Log.d(TAG, "File import cancelled");
+                return;
+            }
             
-            if (localFilePath != null) {
-                // Tạo document mới từ file đã chọn
-                ScannedDocument document = createDocumentFromFile(localFilePath, fileName);
-                
-                if (document != null) {
-                    // Lưu document vào repository
-                    documentRepository.addDocument(document);
-                    
-                    // Cập nhật danh sách documents
-                    loadDocuments();
-                    
-                    Toast.makeText(requireContext(), "Đã lưu file: " + fileName, Toast.LENGTH_SHORT).show();
+            runIfAttached(() -> {
+                try {
+                    if (localFilePath != null) {
+                        // Tạo document mới từ file đã chọn
+                        ScannedDocument document = createDocumentFromFile(localFilePath, fileName);
+                        
+                        if (document != null) {
+                            // Lưu document vào repository
+                            documentRepository.addDocument(document);
+                            
+                            // Cập nhật danh sách documents
+                            loadDocuments();
+                            
+                            Toast.makeText(requireContext(), "Đã lưu file: " + fileName, Toast.LENGTH_SHORT).show();
+                        }
+                    } else {
+                        Toast.makeText(requireContext(), "Không thể sao chép file", Toast.LENGTH_SHORT).show();
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error processing file: " + e.getMessage(), e);
+                    Toast.makeText(requireContext(), "Lỗi xử lý file: " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 }
-            } else {
-                Toast.makeText(requireContext(), "Không thể sao chép file", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing file: " + e.getMessage(), e);
-            Toast.makeText(requireContext(), "Lỗi xử lý file: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+            });
+        });
     }
 
     /**
-     * Sao chép file từ URI vào bộ nhớ ứng dụng
+     * Sao chép file từ URI vào kho lưu trữ theo nội dung, nên file đã nhập trước đó không bị lưu lại lần nữa
      */
-    private String copyFileToAppStorage(Uri uri, String fileName) {
+    private String copyFileToAppStorage(Context context, Uri uri, String fileName, CancellationSignal signal) {
         try {
-            // Tạo thư mục lưu trữ nếu chưa tồn tại
-            File outputDir = new File(requireContext().getFilesDir(), "imported_files");
-            if (!outputDir.exists()) {
-                outputDir.mkdirs();
-            }
-            
-            // Tạo file đích với tên phù hợp
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String extension = getFileExtension(fileName);
-            String newFileName = "FILE_" + timeStamp + (extension.isEmpty() ? "" : "." + extension);
-            
-            File outputFile = new File(outputDir, newFileName);
-            
-            // Sao chép nội dung file
-            try (InputStream inputStream = requireContext().getContentResolver().openInputStream(uri);
-                 FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-                
-                if (inputStream == null) {
-                    return null;
-                }
-                
-                byte[] buffer = new byte[4 * 1024]; // 4kb buffer
-                int read;
-                
-                while ((read = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, read);
-                }
-                
-                outputStream.flush();
-                return outputFile.getAbsolutePath();
-            }
+            ImportEngine.Result stored = BlobStore.getInstance(context)
+                    .importUri(uri, getFileExtension(fileName), null, signal);
+            return stored.getFile().getAbsolutePath();
+        } catch (OperationCanceledException e) {
+            throw e;
         } catch (Exception e) {
             Log.e(TAG, "Error copying file: " + e.getMessage(), e);
             return null;
@@ -5,7 +5,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
@@ -61,6 +60,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -69,6 +69,10 @@ import java.util.concurrent.RejectedExecutionException;
 import hcmute.edu.vn.ocrscannerproject.R;
 import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
 import hcmute.edu.vn.ocrscannerproject.data.ScannedDocumentRepository;
+import hcmute.edu.vn.ocrscannerproject.services.BlobStore;
+import hcmute.edu.vn.ocrscannerproject.services.OCRService;
+import hcmute.edu.vn.ocrscannerproject.services.ThumbnailService;
+import hcmute.edu.vn.ocrscannerproject.utils.BitmapDecoder;
 import android.media.ExifInterface;
 
 public class ReviewFragment extends Fragment {
@@ -340,7 +344,7 @@ public class ReviewFragment extends Fragment {
                         
                         try {
                             // Load and process image
-                            String processedPath = preprocessImageForOCR(imagePath, rotation);
+                            String processedPath = preparePage(imagePath, rotation);
                             if (processedPath != null) {
                                 processedImages.add(processedPath);
                             } else {
@@ -378,28 +382,35 @@ public class ReviewFragment extends Fragment {
         }
     }
     
-    private String preprocessImageForOCR(String imagePath, int rotation) {
+    /**
+     * Chuẩn bị trang cho tài liệu: giữ nguyên ảnh gốc nếu không xoay, nếu có thì lưu bản đã
+     * xoay. Việc làm sạch ảnh cho OCR được thực hiện riêng trong OCRService
+     */
+    private String preparePage(String imagePath, int rotation) {
+        if (rotation == 0) {
+            // The scan itself is the page, so its JPEG can still be passed through to the PDF
+            return imagePath;
+        }
+        
         try {
-            // Load bitmap
-            Bitmap bitmap;
-            
-            if (imagePath.startsWith("content://")) {
-                bitmap = MediaStore.Images.Media.getBitmap(
-                        requireContext().getContentResolver(), Uri.parse(imagePath));
-            } else {
-                bitmap = BitmapFactory.decodeFile(imagePath);
-            }
+            // Load bitmap, downsampled only as far as it stays above the recognition size
+            BitmapDecoder bitmapDecoder = BitmapDecoder.getInstance(requireContext());
+            BitmapDecoder.SampledBitmap sampled = bitmapDecoder.decodeSampled(imagePath,
+                    OCRService.MAX_RECOGNITION_DIMENSION, OCRService.MAX_RECOGNITION_DIMENSION);
             
-            if (bitmap == null) {
+            if (sampled == null) {
                 return null;
             }
+            Bitmap bitmap = sampled.getBitmap();
             
-            // Apply rotation if needed
-            if (rotation != 0) {
-                Matrix matrix = new Matrix();
-                matrix.postRotate(rotation);
-                bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), 
-                        matrix, true);
+            // Apply rotation
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotation);
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), 
+                    matrix, true);
+            if (rotated != bitmap) {
+                bitmapDecoder.release(bitmap);
+                bitmap = rotated;
             }
             
             // Save processed image
@@ -413,6 +424,8 @@ public class ReviewFragment extends Fragment {
             
             try (FileOutputStream out = new FileOutputStream(outputFile)) {
                 bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
+            } finally {
+                bitmapDecoder.release(bitmap);
             }
             
             return outputFile.getAbsolutePath();
@@ -518,8 +531,14 @@ public class ReviewFragment extends Fragment {
             
             // Create and save the document with all valid images
             ScannedDocument document = new ScannedDocument(fileName, ANONYMOUS_USER, validImagePaths);
+            document.setId(UUID.randomUUID().toString());
             document.setType("Image");
+            
+            // The thumbnail is written in the background, under the path stored now
+            ThumbnailService thumbnailService = ThumbnailService.getInstance(requireContext());
+            document.setThumbnailPath(thumbnailService.getThumbnailPath(document.getId()));
             repository.addDocument(document);
+            thumbnailService.createThumbnailAsync(document.getId(), validImagePaths.get(0));
             
             Toast.makeText(requireContext(), 
                     "Document saved with " + validImagePaths.size() + " image(s): " + fileName, 
@@ -534,38 +553,12 @@ public class ReviewFragment extends Fragment {
     }
     
     /**
-     * Tạo một bản sao cục bộ của ảnh từ URI content
+     * Tạo một bản sao cục bộ của ảnh từ URI content, dùng chung với các tài liệu có cùng ảnh
      */
     private String copyContentUriToFile(Uri uri) {
         try {
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName = "IMG_" + timeStamp + ".jpg";
-            
-            File outputDir = new File(requireContext().getFilesDir(), "saved_images");
-            if (!outputDir.exists()) {
-                outputDir.mkdirs();
-            }
-            
-            File outputFile = new File(outputDir, fileName);
-            
-            // Sao chép ảnh từ URI vào file
-            try (InputStream inputStream = requireContext().getContentResolver().openInputStream(uri);
-                 FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-                
-                if (inputStream == null) {
-                    return null;
-                }
-                
-                byte[] buffer = new byte[4 * 1024]; // 4kb buffer
-                int read;
-                
-                while ((read = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, read);
-                }
-                
-                outputStream.flush();
-                return outputFile.getAbsolutePath();
-            }
+            File storedFile = BlobStore.getInstance(requireContext()).importUri(uri, "jpg");
+            return storedFile.getAbsolutePath();
         } catch (Exception e) {
             Log.e(TAG, "Error copying content URI to file: " + e.getMessage(), e);
             return null;
@@ -0,0 +1,147 @@
+package hcmute.edu.vn.ocrscannerproject.ui.scan;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import hcmute.edu.vn.ocrscannerproject.utils.AutoCaptureController;
+import hcmute.edu.vn.ocrscannerproject.utils.QuadDetector;
+
+/**
+ * Tracks the outline of the page in front of the camera from ImageAnalysis frames. The
+ * luma plane of each frame is read in place by a {@link QuadDetector}, the outline is
+ * turned upright and smoothed across frames, and a few missed frames are bridged so the
+ * outline does not flicker. The same frames feed an optional {@link AutoCaptureController},
+ * which asks for a picture once the page is held still and in focus. Nothing is allocated
+ * per frame. Frames that arrive while one is being analyzed should be dropped by binding
+ * with {@link ImageAnalysis#STRATEGY_KEEP_ONLY_LATEST}.
+ */
+public class DocumentAnalyzer implements ImageAnalysis.Analyzer {
+    private static final String TAG = "DocumentAnalyzer";
+
+    // Weight of a new outline against the smoothed one
+    private static final float SMOOTHING = 0.5f;
+    // Frames without a page before the outline is dropped
+    private static final int MAX_MISSED_FRAMES = 5;
+
+    /**
+     * Listener for changes of the outline, called on the analysis thread.
+     */
+    public interface OutlineListener {
+        /**
+         * Called after every analyzed frame.
+         *
+         * @param quad The corners normalized to the upright frame, or null if there is no
+         *             page; only valid during the call
+         * @param frameWidth The width of the upright frame in pixels
+         * @param frameHeight The height of the upright frame in pixels
+         */
+        void onOutlineChanged(float[] quad, int frameWidth, int frameHeight);
+    }
+
+    /**
+     * Listener for auto-capture, called on the analysis thread.
+     */
+    public interface AutoCaptureListener {
+        /**
+         * Called when the page has been still and sharp long enough to take its picture.
+         */
+        void onAutoCapture();
+    }
+
+    private final QuadDetector detector = new QuadDetector();
+    private final OutlineListener listener;
+    private final AutoCaptureController autoCapture;
+    private final AutoCaptureListener autoCaptureListener;
+    private final float[] frameQuad = new float[8];
+    private final float[] uprightQuad = new float[8];
+    private final float[] published = new float[8];
+
+    // Guarded by this; read at capture time from the main thread
+    private final float[] outline = new float[8];
+    private boolean hasOutline;
+    private int missedFrames;
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param listener The listener to report the outline to, may be null
+     * @param autoCapture The controller deciding when to capture, may be null
+     * @param autoCaptureListener The listener to ask for a picture, may be null
+     */
+    public DocumentAnalyzer(OutlineListener listener, AutoCaptureController autoCapture,
+                            AutoCaptureListener autoCaptureListener) {
+        this.listener = listener;
+        this.autoCapture = autoCapture;
+        this.autoCaptureListener = autoCaptureListener;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        try {
+            ImageProxy.PlaneProxy luma = image.getPlanes()[0];
+            int rotation = image.getImageInfo().getRotationDegrees();
+            boolean found = detector.detect(luma.getBuffer(), image.getWidth(), image.getHeight(),
+                    luma.getRowStride(), frameQuad);
+            if (found) {
+                QuadDetector.toUpright(frameQuad, rotation, uprightQuad);
+            }
+
+            boolean visible;
+            synchronized (this) {
+                update(found);
+                visible = hasOutline;
+                if (visible) {
+                    System.arraycopy(outline, 0, published, 0, published.length);
+                }
+            }
+
+            if (autoCapture != null && autoCapture.onFrame(luma.getBuffer(), image.getWidth(), image.getHeight(),
+                    luma.getRowStride(), image.getImageInfo().getTimestamp(), found)
+                    && autoCaptureListener != null) {
+                autoCaptureListener.onAutoCapture();
+            }
+
+            if (listener != null) {
+                boolean sideways = rotation % 180 != 0;
+                listener.onOutlineChanged(visible ? published : null,
+                        sideways ? image.getHeight() : image.getWidth(),
+                        sideways ? image.getWidth() : image.getHeight());
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Copies the current outline.
+     *
+     * @param out Receives the corners normalized to the upright frame, in the order top
+     *            left, top right, bottom right, bottom left
+     * @return True if a page is in view and out was filled
+     */
+    public synchronized boolean getOutline(float[] out) {
+        if (hasOutline) {
+            System.arraycopy(outline, 0, out, 0, outline.length);
+        }
+        return hasOutline;
+    }
+
+    private void update(boolean found) {
+        if (!found) {
+            if (hasOutline && ++missedFrames > MAX_MISSED_FRAMES) {
+                hasOutline = false;
+            }
+            return;
+        }
+        missedFrames = 0;
+        if (!hasOutline) {
+            System.arraycopy(uprightQuad, 0, outline, 0, outline.length);
+            hasOutline = true;
+            return;
+        }
+        for (int i = 0; i < outline.length; i++) {
+            outline[i] += SMOOTHING * (uprightQuad[i] - outline[i]);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package hcmute.edu.vn.ocrscannerproject.ui.scan;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Draws the outline of the detected page over a PreviewView. Outlines are given in
+ * coordinates normalized to the upright camera frame and mapped the way PreviewView's
+ * default FILL_CENTER scale type maps the frame, so the outline lines up with the page
+ * on screen. Outlines may be set from any thread.
+ */
+public class DocumentOutlineView extends View {
+    private static final int OUTLINE_COLOR = Color.parseColor("#2196F3");
+    private static final int FILL_ALPHA = 48;
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final float[] pendingQuad = new float[8];
+    private boolean hasPendingQuad;
+    private int frameWidth;
+    private int frameHeight;
+
+    // Only touched on the main thread
+    private final float[] drawnQuad = new float[8];
+    private final Path path = new Path();
+    private Paint strokePaint;
+    private Paint fillPaint;
+
+    public DocumentOutlineView(@NonNull Context context) {
+        super(context);
+        init();
+    }
+
+    public DocumentOutlineView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public DocumentOutlineView(@NonNull Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setStrokeJoin(Paint.Join.ROUND);
+        strokePaint.setStrokeWidth(3 * getResources().getDisplayMetrics().density);
+        strokePaint.setColor(OUTLINE_COLOR);
+
+        fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fillPaint.setStyle(Paint.Style.FILL);
+        fillPaint.setColor(OUTLINE_COLOR);
+        fillPaint.setAlpha(FILL_ALPHA);
+    }
+
+    /**
+     * Sets the outline to draw.
+     *
+     * @param quad The corners normalized to the upright frame, or null to draw nothing
+     * @param frameWidth The width of the upright frame in pixels
+     * @param frameHeight The height of the upright frame in pixels
+     */
+    public void setOutline(float[] quad, int frameWidth, int frameHeight) {
+        synchronized (lock) {
+            if (quad == null && !hasPendingQuad) {
+                return;
+            }
+            hasPendingQuad = quad != null;
+            if (quad != null) {
+                System.arraycopy(quad, 0, pendingQuad, 0, pendingQuad.length);
+            }
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
+        postInvalidateOnAnimation();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width;
+        int height;
+        synchronized (lock) {
+            if (!hasPendingQuad || frameWidth <= 0 || frameHeight <= 0) {
+                return;
+            }
+            System.arraycopy(pendingQuad, 0, drawnQuad, 0, drawnQuad.length);
+            width = frameWidth;
+            height = frameHeight;
+        }
+
+        // FILL_CENTER scales the frame to cover the view and crops what overflows
+        float scale = Math.max((float) getWidth() / width, (float) getHeight() / height);
+        float offsetX = (getWidth() - width * scale) / 2;
+        float offsetY = (getHeight() - height * scale) / 2;
+
+        path.rewind();
+        for (int i = 0; i < 4; i++) {
+            float x = offsetX + drawnQuad[2 * i] * width * scale;
+            float y = offsetY + drawnQuad[2 * i + 1] * height * scale;
+            if (i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        path.close();
+        canvas.drawPath(path, fillPaint);
+        canvas.drawPath(path, strokePaint);
+    }
+}
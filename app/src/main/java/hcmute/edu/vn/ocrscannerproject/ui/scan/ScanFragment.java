@@ -19,7 +19,6 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Images.Media;
 import android.util.Log;
 import android.view.LayoutInflater;
-import android.view.Surface;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
@@ -42,6 +41,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.AspectRatio;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
 import androidx.camera.core.ImageProxy;
@@ -75,7 +75,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import hcmute.edu.vn.ocrscannerproject.R;
-import android.media.ExifInterface;
+import hcmute.edu.vn.ocrscannerproject.services.CaptureQueue;
+import hcmute.edu.vn.ocrscannerproject.utils.AutoCaptureController;
 
 public class ScanFragment extends Fragment {
 
@@ -86,6 +87,7 @@ public class ScanFragment extends Fragment {
     private static final String[] STORAGE_PERMISSIONS = {
             Manifest.permission.READ_EXTERNAL_STORAGE
     };
+    private static final int JPEG_QUALITY = 100;
     
     // UI Components
     private com.google.android.material.button.MaterialButtonToggleGroup modeToggleGroup;
@@ -97,6 +99,7 @@ public class ScanFragment extends Fragment {
     private TextView tvBatchCount;
     private ImageView imgBatchPreview;
     private PreviewView previewView;
+    private DocumentOutlineView documentOutline;
     private BottomNavigationView bottomNav;
     private FloatingActionButton fabCamera;
     private ImageButton btnClose, btnFlash;
@@ -110,8 +113,16 @@ public class ScanFragment extends Fragment {
     
     // CameraX variables
     private ImageCapture imageCapture;
+    private ImageAnalysis imageAnalysis;
+    private DocumentAnalyzer documentAnalyzer;
+    // Takes batch pages by itself once each is held still and sharp
+    private final AutoCaptureController autoCaptureController = new AutoCaptureController();
     private ProcessCameraProvider cameraProvider;
     private ExecutorService cameraExecutor;
+    // Encodes and writes captured pages off the main thread, a few at a time
+    private CaptureQueue captureQueue;
+    // Changes when the batch is reset, so pages captured before are dropped
+    private int captureGeneration;
     
     // Permission and activity result launchers
     private ActivityResultLauncher<String[]> requestPermissionLauncher;
@@ -202,6 +213,7 @@ public class ScanFragment extends Fragment {
                 
         // Initialize camera executor
         cameraExecutor = Executors.newSingleThreadExecutor();
+        captureQueue = new CaptureQueue(CaptureQueue.DEFAULT_CAPACITY, JPEG_QUALITY);
 
         // Initialize MediaPlayer for camera shutter sound
         mediaPlayer = MediaPlayer.create(requireContext(), R.raw.camera_shutter);
@@ -283,10 +295,12 @@ public class ScanFragment extends Fragment {
         tvBatchCount = view.findViewById(R.id.tvBatchCount);
         imgBatchPreview = view.findViewById(R.id.imgBatchPreview);
         previewView = view.findViewById(R.id.previewView);
+        documentOutline = view.findViewById(R.id.documentOutline);
 
         // Set Single mode as default
         modeToggleGroup.check(R.id.radioSingle);
         isBatchMode = false;
+        autoCaptureController.setEnabled(false);
 
         // Set initial visibility
         previewContainer.setVisibility(View.GONE);
@@ -299,6 +313,7 @@ public class ScanFragment extends Fragment {
         modeToggleGroup.addOnButtonCheckedListener((group, checkedId, isChecked) -> {
             if (isChecked) {
             isBatchMode = checkedId == R.id.radioBatch;
+            autoCaptureController.setEnabled(isBatchMode);
             
                 // Update UI based on mode
             if (isBatchMode) {
@@ -318,7 +333,9 @@ public class ScanFragment extends Fragment {
         // Capture button click listener
         captureButton.setOnClickListener(v -> {
             if (allPermissionsGranted()) {
-                captureImage();
+                if (!captureImage()) {
+                    Toast.makeText(requireContext(), "Đang lưu ảnh, vui lòng đợi", Toast.LENGTH_SHORT).show();
+                }
             } else {
                 Log.d(TAG, "Requesting camera permission");
                 requestCameraPermissions();
@@ -345,7 +362,9 @@ public class ScanFragment extends Fragment {
         
         // Complete button click listener (for batch mode)
         btnComplete.setOnClickListener(v -> {
-            if (batchCount > 0) {
+            if (captureQueue.hasPending()) {
+                Toast.makeText(requireContext(), "Đang lưu ảnh, vui lòng đợi", Toast.LENGTH_SHORT).show();
+            } else if (batchCount > 0) {
                 // Navigate to review fragment with multiple images
                 navigateToReview();
             } else {
@@ -471,8 +490,21 @@ public class ScanFragment extends Fragment {
                         .setCaptureMode(ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY)
                         .setTargetRotation(requireView().getDisplay().getRotation())
                         .setTargetAspectRatio(AspectRatio.RATIO_4_3)
-                        .setJpegQuality(100)
+                        .setJpegQuality(JPEG_QUALITY)
+                        .build();
+                
+                // Track the page outline on low-resolution frames, dropping frames while
+                // the previous one is still being analyzed
+                imageAnalysis = new ImageAnalysis.Builder()
+                        .setTargetRotation(requireView().getDisplay().getRotation())
+                        .setTargetAspectRatio(AspectRatio.RATIO_4_3)
+                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                        .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
                         .build();
+                autoCaptureController.setEnabled(isBatchMode);
+                documentAnalyzer = new DocumentAnalyzer(documentOutline::setOutline,
+                        autoCaptureController, this::onAutoCapture);
+                imageAnalysis.setAnalyzer(cameraExecutor, documentAnalyzer);
                 
                 // Unbind use cases before rebinding
                 cameraProvider.unbindAll();
@@ -482,7 +514,8 @@ public class ScanFragment extends Fragment {
                         getViewLifecycleOwner(),
                         cameraSelector,
                         preview,
-                        imageCapture);
+                        imageCapture,
+                        imageAnalysis);
                 
                 // Connect the preview use case to the previewView
                 preview.setSurfaceProvider(previewView.getSurfaceProvider());
@@ -498,8 +531,20 @@ public class ScanFragment extends Fragment {
         }, ContextCompat.getMainExecutor(requireContext()));
     }
     
-    private void captureImage() {
-        if (imageCapture == null) return;
+    /**
+     * Chụp ảnh vào bộ nhớ; ảnh được mã hóa và ghi ra file trên hàng đợi nền
+     *
+     * @return false nếu các ảnh trước vẫn đang được ghi và chưa thể chụp tiếp
+     */
+    private boolean captureImage() {
+        if (imageCapture == null) return false;
+        
+        // Hold the shutter while earlier pages are still being written
+        if (!captureQueue.tryReserve()) {
+            Log.d(TAG, "Capture queue full, waiting for earlier pages");
+            return false;
+        }
+        autoCaptureController.notifyCaptured();
 
         // Create output file to hold the image
         File photoFile = new File(
@@ -507,57 +552,68 @@ public class ScanFragment extends Fragment {
                 new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss-SSS", Locale.getDefault())
                         .format(System.currentTimeMillis()) + ".jpg");
 
-        // Create output options object which contains file + metadata
-        ImageCapture.OutputFileOptions outputOptions = new ImageCapture.OutputFileOptions.Builder(photoFile)
-                .setMetadata(new ImageCapture.Metadata())
-                .build();
+        // Outline of the page at the moment the shutter is pressed
+        float[] outline = new float[8];
+        boolean hasOutline = documentAnalyzer != null && documentAnalyzer.getOutline(outline);
+        int generation = captureGeneration;
 
-        // Set up image capture listener
-        imageCapture.takePicture(
-                outputOptions,
-                ContextCompat.getMainExecutor(requireContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        Uri savedUri = Uri.fromFile(photoFile);
-                        try {
-                            // Set EXIF orientation
-                            ExifInterface exif = new ExifInterface(photoFile.getAbsolutePath());
-                            int rotation = requireView().getDisplay().getRotation();
-                            int orientation;
-                            switch (rotation) {
-                                case Surface.ROTATION_90:
-                                    orientation = ExifInterface.ORIENTATION_ROTATE_90;
-                                    break;
-                                case Surface.ROTATION_180:
-                                    orientation = ExifInterface.ORIENTATION_ROTATE_180;
-                                    break;
-                                case Surface.ROTATION_270:
-                                    orientation = ExifInterface.ORIENTATION_ROTATE_270;
-                                    break;
-                                default:
-                                    orientation = ExifInterface.ORIENTATION_NORMAL;
+        // The rotation is fixed now and delivered with the image, so the file never needs
+        // its orientation rewritten
+        imageCapture.setTargetRotation(requireView().getDisplay().getRotation());
+        imageCapture.takePicture(cameraExecutor, new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+                // Copies the JPEG and frees the camera buffer before encoding starts
+                captureQueue.submit(image, hasOutline ? outline : null, photoFile,
+                        new CaptureQueue.CaptureCallback() {
+                            @Override
+                            public void onPageSaved(File file) {
+                                if (!isAdded() || getView() == null || generation != captureGeneration) {
+                                    // Discarded while it was being written
+                                    file.delete();
+                                    return;
+                                }
+                                Log.d(TAG, "Photo capture succeeded: " + Uri.fromFile(file));
+                                onImageCaptured(file.getAbsolutePath());
                             }
-                            exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
-                            exif.saveAttributes();
-                        } catch (IOException e) {
-                            Log.e(TAG, "Error setting EXIF orientation: " + e.getMessage());
-                        }
 
-                        String msg = "Photo capture succeeded: " + savedUri;
-                        Toast.makeText(requireContext(), msg, Toast.LENGTH_SHORT).show();
-                        Log.d(TAG, msg);
-
-                        // Process the captured image
-                        onImageCaptured(photoFile.getAbsolutePath());
-                    }
+                            @Override
+                            public void onPageFailed(Exception e) {
+                                if (!isAdded()) {
+                                    return;
+                                }
+                                Toast.makeText(requireContext(),
+                                        "Lỗi khi lưu ảnh: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                            }
+                        });
+            }
 
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exc) {
-                        Log.e(TAG, "Photo capture failed: " + exc.getMessage(), exc);
-                    }
-                }
-        );
+            @Override
+            public void onError(@NonNull ImageCaptureException exc) {
+                captureQueue.cancelReservation();
+                Log.e(TAG, "Photo capture failed: " + exc.getMessage(), exc);
+            }
+        });
+        return true;
+    }
+    
+    /**
+     * Chụp tự động khi trang đã đứng yên và đủ nét, chỉ trong chế độ batch
+     */
+    private void onAutoCapture() {
+        if (getActivity() == null) {
+            return;
+        }
+        getActivity().runOnUiThread(() -> {
+            if (!isAdded() || getView() == null || !isBatchMode) {
+                return;
+            }
+            Log.d(TAG, "Auto-capture, sharpness " + autoCaptureController.getSharpness());
+            if (!captureImage()) {
+                // Try again once the queue has room, while the page is still held
+                autoCaptureController.notifyCaptureSkipped();
+            }
+        });
     }
     
     private File createImageFile() throws IOException {
@@ -666,6 +722,8 @@ public class ScanFragment extends Fragment {
     }
     
     private void resetBatchState() {
+        // Pages still being written belong to the discarded batch
+        captureGeneration++;
         batchCount = 0;
         capturedImagePaths.clear();
         previewContainer.setVisibility(View.GONE);
@@ -794,11 +852,6 @@ public class ScanFragment extends Fragment {
             decorView.setSystemUiVisibility(flags);
         }
         
-        // Shut down camera executor
-        if (cameraExecutor != null) {
-            cameraExecutor.shutdown();
-        }
-
         // Release MediaPlayer resources
         if (mediaPlayer != null) {
             mediaPlayer.release();
@@ -806,6 +859,20 @@ public class ScanFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        
+        // The view is recreated when returning from review, so the executors live as
+        // long as the fragment
+        if (cameraExecutor != null) {
+            cameraExecutor.shutdown();
+        }
+        if (captureQueue != null) {
+            captureQueue.close();
+        }
+    }
+
     private void updateBatchModeUI(boolean showBatchUI) {
         // Show/hide import containers
         importFileContainer.setVisibility(showBatchUI ? View.GONE : View.VISIBLE);
@@ -838,6 +905,7 @@ public class ScanFragment extends Fragment {
         // Switch back to single mode
         modeToggleGroup.check(R.id.radioSingle);
         isBatchMode = false;
+        autoCaptureController.setEnabled(false);
         // Show feedback
         Toast.makeText(requireContext(), "Images discarded", Toast.LENGTH_SHORT).show();
     }
@@ -848,5 +916,8 @@ public class ScanFragment extends Fragment {
         if (imageCapture != null) {
             imageCapture.setTargetRotation(requireView().getDisplay().getRotation());
         }
+        if (imageAnalysis != null) {
+            imageAnalysis.setTargetRotation(requireView().getDisplay().getRotation());
+        }
     }
 } 
\ No newline at end of file
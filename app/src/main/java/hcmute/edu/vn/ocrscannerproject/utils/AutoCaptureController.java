@@ -0,0 +1,311 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides when to take a picture without a tap, from the luma plane of camera frames.
+ * Each frame is sampled on a sparse grid: at every grid point the Laplacian is taken from
+ * the pixel's direct neighbours, and the variance of those values scores how sharp the
+ * frame is; the grid values themselves are compared with the previous frame's to measure
+ * motion. Once a page has been held still and sharp for a number of frames, the
+ * controller fires and then waits for the scene to change, such as the next page being
+ * turned over, before it arms again. Sample buffers are allocated when the frame size
+ * changes and reused after that. Frames must come from one thread; the other methods may
+ * be called from any thread.
+ */
+public final class AutoCaptureController {
+
+    /**
+     * Tuning of the controller.
+     */
+    public static final class Config {
+        /** Pixels between grid points in each direction. */
+        public static final int DEFAULT_SAMPLE_STEP = 4;
+        /** Laplacian variance a frame needs to count as sharp. */
+        public static final double DEFAULT_MIN_SHARPNESS = 100;
+        /** Mean luma change per grid point below which a frame counts as still. */
+        public static final double DEFAULT_MAX_MOTION = 3;
+        /** Consecutive still, sharp frames needed to fire. */
+        public static final int DEFAULT_STABLE_FRAMES = 6;
+        /** Mean luma change from the last capture that re-arms the controller. */
+        public static final double DEFAULT_MIN_SCENE_CHANGE = 12;
+        /** Shortest time between two captures. */
+        public static final long DEFAULT_COOLDOWN_MS = 1000;
+
+        private final int sampleStep;
+        private final double minSharpness;
+        private final double maxMotion;
+        private final int stableFrames;
+        private final double minSceneChange;
+        private final long cooldownMs;
+
+        /**
+         * Creates the default configuration.
+         */
+        public Config() {
+            this(DEFAULT_SAMPLE_STEP, DEFAULT_MIN_SHARPNESS, DEFAULT_MAX_MOTION, DEFAULT_STABLE_FRAMES,
+                    DEFAULT_MIN_SCENE_CHANGE, DEFAULT_COOLDOWN_MS);
+        }
+
+        /**
+         * Creates a configuration.
+         *
+         * @param sampleStep Pixels between grid points; larger is cheaper and coarser
+         * @param minSharpness Laplacian variance a frame needs to count as sharp
+         * @param maxMotion Mean luma change per grid point below which a frame is still
+         * @param stableFrames Consecutive still, sharp frames needed to fire
+         * @param minSceneChange Mean luma change from the last capture that re-arms
+         * @param cooldownMs Shortest time between two captures in milliseconds
+         */
+        public Config(int sampleStep, double minSharpness, double maxMotion, int stableFrames,
+                      double minSceneChange, long cooldownMs) {
+            if (sampleStep < 2) {
+                throw new IllegalArgumentException("Sample step must be at least 2: " + sampleStep);
+            }
+            this.sampleStep = sampleStep;
+            this.minSharpness = minSharpness;
+            this.maxMotion = maxMotion;
+            this.stableFrames = Math.max(1, stableFrames);
+            this.minSceneChange = minSceneChange;
+            this.cooldownMs = cooldownMs;
+        }
+
+        public int getSampleStep() {
+            return sampleStep;
+        }
+
+        public double getMinSharpness() {
+            return minSharpness;
+        }
+
+        public double getMaxMotion() {
+            return maxMotion;
+        }
+
+        public int getStableFrames() {
+            return stableFrames;
+        }
+
+        public double getMinSceneChange() {
+            return minSceneChange;
+        }
+
+        public long getCooldownMs() {
+            return cooldownMs;
+        }
+    }
+
+    // Share of each edge left out of sampling, where the background usually is
+    private static final int MARGIN_DIVISOR = 8;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final Config config;
+    private volatile boolean enabled;
+    private volatile boolean resetRequested;
+    private volatile boolean captureNotified;
+    private volatile boolean skipNotified;
+
+    private int frameWidth;
+    private int frameHeight;
+    private int gridWidth;
+    private int gridHeight;
+    private int[] current;
+    private int[] previous;
+    private int[] reference;
+    private boolean hasPrevious;
+
+    private boolean armed = true;
+    private int stableCount;
+    private long lastCaptureNanos;
+    private boolean hasCaptured;
+    private double sharpness;
+    private double motion;
+
+    /**
+     * Creates a controller with the default configuration.
+     */
+    public AutoCaptureController() {
+        this(new Config());
+    }
+
+    /**
+     * Creates a controller.
+     *
+     * @param config The tuning of the controller
+     */
+    public AutoCaptureController(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Turns auto-capture on or off. Turning it on starts over, as if nothing had been captured.
+     *
+     * @param enabled True to fire on still, sharp frames
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            resetRequested = true;
+        }
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Tells the controller a picture was taken some other way, such as a tap on the
+     * shutter, so the page in view is not captured again.
+     */
+    public void notifyCaptured() {
+        captureNotified = true;
+    }
+
+    /**
+     * Tells the controller the picture it asked for could not be taken, so it should try
+     * again once the page has been still for long enough.
+     */
+    public void notifyCaptureSkipped() {
+        skipNotified = true;
+    }
+
+    /**
+     * Scores a frame and decides whether to capture now.
+     *
+     * @param luma The luma plane, one byte per pixel; its position is not changed
+     * @param width The width of the frame in pixels
+     * @param height The height of the frame in pixels
+     * @param rowStride The bytes between the starts of two rows
+     * @param timestampNanos The time the frame was taken
+     * @param pageInView True if a page was found in the frame
+     * @return True if a picture should be taken now
+     */
+    public boolean onFrame(ByteBuffer luma, int width, int height, int rowStride, long timestampNanos,
+                           boolean pageInView) {
+        if (!enabled) {
+            return false;
+        }
+        if (resetRequested) {
+            resetRequested = false;
+            captureNotified = false;
+            skipNotified = false;
+            hasPrevious = false;
+            armed = true;
+            stableCount = 0;
+            hasCaptured = false;
+        }
+        prepare(width, height);
+        sharpness = sample(luma, rowStride);
+        motion = hasPrevious ? meanDifference(current, previous) : Double.MAX_VALUE;
+        hasPrevious = true;
+
+        boolean fire = false;
+        if (captureNotified) {
+            captureNotified = false;
+            disarm(timestampNanos);
+        } else if (skipNotified) {
+            skipNotified = false;
+            armed = true;
+            stableCount = 0;
+        } else if (!armed) {
+            // Wait for the page to be turned, or taken away, before the next capture
+            if (meanDifference(current, reference) >= config.minSceneChange) {
+                armed = true;
+                stableCount = 0;
+            }
+        } else if (pageInView && motion <= config.maxMotion && sharpness >= config.minSharpness) {
+            stableCount++;
+            boolean cooledDown = !hasCaptured
+                    || timestampNanos - lastCaptureNanos >= config.cooldownMs * NANOS_PER_MILLI;
+            if (stableCount >= config.stableFrames && cooledDown) {
+                fire = true;
+                disarm(timestampNanos);
+            }
+        } else {
+            stableCount = 0;
+        }
+
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        return fire;
+    }
+
+    /**
+     * @return The Laplacian variance of the last frame
+     */
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    /**
+     * @return The mean luma change per grid point between the last two frames
+     */
+    public double getMotion() {
+        return motion;
+    }
+
+    /**
+     * Remembers the current frame as captured and waits for the scene to change.
+     */
+    private void disarm(long timestampNanos) {
+        armed = false;
+        hasCaptured = true;
+        lastCaptureNanos = timestampNanos;
+        System.arraycopy(current, 0, reference, 0, current.length);
+    }
+
+    private void prepare(int width, int height) {
+        if (width == frameWidth && height == frameHeight) {
+            return;
+        }
+        frameWidth = width;
+        frameHeight = height;
+        int step = config.sampleStep;
+        // Grid points keep one pixel from the edge so every one has four neighbours
+        gridWidth = Math.max(1, (width - 2 * (width / MARGIN_DIVISOR) - 2) / step);
+        gridHeight = Math.max(1, (height - 2 * (height / MARGIN_DIVISOR) - 2) / step);
+        current = new int[gridWidth * gridHeight];
+        previous = new int[gridWidth * gridHeight];
+        reference = new int[gridWidth * gridHeight];
+        hasPrevious = false;
+        armed = true;
+        stableCount = 0;
+    }
+
+    /**
+     * Fills the current grid and returns the variance of the Laplacian at the grid points.
+     */
+    private double sample(ByteBuffer luma, int rowStride) {
+        int base = luma.position();
+        int step = config.sampleStep;
+        int left = Math.max(1, frameWidth / MARGIN_DIVISOR);
+        int top = Math.max(1, frameHeight / MARGIN_DIVISOR);
+        long sum = 0;
+        long sumSquares = 0;
+        int i = 0;
+        for (int gy = 0; gy < gridHeight; gy++) {
+            int row = base + (top + gy * step) * rowStride;
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int index = row + left + gx * step;
+                int center = luma.get(index) & 0xFF;
+                int laplacian = (luma.get(index - 1) & 0xFF) + (luma.get(index + 1) & 0xFF)
+                        + (luma.get(index - rowStride) & 0xFF) + (luma.get(index + rowStride) & 0xFF)
+                        - 4 * center;
+                sum += laplacian;
+                sumSquares += (long) laplacian * laplacian;
+                current[i++] = center;
+            }
+        }
+        double mean = (double) sum / i;
+        return (double) sumSquares / i - mean * mean;
+    }
+
+    private static double meanDifference(int[] a, int[] b) {
+        long total = 0;
+        for (int i = 0; i < a.length; i++) {
+            total += Math.abs(a[i] - b[i]);
+        }
+        return (double) total / a.length;
+    }
+}
@@ -0,0 +1,350 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import android.app.ActivityManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared bitmap decoder used by every screen that loads page images. Images are decoded
+ * at the size they are displayed or recognized at, using inSampleSize or region decoding,
+ * and pixel buffers are reused through a {@link BitmapPool}. Decode time and allocation
+ * counters are kept so memory behaviour can be checked on real devices.
+ */
+public class BitmapDecoder {
+    private static final String TAG = "BitmapDecoder";
+    private static final String CONTENT_SCHEME = "content://";
+
+    // Fraction of the per-app heap the bitmap pool may hold
+    private static final int POOL_HEAP_DIVISOR = 8;
+
+    private static volatile BitmapDecoder instance;
+
+    private final ContentResolver contentResolver;
+    private final BitmapPool pool;
+
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeTimeNanos = new AtomicLong();
+    private final AtomicLong bytesAllocated = new AtomicLong();
+    private final AtomicLong bytesReused = new AtomicLong();
+
+    private BitmapDecoder(ContentResolver contentResolver, BitmapPool pool) {
+        this.contentResolver = contentResolver;
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the singleton instance of the decoder.
+     *
+     * @param context The application context
+     * @return The decoder instance
+     */
+    public static BitmapDecoder getInstance(Context context) {
+        if (instance == null) {
+            synchronized (BitmapDecoder.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    ActivityManager activityManager =
+                            (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+                    long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+                    instance = new BitmapDecoder(appContext.getContentResolver(),
+                            new BitmapPool(heapBytes / POOL_HEAP_DIVISOR));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Decodes an image so that it is at least the requested size, using the largest power
+     * of two sample size that keeps both dimensions at or above the request.
+     *
+     * @param imagePath A file path or content URI string
+     * @param reqWidth The width the image will be shown at
+     * @param reqHeight The height the image will be shown at
+     * @return The decoded image and the sample size used, or null if it cannot be decoded
+     */
+    public SampledBitmap decodeSampled(String imagePath, int reqWidth, int reqHeight) {
+        BitmapFactory.Options bounds = decodeBounds(imagePath);
+        if (bounds == null) {
+            return null;
+        }
+        int sampleSize = calculateSampleSize(bounds.outWidth, bounds.outHeight, reqWidth, reqHeight);
+        Bitmap bitmap = decode(imagePath, bounds, sampleSize);
+        return bitmap != null ? new SampledBitmap(bitmap, sampleSize) : null;
+    }
+
+    /**
+     * Decodes an image so that its longest edge is at most the given length, which bounds
+     * memory for work such as text recognition regardless of the source resolution.
+     *
+     * @param imagePath A file path or content URI string
+     * @param maxDimension The maximum length of the longest edge
+     * @return The decoded image and the sample size used, or null if it cannot be decoded
+     */
+    public SampledBitmap decodeWithin(String imagePath, int maxDimension) {
+        BitmapFactory.Options bounds = decodeBounds(imagePath);
+        if (bounds == null) {
+            return null;
+        }
+        int longestEdge = Math.max(bounds.outWidth, bounds.outHeight);
+        int sampleSize = 1;
+        while (longestEdge / sampleSize > maxDimension) {
+            sampleSize *= 2;
+        }
+        Bitmap bitmap = decode(imagePath, bounds, sampleSize);
+        return bitmap != null ? new SampledBitmap(bitmap, sampleSize) : null;
+    }
+
+    /**
+     * Decodes a rectangular region of an image file without decoding the rest of it.
+     *
+     * @param imagePath The path of the image file
+     * @param region The region to decode, in full resolution coordinates
+     * @param sampleSize The sample size to decode the region at
+     * @return The decoded region, or null if it cannot be decoded
+     */
+    public Bitmap decodeRegion(String imagePath, Rect region, int sampleSize) {
+        BitmapRegionDecoder regionDecoder = null;
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                regionDecoder = BitmapRegionDecoder.newInstance(imagePath);
+            } else {
+                regionDecoder = BitmapRegionDecoder.newInstance(imagePath, false);
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            int width = (region.width() + sampleSize - 1) / sampleSize;
+            int height = (region.height() + sampleSize - 1) / sampleSize;
+            options.inBitmap = pool.get(width * height * 4);
+
+            Bitmap bitmap;
+            try {
+                bitmap = regionDecoder.decodeRegion(region, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap did not fit after all, decode into a fresh one
+                pool.put(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = regionDecoder.decodeRegion(region, options);
+            }
+            recordDecode(start, bitmap, options.inBitmap);
+            return bitmap;
+        } catch (IOException e) {
+            Log.e(TAG, "Error decoding region of " + imagePath, e);
+            return null;
+        } finally {
+            if (regionDecoder != null) {
+                regionDecoder.recycle();
+            }
+        }
+    }
+
+    /**
+     * Returns a bitmap that is no longer displayed or used so its buffer can be reused by
+     * later decodes.
+     *
+     * @param bitmap The bitmap to release, may be null
+     */
+    public void release(Bitmap bitmap) {
+        pool.put(bitmap);
+    }
+
+    /**
+     * Gets a snapshot of the decode counters.
+     *
+     * @return The current metrics
+     */
+    public DecodeMetrics getMetrics() {
+        return new DecodeMetrics(decodeCount.get(), decodeTimeNanos.get(),
+                bytesAllocated.get(), bytesReused.get(), pool.getCurrentBytes());
+    }
+
+    /**
+     * Calculates the largest power of two sample size that keeps both dimensions of the
+     * decoded image at or above the requested size.
+     *
+     * @param width The width of the source image
+     * @param height The height of the source image
+     * @param reqWidth The requested width
+     * @param reqHeight The requested height
+     * @return The sample size
+     */
+    public static int calculateSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Reads the dimensions and type of an image without decoding its pixels.
+     *
+     * @param imagePath A file path or content URI string
+     * @return Options with outWidth, outHeight and outMimeType set, or null if the image
+     *         cannot be read
+     */
+    public BitmapFactory.Options decodeBounds(String imagePath) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(imagePath)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error reading " + imagePath, e);
+            return null;
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            Log.e(TAG, "Could not read image bounds of " + imagePath);
+            return null;
+        }
+        return bounds;
+    }
+
+    private Bitmap decode(String imagePath, BitmapFactory.Options bounds, int sampleSize) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+
+        // Size the request conservatively, since decoders round sampled dimensions up
+        int width = (bounds.outWidth + sampleSize - 1) / sampleSize;
+        int height = (bounds.outHeight + sampleSize - 1) / sampleSize;
+        options.inBitmap = pool.get(width * height * 4);
+
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(imagePath, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit after all, decode into a fresh one
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = decodeStream(imagePath, options);
+        }
+        recordDecode(start, bitmap, options.inBitmap);
+        return bitmap;
+    }
+
+    private Bitmap decodeStream(String imagePath, BitmapFactory.Options options) {
+        try (InputStream in = open(imagePath)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error decoding " + imagePath, e);
+            return null;
+        }
+    }
+
+    private InputStream open(String imagePath) throws IOException {
+        if (imagePath.startsWith(CONTENT_SCHEME)) {
+            InputStream in = contentResolver.openInputStream(Uri.parse(imagePath));
+            if (in == null) {
+                throw new IOException("Could not open " + imagePath);
+            }
+            return in;
+        }
+        return new BufferedInputStream(new FileInputStream(imagePath));
+    }
+
+    private void recordDecode(long startNanos, Bitmap bitmap, Bitmap reused) {
+        if (bitmap == null) {
+            return;
+        }
+        decodeCount.incrementAndGet();
+        decodeTimeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - startNanos);
+        if (reused != null && bitmap == reused) {
+            bytesReused.addAndGet(bitmap.getByteCount());
+        } else {
+            bytesAllocated.addAndGet(bitmap.getAllocationByteCount());
+        }
+    }
+
+    /**
+     * A decoded bitmap together with the sample size it was decoded at, so coordinates
+     * can be mapped back to the full resolution image.
+     */
+    public static class SampledBitmap {
+        private final Bitmap bitmap;
+        private final int sampleSize;
+
+        SampledBitmap(Bitmap bitmap, int sampleSize) {
+            this.bitmap = bitmap;
+            this.sampleSize = sampleSize;
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+    }
+
+    /**
+     * Snapshot of decode counters since the process started.
+     */
+    public static class DecodeMetrics {
+        private final long decodeCount;
+        private final long decodeTimeNanos;
+        private final long bytesAllocated;
+        private final long bytesReused;
+        private final long pooledBytes;
+
+        DecodeMetrics(long decodeCount, long decodeTimeNanos, long bytesAllocated,
+                      long bytesReused, long pooledBytes) {
+            this.decodeCount = decodeCount;
+            this.decodeTimeNanos = decodeTimeNanos;
+            this.bytesAllocated = bytesAllocated;
+            this.bytesReused = bytesReused;
+            this.pooledBytes = pooledBytes;
+        }
+
+        public long getDecodeCount() {
+            return decodeCount;
+        }
+
+        public long getDecodeTimeNanos() {
+            return decodeTimeNanos;
+        }
+
+        public long getBytesAllocated() {
+            return bytesAllocated;
+        }
+
+        public long getBytesReused() {
+            return bytesReused;
+        }
+
+        public long getPooledBytes() {
+            return pooledBytes;
+        }
+
+        @Override
+        public String toString() {
+            long averageMicros = decodeCount > 0 ? decodeTimeNanos / decodeCount / 1000 : 0;
+            return "decodes=" + decodeCount
+                    + " avgDecodeUs=" + averageMicros
+                    + " allocatedKB=" + bytesAllocated / 1024
+                    + " reusedKB=" + bytesReused / 1024
+                    + " pooledKB=" + pooledBytes / 1024;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Size-bounded pool of mutable bitmaps that can be handed to BitmapFactory as inBitmap,
+ * so decoding reuses existing pixel buffers instead of allocating new ones.
+ * Bitmaps are grouped by allocation size; a request is served by the smallest pooled bitmap
+ * that is large enough, as long as it does not waste too much memory.
+ */
+public class BitmapPool {
+    // A pooled bitmap is only reused if it is at most this many times larger than needed
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> bitmapsBySize = new TreeMap<>();
+    private long currentBytes = 0;
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxBytes The total allocation size of pooled bitmaps before the largest are evicted
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Takes a bitmap with at least the given allocation size out of the pool.
+     *
+     * @param byteCount The number of bytes the decoded bitmap needs
+     * @return A reusable bitmap, or null if none is suitable
+     */
+    public synchronized Bitmap get(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = bitmapsBySize.ceilingEntry(byteCount);
+        if (entry == null || entry.getKey() > (long) byteCount * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+
+        ArrayDeque<Bitmap> bitmaps = entry.getValue();
+        Bitmap bitmap = bitmaps.poll();
+        if (bitmaps.isEmpty()) {
+            bitmapsBySize.remove(entry.getKey());
+        }
+        currentBytes -= entry.getKey();
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must no longer draw or otherwise use it.
+     * Bitmaps that cannot be reused are recycled instead.
+     *
+     * @param bitmap The bitmap to return
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bitmap.getConfig() == Bitmap.Config.HARDWARE || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        ArrayDeque<Bitmap> bitmaps = bitmapsBySize.get(size);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            bitmapsBySize.put(size, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        currentBytes += size;
+        trimToSize();
+    }
+
+    /**
+     * Recycles every pooled bitmap.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> bitmaps : bitmapsBySize.values()) {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+        bitmapsBySize.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Gets the total allocation size of the pooled bitmaps.
+     *
+     * @return The size in bytes
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Evicts the largest bitmaps first, since they hold the most memory.
+     */
+    private void trimToSize() {
+        while (currentBytes > maxBytes && !bitmapsBySize.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = bitmapsBySize.lastEntry();
+            Bitmap bitmap = largest.getValue().pollLast();
+            if (largest.getValue().isEmpty()) {
+                bitmapsBySize.remove(largest.getKey());
+            }
+            currentBytes -= largest.getKey();
+            bitmap.recycle();
+        }
+    }
+}
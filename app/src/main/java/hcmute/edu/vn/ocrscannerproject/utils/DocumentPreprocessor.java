@@ -0,0 +1,392 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import java.util.Arrays;
+
+/**
+ * Cleans up page images before text recognition, on plain arrays so it runs and can be
+ * tested on the JVM. A page is converted to grayscale, straightened by the angle at which
+ * its text lines best line up with pixel rows, and binarized with Sauvola's adaptive
+ * threshold, which follows shadows and uneven lighting that a global threshold cannot.
+ * Thresholding works down the page in bands of rows, so apart from the page itself only
+ * the integral images of one band are held in memory.
+ */
+public final class DocumentPreprocessor {
+
+    /** Sauvola sensitivity; higher values turn less of a faint background into ink. */
+    public static final double DEFAULT_K = 0.34;
+
+    /** Rows thresholded at a time. */
+    public static final int DEFAULT_BAND_HEIGHT = 64;
+
+    /** Largest skew that is looked for, either way. */
+    public static final double MAX_SKEW_DEGREES = 15;
+
+    // Standard deviation of a gray level at full contrast
+    private static final double DYNAMIC_RANGE = 128;
+    private static final int MIN_WINDOW = 15;
+    private static final int MAX_WINDOW = 75;
+    // Pages are thresholded with a window of about this fraction of their long edge
+    private static final int WINDOW_DIVISOR = 50;
+
+    // Long edge of the copy the skew is measured on
+    private static final int SKEW_WORKING_DIMENSION = 1024;
+    private static final double COARSE_STEP_DEGREES = 0.5;
+    private static final double FINE_STEP_DEGREES = 0.05;
+    // Skews smaller than this are left alone rather than resampling the page
+    private static final double MIN_CORRECTION_DEGREES = 0.2;
+    // Below this many ink pixels the page has too little text to measure its skew
+    private static final int MIN_INK_PIXELS = 200;
+
+    private static final int WHITE = 255;
+    private static final int BLACK = 0;
+
+    private final double k;
+    private final int bandHeight;
+
+    /**
+     * An 8-bit grayscale image, one byte per pixel in rows.
+     */
+    public static final class GrayImage {
+        private final byte[] pixels;
+        private final int width;
+        private final int height;
+
+        /**
+         * Constructs a new GrayImage.
+         *
+         * @param pixels The gray levels, width * height of them, 0 for black
+         * @param width The width in pixels
+         * @param height The height in pixels
+         */
+        public GrayImage(byte[] pixels, int width, int height) {
+            if (pixels.length < width * height) {
+                throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + pixels.length);
+            }
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        public byte[] getPixels() {
+            return pixels;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return The gray level of a pixel, 0 to 255
+         */
+        public int get(int x, int y) {
+            return pixels[y * width + x] & 0xFF;
+        }
+    }
+
+    /**
+     * Creates a preprocessor with the default settings.
+     */
+    public DocumentPreprocessor() {
+        this(DEFAULT_K, DEFAULT_BAND_HEIGHT);
+    }
+
+    /**
+     * Creates a preprocessor.
+     *
+     * @param k The Sauvola sensitivity, usually between 0.2 and 0.5
+     * @param bandHeight The number of rows thresholded at a time
+     */
+    public DocumentPreprocessor(double k, int bandHeight) {
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException("Band height must be positive");
+        }
+        this.k = k;
+        this.bandHeight = bandHeight;
+    }
+
+    /**
+     * Converts ARGB pixels to gray levels with the Rec. 601 luma weights.
+     *
+     * @param argb The pixels, as returned by Bitmap.getPixels
+     * @param gray The array to write the gray levels to
+     * @param offset The index in gray the first pixel is written at
+     * @param count The number of pixels to convert
+     */
+    public static void toGray(int[] argb, byte[] gray, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            gray[offset + i] = (byte) ((77 * r + 150 * g + 29 * b) >> 8);
+        }
+    }
+
+    /**
+     * Straightens and binarizes a page.
+     *
+     * @param page The grayscale page; its pixels are overwritten unless it is straightened
+     * @return The page in black and white
+     */
+    public GrayImage process(GrayImage page) {
+        return process(page, null);
+    }
+
+    /**
+     * Straightens and binarizes a page, reporting how far it was turned so that positions
+     * found on the result can be mapped back onto the original page.
+     *
+     * @param page The grayscale page; its pixels are overwritten unless it is straightened
+     * @param appliedSkew If not null, receives in its first element the angle the page was
+     *                    straightened by, as passed to {@link #rotate}, or 0 if it was not
+     * @return The page in black and white
+     */
+    public GrayImage process(GrayImage page, double[] appliedSkew) {
+        double skew = estimateSkew(page);
+        if (Math.abs(skew) < MIN_CORRECTION_DEGREES) {
+            skew = 0;
+        }
+        GrayImage straight = skew != 0 ? rotate(page, skew) : page;
+        binarize(straight);
+        if (appliedSkew != null) {
+            appliedSkew[0] = skew;
+        }
+        return straight;
+    }
+
+    /**
+     * Measures how far the text lines of a page slope, from the projection profile of a
+     * downscaled, binarized copy: when the page is sheared by the right angle, ink piles
+     * up in few rows and the sum of squared row counts peaks.
+     *
+     * @param page The grayscale page
+     * @return The angle in degrees the lines slope down to the right, 0 if it cannot be measured
+     */
+    public double estimateSkew(GrayImage page) {
+        GrayImage small = binarize(downscale(page, SKEW_WORKING_DIMENSION));
+        int inkCount = 0;
+        byte[] smallPixels = small.getPixels();
+        for (int i = 0; i < small.getWidth() * small.getHeight(); i++) {
+            if (smallPixels[i] == BLACK) {
+                inkCount++;
+            }
+        }
+        if (inkCount < MIN_INK_PIXELS) {
+            return 0;
+        }
+        int[] xs = new int[inkCount];
+        int[] ys = new int[inkCount];
+        int n = 0;
+        for (int y = 0; y < small.getHeight(); y++) {
+            for (int x = 0; x < small.getWidth(); x++) {
+                if (smallPixels[y * small.getWidth() + x] == BLACK) {
+                    xs[n] = x;
+                    ys[n] = y;
+                    n++;
+                }
+            }
+        }
+
+        // Sheared rows reach from above the top to below the bottom of the page
+        int margin = (int) Math.ceil(small.getWidth() * Math.tan(Math.toRadians(MAX_SKEW_DEGREES + 1)));
+        int[] bins = new int[small.getHeight() + 2 * margin + 1];
+        double best = 0;
+        double bestScore = profileScore(xs, ys, 0, bins, margin);
+        for (double angle = -MAX_SKEW_DEGREES; angle <= MAX_SKEW_DEGREES; angle += COARSE_STEP_DEGREES) {
+            double score = profileScore(xs, ys, angle, bins, margin);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        double coarse = best;
+        for (double angle = coarse - COARSE_STEP_DEGREES; angle <= coarse + COARSE_STEP_DEGREES;
+             angle += FINE_STEP_DEGREES) {
+            double score = profileScore(xs, ys, angle, bins, margin);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        return best;
+    }
+
+    private static double profileScore(int[] xs, int[] ys, double degrees, int[] bins, int margin) {
+        Arrays.fill(bins, 0);
+        double tan = Math.tan(Math.toRadians(degrees));
+        for (int i = 0; i < xs.length; i++) {
+            int row = (int) Math.round(ys[i] - xs[i] * tan) + margin;
+            if (row >= 0 && row < bins.length) {
+                bins[row]++;
+            }
+        }
+        double score = 0;
+        for (int count : bins) {
+            score += (double) count * count;
+        }
+        return score;
+    }
+
+    /**
+     * Rotates a page about its center so lines sloping by the given angle become level.
+     * The page keeps its size; corners that come from outside it are white.
+     *
+     * @param page The grayscale page
+     * @param skewDegrees The angle the lines slope down to the right
+     * @return The straightened page
+     */
+    public GrayImage rotate(GrayImage page, double skewDegrees) {
+        int width = page.getWidth();
+        int height = page.getHeight();
+        byte[] src = page.getPixels();
+        byte[] dst = new byte[width * height];
+        double radians = Math.toRadians(skewDegrees);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double cx = (width - 1) / 2.0;
+        double cy = (height - 1) / 2.0;
+        for (int y = 0; y < height; y++) {
+            double dy = y - cy;
+            for (int x = 0; x < width; x++) {
+                double dx = x - cx;
+                double sx = cx + dx * cos - dy * sin;
+                double sy = cy + dx * sin + dy * cos;
+                int x0 = (int) Math.floor(sx);
+                int y0 = (int) Math.floor(sy);
+                int value;
+                if (x0 < 0 || y0 < 0 || x0 + 1 >= width || y0 + 1 >= height) {
+                    value = WHITE;
+                } else {
+                    double fx = sx - x0;
+                    double fy = sy - y0;
+                    int i = y0 * width + x0;
+                    double top = (src[i] & 0xFF) * (1 - fx) + (src[i + 1] & 0xFF) * fx;
+                    double bottom = (src[i + width] & 0xFF) * (1 - fx) + (src[i + width + 1] & 0xFF) * fx;
+                    value = (int) Math.round(top * (1 - fy) + bottom * fy);
+                }
+                dst[y * width + x] = (byte) value;
+            }
+        }
+        return new GrayImage(dst, width, height);
+    }
+
+    /**
+     * Binarizes a page in place with Sauvola's threshold: a pixel is ink if it is darker
+     * than mean * (1 + k * (deviation / 128 - 1)) of the window around it. The mean and
+     * deviation come from integral images of one band of rows at a time, including the
+     * rows above and below the band the windows reach into.
+     *
+     * @param page The grayscale page, overwritten with 0 for ink and 255 for background
+     * @return The same page
+     */
+    public GrayImage binarize(GrayImage page) {
+        int width = page.getWidth();
+        int height = page.getHeight();
+        byte[] pixels = page.getPixels();
+        int window = windowSize(width, height);
+        int half = window / 2;
+        // The rows above a band are overwritten by then; their gray levels are kept here
+        int band = Math.max(bandHeight, half);
+        byte[] carry = new byte[half * width];
+
+        int maxRows = band + 2 * half;
+        int stride = width + 1;
+        int[] sums = new int[(maxRows + 1) * stride];
+        long[] squares = new long[(maxRows + 1) * stride];
+
+        for (int bandStart = 0; bandStart < height; bandStart += band) {
+            int bandEnd = Math.min(height, bandStart + band);
+            int top = Math.max(0, bandStart - half);
+            int bottom = Math.min(height, bandEnd + half);
+
+            // Integral images over the rows the windows of the band cover
+            for (int y = top; y < bottom; y++) {
+                int row = y - top + 1;
+                int rowSum = 0;
+                long rowSquares = 0;
+                for (int x = 0; x < width; x++) {
+                    int value = y < bandStart
+                            ? carry[(y - (bandStart - half)) * width + x] & 0xFF
+                            : pixels[y * width + x] & 0xFF;
+                    rowSum += value;
+                    rowSquares += value * value;
+                    sums[row * stride + x + 1] = sums[(row - 1) * stride + x + 1] + rowSum;
+                    squares[row * stride + x + 1] = squares[(row - 1) * stride + x + 1] + rowSquares;
+                }
+            }
+
+            // Keep the gray levels the next band looks back at before overwriting them; the
+            // band is at least half a window high, so they all lie within it
+            if (bandEnd < height) {
+                System.arraycopy(pixels, (bandEnd - half) * width, carry, 0, half * width);
+            }
+
+            for (int y = bandStart; y < bandEnd; y++) {
+                int y0 = Math.max(top, y - half) - top;
+                int y1 = Math.min(bottom - 1, y + half) - top + 1;
+                for (int x = 0; x < width; x++) {
+                    int x0 = Math.max(0, x - half);
+                    int x1 = Math.min(width - 1, x + half) + 1;
+                    int count = (x1 - x0) * (y1 - y0);
+                    long sum = sums[y1 * stride + x1] - sums[y0 * stride + x1]
+                            - sums[y1 * stride + x0] + sums[y0 * stride + x0];
+                    long sumSquares = squares[y1 * stride + x1] - squares[y0 * stride + x1]
+                            - squares[y1 * stride + x0] + squares[y0 * stride + x0];
+                    double mean = (double) sum / count;
+                    double variance = (double) sumSquares / count - mean * mean;
+                    double deviation = Math.sqrt(Math.max(0, variance));
+                    double threshold = mean * (1 + k * (deviation / DYNAMIC_RANGE - 1));
+                    int index = y * width + x;
+                    pixels[index] = (byte) ((pixels[index] & 0xFF) <= threshold ? BLACK : WHITE);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Gets the Sauvola window for a page: about a fiftieth of its long edge, which spans a
+     * few characters at the resolutions pages are recognized at.
+     *
+     * @param width The width of the page
+     * @param height The height of the page
+     * @return The odd window size in pixels
+     */
+    public static int windowSize(int width, int height) {
+        int window = Math.max(width, height) / WINDOW_DIVISOR;
+        window = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, window));
+        return window | 1;
+    }
+
+    /**
+     * Shrinks a page by averaging blocks of pixels until its long edge fits.
+     */
+    private static GrayImage downscale(GrayImage page, int maxDimension) {
+        int factor = (Math.max(page.getWidth(), page.getHeight()) + maxDimension - 1) / maxDimension;
+        if (factor <= 1) {
+            return new GrayImage(page.getPixels().clone(), page.getWidth(), page.getHeight());
+        }
+        int width = page.getWidth() / factor;
+        int height = page.getHeight() / factor;
+        byte[] src = page.getPixels();
+        byte[] dst = new byte[width * height];
+        int area = factor * factor;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    int row = (y * factor + dy) * page.getWidth() + x * factor;
+                    for (int dx = 0; dx < factor; dx++) {
+                        sum += src[row + dx] & 0xFF;
+                    }
+                }
+                dst[y * width + x] = (byte) (sum / area);
+            }
+        }
+        return new GrayImage(dst, width, height);
+    }
+}
@@ -10,13 +10,13 @@ import android.util.Log;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 
+import hcmute.edu.vn.ocrscannerproject.services.ImportEngine;
+
 /**
  * Utility class for file operations.
  */
@@ -102,7 +102,7 @@ public class FileUtils {
     }
     
     /**
-     * Creates a copy of a file from a Uri.
+     * Creates a copy of a file from a Uri, through the {@link ImportEngine}.
      * 
      * @param context The application context
      * @param sourceUri The source Uri
@@ -110,19 +110,8 @@ public class FileUtils {
      * @return True if the copy was successful, false otherwise
      */
     public static boolean copyUriToFile(Context context, Uri sourceUri, File destinationFile) {
-        try (InputStream inputStream = context.getContentResolver().openInputStream(sourceUri);
-             OutputStream outputStream = new FileOutputStream(destinationFile)) {
-            
-            if (inputStream == null) {
-                return false;
-            }
-            
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            
+        try {
+            ImportEngine.getInstance(context).copy(sourceUri, destinationFile, null, null);
             return true;
         } catch (IOException e) {
             Log.e(TAG, "Error copying Uri to file: " + sourceUri.toString(), e);
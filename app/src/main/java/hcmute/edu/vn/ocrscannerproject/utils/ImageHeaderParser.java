@@ -0,0 +1,234 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+/**
+ * Reads the dimensions and EXIF orientation of JPEG, PNG and WebP images from the first
+ * bytes of the file, without decoding it. This lets an import learn about an image from
+ * the bytes it is already copying instead of opening the file a second time.
+ */
+public final class ImageHeaderParser {
+
+    /** Dimension reported when the header does not contain it. */
+    public static final int UNKNOWN = -1;
+
+    /** Orientation of images without EXIF data, matching ExifInterface.ORIENTATION_NORMAL. */
+    public static final int ORIENTATION_NORMAL = 1;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int TIFF_TYPE_SHORT = 3;
+
+    private ImageHeaderParser() {
+    }
+
+    /**
+     * What the header of an image says about it.
+     */
+    public static final class Header {
+        private final String mimeType;
+        private final int width;
+        private final int height;
+        private final int orientation;
+
+        Header(String mimeType, int width, int height, int orientation) {
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return The usual file extension of the image type, without the dot
+         */
+        public String getExtension() {
+            switch (mimeType) {
+                case "image/png":
+                    return "png";
+                case "image/webp":
+                    return "webp";
+                default:
+                    return "jpg";
+            }
+        }
+
+        /**
+         * @return The stored width in pixels, before orientation, or {@link #UNKNOWN}
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return The stored height in pixels, before orientation, or {@link #UNKNOWN}
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return The EXIF orientation, one of the ExifInterface.ORIENTATION_ constants
+         */
+        public int getOrientation() {
+            return orientation;
+        }
+    }
+
+    /**
+     * Parses the header of an image.
+     *
+     * @param data The first bytes of the file
+     * @param length The number of valid bytes in data
+     * @return The header, or null if the bytes are not a JPEG, PNG or WebP image
+     */
+    public static Header parse(byte[] data, int length) {
+        int end = Math.min(length, data.length);
+        if (end >= 4 && u8(data, 0) == 0xFF && u8(data, 1) == 0xD8) {
+            return parseJpeg(data, end);
+        }
+        if (end >= 24 && u8(data, 0) == 0x89 && matches(data, 1, "PNG") && matches(data, 12, "IHDR")) {
+            return new Header("image/png", (int) u32be(data, 16), (int) u32be(data, 20), ORIENTATION_NORMAL);
+        }
+        if (end >= 16 && matches(data, 0, "RIFF") && matches(data, 8, "WEBP")) {
+            return parseWebp(data, end);
+        }
+        return null;
+    }
+
+    private static Header parseJpeg(byte[] data, int end) {
+        int orientation = ORIENTATION_NORMAL;
+        int pos = 2;
+        while (pos + 2 <= end) {
+            if (u8(data, pos) != 0xFF) {
+                break;
+            }
+            int marker = u8(data, pos + 1);
+            if (marker == 0xFF) {
+                // Fill byte before a marker
+                pos++;
+                continue;
+            }
+            pos += 2;
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                // Markers without a segment
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA || pos + 2 > end) {
+                // The image data starts without a frame header, or the bytes ran out
+                break;
+            }
+            int segmentStart = pos + 2;
+            int segmentEnd = pos + u16be(data, pos);
+            if (marker == 0xE1 && segmentEnd <= end && segmentStart + 6 <= segmentEnd
+                    && matches(data, segmentStart, "Exif") && data[segmentStart + 4] == 0
+                    && data[segmentStart + 5] == 0) {
+                orientation = readOrientation(data, segmentStart + 6, segmentEnd);
+            }
+            if (isStartOfFrame(marker)) {
+                if (segmentStart + 5 > end) {
+                    break;
+                }
+                return new Header("image/jpeg", u16be(data, segmentStart + 3), u16be(data, segmentStart + 1),
+                        orientation);
+            }
+            pos = segmentEnd;
+        }
+        return new Header("image/jpeg", UNKNOWN, UNKNOWN, orientation);
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * Reads the orientation tag from the first IFD of the TIFF structure in an EXIF segment.
+     */
+    private static int readOrientation(byte[] data, int tiffStart, int end) {
+        if (tiffStart + 8 > end) {
+            return ORIENTATION_NORMAL;
+        }
+        boolean littleEndian;
+        if (matches(data, tiffStart, "II")) {
+            littleEndian = true;
+        } else if (matches(data, tiffStart, "MM")) {
+            littleEndian = false;
+        } else {
+            return ORIENTATION_NORMAL;
+        }
+        long ifdOffset = u32(data, tiffStart + 4, littleEndian);
+        if (ifdOffset < 8 || tiffStart + ifdOffset + 2 > end) {
+            return ORIENTATION_NORMAL;
+        }
+        int ifd = tiffStart + (int) ifdOffset;
+        int entryCount = u16(data, ifd, littleEndian);
+        for (int i = 0; i < entryCount; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (u16(data, entry, littleEndian) == EXIF_ORIENTATION_TAG
+                    && u16(data, entry + 2, littleEndian) == TIFF_TYPE_SHORT) {
+                int orientation = u16(data, entry + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : ORIENTATION_NORMAL;
+            }
+        }
+        return ORIENTATION_NORMAL;
+    }
+
+    private static Header parseWebp(byte[] data, int end) {
+        int width = UNKNOWN;
+        int height = UNKNOWN;
+        if (matches(data, 12, "VP8 ") && end >= 30
+                && u8(data, 23) == 0x9D && u8(data, 24) == 0x01 && u8(data, 25) == 0x2A) {
+            width = u16le(data, 26) & 0x3FFF;
+            height = u16le(data, 28) & 0x3FFF;
+        } else if (matches(data, 12, "VP8L") && end >= 25 && u8(data, 20) == 0x2F) {
+            int b0 = u8(data, 21);
+            int b1 = u8(data, 22);
+            int b2 = u8(data, 23);
+            int b3 = u8(data, 24);
+            width = 1 + (((b1 & 0x3F) << 8) | b0);
+            height = 1 + (((b3 & 0x0F) << 10) | (b2 << 2) | ((b1 & 0xC0) >> 6));
+        } else if (matches(data, 12, "VP8X") && end >= 30) {
+            width = 1 + (u8(data, 24) | (u8(data, 25) << 8) | (u8(data, 26) << 16));
+            height = 1 + (u8(data, 27) | (u8(data, 28) << 8) | (u8(data, 29) << 16));
+        }
+        return new Header("image/webp", width, height, ORIENTATION_NORMAL);
+    }
+
+    private static boolean matches(byte[] data, int offset, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (data[offset + i] != (byte) ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int u16be(byte[] data, int offset) {
+        return (u8(data, offset) << 8) | u8(data, offset + 1);
+    }
+
+    private static int u16le(byte[] data, int offset) {
+        return u8(data, offset) | (u8(data, offset + 1) << 8);
+    }
+
+    private static long u32be(byte[] data, int offset) {
+        return ((long) u16be(data, offset) << 16) | u16be(data, offset + 2);
+    }
+
+    private static int u16(byte[] data, int offset, boolean littleEndian) {
+        return littleEndian ? u16le(data, offset) : u16be(data, offset);
+    }
+
+    private static long u32(byte[] data, int offset, boolean littleEndian) {
+        return littleEndian
+                ? u16le(data, offset) | ((long) u16le(data, offset + 2) << 16)
+                : u32be(data, offset);
+    }
+}
@@ -0,0 +1,149 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a JPEG held in memory with a given EXIF orientation, so a capture is written to
+ * disk once instead of being saved and then reopened to fix its orientation. If the EXIF
+ * data already has an orientation tag its value is changed in place; otherwise a minimal
+ * EXIF segment holding only the orientation is written in place of any existing one.
+ */
+public final class JpegOrientationWriter {
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int TIFF_TYPE_SHORT = 3;
+
+    // SOI, then an APP1 segment with a big-endian TIFF header and one IFD entry
+    private static final byte[] MINIMAL_EXIF_HEADER = {
+            (byte) 0xFF, (byte) 0xD8,
+            (byte) 0xFF, (byte) 0xE1, 0x00, 0x22,
+            'E', 'x', 'i', 'f', 0x00, 0x00,
+            'M', 'M', 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08,
+            0x00, 0x01,
+            0x01, 0x12, 0x00, 0x03, 0x00, 0x00, 0x00, 0x01
+    };
+
+    private JpegOrientationWriter() {
+    }
+
+    /**
+     * Gets the EXIF orientation that makes an image upright.
+     *
+     * @param rotationDegrees The clockwise rotation the image needs, a multiple of 90
+     * @return One of the ExifInterface.ORIENTATION_ rotation constants
+     */
+    public static int orientationForRotation(int rotationDegrees) {
+        switch ((rotationDegrees % 360 + 360) % 360) {
+            case 90:
+                return 6;
+            case 180:
+                return 3;
+            case 270:
+                return 8;
+            default:
+                return ImageHeaderParser.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Writes a JPEG with the given orientation. The bytes may be changed in place.
+     *
+     * @param jpeg The JPEG file content
+     * @param length The number of valid bytes in jpeg
+     * @param orientation The EXIF orientation to record
+     * @param out The stream to write to
+     * @throws IOException If the bytes are not a JPEG or the stream fails
+     */
+    public static void write(byte[] jpeg, int length, int orientation, OutputStream out) throws IOException {
+        if (length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            throw new IOException("Not a JPEG");
+        }
+
+        int exifStart = -1;
+        int exifEnd = -1;
+        int pos = 2;
+        while (pos + 4 <= length && (jpeg[pos] & 0xFF) == 0xFF) {
+            int marker = jpeg[pos + 1] & 0xFF;
+            if (marker == 0xDA || marker == 0xD9 || marker < 0xE0 || marker > 0xEF) {
+                // Only the application segments at the start can hold EXIF data
+                break;
+            }
+            int segmentEnd = pos + 2 + u16(jpeg, pos + 2, false);
+            if (segmentEnd > length) {
+                break;
+            }
+            if (marker == 0xE1 && isExif(jpeg, pos + 4, segmentEnd)) {
+                exifStart = pos;
+                exifEnd = segmentEnd;
+                break;
+            }
+            pos = segmentEnd;
+        }
+
+        if (exifStart >= 0 && patchOrientation(jpeg, exifStart + 10, exifEnd, orientation)) {
+            out.write(jpeg, 0, length);
+            return;
+        }
+
+        out.write(MINIMAL_EXIF_HEADER);
+        out.write(new byte[] {(byte) (orientation >> 8), (byte) orientation, 0, 0, 0, 0, 0, 0});
+        if (exifStart >= 0) {
+            out.write(jpeg, 2, exifStart - 2);
+            out.write(jpeg, exifEnd, length - exifEnd);
+        } else {
+            out.write(jpeg, 2, length - 2);
+        }
+    }
+
+    private static boolean isExif(byte[] data, int start, int end) {
+        return start + 6 <= end && data[start] == 'E' && data[start + 1] == 'x' && data[start + 2] == 'i'
+                && data[start + 3] == 'f' && data[start + 4] == 0 && data[start + 5] == 0;
+    }
+
+    /**
+     * Sets the value of the orientation tag in the first IFD of a TIFF structure.
+     *
+     * @return True if the tag was found and changed
+     */
+    private static boolean patchOrientation(byte[] data, int tiffStart, int end, int orientation) {
+        if (tiffStart + 8 > end) {
+            return false;
+        }
+        boolean littleEndian;
+        if (data[tiffStart] == 'I' && data[tiffStart + 1] == 'I') {
+            littleEndian = true;
+        } else if (data[tiffStart] == 'M' && data[tiffStart + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return false;
+        }
+        long ifdOffset = ((long) u16(data, tiffStart + (littleEndian ? 6 : 4), littleEndian) << 16)
+                | u16(data, tiffStart + (littleEndian ? 4 : 6), littleEndian);
+        if (ifdOffset < 8 || tiffStart + ifdOffset + 2 > end) {
+            return false;
+        }
+        int ifd = tiffStart + (int) ifdOffset;
+        int entryCount = u16(data, ifd, littleEndian);
+        for (int i = 0; i < entryCount; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (u16(data, entry, littleEndian) == EXIF_ORIENTATION_TAG
+                    && u16(data, entry + 2, littleEndian) == TIFF_TYPE_SHORT) {
+                int value = entry + 8;
+                data[value] = (byte) (littleEndian ? orientation : orientation >> 8);
+                data[value + 1] = (byte) (littleEndian ? orientation >> 8 : orientation);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int u16(byte[] data, int offset, boolean littleEndian) {
+        int first = data[offset] & 0xFF;
+        int second = data[offset + 1] & 0xFF;
+        return littleEndian ? first | (second << 8) : (first << 8) | second;
+    }
+}
@@ -0,0 +1,116 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the resolution text recognition runs at. ML Kit reads characters reliably once
+ * they are about {@value #MIN_TEXT_HEIGHT} pixels tall and gains nothing past about
+ * {@value #TARGET_TEXT_HEIGHT}, so a page photographed at full camera resolution can
+ * usually be recognized at a fraction of its size. The planner estimates how tall the
+ * text on a page is from the lines a cheap low-resolution pass found, or from the pages
+ * measured before it, and picks the smallest scale that keeps the dominant text at the
+ * target height and the small print above the minimum. Works on plain numbers so it runs
+ * and can be tested on the JVM; one instance may be shared by several threads.
+ */
+public final class OCRResolutionPlanner {
+
+    /** Line height in pixels below which recognition starts to miss characters. */
+    public static final int MIN_TEXT_HEIGHT = 16;
+
+    /** Line height in pixels the dominant text is scaled to. */
+    public static final int TARGET_TEXT_HEIGHT = 24;
+
+    /** Long edge in pixels of the first pass when nothing is known about the page. */
+    public static final int PROBE_DIMENSION = 1024;
+
+    /** Returned by {@link #planFromPrior(int)} when no page has been measured yet. */
+    public static final float UNPLANNED = -1f;
+
+    // Pages are never shrunk below this long edge, where layout detection itself degrades
+    private static final int MIN_DIMENSION = 640;
+    // Fraction of lines, smallest first, taken as the small print of a page
+    private static final float SMALL_TEXT_PERCENTILE = 0.1f;
+    // A pass is kept if it is within this factor of the scale the page turned out to need
+    private static final float SCALE_TOLERANCE = 1.1f;
+
+    // Text heights of the last measured page as fractions of its long edge
+    private volatile float[] prior;
+
+    /**
+     * Gets the scale of the first pass over a page that has not been measured.
+     *
+     * @param longEdge The long edge of the page in pixels
+     * @return The scale that brings the long edge to {@value #PROBE_DIMENSION}, at most 1
+     */
+    public static float probeScale(int longEdge) {
+        return Math.min(1f, (float) PROBE_DIMENSION / longEdge);
+    }
+
+    /**
+     * Plans a page from the text heights of the pages measured before it, which in a
+     * document shot with one camera are usually close to its own.
+     *
+     * @param longEdge The long edge of the page in pixels
+     * @return The scale to recognize the page at, or {@link #UNPLANNED} if no page has
+     *         been measured yet
+     */
+    public float planFromPrior(int longEdge) {
+        float[] heights = prior;
+        if (heights == null) {
+            return UNPLANNED;
+        }
+        return scaleFor(heights[0] * longEdge, heights[1] * longEdge, longEdge);
+    }
+
+    /**
+     * Plans a page from the lines a pass over it found, and remembers their heights for
+     * the pages that follow.
+     *
+     * @param lineHeights The heights of the lines found, in pixels of the scaled page
+     * @param count The number of valid heights in lineHeights
+     * @param measuredScale The scale the pass ran at
+     * @param longEdge The long edge of the page in pixels, unscaled
+     * @return The scale the page needs; 1 if the pass found no text
+     */
+    public float plan(float[] lineHeights, int count, float measuredScale, int longEdge) {
+        if (count <= 0) {
+            // Either a blank page or text too small for the pass to see
+            return 1f;
+        }
+        float[] sorted = Arrays.copyOf(lineHeights, count);
+        Arrays.sort(sorted);
+        float dominant = sorted[count / 2] / measuredScale;
+        float small = sorted[(int) (SMALL_TEXT_PERCENTILE * (count - 1))] / measuredScale;
+        prior = new float[] {dominant / longEdge, small / longEdge};
+        return scaleFor(dominant, small, longEdge);
+    }
+
+    /**
+     * Checks whether a pass ran at a high enough scale for the page.
+     *
+     * @param scale The scale the pass ran at
+     * @param needed The scale {@link #plan} says the page needs
+     * @return True if the result of the pass can be kept
+     */
+    public static boolean isSufficient(float scale, float needed) {
+        return scale >= 1f || needed <= scale * SCALE_TOLERANCE;
+    }
+
+    /**
+     * Gets the smallest scale that brings the dominant text to the target height and the
+     * small print to the minimum height.
+     *
+     * @param dominant The median line height in pixels of the unscaled page
+     * @param small The height of the small print in pixels of the unscaled page
+     * @param longEdge The long edge of the page in pixels
+     * @return The scale, between the smallest allowed and 1
+     */
+    static float scaleFor(float dominant, float small, int longEdge) {
+        if (dominant <= 0 || small <= 0) {
+            return 1f;
+        }
+        float scale = Math.max(TARGET_TEXT_HEIGHT / dominant, MIN_TEXT_HEIGHT / small);
+        float minScale = Math.min(1f, (float) MIN_DIMENSION / longEdge);
+        return Math.max(minScale, Math.min(1f, scale));
+    }
+}
@@ -0,0 +1,62 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+ * Flattens a photographed page into an upright rectangle. The page outline found in the
+ * camera preview is mapped onto the full-resolution capture, and a single perspective
+ * transform both undoes the camera's rotation and stretches the page to fill the output,
+ * so the image is resampled once.
+ */
+public final class PerspectiveCorrector {
+
+    // Outlines smaller than this in either direction are not worth correcting
+    private static final int MIN_OUTPUT_EDGE = 64;
+
+    private PerspectiveCorrector() {
+    }
+
+    /**
+     * Warps the page inside a bitmap to an upright rectangle.
+     *
+     * @param source The image as stored, before its rotation is applied
+     * @param rotationDegrees The clockwise rotation that makes the image upright
+     * @param uprightQuad The corners of the page normalized to the upright image, in the
+     *                    order top left, top right, bottom right, bottom left
+     * @return The flattened page, or null if the outline is too small to correct
+     */
+    public static Bitmap warp(Bitmap source, int rotationDegrees, float[] uprightQuad) {
+        // Rotating back by the same angle takes each corner into the stored image
+        float[] corners = new float[8];
+        QuadDetector.rotate(uprightQuad, 360 - rotationDegrees, corners);
+        for (int i = 0; i < 8; i += 2) {
+            corners[i] *= source.getWidth();
+            corners[i + 1] *= source.getHeight();
+        }
+
+        int width = Math.round(Math.max(distance(corners, 0, 1), distance(corners, 3, 2)));
+        int height = Math.round(Math.max(distance(corners, 0, 3), distance(corners, 1, 2)));
+        if (width < MIN_OUTPUT_EDGE || height < MIN_OUTPUT_EDGE) {
+            return null;
+        }
+
+        Matrix matrix = new Matrix();
+        float[] target = {0, 0, width, 0, width, height, 0, height};
+        if (!matrix.setPolyToPoly(corners, 0, target, 0, 4)) {
+            return null;
+        }
+        Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+        canvas.drawColor(Color.WHITE);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return output;
+    }
+
+    private static float distance(float[] points, int a, int b) {
+        return (float) Math.hypot(points[2 * b] - points[2 * a], points[2 * b + 1] - points[2 * a + 1]);
+    }
+}
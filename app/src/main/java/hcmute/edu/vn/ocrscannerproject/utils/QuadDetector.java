@@ -0,0 +1,349 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds the outline of a page in camera frames, fast enough to run on every preview frame.
+ * The luma plane is box-filtered down to a small working image, split into page and
+ * background with Otsu's threshold, and the largest bright region is taken as the page.
+ * Its four corners are the points of the region farthest from each other: the point
+ * farthest from the centre, the point farthest from that one, and the points farthest
+ * from the diagonal between them on either side. The region must cover a fair part of the
+ * frame and fill most of its quad, so clutter and partial pages are rejected.
+ * Working buffers are allocated when the frame size changes and reused for every frame
+ * after that. Instances are not thread-safe; use one per analysis thread.
+ */
+public final class QuadDetector {
+
+    /** Long edge of the working image frames are reduced to by default. */
+    public static final int DEFAULT_WORKING_DIMENSION = 192;
+
+    // Smallest share of the frame a page may cover
+    private static final float MIN_AREA_FRACTION = 0.15f;
+    // A region covering more than this is the whole frame, not a page in it
+    private static final float MAX_AREA_FRACTION = 0.97f;
+    // Smallest share of its quad a region must fill to be a flat sheet
+    private static final float MIN_FILL_RATIO = 0.85f;
+
+    private final int workingDimension;
+
+    private int frameWidth;
+    private int frameHeight;
+    private int step;
+    private int width;
+    private int height;
+    private int[] gray;
+    private int[] queue;
+    private boolean[] visited;
+    private final int[] histogram = new int[256];
+    private final int[] corners = new int[4];
+
+    /**
+     * Creates a detector that works at {@value #DEFAULT_WORKING_DIMENSION} pixels.
+     */
+    public QuadDetector() {
+        this(DEFAULT_WORKING_DIMENSION);
+    }
+
+    /**
+     * Creates a detector.
+     *
+     * @param workingDimension The long edge in pixels frames are reduced to before
+     *                         detection; smaller is faster and less precise
+     */
+    public QuadDetector(int workingDimension) {
+        if (workingDimension < 16) {
+            throw new IllegalArgumentException("Working dimension too small: " + workingDimension);
+        }
+        this.workingDimension = workingDimension;
+    }
+
+    /**
+     * Looks for a page in a frame.
+     *
+     * @param luma The luma plane, one byte per pixel; its position is not changed
+     * @param frameWidth The width of the frame in pixels
+     * @param frameHeight The height of the frame in pixels
+     * @param rowStride The bytes between the starts of two rows
+     * @param quad Receives the corners as x, y pairs normalized to the frame, in the order
+     *             top left, top right, bottom right, bottom left
+     * @return True if a page was found and written to quad
+     */
+    public boolean detect(ByteBuffer luma, int frameWidth, int frameHeight, int rowStride, float[] quad) {
+        prepare(frameWidth, frameHeight);
+        downsample(luma, rowStride);
+        int threshold = otsuThreshold();
+
+        // Flood fill the bright regions, keeping the queue entries of the largest
+        Arrays.fill(visited, 0, width * height, false);
+        int bestStart = 0;
+        int bestEnd = 0;
+        int tail = 0;
+        for (int seed = 0; seed < width * height; seed++) {
+            if (visited[seed] || gray[seed] <= threshold) {
+                continue;
+            }
+            int start = tail;
+            visited[seed] = true;
+            queue[tail++] = seed;
+            for (int head = start; head < tail; head++) {
+                int p = queue[head];
+                int x = p % width;
+                int y = p / width;
+                if (x > 0) tail = visit(p - 1, threshold, tail);
+                if (x < width - 1) tail = visit(p + 1, threshold, tail);
+                if (y > 0) tail = visit(p - width, threshold, tail);
+                if (y < height - 1) tail = visit(p + width, threshold, tail);
+            }
+            if (tail - start > bestEnd - bestStart) {
+                bestStart = start;
+                bestEnd = tail;
+            }
+        }
+
+        int area = bestEnd - bestStart;
+        int frameArea = width * height;
+        if (area < MIN_AREA_FRACTION * frameArea || area > MAX_AREA_FRACTION * frameArea) {
+            return false;
+        }
+        findCorners(bestStart, bestEnd);
+        float quadArea = orderCorners();
+        if (quadArea <= 0 || area < MIN_FILL_RATIO * quadArea) {
+            return false;
+        }
+
+        for (int i = 0; i < 4; i++) {
+            int p = corners[i];
+            // Centres of the working pixels, in frame coordinates
+            quad[2 * i] = Math.min(1f, ((p % width) + 0.5f) * step / frameWidth);
+            quad[2 * i + 1] = Math.min(1f, ((p / width) + 0.5f) * step / frameHeight);
+        }
+        return true;
+    }
+
+    /**
+     * Rotates a quad found in a camera frame into the orientation the frame is displayed in,
+     * keeping the corners in top left, top right, bottom right, bottom left order.
+     *
+     * @param quad The normalized corners in frame orientation
+     * @param rotationDegrees The clockwise rotation that makes the frame upright, a multiple of 90
+     * @param out Receives the normalized corners in upright orientation; must not be quad
+     */
+    public static void toUpright(float[] quad, int rotationDegrees, float[] out) {
+        int turns = ((rotationDegrees / 90) % 4 + 4) % 4;
+        // Turning clockwise moves each corner one place on, so the top left comes from
+        // the corner that many places before it
+        for (int i = 0; i < 4; i++) {
+            int from = (i - turns + 4) % 4;
+            rotatePoint(quad[2 * from], quad[2 * from + 1], turns, out, 2 * i);
+        }
+    }
+
+    /**
+     * Rotates normalized points clockwise about the centre of the image.
+     *
+     * @param points The normalized x, y pairs
+     * @param degrees The clockwise rotation, a multiple of 90
+     * @param out Receives the rotated points; may be points itself
+     */
+    public static void rotate(float[] points, int degrees, float[] out) {
+        int turns = ((degrees / 90) % 4 + 4) % 4;
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            rotatePoint(points[i], points[i + 1], turns, out, i);
+        }
+    }
+
+    private static void rotatePoint(float x, float y, int turns, float[] out, int index) {
+        switch (turns) {
+            case 1:
+                out[index] = 1f - y;
+                out[index + 1] = x;
+                break;
+            case 2:
+                out[index] = 1f - x;
+                out[index + 1] = 1f - y;
+                break;
+            case 3:
+                out[index] = y;
+                out[index + 1] = 1f - x;
+                break;
+            default:
+                out[index] = x;
+                out[index + 1] = y;
+                break;
+        }
+    }
+
+    private void prepare(int frameWidth, int frameHeight) {
+        if (frameWidth == this.frameWidth && frameHeight == this.frameHeight) {
+            return;
+        }
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        int longEdge = Math.max(frameWidth, frameHeight);
+        step = Math.max(1, (longEdge + workingDimension - 1) / workingDimension);
+        width = Math.max(1, frameWidth / step);
+        height = Math.max(1, frameHeight / step);
+        gray = new int[width * height];
+        queue = new int[width * height];
+        visited = new boolean[width * height];
+    }
+
+    /**
+     * Averages each step by step block of the frame into one working pixel.
+     */
+    private void downsample(ByteBuffer luma, int rowStride) {
+        int base = luma.position();
+        int shift = step * step;
+        for (int y = 0; y < height; y++) {
+            int rowBase = base + y * step * rowStride;
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                int offset = rowBase + x * step;
+                for (int dy = 0; dy < step; dy++) {
+                    int index = offset + dy * rowStride;
+                    for (int dx = 0; dx < step; dx++) {
+                        sum += luma.get(index + dx) & 0xFF;
+                    }
+                }
+                gray[y * width + x] = sum / shift;
+            }
+        }
+    }
+
+    private int otsuThreshold() {
+        Arrays.fill(histogram, 0);
+        int total = width * height;
+        long sum = 0;
+        for (int i = 0; i < total; i++) {
+            histogram[gray[i]]++;
+            sum += gray[i];
+        }
+        long sumBackground = 0;
+        int weightBackground = 0;
+        double bestVariance = -1;
+        int threshold = 127;
+        for (int t = 0; t < 256; t++) {
+            weightBackground += histogram[t];
+            if (weightBackground == 0) {
+                continue;
+            }
+            int weightForeground = total - weightBackground;
+            if (weightForeground == 0) {
+                break;
+            }
+            sumBackground += (long) t * histogram[t];
+            double meanBackground = (double) sumBackground / weightBackground;
+            double meanForeground = (double) (sum - sumBackground) / weightForeground;
+            double diff = meanBackground - meanForeground;
+            double variance = (double) weightBackground * weightForeground * diff * diff;
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    private int visit(int p, int threshold, int tail) {
+        if (!visited[p] && gray[p] > threshold) {
+            visited[p] = true;
+            queue[tail++] = p;
+        }
+        return tail;
+    }
+
+    /**
+     * Picks the four extreme points of a region, in cyclic order around it.
+     */
+    private void findCorners(int start, int end) {
+        long sumX = 0;
+        long sumY = 0;
+        for (int i = start; i < end; i++) {
+            sumX += queue[i] % width;
+            sumY += queue[i] / width;
+        }
+        float cx = (float) sumX / (end - start);
+        float cy = (float) sumY / (end - start);
+
+        int first = farthestFrom(start, end, cx, cy);
+        int third = farthestFrom(start, end, first % width, first / width);
+        int ax = first % width;
+        int ay = first / width;
+        int bx = third % width - ax;
+        int by = third / width - ay;
+        int left = first;
+        int right = first;
+        long maxCross = 0;
+        long minCross = 0;
+        for (int i = start; i < end; i++) {
+            int p = queue[i];
+            long cross = (long) bx * (p / width - ay) - (long) by * (p % width - ax);
+            if (cross > maxCross) {
+                maxCross = cross;
+                right = p;
+            } else if (cross < minCross) {
+                minCross = cross;
+                left = p;
+            }
+        }
+        corners[0] = first;
+        corners[1] = right;
+        corners[2] = third;
+        corners[3] = left;
+    }
+
+    private int farthestFrom(int start, int end, float x, float y) {
+        int best = queue[start];
+        float bestDistance = -1;
+        for (int i = start; i < end; i++) {
+            int p = queue[i];
+            float dx = p % width - x;
+            float dy = p / width - y;
+            float distance = dx * dx + dy * dy;
+            if (distance > bestDistance) {
+                bestDistance = distance;
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Puts the corners in clockwise order starting from the top left.
+     *
+     * @return The area of the quad in working pixels, 0 if it is degenerate
+     */
+    private float orderCorners() {
+        float twiceArea = 0;
+        for (int i = 0; i < 4; i++) {
+            int p = corners[i];
+            int q = corners[(i + 1) % 4];
+            twiceArea += (float) (p % width) * (q / width) - (float) (q % width) * (p / width);
+        }
+        if (twiceArea < 0) {
+            // Counter-clockwise on screen, where y points down; swap to clockwise
+            int swap = corners[1];
+            corners[1] = corners[3];
+            corners[3] = swap;
+            twiceArea = -twiceArea;
+        }
+        int topLeft = 0;
+        for (int i = 1; i < 4; i++) {
+            int p = corners[i];
+            int q = corners[topLeft];
+            if (p % width + p / width < q % width + q / width) {
+                topLeft = i;
+            }
+        }
+        for (int shift = 0; shift < topLeft; shift++) {
+            int head = corners[0];
+            corners[0] = corners[1];
+            corners[1] = corners[2];
+            corners[2] = corners[3];
+            corners[3] = head;
+        }
+        return twiceArea / 2;
+    }
+}
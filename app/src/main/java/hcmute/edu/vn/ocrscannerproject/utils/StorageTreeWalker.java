@@ -0,0 +1,124 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Visits every file under a folder of a paged object store such as Firebase Storage.
+ * A listing returns the files directly in a folder as items and its subfolders as
+ * prefixes, so files in subfolders are only found by listing each prefix in turn. Folders
+ * are listed a page at a time, with a pause between requests to spread the load.
+ *
+ * @param <T> The type referring to a file or folder in the store
+ */
+public final class StorageTreeWalker<T> {
+
+    /**
+     * Lists one page of a folder.
+     *
+     * @param <T> The type referring to a file or folder in the store
+     */
+    public interface Lister<T> {
+        /**
+         * @param folder The folder to list
+         * @param pageToken The token of the page to list, or null for the first page
+         * @return The page
+         * @throws Exception If the listing fails
+         */
+        Page<T> list(T folder, String pageToken) throws Exception;
+    }
+
+    /**
+     * Receives the files found by a walk.
+     *
+     * @param <T> The type referring to a file in the store
+     */
+    public interface Visitor<T> {
+        /**
+         * @param item A file under the folder being walked
+         * @throws Exception To stop the walk
+         */
+        void visit(T item) throws Exception;
+    }
+
+    /**
+     * One page of a folder listing.
+     *
+     * @param <T> The type referring to a file or folder in the store
+     */
+    public static final class Page<T> {
+        private final List<T> items;
+        private final List<T> prefixes;
+        private final String pageToken;
+
+        /**
+         * @param items The files on this page
+         * @param prefixes The subfolders on this page
+         * @param pageToken The token of the next page, or null if this is the last one
+         */
+        public Page(List<T> items, List<T> prefixes, String pageToken) {
+            this.items = items != null ? items : Collections.emptyList();
+            this.prefixes = prefixes != null ? prefixes : Collections.emptyList();
+            this.pageToken = pageToken;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public List<T> getPrefixes() {
+            return prefixes;
+        }
+
+        public String getPageToken() {
+            return pageToken;
+        }
+    }
+
+    private final Lister<T> lister;
+    private final long pageIntervalMillis;
+
+    /**
+     * Creates a walker.
+     *
+     * @param lister Lists the pages of a folder
+     * @param pageIntervalMillis The pause between two listing requests
+     */
+    public StorageTreeWalker(Lister<T> lister, long pageIntervalMillis) {
+        this.lister = lister;
+        this.pageIntervalMillis = pageIntervalMillis;
+    }
+
+    /**
+     * Visits every file under a folder, including those in its subfolders.
+     *
+     * @param root The folder to walk
+     * @param visitor Receives each file
+     * @return The number of listing requests made
+     * @throws Exception If a listing fails, the visitor throws, or the walk is interrupted
+     */
+    public int walk(T root, Visitor<T> visitor) throws Exception {
+        Deque<T> folders = new ArrayDeque<>();
+        folders.add(root);
+        int requests = 0;
+        while (!folders.isEmpty()) {
+            T folder = folders.poll();
+            String pageToken = null;
+            do {
+                if (requests > 0 && pageIntervalMillis > 0) {
+                    Thread.sleep(pageIntervalMillis);
+                }
+                Page<T> page = lister.list(folder, pageToken);
+                requests++;
+                for (T item : page.getItems()) {
+                    visitor.visit(item);
+                }
+                folders.addAll(page.getPrefixes());
+                pageToken = page.getPageToken();
+            } while (pageToken != null);
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,72 @@
+package hcmute.edu.vn.ocrscannerproject.data.local;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for building FTS match expressions and BM25 scoring.
+ */
+public class FtsSearchTest {
+
+    @Test
+    public void toMatchQuery_makesPrefixTermsAndDropsSyntax() {
+        assertEquals("invoice* 2023*", FtsSearch.toMatchQuery("  Invoice \"2023\" "));
+        assertEquals("a* or* b*", FtsSearch.toMatchQuery("a OR b"));
+        assertEquals("hóa* đơn*", FtsSearch.toMatchQuery("Hóa-đơn"));
+    }
+
+    @Test
+    public void toMatchQuery_returnsNullWithoutWords() {
+        assertNull(FtsSearch.toMatchQuery(null));
+        assertNull(FtsSearch.toMatchQuery(" * - \" "));
+    }
+
+    @Test
+    public void bm25_weightsFileNameAboveRecognizedText() {
+        // One phrase, three columns, 100 rows, single hit in an average length column
+        byte[] inFileName = matchInfo(100, new int[]{5, 200, 20}, new int[]{5, 200, 20},
+                new int[]{1, 1, 10, 0, 0, 10, 0, 0, 10});
+        byte[] inText = matchInfo(100, new int[]{5, 200, 20}, new int[]{5, 200, 20},
+                new int[]{0, 0, 10, 1, 1, 10, 0, 0, 10});
+
+        assertTrue(FtsSearch.bm25(inFileName) > FtsSearch.bm25(inText));
+        assertTrue(FtsSearch.bm25(inText) > 0);
+    }
+
+    @Test
+    public void bm25_prefersRareTerms() {
+        byte[] rare = matchInfo(100, new int[]{5, 200, 20}, new int[]{5, 200, 20},
+                new int[]{0, 0, 0, 1, 1, 2, 0, 0, 0});
+        byte[] common = matchInfo(100, new int[]{5, 200, 20}, new int[]{5, 200, 20},
+                new int[]{0, 0, 0, 1, 1, 90, 0, 0, 0});
+
+        assertTrue(FtsSearch.bm25(rare) > FtsSearch.bm25(common));
+    }
+
+    @Test
+    public void bm25_ignoresMalformedInput() {
+        assertEquals(0, FtsSearch.bm25(null), 0);
+        assertEquals(0, FtsSearch.bm25(new byte[8]), 0);
+    }
+
+    private static byte[] matchInfo(int rows, int[] averageLengths, int[] lengths, int[] hits) {
+        int columns = averageLengths.length;
+        ByteBuffer buffer = ByteBuffer.allocate((3 + 2 * columns + hits.length) * 4)
+                .order(ByteOrder.nativeOrder());
+        buffer.putInt(hits.length / (3 * columns)).putInt(columns).putInt(rows);
+        for (int length : averageLengths) {
+            buffer.putInt(length);
+        }
+        for (int length : lengths) {
+            buffer.putInt(length);
+        }
+        for (int hit : hits) {
+            buffer.putInt(hit);
+        }
+        return buffer.array();
+    }
+}
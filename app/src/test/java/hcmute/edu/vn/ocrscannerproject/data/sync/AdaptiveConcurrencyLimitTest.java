@@ -0,0 +1,110 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for growing and backing off the upload concurrency limit.
+ */
+public class AdaptiveConcurrencyLimitTest {
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private long now = 0;
+
+    @Test
+    public void initialLimit_isClampedToRange() {
+        assertEquals(2, new AdaptiveConcurrencyLimit(0, 2, 8, now).getLimit());
+        assertEquals(8, new AdaptiveConcurrencyLimit(20, 2, 8, now).getLimit());
+        assertEquals(1, new AdaptiveConcurrencyLimit(1, 0, 0, now).getLimit());
+    }
+
+    @Test
+    public void limit_growsWhileThroughputRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 8, now);
+
+        // Every round takes a second however many transfers run at once, so each added
+        // transfer adds throughput
+        for (int expected = 3; expected <= 8; expected++) {
+            runRound(limit, SECOND_NANOS);
+            assertEquals(expected, limit.getLimit());
+        }
+        runRound(limit, SECOND_NANOS);
+        assertEquals("The limit must stop at its maximum", 8, limit.getLimit());
+    }
+
+    @Test
+    public void limit_holdsWhenThroughputIsFlat() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 1, 8, now);
+        runRound(limit, SECOND_NANOS);
+        assertEquals(4, limit.getLimit());
+
+        // Four transfers take four thirds of the time three did: the same throughput
+        runRound(limit, SECOND_NANOS * 4 / 3);
+
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void limit_shrinksWhenThroughputFalls() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 1, 8, now);
+        runRound(limit, SECOND_NANOS);
+        assertEquals(4, limit.getLimit());
+
+        // Four transfers take twice as long as three did
+        runRound(limit, SECOND_NANOS * 2);
+
+        assertEquals(3, limit.getLimit());
+    }
+
+    @Test
+    public void roundEndsOnlyAfterAsManyCompletionsAsTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 1, 8, now);
+
+        limit.onSuccess(MEGABYTE, now += SECOND_NANOS);
+        limit.onSuccess(MEGABYTE, now += SECOND_NANOS);
+        assertEquals(3, limit.getLimit());
+
+        limit.onSuccess(MEGABYTE, now += SECOND_NANOS);
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void failure_halvesLimitDownToMinimum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 2, 8, now);
+
+        limit.onFailure(now += SECOND_NANOS);
+        assertEquals(4, limit.getLimit());
+        limit.onFailure(now += SECOND_NANOS);
+        assertEquals(2, limit.getLimit());
+        limit.onFailure(now += SECOND_NANOS);
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void failure_discardsThroughputMeasuredBeforeIt() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(7, 1, 8, now);
+        runRound(limit, SECOND_NANOS);
+        assertEquals(8, limit.getLimit());
+
+        limit.onFailure(now += SECOND_NANOS);
+        assertEquals(4, limit.getLimit());
+
+        // Slower than before the failure, but the first round after it grows the limit
+        runRound(limit, SECOND_NANOS * 4);
+        assertEquals(5, limit.getLimit());
+    }
+
+    /**
+     * Completes a round of one-megabyte transfers, as many as the current limit, spread
+     * evenly over the given time.
+     */
+    private void runRound(AdaptiveConcurrencyLimit limit, long roundNanos) {
+        int transfers = limit.getLimit();
+        for (int i = 0; i < transfers; i++) {
+            now += roundNanos / transfers;
+            limit.onSuccess(MEGABYTE, now);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for pulling remote changes with a sync cursor.
+ */
+public class DeltaSyncTest {
+    private static final String USER = "user-1";
+
+    private FakeRemoteDocumentStore remote;
+    private Map<String, ScannedDocument> local;
+    private RecordingTarget target;
+
+    @Before
+    public void setUp() {
+        remote = new FakeRemoteDocumentStore();
+        local = new HashMap<>();
+        target = new RecordingTarget();
+    }
+
+    @Test
+    public void firstSync_readsEverythingIncludingLegacyDocuments() throws Exception {
+        remote.put(document("a", "A"), null);
+        remote.put(document("b", "B"));
+        remote.put(document("other", "Not mine", "user-2"));
+
+        int applied = new DeltaSync(remote, 10).pull(USER, null, local, target);
+
+        assertEquals(2, applied);
+        assertTrue(local.containsKey("a"));
+        assertTrue(local.containsKey("b"));
+        assertFalse(local.containsKey("other"));
+        assertNotNull(target.cursor);
+    }
+
+    @Test
+    public void laterSync_readsOnlyChanges() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            remote.put(document("doc" + i, "Doc " + i));
+        }
+        DeltaSync sync = new DeltaSync(remote, 10);
+        sync.pull(USER, null, local, target);
+        int readAfterFirstSync = remote.getDocumentsRead();
+
+        assertEquals(0, sync.pull(USER, target.cursor, local, target));
+        assertEquals(readAfterFirstSync, remote.getDocumentsRead());
+
+        remote.put(document("doc7", "Renamed"));
+        remote.put(document("new", "New"));
+        assertEquals(2, sync.pull(USER, target.cursor, local, target));
+        assertEquals(readAfterFirstSync + 2, remote.getDocumentsRead());
+        assertEquals("Renamed", local.get("doc7").getFileName());
+        assertTrue(target.created.contains("new"));
+    }
+
+    @Test
+    public void documentsWithTheSameUpdateTime_areNotSkippedAcrossPages() throws Exception {
+        UpdateTime sameTime = new UpdateTime(5, 0);
+        for (String id : new String[]{"e", "a", "d", "b", "c"}) {
+            remote.put(document(id, id), sameTime);
+        }
+
+        int applied = new DeltaSync(remote, 2).pull(USER, SyncCursor.beginning(), local, target);
+
+        assertEquals(5, applied);
+        assertEquals(5, local.size());
+        assertEquals("e", target.cursor.getDocumentId());
+    }
+
+    @Test
+    public void morePagesThanFitOneTimestamp_areEachReadOnce() throws Exception {
+        int count = DeltaSync.DEFAULT_PAGE_SIZE * 2 + 50;
+        remote.pauseClock(true);
+        for (int i = 0; i < count; i++) {
+            remote.put(document(String.format("doc%04d", i), "Doc " + i));
+        }
+
+        int applied = new DeltaSync(remote, DeltaSync.DEFAULT_PAGE_SIZE)
+                .pull(USER, SyncCursor.beginning(), local, target);
+
+        assertEquals(count, applied);
+        assertEquals(count, remote.getDocumentsRead());
+        assertEquals(String.format("doc%04d", count - 1), target.cursor.getDocumentId());
+    }
+
+    @Test
+    public void documentsWithinOneMillisecond_areNotReadAgain() throws Exception {
+        // The clock ticks in microseconds, so these all fall in the same millisecond
+        remote.put(document("a", "A"));
+        remote.put(document("b", "B"));
+        remote.put(document("c", "C"));
+        DeltaSync sync = new DeltaSync(remote, DeltaSync.DEFAULT_PAGE_SIZE);
+        sync.pull(USER, SyncCursor.beginning(), local, target);
+        int readAfterFirstSync = remote.getDocumentsRead();
+
+        assertEquals(0, sync.pull(USER, target.cursor, local, target));
+        assertEquals(readAfterFirstSync, remote.getDocumentsRead());
+    }
+
+    @Test
+    public void localDocumentWithUnsyncedEdits_isKept() throws Exception {
+        ScannedDocument edited = document("a", "Edited here");
+        edited.setMetadataSynced(false);
+        local.put("a", edited);
+        remote.put(document("a", "Edited there"));
+
+        int applied = new DeltaSync(remote, 10).pull(USER, SyncCursor.beginning(), local, target);
+
+        assertEquals(0, applied);
+        assertEquals("Edited here", local.get("a").getFileName());
+        assertNotNull(target.cursor);
+    }
+
+    @Test
+    public void failedSave_leavesCursorBeforeTheFailedChange() throws Exception {
+        remote.put(document("a", "A"));
+        remote.put(document("b", "B"));
+        remote.put(document("c", "C"));
+        target.failOn = "c";
+
+        try {
+            new DeltaSync(remote, 2).pull(USER, SyncCursor.beginning(), local, target);
+            fail("Expected the failed save to propagate");
+        } catch (IllegalStateException expected) {
+            // The first page was saved, the second was not
+        }
+        assertEquals("b", target.cursor.getDocumentId());
+    }
+
+    private static ScannedDocument document(String id, String fileName) {
+        return document(id, fileName, USER);
+    }
+
+    private static ScannedDocument document(String id, String fileName, String userId) {
+        ScannedDocument document = new ScannedDocument(fileName, userId);
+        document.setId(id);
+        document.setMetadataSynced(true);
+        return document;
+    }
+
+    private static class RecordingTarget implements DeltaSync.Target {
+        final List<String> created = new ArrayList<>();
+        SyncCursor cursor;
+        String failOn;
+
+        @Override
+        public void save(ScannedDocument document, boolean isNew) {
+            if (document.getId().equals(failOn)) {
+                throw new IllegalStateException("Save failed");
+            }
+            if (isNew) {
+                created.add(document.getId());
+            }
+        }
+
+        @Override
+        public void saveCursor(SyncCursor cursor) {
+            this.cursor = cursor;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * In-memory server for outbox tests. Records every committed batch and can be told to
+ * fail a number of commits first.
+ */
+class FakeMetadataWriter implements MetadataWriter {
+    final Map<String, String> fileNames = new LinkedHashMap<>();
+    final List<Integer> batchSizes = new ArrayList<>();
+    int failuresLeft;
+    int commitCalls;
+
+    @Override
+    public void commit(List<Write> writes) throws Exception {
+        commitCalls++;
+        if (failuresLeft > 0) {
+            failuresLeft--;
+            throw new Exception("Unavailable");
+        }
+        batchSizes.add(writes.size());
+        for (Write write : writes) {
+            if (write.isDelete()) {
+                fileNames.remove(write.getDocumentId());
+            } else {
+                ScannedDocument document = write.getDocument();
+                fileNames.put(document.getId(), document.getFileName());
+            }
+        }
+    }
+}
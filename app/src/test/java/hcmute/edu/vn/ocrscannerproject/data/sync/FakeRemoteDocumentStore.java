@@ -0,0 +1,106 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * In-memory server for sync tests. Writes get update times from a clock that never moves
+ * back, like Firestore server timestamps, and every document handed out is counted. The
+ * clock ticks in microseconds, the precision Firestore keeps, and can be paused so that
+ * several writes share one timestamp, as writes committed together do.
+ */
+class FakeRemoteDocumentStore implements RemoteDocumentStore {
+    private final Map<String, RemoteChange> documents = new LinkedHashMap<>();
+    private static final int NANOS_PER_TICK = 1000;
+
+    private UpdateTime clock = new UpdateTime(1000, 0);
+    private boolean clockPaused;
+    private int documentsRead;
+
+    /**
+     * Stores a document with the next server time.
+     */
+    void put(ScannedDocument document) {
+        if (!clockPaused) {
+            clock = next(clock);
+        }
+        put(document, clock);
+    }
+
+    /**
+     * Stops or restarts the clock. While it is stopped every write gets the same time.
+     */
+    void pauseClock(boolean paused) {
+        clockPaused = paused;
+    }
+
+    /**
+     * Stores a document with a given update time, or none for a legacy document.
+     */
+    void put(ScannedDocument document, UpdateTime updatedAt) {
+        documents.put(document.getId(), new RemoteChange(copy(document), updatedAt));
+    }
+
+    int getDocumentsRead() {
+        return documentsRead;
+    }
+
+    @Override
+    public List<RemoteChange> fetchAll(String userId) {
+        List<RemoteChange> result = new ArrayList<>();
+        for (RemoteChange change : documents.values()) {
+            if (userId.equals(change.getDocument().getUserId())) {
+                result.add(read(change));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<RemoteChange> fetchChangesAfter(String userId, SyncCursor cursor, int limit) {
+        List<RemoteChange> matches = new ArrayList<>();
+        for (RemoteChange change : documents.values()) {
+            if (userId.equals(change.getDocument().getUserId()) && change.getUpdatedAt() != null
+                    && cursor.isBefore(change.getUpdatedAt(), change.getDocument().getId())) {
+                matches.add(change);
+            }
+        }
+        matches.sort((a, b) -> {
+            int byTime = a.getUpdatedAt().compareTo(b.getUpdatedAt());
+            return byTime != 0 ? byTime : a.getDocument().getId().compareTo(b.getDocument().getId());
+        });
+
+        List<RemoteChange> page = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            page.add(read(matches.get(i)));
+        }
+        return page;
+    }
+
+    private static UpdateTime next(UpdateTime time) {
+        int nanos = time.getNanos() + NANOS_PER_TICK;
+        return nanos < 1_000_000_000
+                ? new UpdateTime(time.getSeconds(), nanos)
+                : new UpdateTime(time.getSeconds() + 1, nanos - 1_000_000_000);
+    }
+
+    private RemoteChange read(RemoteChange change) {
+        documentsRead++;
+        return new RemoteChange(copy(change.getDocument()), change.getUpdatedAt());
+    }
+
+    private static ScannedDocument copy(ScannedDocument document) {
+        ScannedDocument copy = new ScannedDocument(document.getFileName(), document.getUserId());
+        copy.setId(document.getId());
+        copy.setRecognizedText(document.getRecognizedText());
+        copy.setSummaryText(document.getSummaryText());
+        copy.setTimestamp(document.getTimestamp());
+        copy.setLanguage(document.getLanguage());
+        copy.setCloudImageUrl(document.getCloudImageUrl());
+        return copy;
+    }
+}
@@ -0,0 +1,204 @@
+package hcmute.edu.vn.ocrscannerproject.data.sync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+import hcmute.edu.vn.ocrscannerproject.data.local.dao.OutboxDao;
+import hcmute.edu.vn.ocrscannerproject.data.local.entity.OutboxEntity;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for coalescing, batching and retrying metadata writes.
+ */
+public class MetadataOutboxTest {
+    private InMemoryOutboxDao outboxDao;
+    private Map<String, ScannedDocument> documents;
+    private Set<String> synced;
+    private FakeMetadataWriter writer;
+    private MetadataOutbox outbox;
+
+    @Before
+    public void setUp() {
+        outboxDao = new InMemoryOutboxDao();
+        documents = new HashMap<>();
+        synced = new HashSet<>();
+        writer = new FakeMetadataWriter();
+        outbox = new MetadataOutbox(outboxDao, new MetadataOutbox.LocalDocuments() {
+            @Override
+            public ScannedDocument load(String documentId) {
+                return documents.get(documentId);
+            }
+
+            @Override
+            public void markSynced(List<String> documentIds) {
+                synced.addAll(documentIds);
+            }
+        }, writer, 1, 4, 2);
+    }
+
+    @Test
+    public void repeatedUpdates_areWrittenOnceWithTheLatestData() throws Exception {
+        putDocument("a", "First");
+        outbox.enqueueSet("a");
+        putDocument("a", "Second");
+        outbox.enqueueSet("a");
+        putDocument("a", "Third");
+        outbox.enqueueSet("a");
+
+        assertEquals(1, outbox.flush());
+        assertEquals(Arrays.asList(1), writer.batchSizes);
+        assertEquals("Third", writer.fileNames.get("a"));
+        assertTrue(synced.contains("a"));
+        assertEquals(0, outboxDao.getPendingCount());
+    }
+
+    @Test
+    public void largeSyncs_areSplitIntoBatchesOfFiveHundred() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            putDocument("doc" + i, "Doc " + i);
+            ids.add("doc" + i);
+        }
+        outbox.enqueueSet(ids);
+
+        assertEquals(1200, outbox.flush());
+        assertEquals(Arrays.asList(500, 500, 200), writer.batchSizes);
+        assertEquals(1200, synced.size());
+    }
+
+    @Test
+    public void delete_replacesAQueuedWrite() throws Exception {
+        putDocument("a", "A");
+        outbox.enqueueSet("a");
+        outbox.flush();
+        outbox.enqueueSet("a");
+        outbox.enqueueDelete("a");
+
+        outbox.flush();
+
+        assertFalse(writer.fileNames.containsKey("a"));
+        assertEquals(Arrays.asList(1, 1), writer.batchSizes);
+    }
+
+    @Test
+    public void failedBatch_isRetriedWithBackoff() throws Exception {
+        putDocument("a", "A");
+        outbox.enqueueSet("a");
+        writer.failuresLeft = 2;
+
+        assertEquals(1, outbox.flush());
+        assertEquals(3, writer.commitCalls);
+        assertEquals("A", writer.fileNames.get("a"));
+    }
+
+    @Test
+    public void flush_givesUpAfterTheRetriesAndKeepsTheWrites() {
+        putDocument("a", "A");
+        outbox.enqueueSet("a");
+        writer.failuresLeft = 10;
+
+        try {
+            outbox.flush();
+            fail("Expected the flush to give up");
+        } catch (Exception expected) {
+            // Three attempts: the first and two retries
+        }
+        assertEquals(3, writer.commitCalls);
+        assertEquals(1, outboxDao.getPendingCount());
+        assertEquals(3, outboxDao.getByDocumentId("a").getAttempts());
+        assertFalse(synced.contains("a"));
+    }
+
+    @Test
+    public void writeEnqueuedDuringAFlush_isKept() {
+        putDocument("a", "A");
+        outbox.enqueueSet("a");
+        List<OutboxEntity> read = outboxDao.getDue(Long.MAX_VALUE, 10);
+        outbox.enqueueSet("a");
+
+        outboxDao.deleteWritten(read);
+
+        assertEquals(1, outboxDao.getPendingCount());
+    }
+
+    private void putDocument(String id, String fileName) {
+        ScannedDocument document = new ScannedDocument(fileName, "user-1");
+        document.setId(id);
+        documents.put(id, document);
+    }
+
+    /**
+     * Stand-in for the Room table, with the same ordering and version checks.
+     */
+    private static class InMemoryOutboxDao implements OutboxDao {
+        private final Map<String, OutboxEntity> rows = new HashMap<>();
+
+        @Override
+        public void upsert(OutboxEntity entry) {
+            rows.put(entry.getDocumentId(), copy(entry));
+        }
+
+        @Override
+        public OutboxEntity getByDocumentId(String documentId) {
+            OutboxEntity entry = rows.get(documentId);
+            return entry != null ? copy(entry) : null;
+        }
+
+        @Override
+        public List<OutboxEntity> getDue(long now, int limit) {
+            List<OutboxEntity> due = new ArrayList<>();
+            for (OutboxEntity entry : rows.values()) {
+                if (entry.getNextAttemptAt() <= now) {
+                    due.add(copy(entry));
+                }
+            }
+            due.sort((a, b) -> Long.compare(a.getEnqueuedAt(), b.getEnqueuedAt()));
+            return due.size() > limit ? new ArrayList<>(due.subList(0, limit)) : due;
+        }
+
+        @Override
+        public int getPendingCount() {
+            return rows.size();
+        }
+
+        @Override
+        public void deleteIfVersion(String documentId, long version) {
+            OutboxEntity entry = rows.get(documentId);
+            if (entry != null && entry.getVersion() == version) {
+                rows.remove(documentId);
+            }
+        }
+
+        @Override
+        public void recordFailure(List<String> documentIds, long nextAttemptAt) {
+            for (String documentId : documentIds) {
+                OutboxEntity entry = rows.get(documentId);
+                if (entry != null) {
+                    entry.setAttempts(entry.getAttempts() + 1);
+                    entry.setNextAttemptAt(nextAttemptAt);
+                }
+            }
+        }
+
+        private static OutboxEntity copy(OutboxEntity entry) {
+            OutboxEntity copy = new OutboxEntity();
+            copy.setDocumentId(entry.getDocumentId());
+            copy.setOperation(entry.getOperation());
+            copy.setVersion(entry.getVersion());
+            copy.setEnqueuedAt(entry.getEnqueuedAt());
+            copy.setAttempts(entry.getAttempts());
+            copy.setNextAttemptAt(entry.getNextAttemptAt());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hcmute.edu.vn.ocrscannerproject.services;
+
+import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for writing the PDF document, reading the result back with iText.
+ */
+public class PdfExportEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeDocument_producesReadablePdf() throws Exception {
+        byte[] jpeg = jpeg(120, 80);
+        File output = folder.newFile("export.pdf");
+
+        PdfExportEngine.writeDocument(output, 2, (document, writer, pageIndex) -> {
+            Image image = Image.getInstance(jpeg);
+            image.setAbsolutePosition(0, 0);
+            document.add(image);
+        }, null);
+
+        PdfReader reader = new PdfReader(output.getAbsolutePath());
+        try {
+            assertEquals(2, reader.getNumberOfPages());
+            PdfDictionary xObjects = reader.getPageN(1)
+                    .getAsDict(PdfName.RESOURCES)
+                    .getAsDict(PdfName.XOBJECT);
+            assertNotNull(xObjects);
+            assertEquals(1, xObjects.size());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void writeDocument_reportsEachPage() throws Exception {
+        byte[] jpeg = jpeg(40, 40);
+        List<Integer> exported = new ArrayList<>();
+
+        PdfExportEngine.writeDocument(folder.newFile("progress.pdf"), 3,
+                (document, writer, pageIndex) -> document.add(Image.getInstance(jpeg)),
+                (pageIndex, pageCount) -> {
+                    assertEquals(3, pageCount);
+                    exported.add(pageIndex);
+                });
+
+        assertEquals(Arrays.asList(0, 1, 2), exported);
+    }
+
+    @Test
+    public void writeDocument_propagatesPageFailure() throws Exception {
+        byte[] jpeg = jpeg(40, 40);
+        IOException failure = new IOException("unreadable page");
+
+        try {
+            PdfExportEngine.writeDocument(folder.newFile("failed.pdf"), 2, (document, writer, pageIndex) -> {
+                if (pageIndex == 1) {
+                    throw failure;
+                }
+                document.add(Image.getInstance(jpeg));
+            }, null);
+            fail("Expected the page failure");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    private static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        graphics.drawLine(0, 0, width - 1, height - 1);
+        graphics.dispose();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpg", output));
+        return output.toByteArray();
+    }
+}
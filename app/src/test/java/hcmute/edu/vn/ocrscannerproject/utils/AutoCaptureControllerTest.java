@@ -0,0 +1,145 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for firing captures on still, sharp frames.
+ */
+public class AutoCaptureControllerTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    // 30 frames per second
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    @Test
+    public void firesOnceAfterStableSharpFrames() {
+        AutoCaptureController controller = enabledController();
+        ByteBuffer page = textLikeFrame(0);
+
+        int firedAt = -1;
+        int fireCount = 0;
+        for (int frame = 0; frame < 30; frame++) {
+            if (controller.onFrame(page, WIDTH, HEIGHT, WIDTH, frame * FRAME_NANOS, true)) {
+                fireCount++;
+                if (firedAt < 0) {
+                    firedAt = frame;
+                }
+            }
+        }
+
+        // The first frame has nothing to compare with, then six still frames are needed
+        assertEquals(AutoCaptureController.Config.DEFAULT_STABLE_FRAMES, firedAt);
+        assertEquals("Holding the same page must not capture it again", 1, fireCount);
+        assertTrue(controller.getSharpness() >= AutoCaptureController.Config.DEFAULT_MIN_SHARPNESS);
+    }
+
+    @Test
+    public void rearmsAfterPageIsTurned() {
+        AutoCaptureController controller = enabledController();
+        ByteBuffer first = textLikeFrame(0);
+        ByteBuffer second = textLikeFrame(5);
+        long time = 0;
+
+        int fires = 0;
+        for (int frame = 0; frame < 20; frame++, time += FRAME_NANOS) {
+            fires += controller.onFrame(first, WIDTH, HEIGHT, WIDTH, time, true) ? 1 : 0;
+        }
+        for (int frame = 0; frame < 40; frame++, time += FRAME_NANOS) {
+            fires += controller.onFrame(second, WIDTH, HEIGHT, WIDTH, time, true) ? 1 : 0;
+        }
+
+        assertEquals(2, fires);
+    }
+
+    @Test
+    public void firesAgainOnSamePageAfterSkippedCapture() {
+        AutoCaptureController controller = enabledController();
+        ByteBuffer page = textLikeFrame(0);
+
+        int firstFire = -1;
+        int secondFire = -1;
+        for (int frame = 0; frame < 60; frame++) {
+            if (controller.onFrame(page, WIDTH, HEIGHT, WIDTH, frame * FRAME_NANOS, true)) {
+                if (firstFire < 0) {
+                    firstFire = frame;
+                    // The camera could not take the picture
+                    controller.notifyCaptureSkipped();
+                } else if (secondFire < 0) {
+                    secondFire = frame;
+                }
+            }
+        }
+
+        assertEquals(AutoCaptureController.Config.DEFAULT_STABLE_FRAMES, firstFire);
+        assertTrue("The page must be captured again without being turned", secondFire > firstFire);
+        long cooldownFrames = AutoCaptureController.Config.DEFAULT_COOLDOWN_MS * 1_000_000L / FRAME_NANOS;
+        assertTrue("The retry must wait for the cooldown", secondFire - firstFire >= cooldownFrames);
+    }
+
+    @Test
+    public void neverFiresOnBlurredFrames() {
+        AutoCaptureController controller = enabledController();
+        ByteBuffer blurred = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                // A gentle gradient has no edges for the Laplacian to find
+                blurred.put(y * WIDTH + x, (byte) (100 + x / 4));
+            }
+        }
+
+        for (int frame = 0; frame < 30; frame++) {
+            assertFalse(controller.onFrame(blurred, WIDTH, HEIGHT, WIDTH, frame * FRAME_NANOS, true));
+        }
+    }
+
+    @Test
+    public void neverFiresWhileMovingOrWithoutPage() {
+        AutoCaptureController controller = enabledController();
+
+        for (int frame = 0; frame < 30; frame++) {
+            // The page shifts a few pixels every frame
+            assertFalse(controller.onFrame(textLikeFrame(frame % 2 * 3), WIDTH, HEIGHT, WIDTH,
+                    frame * FRAME_NANOS, true));
+        }
+        ByteBuffer still = textLikeFrame(0);
+        for (int frame = 0; frame < 30; frame++) {
+            assertFalse(controller.onFrame(still, WIDTH, HEIGHT, WIDTH, frame * FRAME_NANOS, false));
+        }
+    }
+
+    @Test
+    public void disabledControllerNeverFires() {
+        AutoCaptureController controller = new AutoCaptureController();
+        ByteBuffer page = textLikeFrame(0);
+
+        for (int frame = 0; frame < 30; frame++) {
+            assertFalse(controller.onFrame(page, WIDTH, HEIGHT, WIDTH, frame * FRAME_NANOS, true));
+        }
+    }
+
+    private static AutoCaptureController enabledController() {
+        AutoCaptureController controller = new AutoCaptureController();
+        controller.setEnabled(true);
+        return controller;
+    }
+
+    /**
+     * Draws rows of dark, sharp-edged strokes on white, shifted right by offset pixels.
+     */
+    private static ByteBuffer textLikeFrame(int offset) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int u = x + offset;
+                boolean ink = y % 12 < 7 && (u % 5 == 0 || (u * 7 + y * 3) % 11 == 0);
+                frame.put(y * WIDTH + x, (byte) (ink ? 30 : 230));
+            }
+        }
+        return frame;
+    }
+}
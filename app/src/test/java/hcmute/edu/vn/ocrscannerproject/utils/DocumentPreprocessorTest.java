@@ -0,0 +1,142 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for grayscale conversion, Sauvola thresholding and skew correction.
+ */
+public class DocumentPreprocessorTest {
+
+    @Test
+    public void toGray_usesLumaWeights() {
+        int[] argb = {0xFFFFFFFF, 0xFF000000, 0xFFFF0000, 0xFF00FF00};
+        byte[] gray = new byte[6];
+
+        DocumentPreprocessor.toGray(argb, gray, 2, argb.length);
+
+        assertEquals(0, gray[0]);
+        assertEquals(255, gray[2] & 0xFF);
+        assertEquals(0, gray[3] & 0xFF);
+        assertEquals(76, gray[4] & 0xFF);
+        assertEquals(149, gray[5] & 0xFF);
+    }
+
+    @Test
+    public void binarize_followsUnevenLighting() {
+        int width = 400;
+        int height = 120;
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Shadow on the left; ink strokes every 20 px reflect under half the light
+                int background = 90 + 140 * x / width;
+                boolean stroke = x % 20 < 3 && y > 20 && y < 100;
+                pixels[y * width + x] = (byte) (stroke ? background * 45 / 100 : background);
+            }
+        }
+        DocumentPreprocessor.GrayImage page = new DocumentPreprocessor.GrayImage(pixels, width, height);
+
+        new DocumentPreprocessor().binarize(page);
+
+        // A stroke in the light is brighter than the background in the shadow, yet both are right
+        assertEquals(0, page.get(381, 60));
+        assertEquals(255, page.get(10, 60));
+        assertEquals(0, page.get(1, 60));
+        assertEquals(255, page.get(390, 60));
+    }
+
+    @Test
+    public void binarize_givesSameResultForAnyBandHeight() {
+        byte[] source = noisyPage(211, 157);
+        DocumentPreprocessor.GrayImage banded =
+                new DocumentPreprocessor.GrayImage(source.clone(), 211, 157);
+        DocumentPreprocessor.GrayImage whole =
+                new DocumentPreprocessor.GrayImage(source.clone(), 211, 157);
+
+        new DocumentPreprocessor(DocumentPreprocessor.DEFAULT_K, 1).binarize(banded);
+        new DocumentPreprocessor(DocumentPreprocessor.DEFAULT_K, 1000).binarize(whole);
+
+        assertTrue(Arrays.equals(whole.getPixels(), banded.getPixels()));
+    }
+
+    @Test
+    public void estimateSkew_findsSlopeOfTextLines() {
+        DocumentPreprocessor preprocessor = new DocumentPreprocessor();
+        DocumentPreprocessor.GrayImage page = linedPage(900, 700, 3.0);
+
+        double skew = preprocessor.estimateSkew(page);
+        assertEquals(3.0, skew, 0.2);
+
+        DocumentPreprocessor.GrayImage straight = preprocessor.rotate(page, skew);
+        assertEquals(0, preprocessor.estimateSkew(straight), 0.2);
+    }
+
+    @Test
+    public void estimateSkew_findsNegativeSlope() {
+        assertEquals(-5.0, new DocumentPreprocessor().estimateSkew(linedPage(900, 700, -5.0)), 0.2);
+    }
+
+    @Test
+    public void estimateSkew_leavesBlankPageAlone() {
+        byte[] pixels = new byte[300 * 200];
+        Arrays.fill(pixels, (byte) 230);
+
+        assertEquals(0, new DocumentPreprocessor().estimateSkew(
+                new DocumentPreprocessor.GrayImage(pixels, 300, 200)), 0);
+    }
+
+    @Test
+    public void process_reportsAngleItStraightenedBy() {
+        double[] applied = {Double.NaN};
+
+        new DocumentPreprocessor().process(linedPage(900, 700, 3.0), applied);
+        assertEquals(3.0, applied[0], 0.2);
+
+        new DocumentPreprocessor().process(linedPage(900, 700, 0), applied);
+        assertEquals("A level page must not be turned", 0, applied[0], 0);
+    }
+
+    @Test
+    public void windowSize_isOddAndBounded() {
+        assertEquals(15, DocumentPreprocessor.windowSize(100, 100));
+        assertEquals(41, DocumentPreprocessor.windowSize(2048, 1536));
+        assertEquals(75, DocumentPreprocessor.windowSize(8000, 6000));
+    }
+
+    /**
+     * Draws dashed lines of text sloping by an angle on a white page.
+     */
+    private static DocumentPreprocessor.GrayImage linedPage(int width, int height, double degrees) {
+        byte[] pixels = new byte[width * height];
+        Arrays.fill(pixels, (byte) 240);
+        double tan = Math.tan(Math.toRadians(degrees));
+        for (int line = 100; line < height - 100; line += 30) {
+            for (int x = 60; x < width - 60; x++) {
+                if (x % 12 >= 8) {
+                    continue;
+                }
+                int y0 = (int) Math.round(line + (x - width / 2.0) * tan);
+                for (int y = y0; y < y0 + 4; y++) {
+                    if (y >= 0 && y < height) {
+                        pixels[y * width + x] = 20;
+                    }
+                }
+            }
+        }
+        return new DocumentPreprocessor.GrayImage(pixels, width, height);
+    }
+
+    private static byte[] noisyPage(int width, int height) {
+        byte[] pixels = new byte[width * height];
+        long seed = 42;
+        for (int i = 0; i < pixels.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            pixels[i] = (byte) (120 + (i % width) / 3 + ((seed >>> 58) - 32));
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,146 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for reading image dimensions and EXIF orientation from file headers.
+ */
+public class ImageHeaderParserTest {
+
+    @Test
+    public void parse_readsJpegFrameAndBigEndianOrientation() {
+        byte[] jpeg = jpeg(exif(false, 6), 3000, 4000);
+
+        ImageHeaderParser.Header header = ImageHeaderParser.parse(jpeg, jpeg.length);
+
+        assertEquals("image/jpeg", header.getMimeType());
+        assertEquals("jpg", header.getExtension());
+        assertEquals(4000, header.getWidth());
+        assertEquals(3000, header.getHeight());
+        assertEquals(6, header.getOrientation());
+    }
+
+    @Test
+    public void parse_readsLittleEndianOrientation() {
+        byte[] jpeg = jpeg(exif(true, 8), 10, 20);
+
+        assertEquals(8, ImageHeaderParser.parse(jpeg, jpeg.length).getOrientation());
+    }
+
+    @Test
+    public void parse_defaultsOrientationWithoutExif() {
+        byte[] jpeg = jpeg(null, 10, 20);
+
+        ImageHeaderParser.Header header = ImageHeaderParser.parse(jpeg, jpeg.length);
+
+        assertEquals(ImageHeaderParser.ORIENTATION_NORMAL, header.getOrientation());
+        assertEquals(20, header.getWidth());
+    }
+
+    @Test
+    public void parse_reportsUnknownSizeWhenFrameIsCutOff() {
+        byte[] jpeg = jpeg(exif(false, 3), 10, 20);
+        int beforeFrame = jpeg.length - 19;
+
+        ImageHeaderParser.Header header = ImageHeaderParser.parse(jpeg, beforeFrame);
+
+        assertEquals(ImageHeaderParser.UNKNOWN, header.getWidth());
+        assertEquals(3, header.getOrientation());
+    }
+
+    @Test
+    public void parse_readsPngAndWebp() {
+        byte[] png = new byte[24];
+        png[0] = (byte) 0x89;
+        ascii(png, 1, "PNG");
+        ascii(png, 12, "IHDR");
+        png[18] = 0x02;
+        png[19] = 0x58;
+        png[23] = 0x64;
+        ImageHeaderParser.Header pngHeader = ImageHeaderParser.parse(png, png.length);
+        assertEquals("png", pngHeader.getExtension());
+        assertEquals(600, pngHeader.getWidth());
+        assertEquals(100, pngHeader.getHeight());
+
+        byte[] webp = new byte[30];
+        ascii(webp, 0, "RIFF");
+        ascii(webp, 8, "WEBP");
+        ascii(webp, 12, "VP8X");
+        webp[24] = (byte) 0xFF;
+        webp[25] = 0x03;
+        webp[27] = 0x1F;
+        ImageHeaderParser.Header webpHeader = ImageHeaderParser.parse(webp, webp.length);
+        assertEquals("image/webp", webpHeader.getMimeType());
+        assertEquals("webp", webpHeader.getExtension());
+        assertEquals(1024, webpHeader.getWidth());
+        assertEquals(32, webpHeader.getHeight());
+    }
+
+    @Test
+    public void parse_returnsNullForOtherContent() {
+        byte[] pdf = "%PDF-1.4 some document".getBytes();
+
+        assertNull(ImageHeaderParser.parse(pdf, pdf.length));
+        assertNull(ImageHeaderParser.parse(new byte[2], 2));
+    }
+
+    static byte[] jpeg(byte[] app1, int height, int width) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        if (app1 != null) {
+            out.write(0xFF);
+            out.write(0xE1);
+            out.write((app1.length + 2) >> 8);
+            out.write((app1.length + 2) & 0xFF);
+            out.write(app1, 0, app1.length);
+        }
+        // Quantization table segment, skipped by length
+        out.write(0xFF);
+        out.write(0xDB);
+        out.write(0);
+        out.write(4);
+        out.write(0);
+        out.write(0);
+        // Baseline frame header
+        byte[] sof = {(byte) 0xFF, (byte) 0xC0, 0, 17, 8,
+                (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 3,
+                1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1};
+        out.write(sof, 0, sof.length);
+        return out.toByteArray();
+    }
+
+    static byte[] exif(boolean littleEndian, int orientation) {
+        byte[] data = new byte[6 + 8 + 2 + 12 + 4];
+        ascii(data, 0, "Exif");
+        ascii(data, 6, littleEndian ? "II" : "MM");
+        put16(data, 8, 42, littleEndian);
+        put32(data, 10, 8, littleEndian);
+        put16(data, 14, 1, littleEndian);
+        put16(data, 16, 0x0112, littleEndian);
+        put16(data, 18, 3, littleEndian);
+        put32(data, 20, 1, littleEndian);
+        put16(data, 24, orientation, littleEndian);
+        return data;
+    }
+
+    private static void put16(byte[] data, int offset, int value, boolean littleEndian) {
+        data[offset] = (byte) (littleEndian ? value : value >> 8);
+        data[offset + 1] = (byte) (littleEndian ? value >> 8 : value);
+    }
+
+    private static void put32(byte[] data, int offset, int value, boolean littleEndian) {
+        put16(data, littleEndian ? offset : offset + 2, value & 0xFFFF, littleEndian);
+        put16(data, littleEndian ? offset + 2 : offset, value >>> 16, littleEndian);
+    }
+
+    private static void ascii(byte[] data, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            data[offset + i] = (byte) text.charAt(i);
+        }
+    }
+}
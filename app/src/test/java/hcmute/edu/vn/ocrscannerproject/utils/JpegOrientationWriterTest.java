@@ -0,0 +1,74 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for recording the orientation of an in-memory JPEG while writing it.
+ */
+public class JpegOrientationWriterTest {
+
+    @Test
+    public void write_changesExistingTagInPlace() throws IOException {
+        for (boolean littleEndian : new boolean[] {false, true}) {
+            byte[] jpeg = ImageHeaderParserTest.jpeg(ImageHeaderParserTest.exif(littleEndian, 1), 3000, 4000);
+
+            byte[] written = write(jpeg, 6);
+
+            assertEquals("Size must not change", jpeg.length, written.length);
+            ImageHeaderParser.Header header = ImageHeaderParser.parse(written, written.length);
+            assertEquals(6, header.getOrientation());
+            assertEquals(4000, header.getWidth());
+        }
+    }
+
+    @Test
+    public void write_insertsExifWhenMissing() throws IOException {
+        byte[] jpeg = ImageHeaderParserTest.jpeg(null, 30, 40);
+
+        byte[] written = write(jpeg, 8);
+
+        ImageHeaderParser.Header header = ImageHeaderParser.parse(written, written.length);
+        assertEquals(8, header.getOrientation());
+        assertEquals(40, header.getWidth());
+        assertEquals(30, header.getHeight());
+    }
+
+    @Test
+    public void write_replacesExifWithoutOrientationTag() throws IOException {
+        byte[] exif = ImageHeaderParserTest.exif(false, 1);
+        // Turn the orientation entry into some other tag
+        exif[17] = 0x10;
+        byte[] jpeg = ImageHeaderParserTest.jpeg(exif, 30, 40);
+
+        byte[] written = write(jpeg, 3);
+
+        ImageHeaderParser.Header header = ImageHeaderParser.parse(written, written.length);
+        assertEquals(3, header.getOrientation());
+        assertEquals(40, header.getWidth());
+        assertEquals("The old segment must be dropped", jpeg.length, written.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void write_rejectsOtherContent() throws IOException {
+        write("%PDF-1.4".getBytes(), 1);
+    }
+
+    @Test
+    public void orientationForRotation_matchesExifConstants() {
+        assertEquals(1, JpegOrientationWriter.orientationForRotation(0));
+        assertEquals(6, JpegOrientationWriter.orientationForRotation(90));
+        assertEquals(3, JpegOrientationWriter.orientationForRotation(180));
+        assertEquals(8, JpegOrientationWriter.orientationForRotation(270));
+    }
+
+    private static byte[] write(byte[] jpeg, int orientation) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegOrientationWriter.write(jpeg, jpeg.length, orientation, out);
+        return out.toByteArray();
+    }
+}
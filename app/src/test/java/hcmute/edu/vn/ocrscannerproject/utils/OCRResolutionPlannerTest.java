@@ -0,0 +1,73 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for choosing the resolution text is recognized at.
+ */
+public class OCRResolutionPlannerTest {
+
+    private static final int LONG_EDGE = 4000;
+
+    @Test
+    public void plan_scalesDominantTextToTarget() {
+        OCRResolutionPlanner planner = new OCRResolutionPlanner();
+        // Lines 30 px tall on a probe at a quarter of the size are 120 px on the page
+        float[] heights = {30, 30, 30, 30, 30};
+
+        float scale = planner.plan(heights, heights.length, 0.25f, LONG_EDGE);
+
+        assertEquals(OCRResolutionPlanner.TARGET_TEXT_HEIGHT / 120f, scale, 1e-4f);
+        assertTrue(OCRResolutionPlanner.isSufficient(0.25f, scale));
+    }
+
+    @Test
+    public void plan_keepsSmallPrintAboveMinimum() {
+        OCRResolutionPlanner planner = new OCRResolutionPlanner();
+        // Mostly 120 px headings, with 40 px footnotes
+        float[] heights = new float[20];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = i < 4 ? 10 : 30;
+        }
+
+        float scale = planner.plan(heights, heights.length, 0.25f, LONG_EDGE);
+
+        assertEquals(OCRResolutionPlanner.MIN_TEXT_HEIGHT / 40f, scale, 1e-4f);
+        assertFalse(OCRResolutionPlanner.isSufficient(0.25f, scale));
+    }
+
+    @Test
+    public void plan_usesFullResolutionWhenNoTextFound() {
+        OCRResolutionPlanner planner = new OCRResolutionPlanner();
+
+        assertEquals(1f, planner.plan(new float[0], 0, 0.25f, LONG_EDGE), 0f);
+        assertEquals(OCRResolutionPlanner.UNPLANNED, planner.planFromPrior(LONG_EDGE), 0f);
+    }
+
+    @Test
+    public void plan_neverUpscalesOrShrinksBelowMinimumSize() {
+        OCRResolutionPlanner planner = new OCRResolutionPlanner();
+
+        assertEquals(1f, planner.plan(new float[] {8}, 1, 1f, LONG_EDGE), 0f);
+        assertEquals(640f / LONG_EDGE, planner.plan(new float[] {500}, 1, 1f, LONG_EDGE), 1e-6f);
+    }
+
+    @Test
+    public void planFromPrior_scalesWithPageSize() {
+        OCRResolutionPlanner planner = new OCRResolutionPlanner();
+        planner.plan(new float[] {30, 30, 30}, 3, 0.25f, LONG_EDGE);
+
+        // Same document photographed at half the resolution has text half as tall
+        float scale = planner.planFromPrior(LONG_EDGE / 2);
+
+        assertEquals(OCRResolutionPlanner.TARGET_TEXT_HEIGHT / 60f, scale, 1e-4f);
+    }
+
+    @Test
+    public void probeScale_neverUpscales() {
+        assertEquals(0.256f, OCRResolutionPlanner.probeScale(LONG_EDGE), 1e-6f);
+        assertEquals(1f, OCRResolutionPlanner.probeScale(800), 0f);
+    }
+}
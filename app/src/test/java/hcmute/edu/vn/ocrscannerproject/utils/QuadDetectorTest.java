@@ -0,0 +1,112 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for finding a page outline in a luma plane.
+ */
+public class QuadDetectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // Row padding some camera HALs add after each row
+    private static final int ROW_STRIDE = 704;
+
+    @Test
+    public void detect_findsTiltedPage() {
+        float[] expected = {200, 80, 470, 110, 440, 420, 170, 390};
+        ByteBuffer frame = frameWithPage(expected);
+        float[] quad = new float[8];
+
+        assertTrue(new QuadDetector().detect(frame, WIDTH, HEIGHT, ROW_STRIDE, quad));
+
+        for (int i = 0; i < 8; i += 2) {
+            assertEquals("x of corner " + i / 2, expected[i], quad[i] * WIDTH, 8f);
+            assertEquals("y of corner " + i / 2, expected[i + 1], quad[i + 1] * HEIGHT, 8f);
+        }
+        assertEquals("Buffer position must not move", 0, frame.position());
+    }
+
+    @Test
+    public void detect_rejectsFrameWithoutPage() {
+        ByteBuffer frame = ByteBuffer.allocateDirect(ROW_STRIDE * HEIGHT);
+        for (int i = 0; i < frame.capacity(); i++) {
+            frame.put(i, (byte) 60);
+        }
+        // A small bright spot is not a page
+        frame.put(200 * ROW_STRIDE + 300, (byte) 250);
+
+        assertFalse(new QuadDetector().detect(frame, WIDTH, HEIGHT, ROW_STRIDE, new float[8]));
+    }
+
+    @Test
+    public void detect_reusesBuffersAcrossFrames() {
+        QuadDetector detector = new QuadDetector();
+        float[] quad = new float[8];
+        float[] first = {100, 100, 540, 100, 540, 380, 100, 380};
+        float[] second = {220, 60, 420, 60, 420, 420, 220, 420};
+
+        assertTrue(detector.detect(frameWithPage(first), WIDTH, HEIGHT, ROW_STRIDE, quad));
+        assertTrue(detector.detect(frameWithPage(second), WIDTH, HEIGHT, ROW_STRIDE, quad));
+
+        assertEquals(220, quad[0] * WIDTH, 8f);
+        assertEquals(420, quad[5] * HEIGHT, 8f);
+    }
+
+    @Test
+    public void toUpright_keepsCornerOrder() {
+        // A page in the top left of a frame the camera delivers turned on its side
+        float[] frameQuad = {0.1f, 0.2f, 0.4f, 0.2f, 0.4f, 0.6f, 0.1f, 0.6f};
+        float[] upright = new float[8];
+
+        QuadDetector.toUpright(frameQuad, 90, upright);
+
+        // Turned clockwise, the frame's bottom left corner becomes the top left
+        float[] expected = {0.4f, 0.1f, 0.8f, 0.1f, 0.8f, 0.4f, 0.4f, 0.4f};
+        assertArrayEquals(expected, upright, 1e-6f);
+    }
+
+    @Test
+    public void rotate_fullTurnIsIdentity() {
+        float[] points = {0.1f, 0.2f, 0.7f, 0.9f};
+        float[] turned = new float[4];
+
+        QuadDetector.rotate(points, 90, turned);
+        QuadDetector.rotate(turned, 270, turned);
+
+        assertArrayEquals(points, turned, 1e-6f);
+    }
+
+    /**
+     * Draws a bright convex quad on a dark, slightly noisy background.
+     */
+    private static ByteBuffer frameWithPage(float[] corners) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(ROW_STRIDE * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < ROW_STRIDE; x++) {
+                boolean inside = x < WIDTH && contains(corners, x + 0.5f, y + 0.5f);
+                int value = inside ? 220 : 50 + (x * 7 + y * 13) % 20;
+                frame.put(y * ROW_STRIDE + x, (byte) value);
+            }
+        }
+        return frame;
+    }
+
+    private static boolean contains(float[] corners, float x, float y) {
+        for (int i = 0; i < 4; i++) {
+            float ax = corners[2 * i];
+            float ay = corners[2 * i + 1];
+            float bx = corners[(2 * i + 2) % 8];
+            float by = corners[(2 * i + 3) % 8];
+            // Clockwise on screen keeps the inside on the right of each edge
+            if ((bx - ax) * (y - ay) - (by - ay) * (x - ax) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
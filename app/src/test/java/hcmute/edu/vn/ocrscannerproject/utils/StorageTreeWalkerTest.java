@@ -0,0 +1,115 @@
+package hcmute.edu.vn.ocrscannerproject.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for walking a paged storage listing, against a fake in-memory folder tree.
+ */
+public class StorageTreeWalkerTest {
+
+    private static final String ROOT = "scannedImages/user";
+
+    @Test
+    public void walk_visitsFilesInSubfolders() throws Exception {
+        FakeStorage storage = new FakeStorage(2,
+                ROOT + "/legacy.jpg",
+                ROOT + "/blobs/aa.jpg",
+                ROOT + "/blobs/bb.png",
+                ROOT + "/blobs/cc.webp",
+                ROOT + "/blobs/dd.jpg",
+                ROOT + "/blobs/ee.jpg");
+        List<String> visited = new ArrayList<>();
+
+        new StorageTreeWalker<>(storage, 0).walk(ROOT, visited::add);
+
+        Collections.sort(visited);
+        assertEquals(storage.files, visited);
+    }
+
+    @Test
+    public void walk_followsPageTokens() throws Exception {
+        FakeStorage storage = new FakeStorage(2,
+                ROOT + "/blobs/aa.jpg",
+                ROOT + "/blobs/bb.jpg",
+                ROOT + "/blobs/cc.jpg");
+        List<String> visited = new ArrayList<>();
+
+        int requests = new StorageTreeWalker<>(storage, 0).walk(ROOT, visited::add);
+
+        // One page for the root holding only the prefix, then two pages of blobs
+        assertEquals(3, requests);
+        assertEquals(3, visited.size());
+    }
+
+    @Test
+    public void walk_emptyFolderVisitsNothing() throws Exception {
+        FakeStorage storage = new FakeStorage(10);
+        List<String> visited = new ArrayList<>();
+
+        int requests = new StorageTreeWalker<>(storage, 0).walk(ROOT, visited::add);
+
+        assertEquals(1, requests);
+        assertTrue(visited.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void walk_stopsWhenListingFails() throws Exception {
+        StorageTreeWalker<String> walker = new StorageTreeWalker<>((folder, pageToken) -> {
+            throw new IllegalStateException("Network error");
+        }, 0);
+
+        walker.walk(ROOT, item -> fail("Nothing should be visited"));
+    }
+
+    /**
+     * Lists files by path the way Firebase Storage does: entries directly in a folder are
+     * items, deeper ones are reported once as the prefix of the subfolder holding them.
+     */
+    private static final class FakeStorage implements StorageTreeWalker.Lister<String> {
+        private final int pageSize;
+        private final List<String> files;
+
+        FakeStorage(int pageSize, String... files) {
+            this.pageSize = pageSize;
+            this.files = new ArrayList<>(Arrays.asList(files));
+            Collections.sort(this.files);
+        }
+
+        @Override
+        public StorageTreeWalker.Page<String> list(String folder, String pageToken) {
+            // Entries of the folder in name order, each mapped to whether it is a prefix
+            Map<String, Boolean> entries = new TreeMap<>();
+            for (String file : files) {
+                if (!file.startsWith(folder + "/")) {
+                    continue;
+                }
+                String rest = file.substring(folder.length() + 1);
+                int slash = rest.indexOf('/');
+                if (slash < 0) {
+                    entries.put(file, false);
+                } else {
+                    entries.put(folder + "/" + rest.substring(0, slash), true);
+                }
+            }
+
+            List<Map.Entry<String, Boolean>> all = new ArrayList<>(entries.entrySet());
+            int start = pageToken != null ? Integer.parseInt(pageToken) : 0;
+            int end = Math.min(all.size(), start + pageSize);
+            List<String> items = new ArrayList<>();
+            List<String> prefixes = new ArrayList<>();
+            for (Map.Entry<String, Boolean> entry : all.subList(start, end)) {
+                (entry.getValue() ? prefixes : items).add(entry.getKey());
+            }
+            return new StorageTreeWalker.Page<>(items, prefixes, end < all.size() ? String.valueOf(end) : null);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+// JMH benchmarks for the parts of the app that run on a plain JVM.
+// Run with ./gradlew :benchmark:jmh, or pick benchmarks with -PjmhIncludes=<regex>.
+// Results are written to build/results/jmh/results.json for before/after comparison.
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+sourceSets {
+    main {
+        java {
+            // Android-free app classes are compiled from the app sources as they are,
+            // so the benchmarks measure the shipped code rather than a copy
+            srcDir("../app/src/main/java")
+            include(
+                "hcmute/edu/vn/ocrscannerproject/core/entities/ScannedDocument.java",
+                "hcmute/edu/vn/ocrscannerproject/utils/AutoCaptureController.java",
+                "hcmute/edu/vn/ocrscannerproject/utils/DocumentPreprocessor.java",
+                "hcmute/edu/vn/ocrscannerproject/utils/OCRResolutionPlanner.java",
+                "hcmute/edu/vn/ocrscannerproject/utils/QuadDetector.java"
+            )
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // The largest preprocessed pages are 12 MP, with a few copies alive at once
+    jvmArgsAppend.set(listOf("-Xmx2g"))
+    resultFormat.set("JSON")
+    (findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
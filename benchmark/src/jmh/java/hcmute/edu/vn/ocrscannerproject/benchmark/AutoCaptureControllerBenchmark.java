@@ -0,0 +1,60 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import hcmute.edu.vn.ocrscannerproject.utils.AutoCaptureController;
+
+/**
+ * Measures utils/AutoCaptureController scoring preview frames for sharpness and motion.
+ * Frames alternate between two positions of the same page, so every frame is compared
+ * against a different previous one and the controller never fires.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AutoCaptureControllerBenchmark {
+    private static final long FRAME_NANOS = 33_333_333L;
+    // How far the text moves between frames, enough to count as motion
+    private static final int SHIFT_PIXELS = 5;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String frameSize;
+
+    private final AutoCaptureController controller = new AutoCaptureController();
+    private ByteBuffer[] frames;
+    private int width;
+    private int height;
+    private long frameIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = frameSize.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        frames = new ByteBuffer[]{
+                SyntheticPages.frameWithPage(width, height, width, 0),
+                SyntheticPages.frameWithPage(width, height, width, SHIFT_PIXELS)
+        };
+        controller.setEnabled(true);
+    }
+
+    /**
+     * Scores the next frame.
+     */
+    @Benchmark
+    public boolean onFrame() {
+        long index = frameIndex++;
+        return controller.onFrame(frames[(int) (index & 1)], width, height, width, index * FRAME_NANOS, true);
+    }
+}
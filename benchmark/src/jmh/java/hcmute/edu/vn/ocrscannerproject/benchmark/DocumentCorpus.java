@@ -0,0 +1,90 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import hcmute.edu.vn.ocrscannerproject.core.entities.ScannedDocument;
+
+/**
+ * Generates synthetic document libraries for the benchmarks. The same size and seed
+ * always give the same corpus, so runs before and after a change are comparable.
+ */
+public final class DocumentCorpus {
+    /** Seed used by every benchmark unless it needs several distinct corpora. */
+    public static final long DEFAULT_SEED = 42L;
+
+    // A mix of English and Vietnamese words, so lower-casing and matching see non-ASCII text
+    private static final String[] WORDS = {
+            "invoice", "receipt", "total", "amount", "date", "customer", "address", "payment",
+            "contract", "section", "agreement", "signature", "page", "report", "summary", "tax",
+            "hóa", "đơn", "tổng", "cộng", "ngày", "khách", "hàng", "địa", "chỉ", "thanh", "toán",
+            "hợp", "đồng", "điều", "khoản", "báo", "cáo", "trường", "đại", "học", "sư", "phạm"
+    };
+    private static final String[] TYPES = {"Image", "PDF", "TXT"};
+    private static final String[] TITLE_PREFIXES = {"Scan", "Invoice", "Receipt", "Notes", "Contract"};
+
+    // Recognized text length of a generated document, in words
+    private static final int MIN_TEXT_WORDS = 40;
+    private static final int MAX_TEXT_WORDS = 120;
+
+    private static final long START_TIME = 1672531200000L; // 2023-01-01T00:00:00Z
+    private static final long ONE_YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private DocumentCorpus() {
+    }
+
+    /**
+     * Generates a list of documents with file names, recognized text, summaries, image
+     * paths and timestamps shaped like the ones the app stores.
+     *
+     * @param count The number of documents
+     * @param seed The random seed
+     * @return The documents
+     */
+    public static List<ScannedDocument> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<ScannedDocument> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String fileName = TITLE_PREFIXES[random.nextInt(TITLE_PREFIXES.length)] + " " + i;
+            int pageCount = 1 + random.nextInt(3);
+            List<String> imagePaths = new ArrayList<>(pageCount);
+            for (int page = 0; page < pageCount; page++) {
+                imagePaths.add("/data/user/0/hcmute.edu.vn.ocrscannerproject/files/images/doc_" + i + "_" + page + ".jpg");
+            }
+
+            ScannedDocument document = new ScannedDocument(fileName, "user-" + (i % 4), imagePaths);
+            document.setId(String.format("%08x-0000-4000-8000-%012x", i, seed));
+            document.setRecognizedText(sentence(random,
+                    MIN_TEXT_WORDS + random.nextInt(MAX_TEXT_WORDS - MIN_TEXT_WORDS + 1)));
+            document.setSummaryText(sentence(random, 12));
+            document.setTimestamp(new Date(START_TIME + (long) (random.nextDouble() * ONE_YEAR_MILLIS)));
+            document.setLanguage(random.nextBoolean() ? "en" : "vi");
+            document.setType(TYPES[random.nextInt(TYPES.length)]);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * Gets a word that occurs in generated text, for queries that have matches.
+     *
+     * @param index Any number, used to pick the word
+     * @return The word
+     */
+    public static String word(int index) {
+        return WORDS[Math.floorMod(index, WORDS.length)];
+    }
+
+    private static String sentence(Random random, int wordCount) {
+        StringBuilder text = new StringBuilder(wordCount * 7);
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                text.append(i % 12 == 0 ? '\n' : ' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import hcmute.edu.vn.ocrscannerproject.utils.DocumentPreprocessor;
+
+/**
+ * Measures utils/DocumentPreprocessor on a page of text tilted by a few degrees: finding
+ * the skew, thresholding, and the whole cleanup OCRService runs before recognition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DocumentPreprocessorBenchmark {
+    private static final double SKEW_DEGREES = 3;
+
+    // Long edge of the page; the short edge is three quarters of it
+    @Param({"1000", "2000", "4000"})
+    public int longEdge;
+
+    private final DocumentPreprocessor preprocessor = new DocumentPreprocessor();
+    private DocumentPreprocessor.GrayImage page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int width = longEdge * 3 / 4;
+        page = new DocumentPreprocessor.GrayImage(SyntheticPages.linedPage(width, longEdge, SKEW_DEGREES),
+                width, longEdge);
+    }
+
+    /**
+     * Estimates the skew of the page.
+     */
+    @Benchmark
+    public double estimateSkew() {
+        return preprocessor.estimateSkew(page);
+    }
+
+    /**
+     * Thresholds the page without deskewing it.
+     */
+    @Benchmark
+    public DocumentPreprocessor.GrayImage binarize() {
+        return preprocessor.binarize(page);
+    }
+
+    /**
+     * Deskews and thresholds the page.
+     */
+    @Benchmark
+    public DocumentPreprocessor.GrayImage process() {
+        return preprocessor.process(page);
+    }
+}
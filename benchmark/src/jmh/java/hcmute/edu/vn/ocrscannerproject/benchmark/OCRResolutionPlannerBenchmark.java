@@ -0,0 +1,62 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import hcmute.edu.vn.ocrscannerproject.utils.OCRResolutionPlanner;
+
+/**
+ * Measures utils/OCRResolutionPlanner choosing the scale of a page from the line heights
+ * a probe pass found, and from the heights remembered from the page before it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OCRResolutionPlannerBenchmark {
+    private static final int LONG_EDGE = 4000;
+    private static final float PROBE_SCALE = OCRResolutionPlanner.probeScale(LONG_EDGE);
+
+    @Param({"20", "200", "2000"})
+    public int lineCount;
+
+    private final OCRResolutionPlanner planner = new OCRResolutionPlanner();
+    private float[] lineHeights;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Mostly body text, with some headings and small print
+        Random random = new Random(DocumentCorpus.DEFAULT_SEED);
+        lineHeights = new float[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            float base = i % 10 == 0 ? 20f : i % 10 == 1 ? 6f : 10f;
+            lineHeights[i] = base + random.nextFloat() * 2f;
+        }
+        planner.plan(lineHeights, lineCount, PROBE_SCALE, LONG_EDGE);
+    }
+
+    /**
+     * Plans a page from the lines of its probe pass.
+     */
+    @Benchmark
+    public float plan() {
+        return planner.plan(lineHeights, lineCount, PROBE_SCALE, LONG_EDGE);
+    }
+
+    /**
+     * Plans a page from the page before it, without a probe pass.
+     */
+    @Benchmark
+    public float planFromPrior() {
+        return planner.planFromPrior(LONG_EDGE);
+    }
+}
@@ -0,0 +1,118 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures copying a recognized page into the app's result model, as
+ * OCRService.fromText and convertToPointArray do for ML Kit's Text: every block, line
+ * and word is wrapped and its corner points copied. The model classes use
+ * android.graphics types, so the structure is mirrored here with plain objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OcrResultConversionBenchmark {
+    private static final int LINES_PER_BLOCK = 8;
+    private static final int WORDS_PER_LINE = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int wordCount;
+
+    private List<Node> blocks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        blocks = new ArrayList<>();
+        List<Node> lines = null;
+        List<Node> elements = null;
+        for (int i = 0; i < wordCount; i++) {
+            if (i % (LINES_PER_BLOCK * WORDS_PER_LINE) == 0) {
+                lines = new ArrayList<>();
+                blocks.add(new Node("block", corners(0, i), lines));
+            }
+            if (i % WORDS_PER_LINE == 0) {
+                elements = new ArrayList<>();
+                lines.add(new Node("line", corners(0, i), elements));
+            }
+            elements.add(new Node(DocumentCorpus.word(i), corners(i % WORDS_PER_LINE * 90, i / WORDS_PER_LINE * 60), null));
+        }
+    }
+
+    /**
+     * Converts the whole page, allocating new nodes and point arrays.
+     */
+    @Benchmark
+    public List<Node> convertPage() {
+        List<Node> converted = new ArrayList<>(blocks.size());
+        for (Node block : blocks) {
+            List<Node> lines = new ArrayList<>();
+            for (Node line : block.children) {
+                List<Node> elements = new ArrayList<>();
+                for (Node element : line.children) {
+                    elements.add(new Node(element.text, convertToPointArray(element.cornerPoints), null));
+                }
+                lines.add(new Node(line.text, convertToPointArray(line.cornerPoints), elements));
+            }
+            converted.add(new Node(block.text, convertToPointArray(block.cornerPoints), lines));
+        }
+        return converted;
+    }
+
+    private static Point[] convertToPointArray(Point[] cornerPoints) {
+        if (cornerPoints == null) {
+            return new Point[0];
+        }
+        Point[] points = new Point[cornerPoints.length];
+        for (int i = 0; i < cornerPoints.length; i++) {
+            points[i] = new Point(cornerPoints[i].x, cornerPoints[i].y);
+        }
+        return points;
+    }
+
+    private static Point[] corners(int left, int top) {
+        return new Point[]{
+                new Point(left, top), new Point(left + 80, top),
+                new Point(left + 80, top + 40), new Point(left, top + 40)
+        };
+    }
+
+    /**
+     * A block, line or word with its corner points.
+     */
+    public static final class Node {
+        final String text;
+        final Point[] cornerPoints;
+        final List<Node> children;
+
+        Node(String text, Point[] cornerPoints, List<Node> children) {
+            this.text = text;
+            this.cornerPoints = cornerPoints;
+            this.children = children;
+        }
+    }
+
+    /**
+     * Stands in for android.graphics.Point.
+     */
+    public static final class Point {
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import hcmute.edu.vn.ocrscannerproject.utils.QuadDetector;
+
+/**
+ * Measures utils/QuadDetector finding a page in one preview frame, the work the camera
+ * screen does for every frame it analyses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuadDetectorBenchmark {
+    // Preview rows are padded, as camera buffers usually are
+    private static final int ROW_ALIGNMENT = 64;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String frameSize;
+
+    private final QuadDetector detector = new QuadDetector();
+    private final float[] quad = new float[8];
+    private ByteBuffer frame;
+    private int width;
+    private int height;
+    private int rowStride;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = frameSize.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        rowStride = (width + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+        frame = SyntheticPages.frameWithPage(width, height, rowStride, 0);
+        if (!detector.detect(frame, width, height, rowStride, quad)) {
+            throw new IllegalStateException("No page found in the " + frameSize + " frame");
+        }
+    }
+
+    /**
+     * Finds the page corners in the frame.
+     */
+    @Benchmark
+    public float[] detect() {
+        detector.detect(frame, width, height, rowStride, quad);
+        return quad;
+    }
+}
@@ -0,0 +1,127 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the word ordering of ui/extract/TextSelectionManager.processSelection: picking
+ * the words between two handles, sorting them into reading order and joining them into
+ * lines. TextSelectionManager works on android.graphics.RectF, so the algorithm is
+ * mirrored here on plain floats. Keep it in step with processSelection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectionOrderingBenchmark {
+    private static final float TEXT_SIZE = 40f;
+    private static final float LINE_HEIGHT = 60f;
+    private static final int WORDS_PER_LINE = 12;
+
+    @Param({"100", "1000", "10000"})
+    public int wordCount;
+
+    private List<Word> words;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Lay words out in lines with a little vertical jitter, as OCR boxes have
+        Random random = new Random(DocumentCorpus.DEFAULT_SEED);
+        words = new ArrayList<>(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            int line = i / WORDS_PER_LINE;
+            float left = (i % WORDS_PER_LINE) * 90f + random.nextFloat() * 4f;
+            float top = line * LINE_HEIGHT + random.nextFloat() * 6f;
+            words.add(new Word(DocumentCorpus.word(random.nextInt(1000)), left, top, left + 80f));
+        }
+    }
+
+    /**
+     * Selects everything, from the first word to the last.
+     */
+    @Benchmark
+    public String selectAll() {
+        return processSelection(words.get(0), words.get(words.size() - 1));
+    }
+
+    /**
+     * Selects upwards across the middle half of the page.
+     */
+    @Benchmark
+    public String selectMiddleUpwards() {
+        return processSelection(words.get(words.size() * 3 / 4), words.get(words.size() / 4));
+    }
+
+    private String processSelection(Word startWord, Word endWord) {
+        boolean isSelectingDown = startWord.top <= endWord.top;
+        Word topWord = isSelectingDown ? startWord : endWord;
+        Word bottomWord = isSelectingDown ? endWord : startWord;
+
+        List<Word> selectedWords = new ArrayList<>();
+        if (startWord == endWord) {
+            selectedWords.add(startWord);
+        } else {
+            for (Word word : words) {
+                if (Math.abs(word.top - topWord.top) < TEXT_SIZE) {
+                    if (isSelectingDown ? word.left >= topWord.left : word.right <= topWord.right) {
+                        selectedWords.add(word);
+                    }
+                } else if (Math.abs(word.top - bottomWord.top) < TEXT_SIZE) {
+                    if (isSelectingDown ? word.right <= bottomWord.right : word.left >= bottomWord.left) {
+                        selectedWords.add(word);
+                    }
+                } else if (word.top > topWord.top && word.top < bottomWord.top) {
+                    selectedWords.add(word);
+                }
+            }
+        }
+
+        selectedWords.sort((w1, w2) -> {
+            if (Math.abs(w1.top - w2.top) > TEXT_SIZE / 2) {
+                return Float.compare(w1.top, w2.top);
+            }
+            return Float.compare(w1.left, w2.left);
+        });
+
+        StringBuilder selectedTextBuilder = new StringBuilder();
+        float lastTop = -1;
+        String currentLine = "";
+        for (Word word : selectedWords) {
+            if (lastTop != -1 && Math.abs(word.top - lastTop) > TEXT_SIZE / 2) {
+                selectedTextBuilder.append(currentLine.trim()).append("\n");
+                currentLine = "";
+            }
+            currentLine += word.text + " ";
+            lastTop = word.top;
+        }
+        if (!currentLine.isEmpty()) {
+            selectedTextBuilder.append(currentLine.trim());
+        }
+        return selectedTextBuilder.toString().trim();
+    }
+
+    private static final class Word {
+        final String text;
+        final float left;
+        final float top;
+        final float right;
+
+        Word(String text, float left, float top, float right) {
+            this.text = text;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package hcmute.edu.vn.ocrscannerproject.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws synthetic page images and camera frames for the image benchmarks. The drawings
+ * are deterministic, so runs before and after a change see the same pixels.
+ */
+public final class SyntheticPages {
+
+    private SyntheticPages() {
+    }
+
+    /**
+     * Draws dashed lines of text sloping by an angle on a white page, one byte per pixel.
+     *
+     * @param width The width of the page in pixels
+     * @param height The height of the page in pixels
+     * @param degrees The slope of the lines
+     * @return The gray pixels, row by row
+     */
+    public static byte[] linedPage(int width, int height, double degrees) {
+        byte[] pixels = new byte[width * height];
+        Arrays.fill(pixels, (byte) 240);
+        double tan = Math.tan(Math.toRadians(degrees));
+        int lineSpacing = Math.max(12, height / 60);
+        int strokeHeight = Math.max(2, lineSpacing / 4);
+        for (int line = lineSpacing * 2; line < height - lineSpacing * 2; line += lineSpacing) {
+            for (int x = width / 20; x < width - width / 20; x++) {
+                if (x % 12 >= 8) {
+                    continue;
+                }
+                int y0 = (int) Math.round(line + (x - width / 2.0) * tan);
+                for (int y = y0; y < y0 + strokeHeight; y++) {
+                    if (y >= 0 && y < height) {
+                        pixels[y * width + x] = 20;
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Draws the luma plane of a preview frame showing a page of text, shifted right by an
+     * offset, on a dark, slightly noisy background. The page covers the middle of the
+     * frame with its corners pulled in unevenly, as a sheet held at an angle looks.
+     *
+     * @param width The width of the frame in pixels
+     * @param height The height of the frame in pixels
+     * @param rowStride The bytes between the starts of two rows, at least the width
+     * @param offset The horizontal shift of the text in pixels
+     * @return A direct buffer holding the plane
+     */
+    public static ByteBuffer frameWithPage(int width, int height, int rowStride, int offset) {
+        float[] corners = {
+                width * 0.20f, height * 0.12f,
+                width * 0.82f, height * 0.10f,
+                width * 0.86f, height * 0.90f,
+                width * 0.16f, height * 0.86f
+        };
+        ByteBuffer frame = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < rowStride; x++) {
+                int value;
+                if (x < width && contains(corners, x + 0.5f, y + 0.5f)) {
+                    int u = x + offset;
+                    boolean ink = y % 12 < 7 && (u % 5 == 0 || (u * 7 + y * 3) % 11 == 0);
+                    value = ink ? 30 : 220;
+                } else {
+                    value = 50 + (x * 7 + y * 13) % 20;
+                }
+                frame.put(y * rowStride + x, (byte) value);
+            }
+        }
+        return frame;
+    }
+
+    private static boolean contains(float[] corners, float x, float y) {
+        for (int i = 0; i < 4; i++) {
+            float ax = corners[2 * i];
+            float ay = corners[2 * i + 1];
+            float bx = corners[(2 * i + 2) % 8];
+            float by = corners[(2 * i + 3) % 8];
+            // Clockwise on screen keeps the inside on the right of each edge
+            if ((bx - ax) * (y - ay) - (by - ay) * (x - ax) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
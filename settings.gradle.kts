@@ -22,3 +22,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "OCRScannerProject"
 include(":app")
+include(":benchmark")